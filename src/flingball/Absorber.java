@@ -13,7 +13,7 @@ import physics.Vect;
 /**
  * An immutable, threadsafe absorber in the flingball game, an implementation of Gadget
  */
-public class Absorber implements Gadget {
+public class Absorber implements StaticGadget {
     
     private final String name;
     private final Vect location;
@@ -111,9 +111,7 @@ public class Absorber implements Gadget {
         return (int) size.y();
     }
     
-    /**
-     * @return the size of the Absorber. 
-     */
+    @Override
     public Vect getSize() {
         return size;
     }
@@ -125,8 +123,17 @@ public class Absorber implements Gadget {
      * @return true if ball's center is contained within the dimensions of this absorber, else false
      */
     public boolean isContained(Ball ball) {
-        final double ballX = ball.getCircle().getCenter().x();
-        final double ballY = ball.getCircle().getCenter().y();
+        return isContained(ball.getCircle().getCenter().x(), ball.getCircle().getCenter().y());
+    }
+    
+    /**
+     * Determines whether a ball centered at a location is contained inside this absorber.
+     * 
+     * @param ballX the x coordinate of the ball's center
+     * @param ballY the y coordinate of the ball's center
+     * @return true if the ball is contained inside the boundaries of this absorber, else false
+     */
+    boolean isContained(double ballX, double ballY) {
         final double leftBound = this.location.x();
         final double rightBound = leftBound + this.getWidth();
         final double topBound = this.location.y();
@@ -194,6 +201,16 @@ public class Absorber implements Gadget {
         g.fillArc(xCoord + Board.L, yCoord + Board.L, 0, 0, startAngleDegrees, arcAngleDegrees);
     }
     
+    @Override
+    public List<LineSegment> getLineSegments() {
+        return new ArrayList<>(lineSegments);
+    }
+
+    @Override
+    public List<Circle> getCircles() {
+        return new ArrayList<>(circles);
+    }
+
     @Override
     public double getTimeTillCollision(Ball ball, double delta) {
         if(this.isContained(ball)) {
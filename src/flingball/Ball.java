@@ -105,12 +105,23 @@ public class Ball {
      * @param g Graphics the 2D render on which to draw this ball.
      */
     public void draw(Graphics g) {        
+        draw(g, this.location.x(), this.location.y());
+        checkRep();
+    }
+    
+    /**
+     * Draws a ball centered at a location
+     * 
+     * @param g Graphics the 2D render on which to draw the ball.
+     * @param x the x coordinate of the ball's center
+     * @param y the y coordinate of the ball's center
+     */
+    static void draw(Graphics g, double x, double y) {
         g.setColor(COLOR);
-        g.fillOval((int)((this.location.x()-RADIUS) * Board.PIXELS_PER_L), 
-                   (int)((this.location.y()-RADIUS) * Board.PIXELS_PER_L), 
+        g.fillOval((int)((x-RADIUS) * Board.PIXELS_PER_L), 
+                   (int)((y-RADIUS) * Board.PIXELS_PER_L), 
                    (int)(Ball.DIAMETER * Board.PIXELS_PER_L), 
                    (int)(Ball.DIAMETER * Board.PIXELS_PER_L));
-        checkRep();
     }
 
     /**
@@ -133,10 +144,9 @@ public class Ball {
      *         the proceedings of this ball during time step delta
      */
     public Ball updateVelocity(double delta, double gravity, double mu1, double mu2) {
-        final Vect velocityFriction = new Vect(this.velocity.angle(), 
-                                         Math.max(this.velocity.length() * 
-                                                 (1-mu1*delta-mu2*this.velocity.length()*delta), 0));
-        final Vect velocityGravityAndFriction = velocityFriction.plus(new Vect(0, gravity*delta));
+        final double scale = BallStore.frictionScale(this.velocity.x(), this.velocity.y(), delta, mu1, mu2);
+        final Vect velocityGravityAndFriction = new Vect(this.velocity.x() * scale, 
+                                                         this.velocity.y() * scale + gravity * delta);
         return new Ball(this.name, this.location, velocityGravityAndFriction);
     }
     
@@ -0,0 +1,327 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import physics.Physics;
+import physics.Vect;
+
+/**
+ * A mutable, ordered store of the balls on a flingball board, kept as parallel primitive
+ * arrays (structure of arrays) so that moving the balls and applying friction and gravity
+ * updates them in place without allocating.
+ *
+ * Immutable Ball views are only made when a caller asks for a ball, and a view is kept until
+ * the ball it shows changes, so asking again for an unchanged ball returns the same object. The
+ * collision code reads the balls through their indices and never asks for views, and tells balls
+ * apart by their serial numbers: every ball added gets a new serial, which it keeps while it moves.
+ *
+ * The integration and friction kernels work on Cartesian components and never go through the
+ * angle and length of a velocity. Compared to the polar formulation they replace, which moved a
+ * ball by (s * t) * (vx / s) with s = sqrt(vx^2 + vy^2) and scaled friction the same way, the
+ * Cartesian kernels compute vx * t and vx * f. With unit roundoff u = 2^-53 the polar form rounds
+ * up to four times per component and the Cartesian form once, so per sub-step the two differ by
+ * at most 4u |vx t| in position (under 5e-16 of the distance moved) and 3u |vx f| in velocity.
+ * The differences are rounding noise, not drift: they do not build up in one direction, though
+ * collisions amplify them like any other floating point difference.
+ */
+class BallStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[] x = new double[INITIAL_CAPACITY];
+    private double[] y = new double[INITIAL_CAPACITY];
+    private double[] vx = new double[INITIAL_CAPACITY];
+    private double[] vy = new double[INITIAL_CAPACITY];
+    private String[] name = new String[INITIAL_CAPACITY];
+    private long[] serial = new long[INITIAL_CAPACITY];
+    private Ball[] views = new Ball[INITIAL_CAPACITY];
+    private int size = 0;
+    private long nextSerial = 0;
+
+    // Abstraction Function:
+    //  AF(x, y, vx, vy, name, serial, views, size, nextSerial) = The list of size balls where
+    //          ball i is named name[i], has its center at (x[i], y[i]) in L, moves at
+    //          (vx[i], vy[i]) in L/sec and has serial number serial[i]. views[i] is null or an
+    //          immutable Ball equal to ball i. nextSerial is the serial of the next ball added.
+    // Representation Invariant:
+    //  --| x, y, vx, vy, name, serial and views have the same length, which is >= size
+    //  --| serial is strictly increasing over 0..size-1 and serial[size - 1] < nextSerial
+    //  --| name[i] != null for 0 <= i < size
+    //  --| name[i] == null and views[i] == null for i >= size, so a removed ball is not kept alive
+    // Safety from Representation Exposure:
+    //  --| all fields are private and no array or list is ever returned
+    //  --| Balls handed out are immutable views
+    // Thread Safety Argument:
+    //  --| not threadsafe, confined to the Board that owns it and only used under its lock
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert x.length == y.length && x.length == vx.length && x.length == vy.length;
+        assert x.length == name.length && x.length == serial.length && x.length == views.length;
+        assert size <= x.length;
+        assert size == 0 || serial[size - 1] < nextSerial;
+    }
+
+    /**
+     * @return the number of balls in the store
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a ball to the end of the store
+     *
+     * @param ball the ball to add
+     */
+    void add(Ball ball) {
+        if (size == x.length) {
+            final int capacity = 2 * size;
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            vx = Arrays.copyOf(vx, capacity);
+            vy = Arrays.copyOf(vy, capacity);
+            name = Arrays.copyOf(name, capacity);
+            serial = Arrays.copyOf(serial, capacity);
+            views = Arrays.copyOf(views, capacity);
+        }
+        final Vect location = ball.getLocation();
+        final Vect velocity = ball.getVelocity();
+        x[size] = location.x();
+        y[size] = location.y();
+        vx[size] = velocity.x();
+        vy[size] = velocity.y();
+        name[size] = ball.getName();
+        serial[size] = nextSerial++;
+        views[size] = ball;
+        size++;
+        checkRep();
+    }
+
+    /**
+     * Adds balls to the end of the store, in order
+     *
+     * @param balls the balls to add
+     */
+    void addAll(List<Ball> balls) {
+        for (Ball ball : balls) {
+            add(ball);
+        }
+    }
+
+    /**
+     * Removes a ball from the store, keeping the order of the other balls
+     *
+     * @param index the position of the ball to remove, 0 <= index < size()
+     */
+    void remove(int index) {
+        final int moved = size - index - 1;
+        System.arraycopy(x, index + 1, x, index, moved);
+        System.arraycopy(y, index + 1, y, index, moved);
+        System.arraycopy(vx, index + 1, vx, index, moved);
+        System.arraycopy(vy, index + 1, vy, index, moved);
+        System.arraycopy(name, index + 1, name, index, moved);
+        System.arraycopy(serial, index + 1, serial, index, moved);
+        System.arraycopy(views, index + 1, views, index, moved);
+        size--;
+        name[size] = null;
+        views[size] = null;
+        checkRep();
+    }
+
+    /**
+     * Removes the balls from a position in the store to its end
+     *
+     * @param index the position of the first ball to remove, 0 <= index <= size()
+     * @return immutable views of the balls removed, in order
+     */
+    List<Ball> removeFrom(int index) {
+        final List<Ball> removed = new ArrayList<>();
+        for (int i = index; i < size; i++) {
+            removed.add(get(i));
+            name[i] = null;
+            views[i] = null;
+        }
+        size = index;
+        checkRep();
+        return removed;
+    }
+
+    /**
+     * @param index the position of a ball in the store, 0 <= index < size()
+     * @return an immutable view of the ball at index
+     */
+    Ball get(int index) {
+        if (views[index] == null) {
+            views[index] = new Ball(name[index], new Vect(x[index], y[index]), new Vect(vx[index], vy[index]));
+        }
+        return views[index];
+    }
+
+    /**
+     * @param index the position of a ball in the store, 0 <= index < size()
+     * @return the x coordinate of the center of the ball at index
+     */
+    double x(int index) {
+        return x[index];
+    }
+
+    /**
+     * @param index the position of a ball in the store, 0 <= index < size()
+     * @return the y coordinate of the center of the ball at index
+     */
+    double y(int index) {
+        return y[index];
+    }
+
+    /**
+     * @param index the position of a ball in the store, 0 <= index < size()
+     * @return the x component of the velocity of the ball at index
+     */
+    double vx(int index) {
+        return vx[index];
+    }
+
+    /**
+     * @param index the position of a ball in the store, 0 <= index < size()
+     * @return the y component of the velocity of the ball at index
+     */
+    double vy(int index) {
+        return vy[index];
+    }
+
+    /**
+     * @param index the position of a ball in the store, 0 <= index < size()
+     * @return the serial number of the ball at index, which no other ball added to this store has
+     *         had and which is greater than the serials of the balls before it
+     */
+    long serial(int index) {
+        return serial[index];
+    }
+
+    /**
+     * Calculates the time until two balls of the store collide, with the same arithmetic as
+     * Physics.timeUntilBallBallCollision, so that it is identical to
+     * get(index).getTimeTillCollision(get(other), delta)
+     *
+     * @param index the position of a ball in the store, 0 <= index < size()
+     * @param other the position of another ball in the store, 0 <= other < size()
+     * @param delta the "foresight" time
+     * @return the time until the two balls collide if it is <= delta, else positive infinity
+     */
+    double timeTillCollision(int index, int other, double delta) {
+        final double sizes = Ball.RADIUS + Ball.RADIUS;
+        final double positionX = x[index] - x[other];
+        final double positionY = y[index] - y[other];
+        final double velocityX = vx[index] - vx[other];
+        final double velocityY = vy[index] - vy[other];
+        final double sizes2 = sizes * sizes;
+        final double positionX2 = positionX * positionX;
+        final double positionY2 = positionY * positionY;
+        final double timeTillCollision;
+        if (positionX2 + positionY2 - sizes2 <= 0.0) {
+            /* the balls overlap, which only counts if they are moving towards each other */
+            timeTillCollision = velocityX * positionX + velocityY * positionY < 0.0 ? 0.0 : Double.POSITIVE_INFINITY;
+        } else {
+            final double time = StaticGeometry.minQuadraticSolution(velocityX * velocityX + velocityY * velocityY,
+                    2 * positionX * velocityX + 2 * positionY * velocityY, positionX2 + positionY2 - sizes2);
+            timeTillCollision = time > 0 ? time : Double.POSITIVE_INFINITY;
+        }
+        return timeTillCollision <= delta ? timeTillCollision : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Determines whether any ball of the store rejects a ball, as Ball.rejects does
+     *
+     * @param ball a ball to place among the balls of the store
+     * @return true if some ball of the store shares space with ball, else false
+     */
+    boolean rejects(Ball ball) {
+        final double ballX = ball.getLocation().x();
+        final double ballY = ball.getLocation().y();
+        for (int i = 0; i < size; i++) {
+            if (Math.pow(Physics.distanceSquared(x[i], y[i], ballX, ballY), Ball.DIAMETER) <= Ball.DIAMETER) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return immutable views of every ball in the store, in order
+     */
+    Ball[] toArray() {
+        final Ball[] balls = new Ball[size];
+        for (int i = 0; i < size; i++) {
+            balls[i] = get(i);
+        }
+        return balls;
+    }
+
+    /**
+     * Moves every ball forward along its velocity
+     *
+     * @param time the time to move the balls for
+     */
+    void step(double time) {
+        for (int i = 0; i < size; i++) {
+            if (vx[i] != 0 || vy[i] != 0) {
+                x[i] = integrate(x[i], vx[i], time);
+                y[i] = integrate(y[i], vy[i], time);
+                views[i] = null;
+            }
+        }
+        checkRep();
+    }
+
+    /**
+     * Applies friction and then gravity to the velocity of every ball, the same way
+     * Ball.updateVelocity does
+     *
+     * @param delta the time step by which to update the velocities
+     * @param gravity the gravity constant of the board
+     * @param mu1 the first friction constant of the board
+     * @param mu2 the second friction constant of the board
+     */
+    void applyFrictionGravity(double delta, double gravity, double mu1, double mu2) {
+        for (int i = 0; i < size; i++) {
+            final double scale = frictionScale(vx[i], vy[i], delta, mu1, mu2);
+            vx[i] = vx[i] * scale;
+            vy[i] = vy[i] * scale + gravity * delta;
+            views[i] = null;
+        }
+        checkRep();
+    }
+
+    /**
+     * Moves one coordinate of a ball along the matching component of its velocity
+     *
+     * @param position the coordinate in L
+     * @param velocity the velocity component along that coordinate in L/sec
+     * @param time the time to move for
+     * @return the coordinate after time
+     */
+    static double integrate(double position, double velocity, double time) {
+        return position + velocity * time;
+    }
+
+    /**
+     * Calculates how much friction scales a velocity by over a time step. Friction only
+     * shortens a velocity, so both components are scaled by the same factor.
+     *
+     * @param velocityX the x component of the velocity in L/sec
+     * @param velocityY the y component of the velocity in L/sec
+     * @param delta the time step
+     * @param mu1 the first friction constant of the board
+     * @param mu2 the second friction constant of the board
+     * @return the factor in [0, 1] to multiply both components of the velocity by
+     */
+    static double frictionScale(double velocityX, double velocityY, double delta, double mu1, double mu2) {
+        final double speed = Math.sqrt(velocityX * velocityX + velocityY * velocityY);
+        return Math.max(1 - mu1 * delta - mu2 * speed * delta, 0);
+    }
+}
@@ -3,22 +3,26 @@ package flingball;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import physics.LineSegment;
 import physics.Physics;
@@ -30,7 +34,7 @@ import physics.Vect;
 public class Board {
 
     private String name;
-    private final List<Ball> balls;
+    private final BallStore balls = new BallStore();
     private final List<Bumper> bumpers;
     private final List<Absorber> absorbers;
     private final List<Flipper> flippers;
@@ -43,18 +47,49 @@ public class Board {
     
     
     private Optional<Socket> socket = Optional.empty();
+    private volatile Optional<OutboundWriter> outbound = Optional.empty();
+    private volatile boolean offerBinary = false;
+    private int outboundCapacity = OutboundWriter.DEFAULT_CAPACITY;
+    private OverflowPolicy outboundPolicy = OverflowPolicy.BLOCK;
+    private volatile Optional<ServerSocket> peerListener = Optional.empty();
+    private final Map<String, PeerLink> peers = new HashMap<>();
+    private Optional<DatagramTransport> datagrams = Optional.empty();
+    private Optional<Consumer<ServerCommand>> router = Optional.empty();
     
-    private List<String> connectedBoards = new LinkedList<>();
+    private Set<String> connectedBoards = new LinkedHashSet<>();
+    private long membershipVersion = Membership.UNKNOWN_VERSION;
+    private boolean resyncRequested = false;
     private final Map<Wall, Optional<String>> joinedBoards = Collections.synchronizedMap(new HashMap<>());
-    private static final Map<Wall, Wall> WALL_TO_TARGET_WALL = Collections.synchronizedMap(new HashMap<>());
-    private static final Map<LineSegment, Wall> LINE_SEGMENT_TO_WALL = Collections.synchronizedMap(new HashMap<>());
+    private static final Map<Wall, Wall> WALL_TO_TARGET_WALL = constructTargetWalls();
+    private final Map<Wall, LineSegment> wallLines = constructWalls();
     
-    private final Map<Gadget, List<Absorber>> triggerAbsorberMap = Collections.synchronizedMap(new HashMap<>());
-    private final Map<Gadget, List<Flipper>> triggerFlipperMap = Collections.synchronizedMap(new HashMap<>());
+    private final GadgetRegistry registry = new GadgetRegistry();
     private final Map<Absorber, List<String>> absorberBallNamesMap = Collections.synchronizedMap(new HashMap<>());
     
     private final List<String> protoListeners = Collections.synchronizedList(new LinkedList<>());
     private final Map<String, Boolean> portalConnected = Collections.synchronizedMap(new HashMap<>());
+    
+    private final StaticGadgetTree gadgetTree = new StaticGadgetTree();
+    private final SweepAndPrune ballPairs = new SweepAndPrune();
+    private boolean staticGadgetsChanged = true;
+    private Bumper[] bumperArray = new Bumper[0];
+    private Absorber[] absorberArray = new Absorber[0];
+    private Portal[] portalArray = new Portal[0];
+    private boolean portalLinksChanged = true;
+    private boolean[] localPortalMask = new boolean[0];
+    private boolean[] activePortalMask = new boolean[0];
+    private int[] ballCandidates = new int[0];
+    private int[] gadgetCandidates = new int[0];
+    private StaticGeometry geometry = new StaticGeometry(new Bumper[0], new Absorber[0], new Portal[0]);
+    private int[] ownerCandidates = new int[0];
+    private CollisionEngine engine = CollisionEngine.RESCAN;
+    private final CollisionScheduler scheduler = new CollisionScheduler();
+    private final SimulationClock clock = new SimulationClock();
+    private final ClockOffsets offsets = new ClockOffsets();
+    private boolean catchingUp = false;
+    private double lag = 0;
+    private volatile FrameSnapshot frame = FrameSnapshot.EMPTY;
+    private final CommandQueue inbound = new CommandQueue();
         
     private final Color color = Color.WHITE;
     public static final double TIME = 0.001;
@@ -63,21 +98,28 @@ public class Board {
     public static final double EPSILON_12 = 1e-12;
     public static final double EPSILON_9 = 1e-9;
     public static final double EPSILON_7 = 1e-7;
+    public static final double EPSILON_6 = 1e-6;
     public static final double EPSILON_3 = 1e-3;
     public static final int L = 20;  // 1L = 20 pixels
     public static final int PIXELS_PER_L = 20;
     private static final float GRAVITY_DEFAULT = 25;  // units of L/(sec^2)
     private static final float FRICTION_DEFAULT = 0.025f;
+    private static final int MAX_COMMANDS_PER_UPDATE = 64;
     
     // Abstraction Function:
     //  AF(name, balls, bumpers, absorbers, flippers, portals, localPortals, walls, gravity,
-    //     friction1, friction2, socket, connectedBoards, joinedBoards, WALL_TO_TARGET_WALL,
-    //     LINE_SEGMENT_TO_WALL, triggerAbsorberMap, triggerFlipperMap, absorberBallNamesMap,
-    //     protoListeners, portalConnected, COLOR, TIME, L, PIXELS_PER_L) =
+    //     friction1, friction2, socket, outbound, offerBinary, outboundCapacity, outboundPolicy,
+    //     peerListener, peers, datagrams, router, connectedBoards, membershipVersion,
+    //     resyncRequested, joinedBoards, WALL_TO_TARGET_WALL,
+    //     wallLines, registry, absorberBallNamesMap,
+    //     protoListeners, portalConnected, gadgetTree, ballPairs, staticGadgetsChanged, bumperArray,
+    //     absorberArray, portalArray, portalLinksChanged, localPortalMask, activePortalMask, ballCandidates, gadgetCandidates, geometry, ownerCandidates,
+    //     engine, scheduler, clock, offsets, catchingUp, lag, frame, inbound, COLOR, TIME, L, PIXELS_PER_L) =
     //     
     //      A fling ball board that is identified by name. The following are the mappings of board
     //      from its concrete implementations to the corresponding abstract spaces.
-    //      - balls : the balls that are contained on the board and are considered in game play
+    //      - balls : the balls that are contained on the board and are considered in game play, in
+    //                board order, stored as primitive arrays that Ball views are made from on demand
     //      - bumpers : the bumpers that are on this flingball board that balls can bounce off
     //      - absorbers : the absorbers that are on this flingball board that can absorb and shoot balls
     //      - flippers : the flippers that are on this flingball board that can rotate to hit balls
@@ -90,27 +132,76 @@ public class Board {
     //      - friction2 : the velocity-dependent friction that affects the movement of balls
     //      - socket : the connection that delivers messages to the server to allow communication
     //                 between multiple flingball boards
+    //      - outbound : the writer that sends messages to the server through socket, one write per frame
+    //      - offerBinary : whether this board offers the server the binary framing of WireCodec
+    //      - outboundCapacity, outboundPolicy : how many messages wait to be written to the server or
+    //                                           to another board, and what happens to one more
+    //      - peerListener : where this board listens for links from the boards it is joined to
+    //      - peers : the direct links to other boards by their names, which teleports to them are
+    //                sent through instead of the server while they are open
+    //      - datagrams : the transport the links send teleports through as datagrams, if present
+    //      - router : where every teleport from this board is handed instead of a link or the server,
+    //                 if present, when the board runs in the same process as the boards it teleports to
     //      - connectedBoards : the boards that are currently playing and connected to a server
+    //      - membershipVersion : the version of connectedBoards the server last told this board, or
+    //                            Membership.UNKNOWN_VERSION if it never did
+    //      - resyncRequested : whether this board missed a change to connectedBoards and asked the
+    //                          server for all of them again
     //      - joinedBoards : the boards that are currently joined to any of the four walls of this board
     //      - WALL_TO_TARGET_WALL : the mapping of a relation between walls and their corresponding targets
     //                              that they would teleport balls if another board is joined via those walls
-    //      - LINE_SEGMENT_TO_WALL : the corresponding wall to a line segment that makes up the borders of this board
-    //      - triggerAbsorberMap : represents the gadgets that trigger the absorbers
-    //      - targetFlipperMap : represents the gadgets that trigger flippers
+    //      - wallLines : the line segment that makes up the border of this board along each wall
+    //      - registry : the gadgets on this board by name, and the absorbers and flippers that
+    //                   each of them triggers
     //      - absorberBallNamesMap : represents the balls that are contained within absorbers on this board
     //      - protoListeners : represents the listeners of the board that listen for key input to generate an action
     //      - portalConnected : represents whether the portals on the board are connected to another portal or not
+    //      - gadgetTree : the bounding-volume hierarchy that narrows down which static gadgets a ball
+    //                     may collide with
+    //      - ballPairs : the broadphase that narrows down which pairs of balls may collide
+    //      - staticGadgetsChanged : whether a static gadget was added since gadgetTree and the gadget arrays were built
+    //      - bumperArray, absorberArray, portalArray : indexable copies of bumpers, absorbers and portals
+    //                                                  that the indices returned by gadgetTree refer to
+    //      - portalLinksChanged : whether a portal, a local portal or the connected boards changed since
+    //                             localPortalMask and activePortalMask were computed
+    //      - localPortalMask : whether each portal of portalArray is in localPortals
+    //      - activePortalMask : whether each portal of portalArray can currently teleport a ball, i.e. it is
+    //                           local or the board it connects to is in connectedBoards
+    //      - ballCandidates, gadgetCandidates : scratch buffers that ballPairs and gadgetTree write candidate
+    //                                           indices into
+    //      - geometry : the line segments and circles of bumperArray, absorberArray and portalArray
+    //                   compiled into flat arrays, which collision times are computed from
+    //      - ownerCandidates : scratch buffer of the geometry owners a ball may collide with
+    //      - engine : the engine used to find and resolve the collisions that happen during a frame
+    //      - scheduler : the predicted collisions of the current frame when engine is EVENT_QUEUE
+    //      - clock : the simulated time of the board, which the flippers on it flip by
+    //      - offsets : how far the clocks of the boards that teleport balls here are from clock, and
+    //                  how long their teleports take
+    //      - catchingUp : whether the balls on the board are ones that just arrived, being moved
+    //                     forward by how late they arrived while clock stands still
+    //      - lag : how far those balls are still behind clock
+    //      - frame : the balls, flippers and join banners of the board as of its last update, for drawing
+    //      - inbound : the commands received from the server that have not been applied yet
     //      - COLOR : represents the background color of the board
     //      - TIME : represents a time that emulates frame rate of a fling ball game
     //      - L : represents one unit on the fling board that is generally 20L x 20L
     //      - PIXELS_PER_L : represents the number of pixels per unit (L) on a flingball board
     // Representation Invariant:
-    //  --| the list of connectedBoards has no duplicate boards in it
     //  --| Portals in localPortals cannot connect to boards aside from this one
     //  --| all local portals are connected
     //  --| friction1 & friction2 are >= 0
     //  --| if socket is present then this board is in connectedBoards
-    //  --| all absorbers, flippers, and their triggers in the trigger maps are on the board
+    //  --| outbound is only present while socket is
+    //  --| every link in peers is to the board it is keyed by
+    //  --| walls holds the line segments of wallLines, in the order TOP, RIGHT, LEFT, BOTTOM
+    //  --| every gadget on the board is in registry, and registry holds nothing else
+    //  --| every flipper reads its rotation off clock
+    //  --| lag >= 0, and lag == 0 unless catchingUp
+    //  --| if !staticGadgetsChanged then bumperArray, absorberArray and portalArray hold exactly the
+    //      elements of bumpers, absorbers and portals in the same order, and geometry was compiled
+    //      from them
+    //  --| if !staticGadgetsChanged and !portalLinksChanged then localPortalMask and activePortalMask are
+    //      as long as portalArray and agree with localPortals and connectedBoards
     // Safety from Representation Exposure:
     //  --| All fields are private
     //  --| All getter methods that return mutable objects implement defensive copying
@@ -119,10 +210,21 @@ public class Board {
     //  --| All shared data is immutable and thus safe for sharing
     //  --| Every method synchronized following the monitor pattern except for:
     //  -----| socketInput() which needs to be constantly listening for input thus it wouldn't
-    //         make sense to synchronize this method. SocketInput() must call synchronized getters
-    //         and setters, thus, it will never be subject to race conditions. parseCommand() is the
-    //         only method called within socketInput() that observes or mutates any part of the board
-    //         and this method is synchronized.
+    //         make sense to synchronize this method. It calls receiveCommand(), which only reads the
+    //         final name and hands each decoded command to inbound, a lock-free threadsafe queue, so
+    //         reading the socket never waits for an update. The commands are applied by the
+    //         synchronized updateBoard(), so they never race with the physics.
+    //  -----| receive(), which hands a decoded command to inbound as receiveCommand() does.
+    //  -----| getInboundStats() and getOutboundStats(), which only read inbound and the volatile
+    //         outbound, which are threadsafe.
+    //  -----| the threads that accept, dial and read links, which only take the lock to add and
+    //         remove links from peers, and hand the teleports they read to inbound like socketInput(); so
+    //         does the thread of datagrams that reads teleports sent as datagrams.
+    //         Links are only dialed, accepted and read off the lock, so an update never waits on them.
+    //  --| messages to the server are handed to outbound, which writes them on its own thread, so
+    //      an update never waits on the socket while it holds the lock.
+    //  -----| the drawing methods and getFrame(), which only read frame. frame is volatile and is
+    //         only ever replaced by a new immutable FrameSnapshot, so painting never waits for an update.
     
     /**
      * Checks the Representation Invariant to ensure that no representation exposure occurs
@@ -137,7 +239,6 @@ public class Board {
         
         assert friction1 >= 0;
         assert friction2 >= 0;
-        assert this.connectedBoards.size() == new HashSet<>(this.connectedBoards).size();
         
         for(Portal portal : this.localPortals) {
             assert (!portal.getConnectedBoard().isPresent() || portal.getConnectedBoard().get().equals(this.name));
@@ -147,21 +248,11 @@ public class Board {
             this.connectedBoards.contains(this.name);
         }
         
-        for (Gadget gadget : this.triggerAbsorberMap.keySet()) {
-            if (getAbsorbers().contains(gadget)) { continue; }
-            if (getBumpers().contains(gadget)) {continue; }
-            if (getFlippers().contains(gadget)) {continue; }
-            if (getPortals().contains(gadget)) {continue; }
-            assert false;
+        for (Map.Entry<String, PeerLink> peer : this.peers.entrySet()) {
+            assert peer.getKey().equals(peer.getValue().board());
         }
         
-        for (Gadget gadget : this.triggerFlipperMap.keySet()) {
-            if (getAbsorbers().contains(gadget)) { continue; }
-            if (getBumpers().contains(gadget)) {continue; }
-            if (getFlippers().contains(gadget)) {continue; }
-            if (getPortals().contains(gadget)) {continue; }
-            assert false;
-        }
+        assert lag >= 0 && (catchingUp || lag == 0);
         
     }
     
@@ -172,13 +263,12 @@ public class Board {
      */
     Board(String name) {
         this.name = name;
-        this.balls = Collections.synchronizedList(new LinkedList<Ball>());
         this.bumpers = Collections.synchronizedList(new LinkedList<Bumper>());
         this.absorbers = Collections.synchronizedList(new LinkedList<Absorber>());
         this.flippers = Collections.synchronizedList(new LinkedList<Flipper>());
         this.portals = Collections.synchronizedList(new LinkedList<Portal>());
         this.localPortals = Collections.synchronizedList(new LinkedList<Portal>());
-        this.walls = Collections.synchronizedList(constructWalls());
+        this.walls = wallList(this.wallLines);
         populateJoinedBoardsMap();
         this.gravity = GRAVITY_DEFAULT;
         this.friction1 = FRICTION_DEFAULT;
@@ -198,13 +288,12 @@ public class Board {
      */
     Board(String name, float gravity, float friction1, float friction2) {
         this.name = name;
-        this.balls = new LinkedList<Ball>();
         this.bumpers = new LinkedList<Bumper>();
         this.absorbers = new LinkedList<Absorber>();
         this.flippers = new LinkedList<Flipper>();
         this.portals = new LinkedList<Portal>();
         this.localPortals = new LinkedList<Portal>();
-        this.walls = constructWalls();
+        this.walls = wallList(this.wallLines);
         populateJoinedBoardsMap();
         this.gravity = gravity;
         this.friction1 = friction1;
@@ -223,14 +312,16 @@ public class Board {
      */
     Board(String name, List<Ball> balls, List<Bumper> bumpers, List<Absorber> absorbers) {
         this.name = name;
-        this.balls = Collections.synchronizedList(new LinkedList<Ball>(balls));
+        this.balls.addAll(balls);
         this.bumpers = Collections.synchronizedList(new LinkedList<Bumper>(bumpers));
         this.absorbers = Collections.synchronizedList(new LinkedList<Absorber>(absorbers));
         for (Absorber absorber:absorbers) { absorberBallNamesMap.put(absorber, Collections.synchronizedList(new ArrayList<>())); }
         this.flippers = Collections.synchronizedList(new LinkedList<Flipper>());
+        registerAll(bumpers);
+        registerAll(absorbers);
         this.portals = Collections.synchronizedList(new LinkedList<Portal>());
         this.localPortals = Collections.synchronizedList(new LinkedList<Portal>());
-        this.walls = Collections.synchronizedList(constructWalls());
+        this.walls = wallList(this.wallLines);
         populateJoinedBoardsMap();
         this.gravity = GRAVITY_DEFAULT;
         this.friction1 = FRICTION_DEFAULT;
@@ -259,14 +350,19 @@ public class Board {
             List<Flipper> flippers, List<Portal> portals, List<Portal> localPortals, 
             float gravity, float friction1, float friction2) {
         this.name = name;
-        this.balls = Collections.synchronizedList(new LinkedList<Ball>(balls));
+        this.balls.addAll(balls);
         this.bumpers = Collections.synchronizedList(new LinkedList<Bumper>(bumpers));
         this.flippers = Collections.synchronizedList(new LinkedList<Flipper>(flippers));
+        for (Flipper flipper : flippers) { flipper.setClock(this.clock); }
         this.portals = Collections.synchronizedList(new LinkedList<Portal>(portals));
         this.localPortals = Collections.synchronizedList(new LinkedList<Portal>(localPortals));
         this.absorbers = Collections.synchronizedList(new LinkedList<Absorber>(absorbers)); 
         for(Absorber absorber:absorbers ) { absorberBallNamesMap.put(absorber, Collections.synchronizedList(new ArrayList<>())); }
-        this.walls = Collections.synchronizedList(constructWalls());
+        registerAll(bumpers);
+        registerAll(absorbers);
+        registerAll(flippers);
+        registerAll(portals);
+        this.walls = wallList(this.wallLines);
         populateJoinedBoardsMap();
         this.gravity = gravity;
         this.friction1 = friction1;
@@ -277,32 +373,54 @@ public class Board {
     
     /**
      * Construct the four walls of the board. The dimensions are 20L x 20L.
-     * The order walls are created is TOP -> BOTTOM -> LEFT -> RIGHT
-     * 
-     * @return A list containing four linesegments corresponding to the four walls of the board
-     */
-    private synchronized static List<LineSegment> constructWalls() {
-        final List<LineSegment> boardWalls = new LinkedList<>();
-        final LineSegment top = new LineSegment(new Vect(0, 0), new Vect(L, 0));
-        final LineSegment right = new LineSegment(new Vect(L, 0), new Vect(L, L));
-        final LineSegment left = new LineSegment(new Vect(0, 0), new Vect(0, L));
-        final LineSegment bottom = new LineSegment(new Vect(0, L), new Vect(L, L));
-        // Add general board walls
-        boardWalls.add(top);
-        boardWalls.add(right);
-        boardWalls.add(left);
-        boardWalls.add(bottom);
-        // Add mappings of line segments to their enumeration, wall counterparts
-        LINE_SEGMENT_TO_WALL.put(top, Wall.TOP);
-        LINE_SEGMENT_TO_WALL.put(bottom, Wall.BOTTOM);
-        LINE_SEGMENT_TO_WALL.put(left, Wall.LEFT);
-        LINE_SEGMENT_TO_WALL.put(right, Wall.RIGHT);
-        // Add mappings of line segments to their predetermined connection walls 
-        WALL_TO_TARGET_WALL.put(Wall.TOP, Wall.BOTTOM);
-        WALL_TO_TARGET_WALL.put(Wall.BOTTOM, Wall.TOP);
-        WALL_TO_TARGET_WALL.put(Wall.LEFT, Wall.RIGHT);
-        WALL_TO_TARGET_WALL.put(Wall.RIGHT, Wall.LEFT);
-        return boardWalls;
+     * 
+     * @return an immutable map from each wall to the line segment along it
+     */
+    private static Map<Wall, LineSegment> constructWalls() {
+        final Map<Wall, LineSegment> boardWalls = new EnumMap<>(Wall.class);
+        boardWalls.put(Wall.TOP, new LineSegment(new Vect(0, 0), new Vect(L, 0)));
+        boardWalls.put(Wall.RIGHT, new LineSegment(new Vect(L, 0), new Vect(L, L)));
+        boardWalls.put(Wall.LEFT, new LineSegment(new Vect(0, 0), new Vect(0, L)));
+        boardWalls.put(Wall.BOTTOM, new LineSegment(new Vect(0, L), new Vect(L, L)));
+        return Collections.unmodifiableMap(boardWalls);
+    }
+    
+    /**
+     * @return an immutable map from each wall to the wall of another board that a ball going
+     *         through it arrives through, if another board is joined via it
+     */
+    private static Map<Wall, Wall> constructTargetWalls() {
+        final Map<Wall, Wall> targets = new EnumMap<>(Wall.class);
+        targets.put(Wall.TOP, Wall.BOTTOM);
+        targets.put(Wall.BOTTOM, Wall.TOP);
+        targets.put(Wall.LEFT, Wall.RIGHT);
+        targets.put(Wall.RIGHT, Wall.LEFT);
+        return Collections.unmodifiableMap(targets);
+    }
+    
+    /**
+     * Lists the walls of a board in the order collisions with them are checked in, which is
+     * TOP -> RIGHT -> LEFT -> BOTTOM
+     * 
+     * @param wallLines the line segment along each wall of the board
+     * @return an immutable list of the four line segments
+     */
+    private static List<LineSegment> wallList(Map<Wall, LineSegment> wallLines) {
+        return Collections.unmodifiableList(Arrays.asList(wallLines.get(Wall.TOP), wallLines.get(Wall.RIGHT),
+                wallLines.get(Wall.LEFT), wallLines.get(Wall.BOTTOM)));
+    }
+    
+    /**
+     * @param line one of the line segments of walls
+     * @return the wall line lies along
+     */
+    private Wall wallOf(LineSegment line) {
+        for (Map.Entry<Wall, LineSegment> wall : this.wallLines.entrySet()) {
+            if (wall.getValue().equals(line)) {
+                return wall.getKey();
+            }
+        }
+        throw new IllegalArgumentException("Not a wall of this board: " + line);
     }
     
     /**
@@ -320,13 +438,37 @@ public class Board {
     
     /**
      * Takes in a socket connected to a server which allows for communication between
-     * the board and the server.
+     * the board and the server. Up to OutboundWriter.DEFAULT_CAPACITY messages wait to be
+     * written to the server, and an update that sends one more waits for room.
      * 
      * @param s the socket that board will send messages through. The socket must be
      *          connected to a FlingballTextServer.
      */
     public synchronized void acceptSocket(Socket s) {
+        acceptSocket(s, OutboundWriter.DEFAULT_CAPACITY, OverflowPolicy.BLOCK, false);
+    }
+    
+    /**
+     * Takes in a socket connected to a server which allows for communication between
+     * the board and the server.
+     * 
+     * @param s the socket that board will send messages through. The socket must be
+     *          connected to a FlingballTextServer.
+     * @param capacity the number of messages that can wait to be written to the server, must be > 0
+     * @param policy what to do with a message sent while capacity messages are waiting
+     * @param offerBinary whether to offer the server the binary framing of WireCodec after telling
+     *                    it the name of this board; servers that do not know it carry on in text
+     */
+    public synchronized void acceptSocket(Socket s, int capacity, OverflowPolicy policy, boolean offerBinary) {
         this.socket = Optional.of(s);
+        this.offerBinary = offerBinary;
+        this.outboundCapacity = capacity;
+        this.outboundPolicy = policy;
+        try {
+            this.outbound = Optional.of(new OutboundWriter(s.getOutputStream(), capacity, policy));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         new Thread(new Runnable() {
             public void run() {
                 socketInput();
@@ -336,19 +478,244 @@ public class Board {
     }
     
     /**
-     * Gets input from a socket that is connected to a FlingballTextServer
+     * Listens for direct links from the boards a server joins this board to, so that the balls
+     * teleported between them skip the server; see PeerLink. The server is told the port along with
+     * the name of this board, so this has to be called before acceptSocket. Does nothing if this
+     * board already listens.
+     * 
+     * @param port the port to listen on, 0 for any free port
+     * @return the port this board listens on
+     * @throws IOException if the port cannot be listened on
+     */
+    public synchronized int listenForPeers(int port) throws IOException {
+        return listenForPeers(port, false);
+    }
+    
+    /**
+     * Listens for direct links as listenForPeers(port) does, and if datagrams is true sends the
+     * teleports of every link to a board that does so too as UDP datagrams from a socket bound to
+     * any free port; see DatagramTransport.
+     * 
+     * @param port the port to listen on, 0 for any free port
+     * @param datagrams whether to send teleports as datagrams
+     * @return the port this board listens on
+     * @throws IOException if the port cannot be listened on, or no socket can be bound for datagrams
+     */
+    public synchronized int listenForPeers(int port, boolean datagrams) throws IOException {
+        return listenForPeers(port, datagrams ? Optional.of(new DatagramSocket()) : Optional.empty());
+    }
+    
+    /**
+     * Listens for direct links as listenForPeers(port) does, sending their teleports through a
+     * given datagram socket if present
+     * 
+     * @param port the port to listen on, 0 for any free port
+     * @param datagramSocket the socket to send teleports as datagrams through, owned by this board
+     *        from now on, or empty to send them over the links; ignored if this board already has one
+     * @return the port this board listens on
+     * @throws IOException if the port cannot be listened on
+     */
+    synchronized int listenForPeers(int port, Optional<DatagramSocket> datagramSocket) throws IOException {
+        if (datagramSocket.isPresent()) {
+            if (this.datagrams.isPresent()) {
+                datagramSocket.get().close();
+            } else {
+                this.datagrams = Optional.of(new DatagramTransport(datagramSocket.get(), this::receivePeerCommand));
+            }
+        }
+        if (!this.peerListener.isPresent()) {
+            final ServerSocket listener = new ServerSocket(port);
+            this.peerListener = Optional.of(listener);
+            startDaemon(() -> acceptPeers(listener));
+        }
+        return this.peerListener.get().getLocalPort();
+    }
+    
+    /**
+     * Accepts the links other boards dial until listener is closed, reading each on a thread of its own
+     * 
+     * @param listener the socket this board listens for links on
+     */
+    private void acceptPeers(ServerSocket listener) {
+        while (true) {
+            final Socket peerSocket;
+            try {
+                peerSocket = listener.accept();
+            } catch (IOException e) {
+                return; // closed as this board left the server
+            }
+            final int capacity;
+            final OverflowPolicy policy;
+            final Optional<DatagramTransport> transport;
+            synchronized (this) {
+                capacity = this.outboundCapacity;
+                policy = this.outboundPolicy;
+                transport = this.datagrams;
+            }
+            startDaemon(() -> {
+                try {
+                    readPeer(PeerLink.accept(peerSocket, capacity, policy, transport));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Dials the board the server told this board to link to; if it cannot be reached the teleports
+     * to it keep going through the server
+     * 
+     * @param board the name of the board to link to
+     * @param host the host board listens for links on
+     * @param port the port board listens for links on
+     */
+    private void dialPeer(String board, String host, int port) {
+        final String name;
+        final int capacity;
+        final OverflowPolicy policy;
+        final Optional<DatagramTransport> transport;
+        synchronized (this) {
+            name = this.name;
+            capacity = this.outboundCapacity;
+            policy = this.outboundPolicy;
+            transport = this.datagrams;
+        }
+        try {
+            readPeer(PeerLink.dial(board, new InetSocketAddress(host, port), name, capacity, policy, transport));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Uses a link until it closes or breaks, unless this board already has an open link to the
+     * same board, in which case the new one is closed
+     * 
+     * @param link a link that was just dialed or accepted
+     */
+    private void readPeer(PeerLink link) {
+        synchronized (this) {
+            final PeerLink existing = this.peers.get(link.board());
+            if (existing == null || !existing.isOpen()) {
+                this.peers.put(link.board(), link);
+            } else {
+                link.close();
+            }
+        }
+        link.read(this::receivePeerCommand);
+        synchronized (this) {
+            this.peers.remove(link.board(), link);
+        }
+    }
+    
+    /**
+     * Queues a command read from a link, to be applied at the start of the next update. Only
+     * teleports to this board are taken from other boards; the server decides everything else.
+     * 
+     * @param command the command the board at the other end of a link sent
+     */
+    private void receivePeerCommand(ServerCommand command) {
+        final boolean teleport = command.getKind() == ServerCommand.Kind.TELEPORT_WALL
+                || command.getKind() == ServerCommand.Kind.TELEPORT_PORTAL;
+        if (teleport && command.getNames().get(0).equals(this.name)) {
+            inbound.offer(command);
+        }
+    }
+    
+    /**
+     * Closes the link to a board once no wall of this board is joined to it any more
+     * 
+     * @param board the name of a board that was unjoined from a wall of this board
+     */
+    private synchronized void unlinkIfUnjoined(String board) {
+        if (!this.joinedBoards.containsValue(Optional.of(board))) {
+            final PeerLink link = this.peers.remove(board);
+            if (link != null) {
+                link.close();
+            }
+        }
+    }
+    
+    /**
+     * Closes every link and stops listening for new ones, as this board is leaving the server. The
+     * datagram transport stays open, so that teleports already sent as datagrams are still sent
+     * until acked.
+     */
+    private synchronized void closePeers() {
+        for (PeerLink link : this.peers.values()) {
+            link.close();
+        }
+        this.peers.clear();
+        if (this.peerListener.isPresent()) {
+            try {
+                this.peerListener.get().close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            this.peerListener = Optional.empty();
+        }
+    }
+    
+    /**
+     * Runs a task on a new daemon thread, so that it never keeps the program running
+     */
+    private static void startDaemon(Runnable task) {
+        final Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * @return the transport that sends the teleports of links as datagrams, if this board has one
+     */
+    synchronized Optional<DatagramTransport> getDatagramTransport() {
+        return this.datagrams;
+    }
+    
+    /**
+     * @return the names of the boards this board has an open direct link to
+     */
+    protected synchronized Set<String> getLinkedBoards() {
+        final Set<String> linked = new HashSet<>();
+        for (PeerLink link : this.peers.values()) {
+            if (link.isOpen()) {
+                linked.add(link.board());
+            }
+        }
+        return linked;
+    }
+    
+    /**
+     * Gets input from a socket that is connected to a FlingballTextServer, as lines of text until
+     * the server accepts the binary framing of WireCodec and as frames after that
      */
     public void socketInput() {
         assert this.socket.isPresent();
         
         try {
-            final InputStream inputStream = this.socket.get().getInputStream();
-            final InputStreamReader iStreamReader = new InputStreamReader(inputStream);
-            final BufferedReader buffReader = new BufferedReader(iStreamReader);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(this.socket.get().getInputStream()));
             while (true) { 
-                final String line = buffReader.readLine();
-                if (line != null) {
-                    parseCommand(line);
+                final String line = WireCodec.readLine(in);
+                if (line == null) {
+                    return;
+                }
+                if (line.equals(WireCodec.ACCEPT) && offerBinary) {
+                    this.outbound.ifPresent(OutboundWriter::upgrade);
+                    break;
+                }
+                receiveCommand(line);
+            }
+            final WireCodec.Decoder decoder = new WireCodec.Decoder();
+            while (true) {
+                final ServerCommand command = decoder.read(in);
+                if (command == null) {
+                    return;
+                }
+                if (command.getKind() == ServerCommand.Kind.TEXT) {
+                    receiveCommand(command.toRequest());
+                } else {
+                    inbound.offer(command);
                 }
             }
         } catch (IOException e) {
@@ -357,88 +724,137 @@ public class Board {
         checkRep();
         
     }
-     
+    
     /**
-     * Parses a command string and handles the corresponding response. The command
-     * string must follow the grammar which is displayed in WireProtocol.g. After
-     * parsing, the corresponding action to a command is executed.
+     * Decodes a line sent by the server and queues the command it holds, to be applied at the
+     * start of the next update. getClientBoardName is answered straight away, since the server
+     * waits for the answer before it sends anything else. The line must follow the grammar which
+     * is displayed in WireProtocol.g.
      * 
-     * @param command the text to parse and interpret as a command
-     */
-    private synchronized void parseCommand(String command) {
-        if (command.equals("getClientBoardName")) {
-            socketOutput(this.name);
-            checkRep();
+     * @param line the text to decode as a command
+     */
+    void receiveCommand(String line) {
+        if (line.equals("getClientBoardName")) {
+            /* asking for versions along with the name lets the server answer it as the board joins */
+            socketOutput(ServerCommand.text(this.name));
+            socketOutput(ServerCommand.text(Membership.request(Membership.UNKNOWN_VERSION)));
+            this.peerListener.ifPresent(listener -> socketOutput(ServerCommand.text(PeerLink.advertise(listener.getLocalPort()))));
+            if (offerBinary) {
+                socketOutput(ServerCommand.text(WireCodec.OFFER));
+            }
+            endSocketOutputFrame();
             return;
         }
-        
-        if (command.equals("disconnect")) {
-            this.socket = Optional.empty();
+        ServerCommand.parse(line, System.nanoTime()).ifPresent(inbound::offer);
+    }
+    
+    /**
+     * Queues a command that is already decoded, to be applied at the start of the next update as
+     * if the server had sent it. Like receiveCommand, this never waits for an update.
+     * 
+     * @param command the command to apply
+     */
+    void receive(ServerCommand command) {
+        inbound.offer(command);
+    }
+    
+    /**
+     * Hands every teleport from this board to router rather than to a link or the server, for a
+     * board that runs in the same process as the boards it teleports to
+     * 
+     * @param router called with each TELEPORT_PORTAL and TELEPORT_WALL command as the update that
+     *               sends it runs, while the lock of this board is held; must not block or take
+     *               the lock of another board
+     */
+    synchronized void routeTeleports(Consumer<ServerCommand> router) {
+        this.router = Optional.of(router);
+    }
+    
+    /**
+     * Applies the commands received from the server since the last update, at most
+     * MAX_COMMANDS_PER_UPDATE of them so that a burst of commands cannot stall a single step
+     */
+    private synchronized void applyReceivedCommands() {
+        for (int i = 0; i < MAX_COMMANDS_PER_UPDATE; i++) {
+            final ServerCommand command = inbound.poll();
+            if (command == null) {
+                return;
+            }
+            applyCommand(command);
         }
-        
-        final String[] commandSplit = command.split("[ ]+");
-        if (commandSplit.length == 1 || commandSplit[0].equals("failure")) {
+    }
+     
+    /**
+     * Executes the action corresponding to a command received from the server
+     * 
+     * @param command the command to apply
+     */
+    private synchronized void applyCommand(ServerCommand command) {
+        final List<String> names = command.getNames();
+        switch (command.getKind()) {
+        case DISCONNECT:
+            this.socket = Optional.empty();
+            this.outbound.ifPresent(OutboundWriter::close);
+            this.outbound = Optional.empty();
+            closePeers();
             System.out.println("There was a problem communicating with the server.");
-
-        } else if (commandSplit[1].equals("joinHorizontal=")) {
-            final int leftBoardNameIndex = 2;
-            final int rightBoardNameIndex = 3;
-            final String leftBoardName = commandSplit[leftBoardNameIndex];
-            final String rightBoardName = commandSplit[rightBoardNameIndex];
+            break;
+            
+        case FAILURE:
+            System.out.println("There was a problem communicating with the server.");
+            break;
+            
+        case JOIN_HORIZONTAL:
+        {
+            final String leftBoardName = names.get(0);
+            final String rightBoardName = names.get(1);
             if (this.name.equals(leftBoardName))
-                joinedBoards.put(Wall.LEFT, Optional.of(rightBoardName));
+                joinedBoards.put(Wall.LEFT, Optional.of(rightBoardName)).ifPresent(this::unlinkIfUnjoined);
             if (this.name.equals(rightBoardName))
-                joinedBoards.put(Wall.RIGHT, Optional.of(leftBoardName));
-
-        } else if (commandSplit[1].equals("joinVertical=")) {
-            final int topBoardNameIndex = 2;
-            final int bottomBoardNameIndex = 3;
-            final String topBoardName = commandSplit[topBoardNameIndex];
-            final String bottomBoardName = commandSplit[bottomBoardNameIndex];
+                joinedBoards.put(Wall.RIGHT, Optional.of(leftBoardName)).ifPresent(this::unlinkIfUnjoined);
+            break;
+        }
+        case JOIN_VERTICAL:
+        {
+            final String topBoardName = names.get(0);
+            final String bottomBoardName = names.get(1);
             if (this.name.equals(topBoardName)) {
-                joinedBoards.put(Wall.TOP, Optional.of(bottomBoardName));
+                joinedBoards.put(Wall.TOP, Optional.of(bottomBoardName)).ifPresent(this::unlinkIfUnjoined);
             }
             if (this.name.equals(bottomBoardName)) {
-                joinedBoards.put(Wall.BOTTOM, Optional.of(topBoardName));
+                joinedBoards.put(Wall.BOTTOM, Optional.of(topBoardName)).ifPresent(this::unlinkIfUnjoined);
             }
-        } else if (commandSplit[1].equals("disconnectWall="))  {
-            final int disconnectBoardIndex = 2;
-            final int disconnectWallIndex = 3;
-            final String disconnectBoard = commandSplit[disconnectBoardIndex];
-            final Wall disconnectWall = Wall.valueOf(commandSplit[disconnectWallIndex].toUpperCase());
-            final Wall wallToDisconnect = Board.WALL_TO_TARGET_WALL.get(disconnectWall);
+            break;
+        }
+        case DISCONNECT_WALL:
+        {
+            final String disconnectBoard = names.get(0);
+            final Wall wallToDisconnect = Board.WALL_TO_TARGET_WALL.get(command.getWall());
             if (this.joinedBoards.get(wallToDisconnect).isPresent() && 
                     this.joinedBoards.get(wallToDisconnect).get().equals(disconnectBoard)) {
                 this.joinedBoards.put(wallToDisconnect, Optional.empty());
+                unlinkIfUnjoined(disconnectBoard);
             }  
-            
-        } else if (commandSplit[1].equals("teleportPortal=")) {
-            final int ballNameIndex = 3;
-            final int velocityXIndex = 4;
-            final int velocityYIndex = 5;
-            final int portalNameIndex = 6;
-            
-            final Portal portal = getPortalByName(commandSplit[portalNameIndex]);
-            final Vect portalLocation = portal.getLocation();
-            final Vect ballVelocity = new Vect(Double.parseDouble(commandSplit[velocityXIndex]), 
-                                         Double.parseDouble(commandSplit[velocityYIndex]));
-            final Ball teleportedBall = new Ball(commandSplit[ballNameIndex], portalLocation, ballVelocity);
+            break;
+        }
+        case TELEPORT_PORTAL:
+        {
+            final Portal portal = registry.portal(names.get(2));
+            if (portal == null || registry.portal(portal.getConnectedPortal()) == null) {
+                /* a board with a different file sent it, and the ball has nowhere to come out */
+                System.out.println("There was a problem communicating with the server.");
+                break;
+            }
+            final Ball teleportedBall = new Ball(names.get(1), portal.getLocation(), command.getVelocity());
+            final int arrived = this.balls.size();
             launchBallFromPortal(teleportedBall, portal);
-              
-        } else if (commandSplit[1].equals("teleportWall=")) {
-            final int ballNameIndex = 3;
-            final int velocityXIndex = 4;
-            final int velocityYIndex = 5;
-            final int wallLocationXIndex = 6;
-            final int wallLocationYIndex = 7;
-            final int wallNameIndex = 8;
-            
-            Vect ballLocationOnWall = new Vect(Double.parseDouble(commandSplit[wallLocationXIndex]), 
-                                               Double.parseDouble(commandSplit[wallLocationYIndex]));
-            final Wall wall = Wall.valueOf(commandSplit[wallNameIndex].toUpperCase());
-            final Vect ballVelocity = new Vect(Double.parseDouble(commandSplit[velocityXIndex]), 
-                                         Double.parseDouble(commandSplit[velocityYIndex]));
-            switch (wall) {
+            catchUp(arrived, command.getStamp());
+            break;
+        }
+        case TELEPORT_WALL:
+        {
+            Vect ballLocationOnWall = command.getLocation();
+            switch (command.getWall()) {
                 case LEFT: 
                 {
                    ballLocationOnWall = new Vect(Ball.RADIUS/2, ballLocationOnWall.y());
@@ -462,61 +878,185 @@ public class Board {
                 default:
                     throw new IllegalArgumentException("This was not a valid wall as in Wall ENUM.");
             }
-            final Ball teleportedBall = new Ball(commandSplit[ballNameIndex], ballLocationOnWall, ballVelocity);
+            final Ball teleportedBall = new Ball(names.get(1), ballLocationOnWall, command.getVelocity());
+            final int arrived = this.balls.size();
             launchBallFromWall(teleportedBall);
+            catchUp(arrived, command.getStamp());
+            break;
+        }
+        case CONNECT_PORTAL:
+            this.portalConnected.put(names.get(0), true);
+            break;
             
-        } else if (commandSplit[1].equals("connectPortal=")) {
-            final int connectedPortalIndex = 2;
-            this.portalConnected.put(commandSplit[connectedPortalIndex], true);
+        case DISCONNECT_PORTAL:
+            this.portalConnected.put(names.get(0), false);
+            break;
             
-        } else if (commandSplit[1].equals("disconnectPortal=")) {
-            final int connectedPortalIndex = 2;
-            this.portalConnected.put(commandSplit[connectedPortalIndex], false);
+        case ALL_CONNECTED_BOARDS:
+            setConnectedBoards(names);
+            break;
             
-        } else if (commandSplit[1].equals("disconnectWall=")) {
-            final int boardNameIndex = 2;
-            final String boardName = commandSplit[boardNameIndex];
-            for (Wall wall : this.joinedBoards.keySet()) {
-                if (joinedBoards.get(wall).isPresent() && joinedBoards.get(wall).get().equals(boardName))
-                    joinedBoards.put(wall, Optional.empty());
-            }
+        case MEMBERSHIP:
+            this.membershipVersion = command.getVersion();
+            this.resyncRequested = false;
+            setConnectedBoards(names);
+            break;
             
-        } else if (commandSplit[1].equals("allConnectedBoards=")) {
-            final List<String> boards = Arrays.asList(commandSplit);
-            this.connectedBoards = boards.subList(2, boards.size());
-            for (Wall wall : this.joinedBoards.keySet()) {
-                if (this.joinedBoards.get(wall).isPresent() && !this.connectedBoards.contains(this.joinedBoards.get(wall).get())) {
-                    this.joinedBoards.put(wall, Optional.empty());
+        case BOARD_JOINED:
+        case BOARD_LEFT:
+            if (command.getVersion() != this.membershipVersion + 1) {
+                /* a change was missed; ask for every board again, once, and skip changes that do not follow on */
+                if (!this.resyncRequested && command.getVersion() > this.membershipVersion) {
+                    this.resyncRequested = true;
+                    socketOutput(ServerCommand.text(Membership.request(this.membershipVersion)));
                 }
+                break;
             }
+            this.membershipVersion = command.getVersion();
+            this.portalLinksChanged = true;
+            if (command.getKind() == ServerCommand.Kind.BOARD_JOINED) {
+                this.connectedBoards.add(names.get(0));
+            } else {
+                this.connectedBoards.remove(names.get(0));
+                this.offsets.forget(names.get(0));
+                for (Wall wall : this.joinedBoards.keySet()) {
+                    if (this.joinedBoards.get(wall).equals(Optional.of(names.get(0)))) {
+                        this.joinedBoards.put(wall, Optional.empty());
+                    }
+                }
+                unlinkIfUnjoined(names.get(0));
+            }
+            break;
+            
+        case PEER_AT:
+            /* only the board the server told dials, so the two never dial each other at once */
+            if (this.peerListener.isPresent() && !this.peers.containsKey(names.get(0))) {
+                startDaemon(() -> dialPeer(names.get(0), names.get(1), Integer.parseInt(names.get(2))));
+            }
+            break;
+            
+        default:
+            throw new AssertionError("Unknown command " + command.getKind());
         }
         checkRep();
     }
     
+    /**
+     * Replaces the boards connected to the server, and unjoins the walls joined to boards that are
+     * no longer connected
+     * 
+     * @param boards the names of every board connected to the server
+     */
+    private synchronized void setConnectedBoards(List<String> boards) {
+        for (String board : this.connectedBoards) {
+            if (!boards.contains(board)) {
+                this.offsets.forget(board);
+            }
+        }
+        this.connectedBoards = new LinkedHashSet<>(boards);
+        this.portalLinksChanged = true;
+        for (Wall wall : this.joinedBoards.keySet()) {
+            final Optional<String> joinedBoard = this.joinedBoards.get(wall);
+            if (joinedBoard.isPresent() && !this.connectedBoards.contains(joinedBoard.get())) {
+                this.joinedBoards.put(wall, Optional.empty());
+                unlinkIfUnjoined(joinedBoard.get());
+            }
+        }
+    }
+    
+    /**
+     * @return the statistics of the commands received from the server: how many are waiting to be
+     *         applied and how long they waited before the update that applied them
+     */
+    public QueueStats getInboundStats() {
+        return inbound.stats();
+    }
+    
+    /**
+     * @return the statistics of the messages sent to the server: how many are waiting to be
+     *         written, how many were dropped, and how long they waited to be written, or empty if
+     *         the board is not connected to a server
+     */
+    public Optional<QueueStats> getOutboundStats() {
+        return outbound.map(OutboundWriter::stats);
+    }
+    
     /**
      * Gets a portal by its name
      * 
-     * @param portalName the name of a portal
+     * @param portalName the name of a portal, must be in the board
      * @return the Portal whose name is portalName
+     * @throws IllegalArgumentException if no portal with name portalName is in this board
      */
-    private synchronized Portal getPortalByName(String portalName) {
-        return portals.stream().filter(x -> x.getName().equals(portalName)).collect(Collectors.toList()).get(0);
+    protected synchronized Portal getPortalByName(String portalName) throws IllegalArgumentException {
+        final Portal portal = registry.portal(portalName);
+        if (portal == null) {
+            throw new IllegalArgumentException("No portal with that name in the board");
+        }
+        return portal;
     }
     
     /**
-     * Sends a message to FlingballTextServer
+     * Sends a message to FlingballTextServer. The message is written together with the others sent
+     * during the same frame, once the frame ends.
      * 
-     * @param message the text to send to the server to initiate an action by the server
+     * @param message the command to send to the server to initiate an action by the server
      *                such as teleporting a ball.
      */
-    private synchronized void socketOutput(String message) {
-        try {
-            final PrintWriter out = new PrintWriter(socket.get().getOutputStream(), true);
-            out.println(message);
-            out.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }     
+    private synchronized void socketOutput(ServerCommand message) {
+        outbound.ifPresent(writer -> writer.send(message));
+    }
+    
+    /**
+     * Sends a teleport over the direct link to the board it goes to, or to FlingballTextServer to
+     * relay if there is no open link to that board. Either way it is written once the frame ends.
+     * If the board routes its teleports, the teleport is handed to the router straight away instead.
+     * 
+     * @param teleport a TELEPORT_PORTAL or TELEPORT_WALL command
+     */
+    private synchronized void teleportOutput(ServerCommand teleport) {
+        if (this.router.isPresent()) {
+            this.router.get().accept(teleport);
+            return;
+        }
+        final PeerLink link = this.peers.get(teleport.getNames().get(0));
+        if (link != null && link.isOpen()) {
+            link.send(teleport);
+        } else {
+            socketOutput(teleport);
+        }
+    }
+    
+    /**
+     * Tells FlingballTextServer that this board is leaving, closes the direct links to other boards,
+     * and waits up to a second for the message to be written. Nothing more is sent to the server
+     * afterwards.
+     * 
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void quitServer() throws InterruptedException {
+        final Optional<OutboundWriter> writer;
+        synchronized (this) {
+            writer = this.outbound;
+            socketOutput(ServerCommand.text("quit"));
+            endSocketOutputFrame();
+            writer.ifPresent(OutboundWriter::close);
+            closePeers();
+        }
+        if (writer.isPresent()) {
+            writer.get().awaitClosed(1000);
+        }
+    }
+    
+    /**
+     * Ends the frame of messages to FlingballTextServer and to the boards linked to this one, so
+     * that every message sent to each since the last frame ended is written in one go
+     */
+    private synchronized void endSocketOutputFrame() {
+        outbound.ifPresent(OutboundWriter::endFrame);
+        for (PeerLink link : this.peers.values()) {
+            link.endFrame();
+        }
     }
 
     /**
@@ -559,6 +1099,38 @@ public class Board {
         checkRep();
     }
     
+    /**
+     * Sets the engine the board uses to find and resolve collisions in updateBoard
+     * 
+     * @param engine the collision engine for the board to use
+     */
+    public synchronized void setCollisionEngine(CollisionEngine engine) {
+        this.engine = engine;
+        checkRep();
+    }
+    
+    /**
+     * @return the engine the board uses to find and resolve collisions
+     */
+    protected synchronized CollisionEngine getCollisionEngine() {
+        return engine;
+    }
+    
+    /**
+     * @return the number of times the broadphase has re-sorted the balls for a collision scan
+     */
+    synchronized long getBallPairSorts() {
+        return ballPairs.getSorts();
+    }
+    
+    /**
+     * @return the number of times the broadphase has shifted a ball one place while re-sorting
+     *         the balls for a collision scan
+     */
+    synchronized long getBallPairShifts() {
+        return ballPairs.getShifts();
+    }
+    
     /**
      * Adds a portal that connects to another portal on the this board to this board
      * 
@@ -566,9 +1138,21 @@ public class Board {
      */
     public synchronized void addLocalPortal(Portal portal) {
         localPortals.add(portal);
+        portalLinksChanged = true;
         checkRep();
     }
     
+    /**
+     * Indexes gadgets that were just added to the board by their names
+     * 
+     * @param newGadgets the gadgets added to the board
+     */
+    private synchronized void registerAll(List<? extends Gadget> newGadgets) {
+        for (Gadget gadget : newGadgets) {
+            registry.register(gadget);
+        }
+    }
+    
     /**
      * Add new Balls to this board
      * 
@@ -597,6 +1181,8 @@ public class Board {
      */
     protected synchronized void addBumper(List<Bumper> newBumpers) {
         bumpers.addAll(newBumpers);
+        registerAll(newBumpers);
+        staticGadgetsChanged = true;
         checkRep();
     }
 
@@ -607,6 +1193,8 @@ public class Board {
      */
     protected synchronized void addBumper(Bumper newBumper) {
         bumpers.add(newBumper);
+        registry.register(newBumper);
+        staticGadgetsChanged = true;
         checkRep();
     }
 
@@ -617,6 +1205,8 @@ public class Board {
      */
     protected synchronized void addAbsorber(List<Absorber> newAbsorbors) {
         absorbers.addAll(newAbsorbors);
+        registerAll(newAbsorbors);
+        staticGadgetsChanged = true;
         for(Absorber absorber:newAbsorbors)
             absorberBallNamesMap.put(absorber,new ArrayList<>());
         checkRep();
@@ -629,6 +1219,8 @@ public class Board {
      */
     protected synchronized void addAbsorber(Absorber newAbsorbor) {
         absorbers.add(newAbsorbor);
+        registry.register(newAbsorbor);
+        staticGadgetsChanged = true;
         absorberBallNamesMap.put(newAbsorbor,new ArrayList<>());
         checkRep();
     }
@@ -639,7 +1231,9 @@ public class Board {
      * @param newFlipper the singular flipper gadget to add to the flingball board
      */
     public synchronized void addFlipper(Flipper newFlipper) {
+        newFlipper.setClock(this.clock);
         flippers.add(newFlipper);
+        registry.register(newFlipper);
         checkRep();
     }
     
@@ -651,7 +1245,9 @@ public class Board {
 
     public synchronized void addFlipper(List<Flipper> newFlippers) {
         for (Flipper flipper : newFlippers) {
+            flipper.setClock(this.clock);
             flippers.add(flipper);
+            registry.register(flipper);
         }
         checkRep();
     }
@@ -663,6 +1259,8 @@ public class Board {
      */
     public synchronized void addPortal(Portal newPortal) {
         portals.add(newPortal);
+        registry.register(newPortal);
+        staticGadgetsChanged = true;
         checkRep();
     }
     
@@ -674,7 +1272,9 @@ public class Board {
     public synchronized void addPortal(List<Portal> newPortals) {
         for (Portal portal : newPortals) {
             portals.add(portal);
+            registry.register(portal);
         }
+        staticGadgetsChanged = true;
         checkRep();
     }
 
@@ -682,10 +1282,7 @@ public class Board {
      * @return the list of Balls that are currently on the Board
      */
     protected synchronized List<Ball> getBalls() {
-        final List<Ball> ballsCopy = new LinkedList<Ball>();
-        for (Ball ball : balls)
-            ballsCopy.add(ball);
-        return ballsCopy;
+        return new LinkedList<Ball>(Arrays.asList(balls.toArray()));
     }
 
     /**
@@ -759,17 +1356,41 @@ public class Board {
      * @throws IllegalArgumentException if no gadget with name name is in this board
      */
     protected synchronized Gadget getGadgetByName(String gadgetName) throws IllegalArgumentException {
-        for (Gadget gadget : getStaticGadgets()) {
-            if (gadget.getName().equals(gadgetName)) {
-                return gadget;
-            }
+        final Gadget gadget = registry.gadget(gadgetName);
+        if (gadget == null) {
+            throw new IllegalArgumentException("No gadget with that name in the board");
         }
-        for (Flipper flipper : flippers) {
-            if (flipper.getName().equals(gadgetName)) {
-                return flipper;
-            }
+        return gadget;
+    }
+    
+    /**
+     * Gets an absorber given only its name
+     * 
+     * @param absorberName the name of the absorber, must be in the board
+     * @return the absorber whose name is absorberName
+     * @throws IllegalArgumentException if no absorber with name absorberName is in this board
+     */
+    protected synchronized Absorber getAbsorberByName(String absorberName) throws IllegalArgumentException {
+        final Absorber absorber = registry.absorber(absorberName);
+        if (absorber == null) {
+            throw new IllegalArgumentException("No absorber with that name in the board");
         }
-        throw new IllegalArgumentException("No gadget with that name in the board");
+        return absorber;
+    }
+    
+    /**
+     * Gets a flipper given only its name
+     * 
+     * @param flipperName the name of the flipper, must be in the board
+     * @return the flipper whose name is flipperName
+     * @throws IllegalArgumentException if no flipper with name flipperName is in this board
+     */
+    protected synchronized Flipper getFlipperByName(String flipperName) throws IllegalArgumentException {
+        final Flipper flipper = registry.flipper(flipperName);
+        if (flipper == null) {
+            throw new IllegalArgumentException("No flipper with that name in the board");
+        }
+        return flipper;
     }
 
     /**
@@ -825,8 +1446,12 @@ public class Board {
     *         If trigger has no target Absorbers, returns an empty List.
     */
     protected synchronized List<Absorber> getAbsorberTarget(Gadget trigger) {
-        if (!triggerAbsorberMap.containsKey(trigger)) {  checkRep(); return new ArrayList<Absorber>();}
-        return triggerAbsorberMap.get(trigger);
+        final List<Absorber> targets = new ArrayList<>();
+        final int id = registry.idOf(trigger.getName());
+        for (int k = 0; id >= 0 && k < registry.absorberTargetCount(id); k++) {
+            targets.add(registry.absorberTarget(id, k));
+        }
+        return targets;
     }
     
     /**
@@ -838,99 +1463,138 @@ public class Board {
      *         If trigger has no target Flipper, returns an empty List.
      */
      protected synchronized List<Flipper> getFlipperTarget(Gadget trigger) {
-         if (!triggerFlipperMap.containsKey(trigger)) {  checkRep(); return new ArrayList<Flipper>();}
-         return triggerFlipperMap.get(trigger);
+         final List<Flipper> targets = new ArrayList<>();
+         final int id = registry.idOf(trigger.getName());
+         for (int k = 0; id >= 0 && k < registry.flipperTargetCount(id); k++) {
+             targets.add(registry.flipperTarget(id, k));
+         }
+         return targets;
      }
     
     /**
     * Sets the relationship of triggers and actions between gadgets. When a gadget
     * is triggered, an action will occur in all of its target Absorbers
     * 
-    * @param target Absorber that will performs an action when trigger is triggered
-    * @param trigger Gadget that when triggered causes a response in target
+    * @param target Absorber that will performs an action when trigger is triggered, must be in the board
+    * @param trigger Gadget that when triggered causes a response in target, must be in the board
     * @return boolean representing if the trigger-target pair were added.
+    * @throws IllegalArgumentException if target or trigger is not in this board
     */
-    protected synchronized boolean setTarget(Absorber target, Gadget trigger) {
-        if (triggerAbsorberMap.containsKey(trigger) && triggerAbsorberMap.get(trigger).contains(target)) {
-            checkRep();
-            return false;
-        }
-        if (!triggerAbsorberMap.containsKey(trigger)) {
-            triggerAbsorberMap.put(trigger, new ArrayList<>(Arrays.asList(target)));
-            checkRep();
-            return true;
-        }
-        triggerAbsorberMap.get(trigger).add(target);
+    protected synchronized boolean setTarget(Absorber target, Gadget trigger) throws IllegalArgumentException {
+        final boolean added = registry.addAbsorberTarget(registeredId(trigger), registeredId(target));
         checkRep();
-        return true;
+        return added;
     }
     
     /**
      * Sets the relationship of triggers and actions between gadgets. When a gadget
      * is triggered, an action will occur in all of its target Flippers
      * 
-     * @param target Flipper that will performs an action when trigger is triggered
-     * @param trigger Gadget that when triggered causes a response in target
+     * @param target Flipper that will performs an action when trigger is triggered, must be in the board
+     * @param trigger Gadget that when triggered causes a response in target, must be in the board
      * @return boolean representing if the trigger-target pair were added.
+     * @throws IllegalArgumentException if target or trigger is not in this board
      */
-     protected synchronized boolean setTarget(Flipper target, Gadget trigger) {
-         if (triggerFlipperMap.containsKey(trigger) && triggerFlipperMap.get(trigger).contains(target)) {
-             checkRep();
-             return false;
-         }
-         if (!triggerFlipperMap.containsKey(trigger)) {
-             triggerFlipperMap.put(trigger, new ArrayList<>(Arrays.asList(target)));
-             checkRep();
-             return true;
-         }
-         triggerFlipperMap.get(trigger).add(target);
+     protected synchronized boolean setTarget(Flipper target, Gadget trigger) throws IllegalArgumentException {
+         final boolean added = registry.addFlipperTarget(registeredId(trigger), registeredId(target));
          checkRep();
-         return true;
+         return added;
      }
+     
+    /**
+     * @param gadget a gadget
+     * @return the id registry gives gadget
+     * @throws IllegalArgumentException if gadget is not in this board
+     */
+    private synchronized int registeredId(Gadget gadget) throws IllegalArgumentException {
+        final int id = registry.idOf(gadget.getName());
+        if (id < 0 || !registry.gadget(id).equals(gadget)) {
+            throw new IllegalArgumentException("No gadget " + gadget.getName() + " in the board");
+        }
+        return id;
+    }
     
     /**
      * Moves balls forward according to a timestep (not taking into account collisions).
-     * Additionally, this functions handles the movement of flippers from one position to the next.
+     * Additionally, this functions handles the movement of flippers from one position to the next,
+     * by moving the clock they read their rotations off forward.
      * 
      * @param time the time step that helps govern the velocity of the balls on the board.
      *             requires: no collisions can occur in time < time
      */
     private synchronized void stepBoard(double time) {
-        final List<Flipper> toFlip = new ArrayList<>();
-        for (Flipper flipper : this.flippers) {
-            if (flipper.isFlipping()) {
-                toFlip.add(flipper);
-            }
-        }
-        
-        for (Flipper flipper : toFlip) {
-            handleFlipping(flipper, time);
-        }
-       final List<Ball> newBallList = new ArrayList<>();
-       for (Ball ball: this.balls) {
-           final Ball newBall = new Ball(ball.getName(), ball.getLocation()
-                   .plus(new Vect(ball.getVelocity().angle(), ball.getVelocity().length()*time)), 
-                   ball.getVelocity());
-           newBallList.add(newBall);
+       if (this.catchingUp) {
+           this.lag = Math.max(0, this.lag - time);
+       } else {
+           this.clock.advance(time);
        }
-       this.balls.clear();
-       this.balls.addAll(newBallList);
+       this.balls.step(time);
        checkRep();
     }
     
+    /**
+     * Moves the balls that just arrived forward by how late they arrived, so that a ball that took
+     * a while to get here is where it would be had it arrived straight away. They bounce off the
+     * gadgets and walls of the board, and can be absorbed or teleported on, on the way, with
+     * friction and gravity applied every TIME; the flippers stay where they are, and the balls that
+     * were already on the board are left out, as they have moved on since. Nothing is moved if the
+     * board the balls came from did not say when they left.
+     * 
+     * @param arrived the number of balls on the board before the ones that just arrived, which
+     *                were added after them
+     * @param stamp when and from where the balls left
+     */
+    private synchronized void catchUp(int arrived, Optional<TeleportStamp> stamp) {
+        if (!stamp.isPresent()) {
+            return;
+        }
+        /* every teleport is measured, even one whose ball did not make it onto the board */
+        double remaining = this.offsets.delay(stamp.get(), this.clock.now());
+        if (remaining < EPSILON_14 || this.balls.size() <= arrived) {
+            return;
+        }
+        final List<Ball> arrivedBalls = this.balls.removeFrom(arrived);
+        final List<Ball> others = this.balls.removeFrom(0);
+        this.balls.addAll(arrivedBalls);
+        this.catchingUp = true;
+        while (remaining >= EPSILON_14 && this.balls.size() > 0) {
+            final double time = Math.min(remaining, TIME);
+            this.lag = remaining;
+            updateBoardRescan(time);
+            applyFrictionGravity(time);
+            remaining -= time;
+        }
+        this.catchingUp = false;
+        this.lag = 0;
+        final List<Ball> caughtUp = this.balls.removeFrom(0);
+        this.balls.addAll(others);
+        this.balls.addAll(caughtUp);
+        checkRep();
+    }
+    
+    /**
+     * @param board the name of the board a ball is teleported to
+     * @return when the ball leaves this board, to tell board
+     */
+    private synchronized Optional<TeleportStamp> stampFor(String board) {
+        return Optional.of(new TeleportStamp(this.name, this.clock.now() - this.lag, this.offsets.echo(board)));
+    }
+    
     /**
      * Handles the collisions and subsequent reflections of two balls 
      * 
-     * @param ball1 the first ball that collides with the second
-     * @param ball2 the second ball that collides with the first
+     * @param index1 the position in the ball list of the first ball that collides with the second
+     * @param index2 the position in the ball list of the second ball that collides with the first
      */
-    private synchronized void resolveCollisionBall(Ball ball1, Ball ball2) {
+    private synchronized void resolveCollisionBall(int index1, int index2) {
+        final Ball ball1 = this.balls.get(index1);
+        final Ball ball2 = this.balls.get(index2);
         final Physics.VectPair velocities = Physics.reflectBalls
                 (ball1.getLocation(), 1, ball1.getVelocity(), ball2.getLocation(), 1, ball2.getVelocity());
         final Ball newBall1 = new Ball(ball1.getName(), ball1.getLocation(), velocities.v1);
         final Ball newBall2 = new Ball(ball2.getName(), ball2.getLocation(), velocities.v2);
-        this.balls.remove(ball1);
-        this.balls.remove(ball2);
+        this.balls.remove(Math.max(index1, index2));
+        this.balls.remove(Math.min(index1, index2));
         this.balls.add(newBall1);
         this.balls.add(newBall2);
         checkRep();   
@@ -941,11 +1605,12 @@ public class Board {
      * reflect off the bumper at certain angle and with a certain velocity
      * determined by the bumper reflection coefficient.
      * 
-     * @param ball the ball that is colliding with bumper
+     * @param index the position in the ball list of the ball that is colliding with bumper
      * @param bumper the bumper that is receiving the ball hitting it
      */
-    private synchronized  void resolveCollisionBumper(Ball ball, Bumper bumper) {
-       this.balls.remove(ball);
+    private synchronized  void resolveCollisionBumper(int index, Bumper bumper) {
+       final Ball ball = this.balls.get(index);
+       this.balls.remove(index);
        final Ball reflectedBall = bumper.getCollisionRedirection(ball);
        this.balls.add(reflectedBall);
        checkRep();   
@@ -955,13 +1620,13 @@ public class Board {
      * Handles the collision of a ball with an absorber, i.e. the ball gets absorbed
      * and subsequently removed from the board
      * 
-     * @param ball the ball that is colliding with the absorber
+     * @param index the position in the ball list of the ball that is colliding with the absorber
      * @param absorber the absorber that the ball will collide with. This absorber
      *                 will absorb the ball that hits it.
      */
-    private synchronized void resolveCollisionAbsorber(Ball ball, Absorber absorber) {
-        this.balls.remove(ball);
-        this.absorberBallNamesMap.get(absorber).add(ball.getName());
+    private synchronized void resolveCollisionAbsorber(int index, Absorber absorber) {
+        this.absorberBallNamesMap.get(absorber).add(this.balls.get(index).getName());
+        this.balls.remove(index);
         checkRep();   
     }
     
@@ -971,25 +1636,20 @@ public class Board {
      * has an invalid connection or isn't connected to anything, the ball will just pass
      * over the portal.
      * 
-     * @param ball the ball that is colliding with the portal
-     * @param portal the portal that the ball will collide with. This portal
-     *               will teleport the ball that hits it if correctly connected.
-     */
-    private synchronized void resolveCollisionPortal(Ball ball, Portal portal) {
-        this.balls.remove(ball);
-        if (localPortals.contains(portal)) {
+     * @param ballIndex the position in the ball list of the ball that is colliding with the portal
+     * @param index the index in portalArray of the portal that the ball will collide with. This
+     *              portal will teleport the ball that hits it if correctly connected.
+     */
+    private synchronized void resolveCollisionPortal(int ballIndex, int index) {
+        final Portal portal = portalArray[index];
+        final Ball ball = this.balls.get(ballIndex);
+        this.balls.remove(ballIndex);
+        if (localPortalMask[index]) {
             launchBallFromPortal(ball, portal);
         } else {
-            final StringBuilder request = new StringBuilder();
-            request.append("teleportPortal= ");
-            if (portal.getConnectedBoard().isPresent())
-                request.append(portal.getConnectedBoard().get() + " ");
-            else
-                request.append(this.getName() + " ");
-            request.append(ball.getName() + " ");
-            request.append(ball.getVelocity().x() + " " + ball.getVelocity().y() + " ");
-            request.append(portal.getConnectedPortal());
-            socketOutput(request.toString());
+            final String targetBoard = portal.getConnectedBoard().orElse(this.getName());
+            teleportOutput(ServerCommand.teleportPortal(targetBoard, ball.getName(), ball.getVelocity(),
+                    portal.getConnectedPortal(), stampFor(targetBoard), System.nanoTime()));
         }
         checkRep();
     }
@@ -999,21 +1659,17 @@ public class Board {
      * reflect off the bumper at certain angle and with a certain velocity
      * determined by the bumper reflection coefficient.
      * 
-     * @param ball the ball that is colliding with the wall
+     * @param index the position in the ball list of the ball that is colliding with the wall
      * @param line the LineSegment that is a board wall that a ball is about to hit
      */
-    private synchronized void resolveCollisionWall(Ball ball, LineSegment line) { 
-        this.balls.remove(ball);
-        final Wall wallHit = LINE_SEGMENT_TO_WALL.get(line);
+    private synchronized void resolveCollisionWall(int index, LineSegment line) { 
+        final Ball ball = this.balls.get(index);
+        this.balls.remove(index);
+        final Wall wallHit = wallOf(line);
         if (this.joinedBoards.get(wallHit).isPresent()) {
-            final StringBuilder request = new StringBuilder();
-            request.append("teleportWall= ");
-            request.append(this.joinedBoards.get(wallHit).get() + " ");
-            request.append(ball.getName() + " ");
-            request.append(ball.getVelocity().x() + " " + ball.getVelocity().y() + " ");
-            request.append(ball.getLocation().x() + " " + ball.getLocation().y() + " ");
-            request.append(WALL_TO_TARGET_WALL.get(wallHit));
-            socketOutput(request.toString());
+            final String targetBoard = this.joinedBoards.get(wallHit).get();
+            teleportOutput(ServerCommand.teleportWall(targetBoard, ball.getName(), ball.getVelocity(),
+                    ball.getLocation(), WALL_TO_TARGET_WALL.get(wallHit), stampFor(targetBoard), System.nanoTime()));
         } else {
             this.balls.add(new Ball(ball.getName(), ball.getLocation(), 
                     Physics.reflectWall(line, ball.getVelocity()))); 
@@ -1021,6 +1677,91 @@ public class Board {
         checkRep();
     }
     
+    /**
+     * Rebuilds the broadphase for a collision scan. Static gadgets are only inserted into the
+     * gadget tree when they were added since the last scan, balls are always re-swept and re-sorted
+     * by their swept boxes. The broadphase indexes the balls by their positions in the ball list.
+     * 
+     * @param givenTime the "foresight" time of the scan
+     * @return the number of balls on the board
+     */
+    private synchronized int prepareBroadphase(double givenTime) {
+        refreshStaticGadgets();
+        this.gadgetTree.sweepBalls(this.balls, givenTime);
+        this.ballPairs.update(this.balls, givenTime);
+        if (this.ballCandidates.length < this.balls.size()) {
+            this.ballCandidates = new int[this.balls.size()];
+        }
+        return this.balls.size();
+    }
+    
+    /**
+     * Inserts the newly added static gadgets into the gadget tree and recompiles the geometry if
+     * one was added since the last scan, and works out again which portals can teleport balls if
+     * a portal was added or the boards connected to the server changed
+     */
+    private synchronized void refreshStaticGadgets() {
+        if (staticGadgetsChanged) {
+            this.bumperArray = this.bumpers.toArray(new Bumper[0]);
+            this.absorberArray = this.absorbers.toArray(new Absorber[0]);
+            this.portalArray = this.portals.toArray(new Portal[0]);
+            this.gadgetTree.insertStaticGadgets(bumperArray, absorberArray, portalArray);
+            this.gadgetCandidates = new int[Math.max(bumperArray.length, 
+                    Math.max(absorberArray.length, portalArray.length))];
+            this.geometry = new StaticGeometry(bumperArray, absorberArray, portalArray);
+            this.ownerCandidates = new int[bumperArray.length + absorberArray.length + portalArray.length];
+            staticGadgetsChanged = false;
+            portalLinksChanged = true;
+        }
+        if (portalLinksChanged) {
+            final Set<String> boards = this.connectedBoards;
+            final Set<Portal> local = new HashSet<>(this.localPortals);
+            final boolean[] localMask = new boolean[portalArray.length];
+            final boolean[] activeMask = new boolean[portalArray.length];
+            for (int i = 0; i < portalArray.length; i++) {
+                final Optional<String> connectedBoard = portalArray[i].getConnectedBoard();
+                localMask[i] = local.contains(portalArray[i]);
+                activeMask[i] = localMask[i] || (connectedBoard.isPresent() && boards.contains(connectedBoard.get()));
+            }
+            this.localPortalMask = localMask;
+            this.activePortalMask = activeMask;
+            portalLinksChanged = false;
+        }
+    }
+    
+    /**
+     * Determines whether a portal currently takes part in collisions with a ball. Portals whose
+     * connection cannot be made are passed over by balls.
+     * 
+     * @param index the index of a portal in portalArray
+     * @param ball the position of a ball in the ball list
+     * @return true if the ball can collide with the portal, else false
+     */
+    private synchronized boolean isPortalActive(int index, int ball) {
+        return activePortalMask[index] || portalArray[index].isContained(this.balls.x(ball), this.balls.y(ball));
+    }
+    
+    /**
+     * @param line a wall of this board
+     * @param ball the position of a ball in the ball list
+     * @return the time until the ball collides with line, as Physics.timeUntilWallCollision returns it
+     */
+    private synchronized double timeUntilWallCollision(LineSegment line, int ball) {
+        return StaticGeometry.timeUntilWall(line, this.balls.x(ball), this.balls.y(ball), 
+                this.balls.vx(ball), this.balls.vy(ball));
+    }
+    
+    /**
+     * @param flipper a flipper of this board
+     * @param ball the position of a ball in the ball list
+     * @param delta the "foresight" time
+     * @return the time until the ball collides with flipper, as flipper.getTimeTillCollision returns it
+     */
+    private synchronized double timeTillFlipperCollision(Flipper flipper, int ball, double delta) {
+        return flipper.getTimeTillCollision(this.balls.x(ball), this.balls.y(ball), 
+                this.balls.vx(ball), this.balls.vy(ball), delta);
+    }
+    
     /**
      * Calculates the time until a collision will happen on the board
      * 
@@ -1030,37 +1771,37 @@ public class Board {
      */
     private synchronized double timeTillNextCollision(double givenTime) {
         double minTimeTillCollision = Double.POSITIVE_INFINITY;
-        for(Ball ball : this.balls) {
-            for (Ball ball2 : this.balls) {
+        final int ballTotal = prepareBroadphase(givenTime);
+        for (int i = 0; i < ballTotal; i++) {
+            final int ballCount = ballPairs.candidates(i, ballCandidates);
+            for (int k = 0; k < ballCount; k++) {
                 minTimeTillCollision = Math.min(minTimeTillCollision, 
-                        ball2.getTimeTillCollision(ball, givenTime));
+                        balls.timeTillCollision(ballCandidates[k], i, givenTime));
             }
-            for (Bumper bumper: this.bumpers) {
-                minTimeTillCollision = Math.min(minTimeTillCollision, 
-                        bumper.getTimeTillCollision(ball, givenTime));
+            int ownerCount = 0;
+            final int bumperCount = gadgetTree.bumperCandidates(i, gadgetCandidates);
+            for (int k = 0; k < bumperCount; k++) {
+                ownerCandidates[ownerCount++] = geometry.bumperOwner(gadgetCandidates[k]);
             }
-            for (Absorber absorber: this.absorbers) {
-                minTimeTillCollision = Math.min(minTimeTillCollision, 
-                        absorber.getTimeTillCollision(ball, givenTime));
+            final int absorberCount = gadgetTree.absorberCandidates(i, gadgetCandidates);
+            for (int k = 0; k < absorberCount; k++) {
+                ownerCandidates[ownerCount++] = geometry.absorberOwner(gadgetCandidates[k]);
             }
+            final int portalCount = gadgetTree.portalCandidates(i, gadgetCandidates);
+            for (int k = 0; k < portalCount; k++) {
+                if (isPortalActive(gadgetCandidates[k], i)) {
+                    ownerCandidates[ownerCount++] = geometry.portalOwner(gadgetCandidates[k]);
+                }
+            }
+            minTimeTillCollision = Math.min(minTimeTillCollision, 
+                    geometry.nearestHit(balls, i, givenTime, ownerCandidates, ownerCount));
             for (LineSegment line : this.walls) {
-                minTimeTillCollision = Math.min(minTimeTillCollision, 
-                        Physics.timeUntilWallCollision(line, ball.getCircle(), ball.getVelocity()));
+                minTimeTillCollision = Math.min(minTimeTillCollision, timeUntilWallCollision(line, i));
             }
             for (Flipper flipper : this.flippers) {
                 minTimeTillCollision = Math.min(minTimeTillCollision, 
-                        flipper.getTimeTillCollision(ball, givenTime));
-            }
-            for (Portal portal : this.portals) {
-                if (!(portal.getConnectedBoard().isPresent() && 
-                        connectedBoards.contains(portal.getConnectedBoard().get())) && 
-                        !(this.localPortals.contains(portal)) && !(portal.isContained(ball))){
-                    continue;
-                }
-                minTimeTillCollision = Math.min(minTimeTillCollision, 
-                        portal.getTimeTillCollision(ball, givenTime));  
+                        timeTillFlipperCollision(flipper, i, givenTime));
             }
-       
         }
         checkRep();
         return minTimeTillCollision;     
@@ -1073,22 +1814,76 @@ public class Board {
      * @param delta the elapsed time between board updates
      */
     public synchronized void applyFrictionGravity(double delta) {
-        final List<Ball> newBalls = new ArrayList<>();
-        for(Ball ball: this.balls) {
-            newBalls.add(ball.updateVelocity(delta, this.gravity, this.friction1, this.friction2));
-        }
-        this.balls.clear();
-        this.balls.addAll(newBalls);
+        this.balls.applyFrictionGravity(delta, this.gravity, this.friction1, this.friction2);
         checkRep();
     }
     
     /**
-     * Updates this board to the next frame
+     * Updates this board to the next frame, after applying the commands received from the server
+     * since the last update
      * 
      * @param givenTime the "foresight" time, i.e. the amount of time which
      *                  the function looks forward in order to detect collisions
      */
     protected synchronized void updateBoard(double givenTime) {
+        applyReceivedCommands();
+        if (engine == CollisionEngine.EVENT_QUEUE) {
+            updateBoardEventDriven(givenTime);
+        } else {
+            updateBoardRescan(givenTime);
+        }
+        endSocketOutputFrame();
+        publishFrame();
+    }
+    
+    /**
+     * Takes a snapshot of everything that gets drawn each frame and publishes it for painting
+     */
+    private synchronized void publishFrame() {
+        final double[] ballX = new double[balls.size()];
+        final double[] ballY = new double[balls.size()];
+        int visible = 0;
+        ballLoop:
+        for (int i = 0; i < balls.size(); i++) {
+            for (Absorber absorber : this.absorbers) {
+                if (absorber.isContained(balls.x(i), balls.y(i))) {
+                    continue ballLoop;
+                }
+            }
+            ballX[visible] = balls.x(i);
+            ballY[visible] = balls.y(i);
+            visible++;
+        }
+        final LineSegment[] flipperLines = new LineSegment[flippers.size()];
+        int next = 0;
+        for (Flipper flipper : this.flippers) {
+            flipperLines[next++] = flipper.getLine();
+        }
+        final Map<Wall, String> banners = new HashMap<>();
+        for (Wall wall : this.joinedBoards.keySet()) {
+            if (this.joinedBoards.get(wall).isPresent()) {
+                banners.put(wall, this.joinedBoards.get(wall).get());
+            }
+        }
+        this.frame = new FrameSnapshot(clock.now(), Arrays.copyOf(ballX, visible), Arrays.copyOf(ballY, visible),
+                flipperLines, banners);
+    }
+    
+    /**
+     * @return the balls, flippers and join banners of the board as of its last update
+     */
+    FrameSnapshot getFrame() {
+        return frame;
+    }
+    
+    /**
+     * Updates this board to the next frame, finding the next collision again by checking
+     * every ball against everything on the board after each collision is resolved
+     * 
+     * @param givenTime the "foresight" time, i.e. the amount of time which
+     *                  the function looks forward in order to detect collisions
+     */
+    private synchronized void updateBoardRescan(double givenTime) {
         double timeTillNextCollision;
         mainLoop:
         while (givenTime >= EPSILON_14) {
@@ -1105,19 +1900,23 @@ public class Board {
             }
             this.stepBoard(timeTillNextCollision);
            
-            /*To make sure you don't change the list while iterating over it */
-            for (Ball ball: new ArrayList<>(this.balls) ) {
-                for (Ball ball1: this.balls) {
-                    if(ball1.getTimeTillCollision(ball, givenTime) <= EPSILON_14) {
-                        resolveCollisionBall(ball, ball1);   
+            /* The broadphase indexes the list as it is now, so the scan starts over after resolving */
+            final int ballTotal = prepareBroadphase(givenTime);
+            for (int i = 0; i < ballTotal; i++) {
+                final int ballCount = ballPairs.candidates(i, ballCandidates);
+                for (int k = 0; k < ballCount; k++) {
+                    if(balls.timeTillCollision(ballCandidates[k], i, givenTime) <= EPSILON_14) {
+                        resolveCollisionBall(i, ballCandidates[k]);   
                         givenTime = givenTime - timeTillNextCollision;
                         continue mainLoop;
                     }
                 }
                   
-                for (Bumper bumper : this.bumpers) {
-                    if(bumper.getTimeTillCollision(ball, givenTime) <= EPSILON_14) {
-                        resolveCollisionBumper(ball, bumper);
+                final int bumperCount = gadgetTree.bumperCandidates(i, gadgetCandidates);
+                for (int k = 0; k < bumperCount; k++) {
+                    final Bumper bumper = bumperArray[gadgetCandidates[k]];
+                    if(geometry.timeTillCollision(geometry.bumperOwner(gadgetCandidates[k]), balls, i, givenTime) <= EPSILON_14) {
+                        resolveCollisionBumper(i, bumper);
                         updateActionedAbsorbers(bumper);
                         updateActionedFlippers(bumper, givenTime);
                         givenTime = givenTime - timeTillNextCollision;
@@ -1126,20 +1925,22 @@ public class Board {
                 }
 
                 for (LineSegment line : this.walls) {
-                    if (Physics.timeUntilWallCollision(line, ball.getCircle(), ball.getVelocity()) <= EPSILON_14){
-                        resolveCollisionWall(ball, line);
+                    if (timeUntilWallCollision(line, i) <= EPSILON_14){
+                        resolveCollisionWall(i, line);
                         givenTime = givenTime - timeTillNextCollision;
                         continue mainLoop;
                     }
                 }
 
                 
-                for (Absorber absorber: this.absorbers) {
-                    if (absorber.getTimeTillCollision(ball, givenTime) <= EPSILON_14) {
-                        if (absorber.isContained(ball)) {
+                final int absorberCount = gadgetTree.absorberCandidates(i, gadgetCandidates);
+                for (int k = 0; k < absorberCount; k++) {
+                    final Absorber absorber = absorberArray[gadgetCandidates[k]];
+                    if (geometry.timeTillCollision(geometry.absorberOwner(gadgetCandidates[k]), balls, i, givenTime) <= EPSILON_14) {
+                        if (absorber.isContained(balls.x(i), balls.y(i))) {
                             continue mainLoop;
                         }
-                        resolveCollisionAbsorber(ball, absorber);
+                        resolveCollisionAbsorber(i, absorber);
                         updateActionedAbsorbers(absorber);
                         updateActionedFlippers(absorber, givenTime);
                         givenTime = givenTime - timeTillNextCollision;
@@ -1150,31 +1951,26 @@ public class Board {
                 /* Needs to be checked last because minTimeTillCollision will return 0 even when there
                  * is no collision because minTimeTillCollision doesn't take into account that the
                  * portal isn't connected. */
-                for (Portal portal: this.portals) {
-                    if (!(portal.getConnectedBoard().isPresent() && 
-                            connectedBoards.contains(portal.getConnectedBoard().get())) && 
-                            !(this.localPortals.contains(portal)) && !(portal.isContained(ball))){
+                final int portalCount = gadgetTree.portalCandidates(i, gadgetCandidates);
+                for (int k = 0; k < portalCount; k++) {
+                    final Portal portal = portalArray[gadgetCandidates[k]];
+                    if (!isPortalActive(gadgetCandidates[k], i)) {
                         continue;
                     }
-                    if (portal.getTimeTillCollision(ball, givenTime) <= EPSILON_14) {
-                        if (portal.isContained(ball)) {
+                    if (geometry.timeTillCollision(geometry.portalOwner(gadgetCandidates[k]), balls, i, givenTime) <= EPSILON_14) {
+                        if (portal.isContained(balls.x(i), balls.y(i))) {
                             continue mainLoop;
                         }
-                        if (this.localPortals.contains(portal)) {
-                            resolveCollisionPortal(ball, portal); 
-                        }
-                        else if ((portal.getConnectedBoard().isPresent() && 
-                                connectedBoards.contains(portal.getConnectedBoard().get()))){
-                            resolveCollisionPortal(ball, portal);
-                        }
+                        /* a portal a ball is not inside is only active if it is local or connected */
+                        resolveCollisionPortal(i, gadgetCandidates[k]);
                         givenTime = givenTime - timeTillNextCollision;
                         continue mainLoop;
                     }
                 }
                 
                 for (Flipper flipper : this.flippers) {
-                    if(flipper.getTimeTillCollision(ball, givenTime) <= EPSILON_14) {
-                        resolveCollisionBumper(ball, flipper);
+                    if(timeTillFlipperCollision(flipper, i, givenTime) <= EPSILON_14) {
+                        resolveCollisionBumper(i, flipper);
                         updateActionedAbsorbers(flipper);
                         updateActionedFlippers(flipper, givenTime);
                         givenTime = givenTime - timeTillNextCollision;
@@ -1187,6 +1983,234 @@ public class Board {
         checkRep();
     }
 
+    /**
+     * Updates this board to the next frame with the event-driven engine. The collisions of
+     * every ball within givenTime are predicted once and kept in time order. After a collision
+     * is resolved only the balls it touched are predicted again, and predictions made for balls
+     * that have since changed are discarded as they come up. Everything is predicted again only
+     * when a flipper starts or stops flipping.
+     * 
+     * @param givenTime the "foresight" time, i.e. the amount of time which
+     *                  the function looks forward in order to detect collisions
+     */
+    private synchronized void updateBoardEventDriven(double givenTime) {
+        refreshStaticGadgets();
+        final Flipper[] flipperArray = this.flippers.toArray(new Flipper[0]);
+        scheduler.startFrame(this.balls);
+        predictAllCollisions(flipperArray, 0, givenTime);
+        
+        double now = 0;
+        /* the rescanning engine pushes a triggered flip by the time left from its previous collision */
+        double resolvedAt = 0;
+        for (CollisionEvent event = scheduler.nextEvent(); event != null && event.getTime() < givenTime;
+                event = scheduler.nextEvent()) {
+            if (event.getTime() > now) {
+                stepBoard(event.getTime() - now);
+                now = event.getTime();
+            }
+            if (event.getTarget() == CollisionEvent.Target.FLIP_END) {
+                scheduler.clearEvents();
+                predictAllCollisions(flipperArray, now, givenTime);
+                continue;
+            }
+            
+            final int position = scheduler.positionOf(event.getBall());
+            final double timeTillCollision = 
+                    timeTillCollision(position, event.getTarget(), event.getIndex(), flipperArray, givenTime - now);
+            if (timeTillCollision > EPSILON_14) {
+                /* the balls were moved up to the prediction but are not quite touching yet */
+                schedulePrediction(now, timeTillCollision, givenTime - now, event.getBall(), 
+                        event.getTarget(), event.getIndex());
+                continue;
+            }
+            
+            final boolean flippersTriggered = 
+                    resolveScheduledCollision(position, event, flipperArray, givenTime - resolvedAt);
+            resolvedAt = now;
+            final int[] touched = scheduler.reconcile(this.balls);
+            if (flippersTriggered) {
+                scheduler.clearEvents();
+                predictAllCollisions(flipperArray, now, givenTime);
+            } else {
+                for (int newPosition : touched) {
+                    predictCollisions(newPosition, false, flipperArray, now, givenTime);
+                }
+            }
+        }
+        if (now < givenTime) {
+            stepBoard(givenTime - now);
+        }
+        checkRep();
+    }
+    
+    /**
+     * Predicts the collisions of every ball on the board and when every flipping flipper stops
+     * 
+     * @param flipperArray the flippers on the board
+     * @param now the time into the frame to predict from
+     * @param givenTime the length of the frame
+     */
+    private synchronized void predictAllCollisions(Flipper[] flipperArray, double now, double givenTime) {
+        for (int position = 0; position < this.balls.size(); position++) {
+            predictCollisions(position, true, flipperArray, now, givenTime);
+        }
+        for (int i = 0; i < flipperArray.length; i++) {
+            final double timeTillFlipEnds = flipperArray[i].getTimeTillFlipEnds();
+            if (now + timeTillFlipEnds < givenTime) {
+                scheduler.schedule(now + Math.max(timeTillFlipEnds, EPSILON_14), -1, CollisionEvent.Target.FLIP_END, i);
+            }
+        }
+    }
+    
+    /**
+     * Predicts the collisions of one ball with the other balls, gadgets and walls of the board
+     * 
+     * @param position the position of the ball in the ball list
+     * @param laterBallsOnly true to only predict collisions with balls after position in the list,
+     *                       so that predicting every ball schedules each pair of balls once
+     * @param flipperArray the flippers on the board
+     * @param now the time into the frame to predict from
+     * @param givenTime the length of the frame
+     */
+    private synchronized void predictCollisions(int position, boolean laterBallsOnly,
+            Flipper[] flipperArray, double now, double givenTime) {
+        final int slot = scheduler.slotAt(position);
+        final double horizon = givenTime - now;
+        for (int other = laterBallsOnly ? position + 1 : 0; other < this.balls.size(); other++) {
+            if (other != position) {
+                schedulePrediction(now, this.balls.timeTillCollision(other, position, horizon), horizon, slot, 
+                        CollisionEvent.Target.BALL, scheduler.slotAt(other));
+            }
+        }
+        final int bumperCount = gadgetTree.bumperCandidates(this.balls, position, horizon, gadgetCandidates);
+        for (int k = 0; k < bumperCount; k++) {
+            schedulePrediction(now, timeTillCollision(position, CollisionEvent.Target.BUMPER, gadgetCandidates[k], 
+                    flipperArray, horizon), horizon, 
+                    slot, CollisionEvent.Target.BUMPER, gadgetCandidates[k]);
+        }
+        final int absorberCount = gadgetTree.absorberCandidates(this.balls, position, horizon, gadgetCandidates);
+        for (int k = 0; k < absorberCount; k++) {
+            schedulePrediction(now, timeTillCollision(position, CollisionEvent.Target.ABSORBER, gadgetCandidates[k], 
+                    flipperArray, horizon), horizon, 
+                    slot, CollisionEvent.Target.ABSORBER, gadgetCandidates[k]);
+        }
+        final int portalCount = gadgetTree.portalCandidates(this.balls, position, horizon, gadgetCandidates);
+        for (int k = 0; k < portalCount; k++) {
+            schedulePrediction(now, timeTillCollision(position, CollisionEvent.Target.PORTAL, gadgetCandidates[k], 
+                    flipperArray, horizon), horizon, slot, CollisionEvent.Target.PORTAL, gadgetCandidates[k]);
+        }
+        for (int i = 0; i < this.walls.size(); i++) {
+            schedulePrediction(now, timeTillCollision(position, CollisionEvent.Target.WALL, i, flipperArray, horizon), 
+                    horizon, slot, CollisionEvent.Target.WALL, i);
+        }
+        for (int i = 0; i < flipperArray.length; i++) {
+            schedulePrediction(now, timeTillFlipperCollision(flipperArray[i], position, horizon), horizon, 
+                    slot, CollisionEvent.Target.FLIPPER, i);
+        }
+    }
+    
+    /**
+     * Schedules a predicted collision if it happens before the end of the frame
+     * 
+     * @param now the time into the frame the prediction was made at
+     * @param timeTillCollision the predicted time from now until the collision
+     * @param horizon the time left in the frame
+     * @param slot the slot of the colliding ball
+     * @param target the kind of thing the ball collides with
+     * @param index the slot of the other ball, or the index of the gadget or wall
+     */
+    private synchronized void schedulePrediction(double now, double timeTillCollision, double horizon, int slot, 
+            CollisionEvent.Target target, int index) {
+        if (timeTillCollision < horizon) {
+            scheduler.schedule(now + Math.max(timeTillCollision, 0), slot, target, index);
+        }
+    }
+    
+    /**
+     * Calculates the time until a ball collides with one target, the same way the rescanning
+     * engine does
+     * 
+     * @param ball the position of a ball in the ball list
+     * @param target the kind of thing to collide with
+     * @param index the slot of the other ball, or the index of the gadget or wall
+     * @param flipperArray the flippers on the board
+     * @param horizon the "foresight" time
+     * @return the time until the ball collides with the target, or positive infinity if it does
+     *         not within the foresight time
+     */
+    private synchronized double timeTillCollision(int ball, CollisionEvent.Target target, int index, 
+            Flipper[] flipperArray, double horizon) {
+        switch (target) {
+        case BALL:
+            return this.balls.timeTillCollision(scheduler.positionOf(index), ball, horizon);
+        case BUMPER:
+            return geometry.timeTillCollision(geometry.bumperOwner(index), this.balls, ball, horizon);
+        case ABSORBER:
+            return geometry.timeTillCollision(geometry.absorberOwner(index), this.balls, ball, horizon);
+        case PORTAL:
+            return isPortalActive(index, ball) ? 
+                    geometry.timeTillCollision(geometry.portalOwner(index), this.balls, ball, horizon) : Double.POSITIVE_INFINITY;
+        case WALL:
+            return timeUntilWallCollision(this.walls.get(index), ball);
+        case FLIPPER:
+            return timeTillFlipperCollision(flipperArray[index], ball, horizon);
+        default:
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+    
+    /**
+     * Resolves a scheduled collision that is happening now, the same way the rescanning engine does
+     * 
+     * @param ball the position of the colliding ball in the ball list
+     * @param event the collision to resolve
+     * @param flipperArray the flippers on the board
+     * @param remainingTime the time to push the flips of triggered flippers by: the time that was
+     *                      left in the frame when the collision before this one was resolved, which
+     *                      is what the rescanning engine had left when it found this collision
+     * @return true if the collision triggered any flippers, else false
+     */
+    private synchronized boolean resolveScheduledCollision(int ball, CollisionEvent event, 
+            Flipper[] flipperArray, double remainingTime) {
+        final Gadget trigger;
+        switch (event.getTarget()) {
+        case BALL:
+            /* resolve the pair in list order, as the rescanning engine does */
+            final int other = scheduler.positionOf(event.getIndex());
+            if (other < ball) {
+                resolveCollisionBall(other, ball);
+            } else {
+                resolveCollisionBall(ball, other);
+            }
+            return false;
+        case WALL:
+            resolveCollisionWall(ball, this.walls.get(event.getIndex()));
+            return false;
+        case PORTAL:
+            resolveCollisionPortal(ball, event.getIndex());
+            return false;
+        case BUMPER:
+            trigger = bumperArray[event.getIndex()];
+            resolveCollisionBumper(ball, (Bumper) trigger);
+            break;
+        case ABSORBER:
+            trigger = absorberArray[event.getIndex()];
+            resolveCollisionAbsorber(ball, (Absorber) trigger);
+            break;
+        case FLIPPER:
+            trigger = flipperArray[event.getIndex()];
+            resolveCollisionBumper(ball, (Flipper) trigger);
+            break;
+        default:
+            return false;
+        }
+        final int triggerId = registry.idOf(trigger.getName());
+        final boolean flippersTriggered = triggerId >= 0 && registry.flipperTargetCount(triggerId) > 0;
+        updateActionedAbsorbers(trigger);
+        updateActionedFlippers(trigger, remainingTime);
+        return flippersTriggered;
+    }
+    
     /**
      * For the given Gadgets, updates all of their target Absorbers (if any).
      * Adds the balls shot by the Absorbers to newBalls. Creates new Absorbers 
@@ -1195,34 +2219,23 @@ public class Board {
      * @param gadget the gadget which may or may not trigger absorbers to perform an action 
      */
     private synchronized void updateActionedAbsorbers(Gadget gadget) {
-        final List<Absorber> targets = getAbsorberTarget(gadget);
-        for(Absorber target: targets) {
-            if(absorberBallNamesMap.get(target).size()>0) {
-                final String ballName = absorberBallNamesMap.get(target).get(0);
-                absorberBallNamesMap.get(target).remove(0);
-                this.balls.add(target.action(ballName));
-                
-            }
+        final int trigger = registry.idOf(gadget.getName());
+        for (int k = 0; trigger >= 0 && k < registry.absorberTargetCount(trigger); k++) {
+            launchBall(registry.absorberTarget(trigger, k));
         }
         checkRep();
     }
     
     /**
      * For the given Gadget, updates all of its target Flippers (if any).
-     * Adds the new flipper returned by the Flipper to  the board and removes
-     * the old one from the board.
      * 
      * @param gadget the gadget which may or may not trigger flippers to perform an action
      * @param time the time step to simulate passing
      */
     private synchronized void updateActionedFlippers(Gadget gadget, double time) {
-        final List<Flipper> toFlip = new ArrayList<>();
-        final List<Flipper> targets = getFlipperTarget(gadget);
-        for(Flipper target: targets) {
-            toFlip.add(target);
-        }
-        for (Flipper flipper : toFlip) {
-            handleFlipping(flipper, time);
+        final int trigger = registry.idOf(gadget.getName());
+        for (int k = 0; trigger >= 0 && k < registry.flipperTargetCount(trigger); k++) {
+            handleFlipping(registry.flipperTarget(trigger, k), time);
         }
         checkRep();
     }
@@ -1233,13 +2246,14 @@ public class Board {
      *
      * @param ball the ball to send from the center of the portal. ball's velocity
      *             is preserved when fired from the portal
-     * @param portal the portal to send the ball through on this board
+     * @param portal the portal to send the ball through on this board; if the portal it is
+     *               connected to is not on this board, the ball disappears from game play
      */
     private synchronized void launchBallFromPortal(Ball ball, Portal portal) {
-        final Portal targetPortal = this.portals.stream()
-                .filter(x -> x.getName().equals(
-                        portal.getConnectedPortal())).collect(Collectors.toList()).get(0);
-        this.balls.add(targetPortal.release(ball));
+        final Portal targetPortal = registry.portal(portal.getConnectedPortal());
+        if (targetPortal != null) {
+            this.balls.add(targetPortal.release(ball));
+        }
         checkRep();
     }
     
@@ -1256,8 +2270,7 @@ public class Board {
      *             needed as a parameter.
      */
     private synchronized void launchBallFromWall(Ball ball) {
-        for (Ball ball2 : this.balls) 
-            if (ball2.rejects(ball)) { return; }
+        if (this.balls.rejects(ball)) { return; }
         for (Bumper bumper: this.bumpers) 
             if (bumper.rejects(ball)) { return; }      
         for (Flipper flipper : this.flippers) 
@@ -1289,22 +2302,10 @@ public class Board {
      * 
      * @param flipper a flipper to trigger the flipping action of
      * @param time the time step from update board dictating how
-     *             much time to simulate passing between the creation
-     *             of the new Flipper
+     *             much time to simulate passing in the flip right away
      */
     private synchronized void handleFlipping(Flipper flipper, double time) {
-        final Flipper newFlipper = flipper.flip(time);
-        
-        flippers.remove(flipper);
-        flippers.add(newFlipper);
-        
-        for (Gadget g : triggerFlipperMap.keySet()) {
-            if (triggerFlipperMap.get(g).contains(flipper)) {
-                triggerFlipperMap.get(g).remove(flipper);
-                triggerFlipperMap.get(g).add(newFlipper);
-            }
-        }
-        
+        flipper.flip(time);
         checkRep();
     }
     
@@ -1328,17 +2329,13 @@ public class Board {
      * @param gadget the name of a gadget to trigger
      */
     public synchronized void triggerGadgetByName(String gadget) {
-        final List<Absorber> absorbersList = absorbers.stream()
-                .filter(x -> x.getName().equals(gadget)).collect(Collectors.toList());
-        final List<Flipper> flippersList = flippers.stream()
-                .filter(x -> x.getName().equals(gadget)).collect(Collectors.toList());
-        if (!absorbersList.isEmpty()) {
-            launchBall(absorbersList.get(0));
-        } else if (!flippersList.isEmpty()) {
-            handleFlipping(flippersList.get(0), EPSILON_16);
+        final Gadget triggered = registry.gadget(gadget);
+        if (triggered instanceof Absorber) {
+            launchBall((Absorber) triggered);
+        } else if (triggered instanceof Flipper) {
+            handleFlipping((Flipper) triggered, EPSILON_16);
         }
         checkRep();
-        
     }
     
     /**
@@ -1362,42 +2359,14 @@ public class Board {
     
     /**
      * Draws a banner that is the name of the board that this board's wall
-     * is connected to. 
+     * is connected to, as of the last update of the board. 
      * 
      * @param graphics the graphics on which the board is drawn and which the joined boards'
      *                 names will be drawn on
      */
-    public synchronized void drawJoinBanner(Graphics graphics) {
-        graphics.setColor(Color.BLACK);
-        final int centeringOffset = 170;
-        final int offset = 12;
-        final int topYOffset = 13;
-        final int bottomYOffset = 395;
-        final int leftXOffset = 3;
-        final int rightXOffset = 390;
-        
-        for (Wall wall : this.joinedBoards.keySet()) {
-            if (!this.joinedBoards.get(wall).isPresent()) 
-                continue;
-            
-            final String connectedBoardName = this.joinedBoards.get(wall).get();
-            final char[] boardNameChars = connectedBoardName.toCharArray();
-            int nextCharOffset = 0;
-            for (char c : boardNameChars) {
-                if (wall == Wall.TOP) {
-                    graphics.drawChars(new char[]{c}, 0, 1, centeringOffset + nextCharOffset, topYOffset);
-                } else if (wall == Wall.BOTTOM) {
-                    graphics.drawChars(new char[]{c}, 0, 1, centeringOffset + nextCharOffset, bottomYOffset);
-                } else if (wall == Wall.LEFT) {
-                    graphics.drawChars(new char[]{c}, 0, 1, leftXOffset, centeringOffset + nextCharOffset);
-                } else if (wall == Wall.RIGHT) {
-                    graphics.drawChars(new char[]{c}, 0, 1, rightXOffset, centeringOffset + nextCharOffset);
-                }
-                nextCharOffset += offset;
-            }
-        }
+    public void drawJoinBanner(Graphics graphics) {
+        this.frame.drawJoinBanners(graphics);
         graphics.setColor(this.color);
-        checkRep();
     }
 
     /**
@@ -1425,33 +2394,22 @@ public class Board {
     }
     
     /**
-     * Draws balls on a board. Doesn't draw balls that are contained in an absorber.
+     * Draws balls on a board, as of the last update of the board. Doesn't draw balls that
+     * are contained in an absorber.
      * 
      * @param graphics a Graphics object that represents the board to draw balls on
      */
-    public synchronized void drawBalls(Graphics graphics) {
-        ballLoop:
-        for (Ball ball : balls) {
-            for (Absorber absorber : this.absorbers) {
-                if (absorber.isContained(ball)) {
-                    continue ballLoop;
-                }    
-            }
-
-            ball.draw(graphics);
-        }
-        checkRep();
+    public void drawBalls(Graphics graphics) {
+        this.frame.drawBalls(graphics);
     }
     
     /**
-     * Draw the flippers on a board
+     * Draw the flippers on a board, as of the last update of the board
      * 
      * @param graphics a Graphics object that represents the board to draw flippers on
      */
-    public synchronized void drawFlippers(Graphics graphics) {
-        for (Flipper flipper : flippers)
-            flipper.draw(graphics);
-        checkRep();
+    public void drawFlippers(Graphics graphics) {
+        this.frame.drawFlippers(graphics);
     }
 
     @Override 
@@ -1462,7 +2420,7 @@ public class Board {
         sb.append("--| Friction1: " + friction1 + "\n");
         sb.append("--| Friction2: " + friction2 + "\n");
         sb.append("--| Balls:\n");
-        for (Ball ball : balls) { sb.append("-----| " + ball.toString()); }
+        for (Ball ball : balls.toArray()) { sb.append("-----| " + ball.toString()); }
         sb.append("--| Bumpers:\n");
         for (Bumper bumper : bumpers) { sb.append("-----| " + bumper.toString()); }
         sb.append("--| Absorbers:\n");
@@ -44,10 +44,10 @@ public class BoardParser {
     }
 
     private static final Parser<FlingballGrammar> PARSER = makeParser();
-    private static final List<Gadget> GADGETS = new ArrayList<>();
-    private static final List<Absorber> ABSORBERS = new ArrayList<>();
-    private static final List<Flipper> FLIPPERS = new ArrayList<>();
-    private static final List<String> PROTO_TRIGGERS = new ArrayList<>();
+    private final List<Gadget> gadgets = new ArrayList<>();
+    private final List<Absorber> absorbers = new ArrayList<>();
+    private final List<Flipper> flippers = new ArrayList<>();
+    private final List<String> protoTriggers = new ArrayList<>();
     
     private static final double ANGULAR_VELOCITY_DEGREES = 1080;
     private static final double HALF_CIRCLE = 180;
@@ -74,7 +74,16 @@ public class BoardParser {
     // Safety from Representation Exposure
     //  --| all fields are private, final and are never returned to the client
     // Thread Safety Argument
-    //  --| The instances created of BoardParser are completely confined to themselves
+    //  --| parser is immutable and threadsafe, and is the only state shared between parses
+    //  --| gadgets, absorbers, flippers and protoTriggers belong to the instance made for one call
+    //      of parse, which is confined to the thread that calls it, so boards can be parsed on
+    //      many threads at once without a lock
+    
+    /**
+     * Make a parser for one board file; only parse makes them
+     */
+    private BoardParser() {
+    }
     
     /**
      * Compile the grammar into a parser
@@ -106,11 +115,12 @@ public class BoardParser {
         try {
             scan = new Scanner(file);
             scan.useDelimiter("\\r?\\n");
+            final BoardParser state = new BoardParser();
             Board board = new Board("default");    
 
             while (scan.hasNext()) {
                 final ParseTree<FlingballGrammar> parseTree = PARSER.parse(scan.next());
-                board = makeAbstractSyntaxTree(parseTree, board);
+                board = state.makeAbstractSyntaxTree(parseTree, board);
             }
             scan.close();
             return board;
@@ -139,7 +149,7 @@ public class BoardParser {
      * @param board the board being constructed
      * @return Board board created by parseTree
      */
-    private static Board makeAbstractSyntaxTree(final ParseTree<FlingballGrammar> parseTree, Board board) {
+    private Board makeAbstractSyntaxTree(final ParseTree<FlingballGrammar> parseTree, Board board) {
         switch (parseTree.name()) {
         case ITEM: // (board|comment|bumper|absorber|fire|ball)?
         {
@@ -160,7 +170,7 @@ public class BoardParser {
             switch (bumperName) {
             case "squareBumper": {
                 final SquareBumper squareBumper = new SquareBumper(name,new Vect(x,y));
-                GADGETS.add(squareBumper);
+                gadgets.add(squareBumper);
                 board.addBumper(squareBumper);
                 break;
             }
@@ -186,13 +196,13 @@ public class BoardParser {
                 }
                 
                 final TriangleBumper triangleBumper = new TriangleBumper(name,new Vect(x,y),orientation);
-                GADGETS.add(triangleBumper);
+                gadgets.add(triangleBumper);
                 board.addBumper(triangleBumper);
                 break;
             }
             case "circleBumper": {
                 final CircleBumper circleBumper = new CircleBumper(name, new Vect(x,y));
-                GADGETS.add(circleBumper);
+                gadgets.add(circleBumper);
                 board.addBumper(circleBumper);
                 break;
             }
@@ -238,8 +248,8 @@ public class BoardParser {
             final Integer width = Integer.parseInt(findValue(children.get(PARSE_TREE_FOURTH_ELEM)));
             final Integer height = Integer.parseInt(findValue(children.get(PARSE_TREE_FIFTH_ELEM)));
             final Absorber absorber = new Absorber(name,new Vect(x,y), new Vect(width,height));
-            GADGETS.add(absorber);
-            ABSORBERS.add(absorber);
+            gadgets.add(absorber);
+            absorbers.add(absorber);
             board.addAbsorber(absorber);
             break;
         }
@@ -268,17 +278,17 @@ public class BoardParser {
             try {
                 actionGadget = board.getGadgetByName(actionName);
                 trigger = board.getGadgetByName(triggerName);
-                if (ABSORBERS.contains(actionGadget)) {
+                if (absorbers.contains(actionGadget)) {
                     final Absorber action = (Absorber) actionGadget;
                     board.setTarget(action, trigger);
                 }
-                else if (FLIPPERS.contains(actionGadget)) {
+                else if (flippers.contains(actionGadget)) {
                     final Flipper action = (Flipper) actionGadget;
                     board.setTarget(action, trigger);
                 }
             }
             catch (IllegalArgumentException e) {
-                PROTO_TRIGGERS.add(triggerName + " " + actionName);
+                protoTriggers.add(triggerName + " " + actionName);
             }
             
             break;
@@ -315,16 +325,16 @@ public class BoardParser {
             case ("leftFlipper"):
             {
                 final Flipper leftFlipper = new Flipper(false, name, new Vect(x, y), orientation, new Angle(0), false, ANGULAR_VELOCITY);
-                GADGETS.add(leftFlipper);
-                FLIPPERS.add(leftFlipper);
+                gadgets.add(leftFlipper);
+                flippers.add(leftFlipper);
                 board.addFlipper(leftFlipper);
                 break;
             }
             case ("rightFlipper"):
             {
                 final Flipper rightFlipper = new Flipper(true, name, new Vect(x, y), orientation, new Angle(0), false, -ANGULAR_VELOCITY);
-                GADGETS.add(rightFlipper);
-                FLIPPERS.add(rightFlipper);
+                gadgets.add(rightFlipper);
+                flippers.add(rightFlipper);
                 board.addFlipper(rightFlipper);
                 break;
             }
@@ -349,7 +359,7 @@ public class BoardParser {
                 otherPortal = findValue(children.get(PARSE_TREE_FIFTH_ELEM));
             }
             final Portal portal = new Portal(name, new Vect(x, y), otherBoard, otherPortal);
-            GADGETS.add(portal);
+            gadgets.add(portal);
             board.addPortal(portal);
             if ((otherBoard.isPresent() && otherBoard.get().equals(board.getName())) || !otherBoard.isPresent()) {
                 board.addLocalPortal(portal);
@@ -374,14 +384,14 @@ public class BoardParser {
         default:
             throw new AssertionError("Abstract Syntax Tree shouldn't be called on: " + parseTree.name());
         }
-        for (String triggerString : PROTO_TRIGGERS) {
+        for (String triggerString : protoTriggers) {
             final String[] splitString = triggerString.split("\\s+");
             final String triggerName = splitString[0];
             final String actionName = splitString[1];
             try {
                 final Gadget triggerGadget = board.getGadgetByName(triggerName);
                 final Gadget actionGadget = board.getGadgetByName(actionName);
-                if (ABSORBERS.contains(actionGadget)) {
+                if (absorbers.contains(actionGadget)) {
                     board.setTarget((Absorber) actionGadget, triggerGadget);
                 }
                 else {
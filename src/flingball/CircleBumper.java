@@ -2,15 +2,19 @@ package flingball;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import physics.Circle;
+import physics.LineSegment;
 import physics.Physics;
 import physics.Vect;
 
 /**
  * An immutable, threadsafe circle bumper in the Flingball game, an implementation of the Bumper interface
  */
-public class CircleBumper implements Bumper {
+public class CircleBumper implements Bumper, StaticGadget {
 
     private final String name;
     private final Vect location;
@@ -72,6 +76,11 @@ public class CircleBumper implements Bumper {
         return location;
     }
 
+    @Override
+    public Vect getSize() {
+        return new Vect(DIAMETER, DIAMETER);
+    }
+
     @Override 
     public String getName() {
         return name;
@@ -82,6 +91,16 @@ public class CircleBumper implements Bumper {
         return COLOR;
     }
 
+    @Override
+    public List<LineSegment> getLineSegments() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public List<Circle> getCircles() {
+        return new ArrayList<>(Arrays.asList(circle));
+    }
+
     @Override 
     public Ball getCollisionRedirection(Ball ball) {
         if (Physics.timeUntilCircleCollision(circle, ball.getCircle(), ball.getVelocity()) < Board.TIME) {
@@ -0,0 +1,123 @@
+package flingball;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimates how long the teleports a board receives took to arrive, in the simulated time of the
+ * board, from the stamps on them. The clocks of two boards start when the boards do, so the
+ * difference between the time a teleport was sent on one clock and received on the other is the
+ * offset between the clocks plus the delay. Each board keeps the least difference it saw among
+ * the last WINDOW teleports from every other board: that least one went through with no queueing,
+ * so it is the offset plus the shortest delay, and the window lets the estimate follow clocks that
+ * drift apart when a board falls behind.
+ *
+ * A board also stamps the teleports it sends with the least difference it saw from the board they
+ * go to. With both directions known the offset is half their difference, as in NTP, assuming the
+ * shortest delay is the same both ways, and the shortest delay itself is compensated too. With
+ * only one direction, the shortest delay is taken to be 0, so only the delay on top of it is.
+ *
+ * Mutable, not threadsafe
+ */
+class ClockOffsets {
+
+    /**
+     * The number of the latest teleports from a board whose least difference is kept
+     */
+    static final int WINDOW = 32;
+
+    /**
+     * The longest delay that is compensated, in seconds; a ball later than this arrives as if it
+     * was this late, so that a bad estimate never throws a ball far into a board
+     */
+    static final double MAX_DELAY = 0.25;
+
+    private final Map<String, Window> windows = new HashMap<>();
+
+    // Abstraction Function:
+    //  AF(windows) = the differences between the clock of the board teleports came from and the
+    //          clock of this board for the latest WINDOW teleports from each board, in
+    //          windows.get(board), along with what that board last said it saw the other way
+    // Representation Invariant:
+    //  --| every window is for the board it is keyed by
+    // Safety from Representation Exposure:
+    //  --| windows is private and never handed out, and only doubles are returned
+    // Thread Safety Argument:
+    //  --| not threadsafe, confined to the Board that owns it and only used under its lock
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert windows != null;
+    }
+
+    /**
+     * Records a teleport and works out how long it took
+     *
+     * @param stamp the stamp the teleport came with
+     * @param now the simulated time of this board as the teleport is applied, in seconds
+     * @return how long ago the ball left the board it came from, in seconds of this board's clock,
+     *         from 0 to MAX_DELAY
+     */
+    double delay(TeleportStamp stamp, double now) {
+        final Window window = windows.computeIfAbsent(stamp.getFrom(), board -> new Window());
+        final double delta = now - stamp.getSentTime();
+        window.add(delta, stamp.getEchoedDelta());
+        final double least = window.least();
+        final double offset = Double.isNaN(window.echoedDelta) ? least : (least - window.echoedDelta) / 2;
+        checkRep();
+        return Math.max(0, Math.min(MAX_DELAY, delta - offset));
+    }
+
+    /**
+     * @param board the name of a board
+     * @return the least difference between the clock of board sending a teleport and this board
+     *         receiving it among the latest ones, to stamp teleports to board with, or NaN if none
+     *         came from board
+     */
+    double echo(String board) {
+        final Window window = windows.get(board);
+        return window == null ? Double.NaN : window.least();
+    }
+
+    /**
+     * Forgets a board, whose clock starts again if it comes back
+     *
+     * @param board the name of a board that left
+     */
+    void forget(String board) {
+        windows.remove(board);
+    }
+
+    /**
+     * The latest differences from one board
+     */
+    private static class Window {
+        private final double[] deltas = new double[WINDOW];
+        private int count = 0;
+        private double echoedDelta = Double.NaN;
+
+        /**
+         * Adds a difference, replacing the oldest once the window is full, and the latest echo if known
+         */
+        private void add(double delta, double echo) {
+            deltas[count % WINDOW] = delta;
+            count++;
+            if (!Double.isNaN(echo)) {
+                echoedDelta = echo;
+            }
+        }
+
+        /**
+         * @return the least difference in the window, which has at least one
+         */
+        private double least() {
+            double least = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < Math.min(count, WINDOW); i++) {
+                least = Math.min(least, deltas[i]);
+            }
+            return least;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package flingball;
+
+/**
+ * An immutable, threadsafe datatype that is the enumeration of the engines a board can use to
+ * find and resolve the collisions that happen during a frame.
+ *  RESCAN      - after every resolved collision, the time until the next collision is found again
+ *                by checking every ball against every ball and gadget on the board.
+ *  EVENT_QUEUE - the collisions of every ball are predicted once per frame and kept in a priority
+ *                queue. After a collision is resolved only the balls it touched are predicted
+ *                again, and predictions made before a ball changed are discarded.
+ */
+public enum CollisionEngine {
+        RESCAN,
+        EVENT_QUEUE
+}
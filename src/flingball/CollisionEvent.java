@@ -0,0 +1,129 @@
+package flingball;
+
+/**
+ * An immutable, threadsafe predicted collision between a ball and a target on a board, as
+ * scheduled by the event-driven collision engine.
+ */
+class CollisionEvent implements Comparable<CollisionEvent> {
+
+    /**
+     * The kinds of things a ball can be predicted to collide with. FLIP_END is not a collision
+     * but the moment a flipping flipper stops, after which predictions against it are invalid.
+     */
+    enum Target {
+        BALL,
+        BUMPER,
+        ABSORBER,
+        WALL,
+        PORTAL,
+        FLIPPER,
+        FLIP_END
+    }
+
+    private final double time;
+    private final long sequence;
+    private final int ball;
+    private final int ballVersion;
+    private final Target target;
+    private final int index;
+    private final int targetVersion;
+
+    // Abstraction Function:
+    //  AF(time, sequence, ball, ballVersion, target, index, targetVersion) = A prediction that the
+    //          ball in slot ball collides with the target'th kind of thing numbered index, time
+    //          seconds into the frame. For a BALL target, index is the slot of the other ball. The
+    //          prediction only holds while the ball in slot ball is still at version ballVersion
+    //          (and, for a BALL target, the other ball is at targetVersion). sequence orders events
+    //          that are predicted for the same time by the order they were scheduled.
+    // Representation Invariant:
+    //  --| time >= 0
+    //  --| target is not null
+    // Safety from Representation Exposure:
+    //  --| all fields are private and final and are primitives or immutable
+    // Thread Safety Argument:
+    //  --| this class satisfies the strongest definition of immutability
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert time >= 0;
+        assert target != null;
+    }
+
+    /**
+     * Creates a predicted collision
+     * 
+     * @param time the time into the frame at which the collision happens, must be >= 0
+     * @param sequence the order in which this event was scheduled
+     * @param ball the slot of the colliding ball, or -1 for a FLIP_END event
+     * @param ballVersion the version of the colliding ball when the prediction was made
+     * @param target the kind of thing the ball collides with
+     * @param index the slot of the other ball, or the index of the gadget or wall
+     * @param targetVersion the version of the other ball when the prediction was made,
+     *                      ignored unless target is BALL
+     */
+    CollisionEvent(double time, long sequence, int ball, int ballVersion, Target target, int index, int targetVersion) {
+        this.time = time;
+        this.sequence = sequence;
+        this.ball = ball;
+        this.ballVersion = ballVersion;
+        this.target = target;
+        this.index = index;
+        this.targetVersion = targetVersion;
+        checkRep();
+    }
+
+    /**
+     * @return the time into the frame at which the collision happens
+     */
+    double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the slot of the colliding ball
+     */
+    int getBall() {
+        return ball;
+    }
+
+    /**
+     * @return the version of the colliding ball when the prediction was made
+     */
+    int getBallVersion() {
+        return ballVersion;
+    }
+
+    /**
+     * @return the kind of thing the ball collides with
+     */
+    Target getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the slot of the other ball, or the index of the gadget or wall collided with
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the version of the other ball when the prediction was made
+     */
+    int getTargetVersion() {
+        return targetVersion;
+    }
+
+    @Override
+    public int compareTo(CollisionEvent that) {
+        final int byTime = Double.compare(this.time, that.time);
+        return byTime != 0 ? byTime : Long.compare(this.sequence, that.sequence);
+    }
+
+    @Override
+    public String toString() {
+        return "Collision @ " + time + ": ball slot " + ball + " with " + target + " " + index + "\n";
+    }
+}
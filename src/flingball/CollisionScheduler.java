@@ -0,0 +1,203 @@
+package flingball;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * The mutable event queue of the event-driven collision engine. It holds the predicted
+ * collisions of a frame in time order and keeps a version stamp for every ball, so that
+ * predictions made for a ball before it changed are discarded lazily when they come up.
+ *
+ * Balls are identified by slots that stay the same while the board moves its balls forward.
+ * Whenever a ball is replaced by a new Ball (it bounced, was absorbed, teleported or launched)
+ * the old slot is retired by bumping its version and the new Ball gets a fresh slot. The balls
+ * are told apart by their serial numbers in the board's BallStore, which a ball keeps while it
+ * moves and which increase along the store.
+ */
+class CollisionScheduler {
+
+    private final PriorityQueue<CollisionEvent> queue = new PriorityQueue<>();
+    private int[] versions = new int[0];
+    private int[] slotOfPosition = new int[0];
+    private long[] serialOfPosition = new long[0];
+    private int[] positionOfSlot = new int[0];
+    private int slotCount = 0;
+    private long sequence = 0;
+
+    // Abstraction Function:
+    //  AF(queue, versions, slotOfPosition, serialOfPosition, positionOfSlot, slotCount, sequence) =
+    //          The predicted collisions of the current frame, earliest first, for slotCount ball
+    //          slots. The ball at position p of the board's ball list has serial serialOfPosition[p]
+    //          and occupies slot slotOfPosition[p], and the ball in slot s is at position
+    //          positionOfSlot[s], or -1 if slot s was retired. versions[s] is the version of slot s,
+    //          so an event for slot s holds only if it was made at version versions[s]. sequence is
+    //          the number of events scheduled so far.
+    // Representation Invariant:
+    //  --| slotOfPosition and positionOfSlot are inverses over the live slots
+    //  --| slotOfPosition and serialOfPosition have the same length
+    //  --| serialOfPosition is strictly increasing
+    //  --| slotCount <= versions.length and slotCount <= positionOfSlot.length
+    // Safety from Representation Exposure:
+    //  --| all fields are private and no array is ever returned
+    // Thread Safety Argument:
+    //  --| not threadsafe, confined to the Board that owns it and only used under its lock
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert slotCount <= versions.length;
+        assert slotCount <= positionOfSlot.length;
+        assert slotOfPosition.length == serialOfPosition.length;
+        for (int position = 0; position < slotOfPosition.length; position++) {
+            assert positionOfSlot[slotOfPosition[position]] == position;
+            assert position == 0 || serialOfPosition[position - 1] < serialOfPosition[position];
+        }
+    }
+
+    /**
+     * Starts a new frame: drops every event and gives the balls fresh slots in list order
+     *
+     * @param balls the balls on the board
+     */
+    void startFrame(BallStore balls) {
+        queue.clear();
+        slotCount = 0;
+        slotOfPosition = new int[balls.size()];
+        serialOfPosition = new long[balls.size()];
+        for (int position = 0; position < balls.size(); position++) {
+            slotOfPosition[position] = newSlot(position);
+            serialOfPosition[position] = balls.serial(position);
+        }
+        checkRep();
+    }
+
+    /**
+     * Drops every scheduled event, for when a change to the board invalidates all predictions
+     */
+    void clearEvents() {
+        queue.clear();
+    }
+
+    /**
+     * @param position a position in the board's ball list
+     * @return the slot of the ball at that position
+     */
+    int slotAt(int position) {
+        return slotOfPosition[position];
+    }
+
+    /**
+     * @param slot a ball slot
+     * @return the position of the ball in that slot in the board's ball list, or -1 if retired
+     */
+    int positionOf(int slot) {
+        return positionOfSlot[slot];
+    }
+
+    /**
+     * @param slot a ball slot
+     * @return the current version of that slot
+     */
+    int versionOf(int slot) {
+        return versions[slot];
+    }
+
+    /**
+     * Schedules a predicted collision between a ball and a target
+     *
+     * @param time the time into the frame at which the collision happens
+     * @param slot the slot of the colliding ball, or -1 for a FLIP_END event
+     * @param target the kind of thing the ball collides with
+     * @param index the slot of the other ball, or the index of the gadget or wall
+     */
+    void schedule(double time, int slot, CollisionEvent.Target target, int index) {
+        final int ballVersion = slot < 0 ? 0 : versions[slot];
+        final int targetVersion = target == CollisionEvent.Target.BALL ? versions[index] : 0;
+        queue.add(new CollisionEvent(time, sequence++, slot, ballVersion, target, index, targetVersion));
+    }
+
+    /**
+     * Removes and returns the earliest event whose predictions still hold, discarding any stale
+     * events in front of it
+     *
+     * @return the earliest valid event, or null if none is left
+     */
+    CollisionEvent nextEvent() {
+        while (!queue.isEmpty()) {
+            final CollisionEvent event = queue.poll();
+            if (isCurrent(event)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param event a scheduled event
+     * @return true if neither ball the event was predicted for has changed since, else false
+     */
+    private boolean isCurrent(CollisionEvent event) {
+        if (event.getBall() >= 0 && versions[event.getBall()] != event.getBallVersion()) {
+            return false;
+        }
+        return event.getTarget() != CollisionEvent.Target.BALL
+                || versions[event.getIndex()] == event.getTargetVersion();
+    }
+
+    /**
+     * Matches the balls on the board after a collision was resolved against the balls before it.
+     * Balls that are gone or were replaced have their slots retired, and the balls that are new
+     * get fresh slots. Resolving a collision only removes balls and adds new ones at the end, so
+     * the balls that were kept are found by walking both lists in order of serial.
+     *
+     * @param balls the balls on the board after the collision was resolved
+     * @return the positions in balls of the balls that are new and need predicting, in order
+     */
+    int[] reconcile(BallStore balls) {
+        final int[] oldSlots = slotOfPosition;
+        final long[] oldSerials = serialOfPosition;
+        slotOfPosition = new int[balls.size()];
+        serialOfPosition = new long[balls.size()];
+        int[] newPositions = new int[balls.size()];
+        int newCount = 0;
+        int before = 0;
+        for (int position = 0; position < balls.size(); position++) {
+            final long serial = balls.serial(position);
+            for (; before < oldSerials.length && oldSerials[before] < serial; before++) {
+                versions[oldSlots[before]]++;
+                positionOfSlot[oldSlots[before]] = -1;
+            }
+            serialOfPosition[position] = serial;
+            if (before < oldSerials.length && oldSerials[before] == serial) {
+                slotOfPosition[position] = oldSlots[before];
+                positionOfSlot[oldSlots[before]] = position;
+                before++;
+            } else {
+                slotOfPosition[position] = newSlot(position);
+                newPositions[newCount++] = position;
+            }
+        }
+        for (; before < oldSerials.length; before++) {
+            versions[oldSlots[before]]++;
+            positionOfSlot[oldSlots[before]] = -1;
+        }
+        newPositions = Arrays.copyOf(newPositions, newCount);
+        checkRep();
+        return newPositions;
+    }
+
+    /**
+     * Allocates a fresh slot for the ball at a position
+     */
+    private int newSlot(int position) {
+        if (slotCount == versions.length) {
+            final int capacity = Math.max(2 * slotCount, 16);
+            versions = Arrays.copyOf(versions, capacity);
+            positionOfSlot = Arrays.copyOf(positionOfSlot, capacity);
+        }
+        versions[slotCount]++;
+        positionOfSlot[slotCount] = position;
+        return slotCount++;
+    }
+}
@@ -0,0 +1,76 @@
+package flingball;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The commands a board has received from the server but not yet applied. The thread reading the
+ * socket offers each command as soon as it is decoded, without taking the board's lock, and the
+ * thread running the physics polls them at the start of each update. Any number of threads may
+ * offer; the queue is lock-free, so a slow physics step never holds up reading the socket.
+ */
+class CommandQueue {
+
+    private final ConcurrentLinkedQueue<ServerCommand> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dequeued = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    // Abstraction Function:
+    //  AF(commands, depth, maxDepth, enqueued, dequeued, latencyNanos, maxLatencyNanos) =
+    //          The commands waiting to be applied in the order they were received, of which there
+    //          were at most maxDepth at once; enqueued commands have been offered and dequeued
+    //          polled, after waiting latencyNanos in total and at most maxLatencyNanos each
+    // Representation Invariant:
+    //  --| depth == enqueued - dequeued == commands.size() whenever no offer or poll is in progress
+    //  --| every counter >= 0
+    // Safety from Representation Exposure:
+    //  --| all fields are private and final, commands are immutable, and the statistics are handed
+    //      out as an immutable QueueStats
+    // Thread Safety Argument:
+    //  --| commands is a ConcurrentLinkedQueue and the counters are atomic; a reader of the
+    //      statistics may see an offer or poll half recorded, which only skews the numbers by one
+
+    /**
+     * Adds a command to the back of the queue
+     *
+     * @param command the command to add
+     */
+    void offer(ServerCommand command) {
+        commands.offer(command);
+        enqueued.incrementAndGet();
+        maxDepth.accumulateAndGet(depth.incrementAndGet(), Math::max);
+    }
+
+    /**
+     * Takes the command at the front of the queue
+     *
+     * @return the command that has waited longest, or null if the queue is empty
+     */
+    ServerCommand poll() {
+        final ServerCommand command = commands.poll();
+        if (command != null) {
+            final long latency = System.nanoTime() - command.getReceivedNanos();
+            depth.decrementAndGet();
+            latencyNanos.addAndGet(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            dequeued.incrementAndGet();
+        }
+        return command;
+    }
+
+    /**
+     * @return the statistics of the queue since it was made
+     */
+    QueueStats stats() {
+        /* the maximum latency is read before its total, which poll adds to first, so it never exceeds it */
+        final long maxLatency = maxLatencyNanos.get();
+        final int currentDepth = Math.max(0, depth.get());
+        return new QueueStats(enqueued.get(), dequeued.get(), 0, currentDepth,
+                Math.max(currentDepth, maxDepth.get()), latencyNanos.get(), maxLatency);
+    }
+}
@@ -0,0 +1,515 @@
+package flingball;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Carries the teleports of a board's direct links as UDP datagrams, so that a lost packet only
+ * delays the teleport it held rather than every teleport behind it on a TCP stream. Joins,
+ * disconnects and everything else stay on TCP.
+ *
+ * Each PeerLink that uses datagrams opens a Session with a random id, and the two ends tell each
+ * other the port of their socket and the id of their session over the TCP link. Every packet is
+ * addressed to the id of the session that receives it:
+ *  DATA - the byte 1, the id, a sequence number counting up from 0 per session, and a teleport as
+ *         WireCodec.writeTeleport writes it
+ *  ACK  - the byte 2, the id, and the sequence number of a DATA packet received
+ * A DATA packet is sent again until it is acked, after a timeout worked out from the round trip
+ * times measured so far and doubled on every attempt. The receiving session remembers the
+ * sequence numbers it has seen and acks duplicates without delivering them again, so every
+ * teleport arrives exactly once, in whatever order the packets do. Teleports do not depend on each
+ * other, so they are delivered as soon as they arrive.
+ *
+ * A session that is closed stops taking teleports but keeps sending the ones not yet acked, and
+ * keeps receiving, until everything it sent has been acked and LINGER_NANOS have passed; only a
+ * board that stops answering for good can lose a teleport, as it would over TCP.
+ *
+ * Packets are sent by a thread of the transport and read by another, so a board never waits on
+ * the socket while it holds its lock.
+ */
+class DatagramTransport {
+
+    private static final int DATA = 1;
+    private static final int ACK = 2;
+    private static final int MAX_PACKET = 1024;
+    private static final long MIN_RETRANSMIT_NANOS = 2_000_000L;
+    private static final long INITIAL_RETRANSMIT_NANOS = 20_000_000L;
+    private static final long MAX_RETRANSMIT_NANOS = 1_000_000_000L;
+    private static final long LINGER_NANOS = 10_000_000_000L;
+
+    private final DatagramSocket socket;
+    private final Consumer<ServerCommand> received;
+    private final Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+    private final Random ids = new Random();
+    private final Thread sender;
+    private final Thread receiver;
+    private volatile boolean open = true;
+    private boolean wake = false;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retransmitted = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    // Abstraction Function:
+    //  AF(socket, received, sessions, ids, sender, receiver, open, wake, sent, retransmitted, delivered,
+    //     duplicates) =
+    //          The datagram transport of a board through socket while open, with the sessions
+    //          sessions.get(id) by id, sent and retried by sender and read by receiver, which hands
+    //          every teleport it receives for the first time to received. The sender has more to
+    //          send if wake. So far sent DATA packets were sent, retransmitted of them again, and
+    //          delivered teleports were received, plus duplicates that already had been.
+    // Representation Invariant:
+    //  --| every key of sessions is the id of the session it maps to
+    //  --| every counter >= 0
+    // Safety from Representation Exposure:
+    //  --| all fields are private and final but open and wake, sessions are only handed to the
+    //      PeerLink that opens them, and the statistics are handed out as longs
+    // Thread Safety Argument:
+    //  --| sessions is a ConcurrentHashMap, and each Session guards its own state with its lock
+    //  --| wake is guarded by this transport's lock, which is never held while taking another
+    //  --| open is volatile, and the counters are atomic
+    //  --| socket is only sent to by sender and the acks of receiver, which DatagramSocket allows
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert socket != null && received != null;
+        for (Map.Entry<Integer, Session> session : sessions.entrySet()) {
+            assert session.getKey() == session.getValue().localId;
+        }
+    }
+
+    /**
+     * Makes a transport and starts its threads
+     *
+     * @param socket the socket to send and receive the datagrams through, owned by the transport from now on
+     * @param received told every teleport received for the first time, on the thread reading the socket
+     */
+    DatagramTransport(DatagramSocket socket, Consumer<ServerCommand> received) {
+        this.socket = socket;
+        this.received = received;
+        this.sender = new Thread(this::sendLoop, "flingball-datagram-sender");
+        this.receiver = new Thread(this::receiveLoop, "flingball-datagram-receiver");
+        this.sender.setDaemon(true);
+        this.receiver.setDaemon(true);
+        this.sender.start();
+        this.receiver.start();
+        checkRep();
+    }
+
+    /**
+     * @return the port the socket of this transport is bound to
+     */
+    int port() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Opens a session for a new link, which sends nothing until it is connected
+     *
+     * @return the session
+     */
+    Session open() {
+        while (true) {
+            final int id;
+            synchronized (ids) {
+                id = ids.nextInt();
+            }
+            final Session session = new Session(id);
+            if (sessions.putIfAbsent(id, session) == null) {
+                return session;
+            }
+        }
+    }
+
+    /**
+     * Stops both threads and closes the socket; sessions not yet acked are lost
+     */
+    void close() {
+        open = false;
+        socket.close();
+        synchronized (this) {
+            wake = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wakes the sender up to send the packets waiting in the sessions
+     */
+    private synchronized void wake() {
+        wake = true;
+        notifyAll();
+    }
+
+    /**
+     * Sends new packets and the ones due to be sent again, and forgets the sessions that are done
+     */
+    private void sendLoop() {
+        final List<DatagramPacket> due = new ArrayList<>();
+        while (open) {
+            final long now = System.nanoTime();
+            long next = now + MAX_RETRANSMIT_NANOS;
+            due.clear();
+            for (Iterator<Session> it = sessions.values().iterator(); it.hasNext();) {
+                final Session session = it.next();
+                if (session.isFinished(now)) {
+                    it.remove();
+                } else {
+                    next = Math.min(next, session.due(now, due));
+                }
+            }
+            for (DatagramPacket packet : due) {
+                try {
+                    socket.send(packet);
+                } catch (IOException e) {
+                    if (!open) {
+                        return;
+                    }
+                    // sent again after the timeout, as if the packet was lost
+                }
+            }
+            synchronized (this) {
+                for (long wait = next - System.nanoTime(); !wake && open && wait > 0; wait = next - System.nanoTime()) {
+                    try {
+                        wait(wait / 1_000_000, (int) (wait % 1_000_000));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                wake = false;
+            }
+        }
+    }
+
+    /**
+     * Reads packets until the socket is closed, delivering teleports and acking them
+     */
+    private void receiveLoop() {
+        final byte[] buffer = new byte[MAX_PACKET];
+        final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (open) {
+            packet.setLength(buffer.length);
+            try {
+                socket.receive(packet);
+                handle(packet);
+            } catch (IOException e) {
+                if (!open) {
+                    return;
+                }
+                // a malformed packet, or an error for a packet sent earlier; carry on
+            }
+        }
+    }
+
+    /**
+     * Handles a packet received from the socket
+     */
+    private void handle(DatagramPacket packet) throws IOException {
+        final long now = System.nanoTime();
+        final DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+        final int type = in.readUnsignedByte();
+        final Session session = sessions.get(in.readInt());
+        final int sequence = in.readInt();
+        if (session == null || !session.isFrom(packet.getSocketAddress())) {
+            return; // for a session that is gone, or not yet connected, which sends it again
+        }
+        if (type == ACK) {
+            session.acked(sequence, now);
+        } else if (type == DATA) {
+            final ServerCommand teleport = WireCodec.readTeleport(in, now);
+            if (session.received(sequence)) {
+                delivered.incrementAndGet();
+                received.accept(teleport);
+            } else {
+                duplicates.incrementAndGet();
+            }
+            final byte[] ack = session.packet(ACK, sequence).toByteArray();
+            socket.send(new DatagramPacket(ack, ack.length, packet.getSocketAddress()));
+        }
+    }
+
+    /**
+     * @return the number of DATA packets sent again because they were not acked in time
+     */
+    long getRetransmits() {
+        return retransmitted.get();
+    }
+
+    /**
+     * @return the number of DATA packets received that had been received before
+     */
+    long getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * @return the number of teleports received and delivered
+     */
+    long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * @return the number of DATA packets sent for the first time
+     */
+    long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * The datagrams of one link, both ways
+     */
+    class Session {
+
+        private final int localId;
+        private InetSocketAddress remote = null;
+        private int remoteId = 0;
+        private int nextSequence = 0;
+        private final Map<Integer, Pending> unacked = new LinkedHashMap<>();
+        private int receivedBelow = 0;
+        private final Set<Integer> receivedAbove = new HashSet<>();
+        private boolean closed = false;
+        private long closedNanos = 0;
+        private long smoothedRtt = -1;
+        private long rttVariation = 0;
+        private long retransmitNanos = INITIAL_RETRANSMIT_NANOS;
+
+        // Abstraction Function:
+        //  AF(localId, remote, remoteId, nextSequence, unacked, receivedBelow, receivedAbove, closed,
+        //     closedNanos, smoothedRtt, rttVariation, retransmitNanos) =
+        //          The session localId of a link, connected to the session remoteId at remote unless
+        //          remote is null, which has sent the teleports numbered 0 .. nextSequence - 1 of
+        //          which the ones in unacked have not been acked yet, and has received every teleport
+        //          numbered below receivedBelow and those in receivedAbove. It was closed at
+        //          closedNanos if closed. Round trips took smoothedRtt on average, or none was
+        //          measured yet if it is -1, varying by rttVariation, so packets not acked within
+        //          retransmitNanos are sent again.
+        // Representation Invariant:
+        //  --| every key of unacked is in 0 .. nextSequence - 1
+        //  --| every element of receivedAbove is > receivedBelow
+        //  --| MIN_RETRANSMIT_NANOS <= retransmitNanos <= MAX_RETRANSMIT_NANOS
+        // Safety from Representation Exposure:
+        //  --| all fields are private, and no method returns any of them
+        // Thread Safety Argument:
+        //  --| every field but localId is guarded by this session's lock, which is never held while
+        //      taking another
+
+        /**
+         * Makes a session that is not connected yet
+         */
+        private Session(int localId) {
+            this.localId = localId;
+        }
+
+        /**
+         * Checks the Representation Invariant to ensure that no representation exposure occurs
+         */
+        private synchronized void checkRep() {
+            assert MIN_RETRANSMIT_NANOS <= retransmitNanos && retransmitNanos <= MAX_RETRANSMIT_NANOS;
+        }
+
+        /**
+         * @return the id of this session, which the other end addresses its packets to
+         */
+        int id() {
+            return localId;
+        }
+
+        /**
+         * @return the port of the socket this session sends from
+         */
+        int port() {
+            return DatagramTransport.this.port();
+        }
+
+        /**
+         * Connects this session to the session at the other end of the link
+         *
+         * @param remote the address of the socket of the other end
+         * @param remoteId the id of the session at the other end
+         */
+        synchronized void connect(InetSocketAddress remote, int remoteId) {
+            this.remote = remote;
+            this.remoteId = remoteId;
+        }
+
+        /**
+         * @return whether teleports can be sent through this session, i.e. it is connected and not closed
+         */
+        synchronized boolean isConnected() {
+            return remote != null && !closed;
+        }
+
+        /**
+         * Adds a teleport to the packets waiting to be sent, which the sender sends once woken up
+         * by flush
+         *
+         * @param teleport a TELEPORT_WALL or TELEPORT_PORTAL command
+         * @throws IllegalStateException if the session is not connected
+         */
+        synchronized void send(ServerCommand teleport) throws IllegalStateException {
+            if (!isConnected()) {
+                throw new IllegalStateException("The session is not connected");
+            }
+            try {
+                final ByteArrayOutputStream bytes = packet(DATA, nextSequence);
+                WireCodec.writeTeleport(new DataOutputStream(bytes), teleport);
+                unacked.put(nextSequence, new Pending(bytes.toByteArray()));
+            } catch (IOException e) {
+                throw new AssertionError("Writing to memory cannot fail", e);
+            }
+            nextSequence++;
+        }
+
+        /**
+         * Wakes the sender up to send the teleports sent to this session so far
+         */
+        void flush() {
+            wake();
+        }
+
+        /**
+         * Stops taking teleports; the ones not yet acked keep being sent, and the session keeps
+         * receiving, until it is done
+         */
+        synchronized void close() {
+            if (!closed) {
+                closed = true;
+                closedNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * @return the header of a packet to the other end
+         */
+        private synchronized ByteArrayOutputStream packet(int type, int sequence) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            out.writeInt(remoteId);
+            out.writeInt(sequence);
+            return bytes;
+        }
+
+        /**
+         * @return whether a packet came from the other end of this session
+         */
+        private synchronized boolean isFrom(SocketAddress address) {
+            return remote != null && remote.equals(address);
+        }
+
+        /**
+         * Adds the packets due to be sent, for the first time or again
+         *
+         * @param now the value of System.nanoTime()
+         * @param due the list to add the packets to
+         * @return the value of System.nanoTime() by which the next packet is due
+         */
+        private synchronized long due(long now, List<DatagramPacket> due) {
+            long next = Long.MAX_VALUE;
+            if (remote == null) {
+                return next;
+            }
+            for (Pending pending : unacked.values()) {
+                if (pending.deadline <= now) {
+                    if (pending.attempts == 0) {
+                        pending.firstSent = now;
+                        sent.incrementAndGet();
+                    } else {
+                        retransmitted.incrementAndGet();
+                    }
+                    pending.attempts++;
+                    /* back off on every attempt, so a board that stopped answering is not flooded */
+                    pending.deadline = now + Math.min(MAX_RETRANSMIT_NANOS,
+                            retransmitNanos << Math.min(pending.attempts - 1, 16));
+                    due.add(new DatagramPacket(pending.bytes, pending.bytes.length, remote));
+                }
+                next = Math.min(next, pending.deadline);
+            }
+            return next;
+        }
+
+        /**
+         * Forgets a packet the other end acked, and measures the round trip if it was only sent once
+         */
+        private synchronized void acked(int sequence, long now) {
+            final Pending pending = unacked.remove(sequence);
+            if (pending == null || pending.attempts != 1) {
+                return; // Karn: the ack of a packet sent again could be for either attempt
+            }
+            final long rtt = now - pending.firstSent;
+            if (smoothedRtt < 0) {
+                smoothedRtt = rtt;
+                rttVariation = rtt / 2;
+            } else {
+                rttVariation = (3 * rttVariation + Math.abs(smoothedRtt - rtt)) / 4;
+                smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+            }
+            retransmitNanos = Math.max(MIN_RETRANSMIT_NANOS,
+                    Math.min(MAX_RETRANSMIT_NANOS, smoothedRtt + 4 * rttVariation));
+            checkRep();
+        }
+
+        /**
+         * Records that a packet was received
+         *
+         * @return whether it is received for the first time
+         */
+        private synchronized boolean received(int sequence) {
+            if (sequence < receivedBelow || !receivedAbove.add(sequence)) {
+                return false;
+            }
+            while (receivedAbove.remove(receivedBelow)) {
+                receivedBelow++;
+            }
+            return true;
+        }
+
+        /**
+         * @return whether the session is closed, everything it sent was acked and it lingered long
+         *         enough for the other end to stop sending
+         */
+        private synchronized boolean isFinished(long now) {
+            return closed && unacked.isEmpty() && now - closedNanos > LINGER_NANOS;
+        }
+    }
+
+    /**
+     * A DATA packet that has not been acked yet
+     */
+    private static class Pending {
+        private final byte[] bytes;
+        private long firstSent = 0;
+        private long deadline = 0;
+        private int attempts = 0;
+
+        /**
+         * Makes a packet that is due to be sent straight away
+         */
+        private Pending(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+}
@@ -4,7 +4,6 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
@@ -48,14 +47,23 @@ public class Flingball {
     /**
      * To run a Flingball game on command line interface: 
      * `java -cp bin:lib/parserlib.jar:lib/physics.jar flingball.Flingball [--host $HOST] 
-     * [--port ${PORT] $FILE` where $HOST is an optional hostname or IP address of the server
+     * [--port ${PORT] [--rate $RATE] [--overflow $POLICY] [--protocol $PROTOCOL] [--links $LINKS] [--simulate $WHERE] $FILE` where $HOST is an optional hostname or IP address of the server
      * to connect to. IF no $HOST is provided then the client runs in single-machine play mode
      * as described in the handout. $PORT is an optional integer in the range [0,65535] specifying
      * the port where the server is listening for incoming connections. If no port is supplied, 
-     * the default port used is 10987. $FILE is the path to a file with the extension .fb following
+     * the default port used is 10987. $RATE is an optional positive integer giving the number of
+     * physics steps simulated per second, Simulator.DEFAULT_PHYSICS_RATE if none is given. $POLICY is
+     * an optional overflow policy for messages to the server, one of block, drop-newest or drop-oldest,
+     * block if none is given. $PROTOCOL is text to only speak the text protocol, or binary to offer the server
+     * the compact binary framing, which it falls back from if the server does not know it; text if none is given. $LINKS is server to teleport
+     * every ball through the server, or direct to also link straight to the boards this one is joined to and teleport balls to them
+     * over those links, which the server only arranges, or datagram to link as direct does but send the balls over
+     * the links as UDP datagrams that are acknowledged and sent again until they arrive; server if none is given.
+     * $WHERE is local to run the board here, or server to only view the board as a HeadlessServer at $HOST runs it
+     * and send it the keys pressed, in which case $FILE should be the file the server loaded the board from; local if none is given. $FILE is the path to a file with the extension .fb following
      * correct Flingball board formatting. If no $FILE is provided, runs using boards/default.fb
      * and $HOST. In order to exit game play, a player must type 'quit' into the terminal in which
-     * they instantiated game play.
+     * they instantiated game play, and typing 'stats' there prints how the simulation and the messages to and from the server are keeping up.
      * 
      * @param args arguments for the program as detailed above
      * @throws IOException if the board file to read in cannot be parsed
@@ -66,6 +74,12 @@ public class Flingball {
             throws UnknownHostException, IOException, IllegalArgumentException { 
         Optional<String> hostName = Optional.empty();
         int port = DEFAULT_PORT;
+        int physicsRate = Simulator.DEFAULT_PHYSICS_RATE;
+        OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        boolean offerBinary = false;
+        boolean directLinks = false;
+        boolean datagramLinks = false;
+        boolean viewOnly = false;
         File fileToUse = new File("boards/default.fb");
         
         if (args.length > 0) {
@@ -74,6 +88,18 @@ public class Flingball {
                     hostName = Optional.of(args[i + 1]);
                 } else if (args[i].equals("--port")) {
                     port = Integer.valueOf(args[i + 1]);
+                } else if (args[i].equals("--rate")) {
+                    physicsRate = Integer.valueOf(args[i + 1]);
+                } else if (args[i].equals("--overflow")) {
+                    overflowPolicy = OverflowPolicy.valueOf(args[i + 1].toUpperCase().replace('-', '_'));
+                } else if (args[i].equals("--protocol") && (args[i + 1].equals("text") || args[i + 1].equals("binary"))) {
+                    offerBinary = args[i + 1].equals("binary");
+                } else if (args[i].equals("--links") && (args[i + 1].equals("server") || args[i + 1].equals("direct")
+                        || args[i + 1].equals("datagram"))) {
+                    directLinks = !args[i + 1].equals("server");
+                    datagramLinks = args[i + 1].equals("datagram");
+                } else if (args[i].equals("--simulate") && (args[i + 1].equals("local") || args[i + 1].equals("server"))) {
+                    viewOnly = args[i + 1].equals("server");
                 } else {
                     throw new IllegalArgumentException("Arguments or flags passed in were invalid.");
                 }
@@ -85,20 +111,42 @@ public class Flingball {
         checkRep();
         try {
             final Board flingBall = BoardParser.parse(fileToUse);
-            final Simulator simulator = new Simulator(flingBall);
+            if (viewOnly) {
+                if (!hostName.isPresent()) {
+                    throw new IllegalArgumentException("Only a board simulated locally can be played without a host.");
+                }
+                final RemoteView view = new RemoteView(new Socket(hostName.get(), port), flingBall.getName());
+                new Simulator(flingBall, view).playFlingball();
+                while (true) {
+                    final String input = new BufferedReader(new InputStreamReader(System.in)).readLine();
+                    if (input == null || input.equals("quit")) {
+                        view.close();
+                        System.exit(0);
+                    }
+                }
+            }
+            final Simulator simulator = new Simulator(flingBall, physicsRate);
             
             if (hostName.isPresent()) {
+                if (directLinks) {
+                    flingBall.listenForPeers(0, datagramLinks);
+                }
                 final Socket socket = new Socket(hostName.get(), port);
-                flingBall.acceptSocket(socket);
+                flingBall.acceptSocket(socket, OutboundWriter.DEFAULT_CAPACITY, overflowPolicy, offerBinary);
                 simulator.playFlingball();
                 while (true) {
                     final String input = new BufferedReader(new InputStreamReader(System.in)).readLine();
                     if (input.equals("quit")) {
-                        final PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                        out.println("quit");
-                        out.flush();
-                        out.close();
+                        try {
+                            flingBall.quitServer();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
                         System.exit(0);
+                    } else if (input.equals("stats")) {
+                        System.out.println(simulator.getSimulationStats());
+                        System.out.println("inbound commands: " + flingBall.getInboundStats());
+                        flingBall.getOutboundStats().ifPresent(stats -> System.out.println("outbound messages: " + stats));
                     }
                 }
             } else {
@@ -0,0 +1,674 @@
+package flingball;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A mutable, threadsafe flingball server that speaks the same text protocol as
+ * FlingballTextServer, but serves every client from a small fixed pool of event loops over
+ * non-blocking channels instead of a thread per client. Each event loop owns a Selector and the
+ * connections registered with it; each connection owns a direct buffer to read into and one to
+ * write from, and a queue of the lines waiting to be written. Threads and memory therefore stay
+ * flat however many boards connect, and a client that reads slowly only ever holds up its own
+ * queue.
+ *
+ * As FlingballTextServer does, it tells boards that listen for direct links where to link to when
+ * they are joined; see PeerLink.
+ */
+public class FlingballNioServer {
+
+    /**
+     * The number of event loops a server runs unless told otherwise
+     */
+    public static final int DEFAULT_EVENT_LOOPS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * The number of bytes that can wait to be written to one client unless told otherwise; a
+     * client that falls further behind than that is disconnected
+     */
+    static final int DEFAULT_MAX_PENDING_BYTES = 1 << 20;
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_LINE_LENGTH = 1 << 16;
+    private static final long DISCONNECT_DRAIN_MILLIS = 1000;
+
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private final int maxPendingBytes;
+    private final Map<String, Connection> boards = new ConcurrentHashMap<>();
+    private final Membership membership = new Membership();
+    private final Map<String, InetSocketAddress> peerAddresses = new ConcurrentHashMap<>();
+    private int nextLoop = 0;
+
+    // Abstraction function:
+    //   AF(serverChannel, loops, maxPendingBytes, boards, membership, peerAddresses, nextLoop): A text server that accepts connections through
+    //                                               serverChannel and serves them from loops, handing
+    //                                               the next one to loops[nextLoop], where boards maps
+    //                                               the name of every board that told the server its
+    //                                               name to the connection of the client running it,
+    //                                               and that has seen membership.version() boards join
+    //                                               and leave, and where peerAddresses says
+    //                                               boards listen for links to each other, and that
+    //                                               disconnects a client once more than
+    //                                               maxPendingBytes wait to be written to it
+    // Representation invariant:
+    //  loops.length > 0 and 0 <= nextLoop < loops.length
+    //  maxPendingBytes > 0
+    //  No two names map to the same connection in boards
+    // Safety from rep exposure:
+    //  all fields are private, and no method returns a connection or a channel
+    // Thread safety argument:
+    //  serverChannel and nextLoop are confined to the thread running serve()
+    //  boards and peerAddresses are ConcurrentHashMaps, and boards is only changed by sendMembership; sendMembership,
+    //      sendMembershipSnapshot, sendJoinBoards and disconnectAll are synchronized so that every
+    //      client sees the messages they send in the same order, and membership and whether each
+    //      connection is versioned are only used by them
+    //  every connection is confined to the thread of its event loop, except for its queue of lines
+    //      to write, which is guarded by the connection's lock; the loop is woken up to write them
+
+    /**
+     * Asserts the rep invariant
+     */
+    private void checkRep() {
+        assert serverChannel != null;
+        assert loops.length > 0 && 0 <= nextLoop && nextLoop < loops.length;
+        assert maxPendingBytes > 0;
+    }
+
+    /**
+     * Creates a new server that listens for connections on port
+     * 
+     * @param port the port for the server to listen on, 0 for any free port
+     * @param eventLoops the number of threads serving the clients, must be > 0
+     * @throws IOException if there is an error opening the server socket or a selector
+     */
+    public FlingballNioServer(int port, int eventLoops) throws IOException {
+        this(port, eventLoops, DEFAULT_MAX_PENDING_BYTES);
+    }
+    
+    /**
+     * Creates a new server that listens for connections on port
+     * 
+     * @param port the port for the server to listen on, 0 for any free port
+     * @param eventLoops the number of threads serving the clients, must be > 0
+     * @param maxPendingBytes the number of bytes that can wait to be written to one client, must
+     *                        be > 0; a client that stops reading is disconnected once one more
+     *                        line would take it past that
+     * @throws IOException if there is an error opening the server socket or a selector
+     */
+    FlingballNioServer(int port, int eventLoops, int maxPendingBytes) throws IOException {
+        if (eventLoops <= 0 || maxPendingBytes <= 0) {
+            throw new IllegalArgumentException("The number of event loops and the bytes that can wait must be positive");
+        }
+        this.maxPendingBytes = maxPendingBytes;
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.loops = new EventLoop[eventLoops];
+        for (int i = 0; i < eventLoops; i++) {
+            this.loops[i] = new EventLoop(i);
+        }
+        checkRep();
+    }
+
+    /**
+     * @return the port on which this server is listening for connections
+     */
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Run the server, listening for and handling client connections, and reading commands to join
+     * boards from standard input as FlingballTextServer does. Never returns normally.
+     * 
+     * @throws IOException if an error occurs waiting for a connection
+     */
+    public void serve() throws IOException {
+        final Thread console = new Thread(() -> {
+            try {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (line.equals("disconnect")) {
+                        disconnectAll();
+                        System.exit(0);
+                    } else {
+                        sendJoinBoards(line);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "flingball-nio-console");
+        console.setDaemon(true);
+        console.start();
+        
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        while (true) {
+            // block until a client connects
+            final SocketChannel channel = serverChannel.accept();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            loops[nextLoop].register(channel);
+            nextLoop = (nextLoop + 1) % loops.length;
+        }
+    }
+
+    /**
+     * Connects a board, or disconnects it if its connection is still the one the board is connected
+     * through, and tells every client: one line about the board to the clients that asked for
+     * versions of the connected boards, and every connected board to the others
+     * 
+     * @param boardName the name of the board
+     * @param connection the connection of the client running the board
+     * @param joined whether the board connects rather than quits
+     * @param known the version of the connected boards a client that connects knows, if it asked
+     *              for versions as it connected
+     */
+    private synchronized void sendMembership(String boardName, Connection connection, boolean joined,
+            OptionalLong known) {
+        if (joined) {
+            boards.put(boardName, connection);
+        } else if (!boards.remove(boardName, connection)) {
+            return;
+        }
+        peerAddresses.remove(boardName); // a board that connects again tells its port again
+        membership.advance();
+        final byte[] delta = encode(joined ? membership.joined(boardName) : membership.left(boardName));
+        byte[] allConnectedBoards = null;
+        for (Connection client : boards.values()) {
+            if (joined && known.isPresent() && client == connection) {
+                client.versioned = true;
+                if (membership.isStale(known.getAsLong())) {
+                    client.send(encode(membership.snapshot(new HashSet<>(boards.keySet()))));
+                }
+            } else if (client.versioned) {
+                client.send(delta);
+            } else {
+                if (allConnectedBoards == null) {
+                    allConnectedBoards = encode(Membership.allConnectedBoards(new HashSet<>(boards.keySet())));
+                }
+                client.send(allConnectedBoards);
+            }
+        }
+    }
+
+    /**
+     * Answers a client that asks for versions of the connected boards: from now on it is only told
+     * about the boards that join and leave, after a snapshot of every connected board if the
+     * version it knows is not the current one
+     * 
+     * @param connection the connection of the client
+     * @param known the version the client knows
+     */
+    private synchronized void sendMembershipSnapshot(Connection connection, long known) {
+        connection.versioned = true;
+        if (membership.isStale(known)) {
+            connection.send(encode(membership.snapshot(new HashSet<>(boards.keySet()))));
+        }
+    }
+
+    /**
+     * Disconnects all clients, waiting up to DISCONNECT_DRAIN_MILLIS for them to be told
+     */
+    private synchronized void disconnectAll() {
+        final byte[] noBoards = encode("success allConnectedBoards=");
+        final byte[] disconnect = encode("disconnect");
+        for (Connection connection : boards.values()) {
+            connection.send(noBoards);
+            connection.send(disconnect);
+        }
+        final long deadline = System.currentTimeMillis() + DISCONNECT_DRAIN_MILLIS;
+        for (Connection connection : boards.values()) {
+            while (!connection.isDrained() && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Sends a message to the boards being joined by the message about their joining, tells every
+     * other board that the walls being joined were disconnected from it, and if both boards listen
+     * for links, tells the first of them where to link to the second
+     * 
+     * @param message the joining boards message, of the form "h board1 board2" or "v board1 board2";
+     *                anything else, or a message naming a board that is not connected, is ignored
+     */
+    synchronized void sendJoinBoards(String message) {
+        final String[] messageSplit = message.trim().split("[ ]+");
+        if (messageSplit.length != 3) {
+            return;
+        }
+        final String firstBoard = messageSplit[1];
+        final String secondBoard = messageSplit[2];
+        final Connection first = boards.get(firstBoard);
+        final Connection second = boards.get(secondBoard);
+        final String[] walls;
+        final String join;
+        if (messageSplit[0].equals("h")) {
+            walls = new String[] { "left", "right" };
+            join = "joinHorizontal= ";
+        } else if (messageSplit[0].equals("v")) {
+            walls = new String[] { "top", "bottom" };
+            join = "joinVertical= ";
+        } else {
+            return;
+        }
+        if (first == null || second == null) {
+            return;
+        }
+        final byte[] disconnectFirst = encode("success disconnectWall= " + firstBoard + " " + walls[0]);
+        final byte[] disconnectSecond = encode("success disconnectWall= " + secondBoard + " " + walls[1]);
+        for (Map.Entry<String, Connection> board : boards.entrySet()) {
+            if (!board.getKey().equals(firstBoard) && !board.getKey().equals(secondBoard)) {
+                board.getValue().send(disconnectFirst);
+                board.getValue().send(disconnectSecond);
+            }
+        }
+        final byte[] response = encode("success " + join + firstBoard + " " + secondBoard);
+        first.send(response);
+        second.send(response);
+        final InetSocketAddress secondAddress = peerAddresses.get(secondBoard);
+        if (peerAddresses.containsKey(firstBoard) && secondAddress != null) {
+            first.send(encode(PeerLink.peerAt(secondBoard, secondAddress)));
+        }
+    }
+
+    /**
+     * Handles a line read from a client once it has told the server its board name: "quit"
+     * disconnects the board, the port it listens for links on is remembered, an offer of the
+     * binary framing of WireCodec is left unanswered so the client stays in text, anything else is
+     * relayed with "success " in front of it to the board named by its second word, or answered
+     * with "failure" if it has none.
+     * 
+     * @param connection the connection the line was read from
+     * @param input the line, without its line terminator
+     */
+    private void handleRequest(Connection connection, String input) {
+        if (input.equals("quit")) {
+            sendMembership(connection.boardName, connection, false, OptionalLong.empty());
+            return;
+        }
+        final OptionalLong known = Membership.parseRequest(input);
+        if (known.isPresent()) {
+            sendMembershipSnapshot(connection, known.getAsLong());
+            return;
+        }
+        final OptionalInt peerPort = PeerLink.parseAdvertisement(input);
+        if (peerPort.isPresent()) {
+            peerAddresses.put(connection.boardName,
+                    new InetSocketAddress(connection.channel.socket().getInetAddress(), peerPort.getAsInt()));
+            return;
+        }
+        if (input.equals(WireCodec.OFFER)) {
+            return;
+        }
+        final int targetBoardNameIndex = 1;
+        final String[] splitInput = input.split("[ ]+");
+        if (splitInput.length <= targetBoardNameIndex) {
+            connection.send(encode("failure"));
+            return;
+        }
+        final Connection target = boards.get(splitInput[targetBoardNameIndex]);
+        if (target != null) {
+            target.send(encode("success " + input));
+        }
+    }
+
+    /**
+     * @return the bytes of a line of the protocol, with its line terminator
+     */
+    private static byte[] encode(String line) {
+        return (line + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A thread that serves the connections registered with its selector
+     */
+    private class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+
+        // Abstraction function:
+        //   AF(selector, tasks, thread): the loop run by thread, serving the connections registered
+        //                                with selector, which runs tasks as soon as it wakes up
+        // Thread safety argument:
+        //   selector and the connections are only used on thread; other threads hand it work
+        //   through tasks, which is a ConcurrentLinkedQueue, and wake the selector up
+
+        /**
+         * Makes an event loop, ready for its thread to be started
+         * 
+         * @param index the number of the loop, used to name its thread
+         * @throws IOException if the selector cannot be opened
+         */
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "flingball-nio-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Starts serving a newly accepted connection and asks the client for its board name
+         * 
+         * @param channel the non-blocking channel to the client
+         */
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    final Connection connection = new Connection(channel, this);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connection.send(encode("getClientBoardName"));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+
+        /**
+         * Runs a task on the thread of this loop
+         * 
+         * @param task the task to run
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                final Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    final SelectionKey key = selected.next();
+                    selected.remove();
+                    final Connection connection = (Connection) key.attachment();
+                    if (key.isValid() && key.isReadable()) {
+                        connection.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                }
+                /* after the keys, so the lines they queued on this loop are written before it selects again */
+                for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                    task.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * The server's end of a connection to one client
+     */
+    private class Connection {
+
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private byte[] line = new byte[128];
+        private int lineLength = 0;
+        private String boardName = null;
+        private final Queue<byte[]> pending = new ArrayDeque<>();
+        private int pendingOffset = 0;
+        private long pendingBytes = 0;
+        private boolean overflowed = false;
+        private boolean flushScheduled = false;
+        private boolean closed = false;
+        private boolean versioned = false;
+
+        // Abstraction function:
+        //   AF(channel, loop, key, in, out, line, lineLength, boardName, pending, pendingOffset,
+        //      pendingBytes, overflowed, flushScheduled, closed, versioned): the connection to the client at the other end of
+        //          channel, served by loop through key, running the board boardName once it has said
+        //          so, and told about boards joining and leaving one at a time if versioned.
+        //          line[0..lineLength) is the part of the next line read so far, in holds bytes read
+        //          from channel that were not looked at yet, and out followed by pending, from
+        //          pendingOffset into its first array, holds the bytes still to be written.
+        //          pendingBytes is the total length of the arrays in pending, and overflowed is whether
+        //          the client fell more than maxPendingBytes behind and is being disconnected.
+        // Representation invariant:
+        //  0 <= lineLength <= line.length <= MAX_LINE_LENGTH
+        //  0 <= pendingOffset, and pendingOffset < the length of the first array of pending if any
+        //  if pending is not empty or out holds bytes, then flushScheduled
+        //  pendingBytes is the sum of the lengths of the arrays in pending, and <= maxPendingBytes
+        // Thread safety argument:
+        //  everything but pending, pendingOffset, pendingBytes, overflowed, flushScheduled, closed and
+        //      versioned is confined to the thread of loop; all but versioned are guarded by this
+        //      connection's lock, and versioned
+        //      by the server's lock
+        //  the arrays in pending are never modified once encoded
+
+        /**
+         * Makes a connection
+         * 
+         * @param channel the non-blocking channel to the client
+         * @param loop the event loop serving the connection
+         */
+        Connection(SocketChannel channel, EventLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        /**
+         * Queues a line to be written to the client, from any thread. If the line would take the
+         * bytes waiting for the client past maxPendingBytes, the client has stopped reading: what
+         * waits is dropped and the connection is closed, as if it broke.
+         * 
+         * @param encoded the bytes of the line, with its line terminator; not modified afterwards
+         */
+        void send(byte[] encoded) {
+            final boolean overflow;
+            synchronized (this) {
+                if (closed || overflowed) {
+                    return;
+                }
+                overflow = pendingBytes + encoded.length > maxPendingBytes;
+                if (overflow) {
+                    overflowed = true;
+                    pending.clear();
+                    pendingOffset = 0;
+                    pendingBytes = 0;
+                } else {
+                    pending.add(encoded);
+                    pendingBytes += encoded.length;
+                    if (flushScheduled) {
+                        return;
+                    }
+                    flushScheduled = true;
+                }
+            }
+            loop.execute(overflow ? this::close : this::flush);
+        }
+
+        /**
+         * @return whether every line queued so far was written to the client or dropped
+         */
+        synchronized boolean isDrained() {
+            return !flushScheduled;
+        }
+
+        /**
+         * Reads whatever the client sent and handles every complete line
+         */
+        void read() {
+            try {
+                final int read = channel.read(in);
+                if (read < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            in.flip();
+            while (in.hasRemaining()) {
+                final byte b = in.get();
+                if (b == '\n') {
+                    final int end = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                    final String input = new String(line, 0, end, StandardCharsets.US_ASCII);
+                    lineLength = 0;
+                    handleLine(input);
+                    if (closed()) {
+                        return;
+                    }
+                } else {
+                    if (lineLength == line.length) {
+                        if (line.length == MAX_LINE_LENGTH) {
+                            close();
+                            return;
+                        }
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+            in.clear();
+        }
+
+        /**
+         * Reads the request for versions of the connected boards that a client sends together with
+         * the name of its board, if it has been read already, so that the client is answered with a
+         * snapshot as it joins rather than with the whole list of connected boards
+         * 
+         * @return the version the client knows, or empty if the next line in is not such a request
+         *         or is not complete, in which case nothing is consumed
+         */
+        private OptionalLong readMembershipRequest() {
+            for (int end = in.position(); end < in.limit(); end++) {
+                if (in.get(end) == '\n') {
+                    final byte[] bytes = new byte[end - in.position()];
+                    in.duplicate().get(bytes);
+                    final OptionalLong known = Membership.parseRequest(new String(bytes, StandardCharsets.US_ASCII).trim());
+                    if (known.isPresent()) {
+                        in.position(end + 1);
+                    }
+                    return known;
+                }
+            }
+            return OptionalLong.empty();
+        }
+
+        /**
+         * Handles a complete line from the client; the first one is the name of its board
+         */
+        private void handleLine(String input) {
+            if (boardName == null) {
+                boardName = input;
+                sendMembership(boardName, this, true, readMembershipRequest());
+            } else if (!input.isEmpty()) {
+                handleRequest(this, input);
+            }
+        }
+
+        /**
+         * Writes as many of the queued bytes as the channel takes without blocking, and asks to be
+         * told when it can take more if some are left
+         */
+        void flush() {
+            if (closed()) {
+                return;
+            }
+            try {
+                while (true) {
+                    synchronized (this) {
+                        while (out.hasRemaining() && !pending.isEmpty()) {
+                            final byte[] next = pending.peek();
+                            final int length = Math.min(out.remaining(), next.length - pendingOffset);
+                            out.put(next, pendingOffset, length);
+                            pendingOffset += length;
+                            if (pendingOffset == next.length) {
+                                pending.poll();
+                                pendingOffset = 0;
+                                pendingBytes -= next.length;
+                            }
+                        }
+                    }
+                    out.flip();
+                    channel.write(out);
+                    final boolean socketFull = out.hasRemaining();
+                    out.compact();
+                    synchronized (this) {
+                        if (out.position() == 0 && pending.isEmpty()) {
+                            flushScheduled = false;
+                            if (key.isValid()) {
+                                key.interestOps(SelectionKey.OP_READ);
+                            }
+                            return;
+                        }
+                    }
+                    if (socketFull) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * @return whether the connection was closed
+         */
+        private synchronized boolean closed() {
+            return closed;
+        }
+
+        /**
+         * Closes the connection, dropping whatever was not written yet, and disconnects its board
+         */
+        private void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pending.clear();
+                pendingOffset = 0;
+                pendingBytes = 0;
+                flushScheduled = false;
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (boardName != null) {
+                sendMembership(boardName, this, false, OptionalLong.empty());
+            }
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package flingball;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
 
 /**
  * server to run the Flingball game
@@ -43,26 +47,61 @@ public class FlingballServer {
      *  left join and [Board2] is the right join. Finally, a server can be disconnected by prompting
      *  the server with a 'disconnect' command at the command prompt. 
      *  
-     * @param args a single optional parameter of the form '--port PORT' that defines
-     *  what port should be used to listen for incoming connections. If no port is given,
-     *  then the default port 10987 is used
-     *  @throws IOException if an error occurs starting the server
-     *  @throws IllegalArgumentException if there are two arguments and there is no --port flag
+     * @param args optionally '--port PORT' that defines what port should be used to listen for
+     *  incoming connections, and '--nio LOOPS' to serve the clients with a FlingballNioServer
+     *  running LOOPS event loops instead of a FlingballTextServer running a thread per client,
+     *  and '--threads virtual' to run the FlingballTextServer's threads as virtual threads where
+     *  the Java runtime has them ('--threads platform' is the default), and '--board FILE', any
+     *  number of times, to run the board in each .fb FILE on the server with a HeadlessServer,
+     *  which clients only view, instead of relaying between clients that run their own boards,
+     *  and '--workers WORKERS' to step those boards on WORKERS threads (one per core by default).
+     *  If no port is given, then the default port 10987 is used
+     *  @throws IOException if an error occurs starting the server or reading a board file
+     *  @throws IllegalArgumentException if the arguments are not flags followed by their values, or
+     *          a board file cannot be parsed
      */
     public static void main(String[] args) throws IOException, IllegalArgumentException {
-        if (args.length == 2) {
-            if (args[0] != "--port")
-                throw new IllegalArgumentException("must state the --port flag and then a port value");
-            final String[] commands = Arrays.asList(args).get(0).split(" ");
-            port = Integer.parseInt(commands[1]);
-        } else if (args.length == 0) {
-            port = Flingball.DEFAULT_PORT;
-        } else {
+        port = Flingball.DEFAULT_PORT;
+        int eventLoops = 0;
+        boolean virtualThreads = false;
+        final List<Board> boards = new ArrayList<>();
+        int workers = Runtime.getRuntime().availableProcessors();
+        if (args.length % 2 != 0) {
             throw new IllegalArgumentException("The arguments passed into FlingballServer were invalid.");
         }
+        for (int i = 0; i < args.length; i += 2) {
+            if (args[i].equals("--port")) {
+                port = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--nio")) {
+                eventLoops = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--threads") && (args[i + 1].equals("virtual") || args[i + 1].equals("platform"))) {
+                virtualThreads = args[i + 1].equals("virtual");
+            } else if (args[i].equals("--board")) {
+                try {
+                    boards.add(BoardParser.parse(new File(args[i + 1])));
+                } catch (UnableToParseException e) {
+                    throw new IllegalArgumentException("could not parse the board file " + args[i + 1], e);
+                }
+            } else if (args[i].equals("--workers")) {
+                workers = Integer.parseInt(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("must state the --port, --nio, --threads, --board or --workers flag and then its value");
+            }
+        }
         
         checkRep();
-        new FlingballTextServer(port).serve();
+        if (!boards.isEmpty()) {
+            new HeadlessServer(port, boards, workers, Simulator.DEFAULT_PHYSICS_RATE).serve();
+        } else if (eventLoops > 0) {
+            new FlingballNioServer(port, eventLoops).serve();
+        } else if (virtualThreads && FlingballTextServer.virtualThreads().isPresent()) {
+            new FlingballTextServer(port, FlingballTextServer.virtualThreads().get()).serve();
+        } else {
+            if (virtualThreads) {
+                System.out.println("This Java runtime has no virtual threads, serving on platform threads.");
+            }
+            new FlingballTextServer(port).serve();
+        }
         return;
     }
     
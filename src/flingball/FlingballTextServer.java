@@ -1,42 +1,103 @@
 package flingball;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * A mutable, threadsafe text protocol flingball server
+ * A mutable, threadsafe text protocol flingball server. Every client, and the loop reading
+ * commands from standard input, is served by a thread of its own, made by the server's thread
+ * factory: platform threads unless told otherwise, or virtual threads where the Java runtime
+ * has them. No socket is ever read or written inside a synchronized block, so a blocked virtual
+ * thread never pins the platform thread carrying it.
  *
+ * Lines of text that name a board to relay to are routed without being decoded: the name of the
+ * target board is looked up in the route table straight from the bytes read, and the bytes are
+ * written to the target with "success " in front of them.
+ *
+ * A client that offers the binary framing of WireCodec is answered in it from then on, and its
+ * teleports are relayed without being turned into text, unless the board they go to only speaks
+ * text.
+ *
+ * Boards that listen for direct links are told where to link to when they are joined, and from
+ * then on only teleport through the server while they have no open link; see PeerLink.
  */
 public class FlingballTextServer {
 
+    private static final byte[] SUCCESS = "success ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OFFER = WireCodec.OFFER.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ACCEPT = WireCodec.ACCEPT.getBytes(StandardCharsets.UTF_8);
+    
+    private static final int MAX_REQUEST_LENGTH = 64;
+    
     private final ServerSocket serverSocket;
+    private final ThreadFactory threads;
     private final Map<String, Socket> socketMappings = Collections.synchronizedMap(new HashMap<>());
+    private final RouteTable routes = new RouteTable();
+    private final Map<Socket, Client> clients = new ConcurrentHashMap<>();
+    private final Lock broadcastLock = new ReentrantLock();
+    private final Membership membership = new Membership();
+    private final Map<String, InetSocketAddress> peerAddresses = Collections.synchronizedMap(new HashMap<>());
     
     // Abstraction function:
-    //   AF(serverSocket, socketMappings>: A text server that handles socket connections through serverSocket and
+    //   AF(serverSocket, threads, socketMappings, routes, clients, broadcastLock, membership,
+    //      peerAddresses>: A text server that handles
+    //                                       socket connections through serverSocket on threads made by threads and
     //                                       sends inputs for clients running boardName through the socket in the
-    //                                       appropriate mapping from socketMappings
+    //                                       appropriate mapping from socketMappings, which routes mirrors by
+    //                                       interned id, framed as clients says, and that has seen
+    //                                       membership.version() boards join and leave, and where
+    //                                       peerAddresses says boards listen for links to each other
     // Representation invariant:
     //  No two strings map to the same socket in socketMappings
+    //  routes routes every board of socketMappings to the same socket, and no other board anywhere
+    //  clients holds the socket of every board of socketMappings, and no socket whose client's thread
+    //      has finished or that could not be written to
     // Safety from rep exposure:
     //  all fields are final and private
     //  Only handleRequests (which is private) and getBoardName (which returns an immutable string)
     //    return anything
     // Thread safety argument:
     //  all fields are private + final
-    //  socketMappings uses a threadsafe hashmap
+    //  socketMappings and peerAddresses use threadsafe hashmaps
+    //  socketMappings and routes are only changed together holding the lock of socketMappings, and
+    //      only while holding broadcastLock, which also guards membership, which sockets clients
+    //      holds once their client has joined, and whether each Client is versioned, so every
+    //      client is told about every change in the order it was made
     //  any uses of the fields are atomic operations
-    //  disconnectAll and sendJoinedBoards and synchronized and can only be accessed by one 
-    //      thread at a time
+    //  disconnectAll, sendMembership and sendMembershipSnapshot hold broadcastLock, so every client
+    //      sees the changes to the connected boards in the same order
+    //  every write to a socket holds the lock of its Client in clients, so lines sent to the same
+    //      client from different threads never interleave, and the framing of a client only changes
+    //      under that lock
+    //  both are ReentrantLocks rather than monitors, since they are held across socket writes
+    //  a Client never holds its lock while it gives up on its socket, so leave only ever waits for
+    //      broadcastLock holding no other lock
 
     /**
      * Asserts the rep invariant
@@ -44,24 +105,55 @@ public class FlingballTextServer {
     private void checkRep() {
         assert serverSocket!=null;
         assert socketMappings!=null;
-        final Set<Socket> uniqueSockets = new HashSet<>();
-        for (Socket socket : socketMappings.values()) {
-            uniqueSockets.add(socket);
+        synchronized (socketMappings) {
+            final Set<Socket> uniqueSockets = new HashSet<>();
+            for (Socket socket : socketMappings.values()) {
+                uniqueSockets.add(socket);
+            }
+            assert uniqueSockets.size() == socketMappings.size();
         }
-        assert uniqueSockets.size() == socketMappings.size();
     }
 
     /**
-     * Creates a new text server that listens for connections on port
+     * Creates a new text server that listens for connections on port and serves every client on a
+     * platform thread of its own
      * 
      * @param port the port for the server to listen on
      * @throws IOException if there is an error opening the server socket
      */
     public FlingballTextServer(int port) throws IOException {
+        this(port, Thread::new);
+    }
+    
+    /**
+     * Creates a new text server that listens for connections on port
+     * 
+     * @param port the port for the server to listen on
+     * @param threads the factory of the threads that serve the clients and standard input
+     * @throws IOException if there is an error opening the server socket
+     */
+    public FlingballTextServer(int port, ThreadFactory threads) throws IOException {
         this.serverSocket = new ServerSocket(port);
+        this.threads = threads;
         checkRep();
     }
     
+    /**
+     * Looks up the factory of virtual threads, which Java runtimes from 21 on have. The lookup is
+     * reflective so that the server still builds and runs on older runtimes.
+     * 
+     * @return a factory of virtual threads, or empty if this Java runtime has none
+     */
+    public static Optional<ThreadFactory> virtualThreads() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return Optional.of((ThreadFactory) factory.invoke(builder));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+    
     /**
      * @return the port on which this server is listening for connections
      */
@@ -73,18 +165,260 @@ public class FlingballTextServer {
      * Gets the name of a board used by a particular client
      * 
      * @param socket the socket shared by a client running the board with the requested name
+     * @param in the reader of the socket's input
      * @return the name of the board connected to this server through the given socket
      * @throws IOException if error occurs reading in from the socket 
      */
-    private static String getBoardName(Socket socket) throws IOException {
-        final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        final PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-        out.println("getClientBoardName");
-        out.flush();
-        final String boardName = in.readLine();
+    private String getBoardName(Socket socket, DataInputStream in) throws IOException {
+        send(socket, "getClientBoardName");
+        final String boardName = WireCodec.readLine(in);
         return boardName;
     }
     
+    /**
+     * Reads the request for versions of the connected boards that a client sends together with the
+     * name of its board, so that the client is answered with a snapshot as it joins rather than
+     * with the whole list of connected boards. Only looks at what has already arrived, so it never
+     * waits for a client that sends nothing more.
+     * 
+     * @param in the stream of the socket's input, just after the name of the board
+     * @return the version the client knows, or empty if the next line is not such a request or
+     *         has not arrived yet, in which case nothing is consumed
+     * @throws IOException if error occurs reading in from the socket 
+     */
+    private static OptionalLong readMembershipRequest(DataInputStream in) throws IOException {
+        final int available = Math.min(in.available(), MAX_REQUEST_LENGTH);
+        if (available == 0) {
+            return OptionalLong.empty();
+        }
+        final byte[] bytes = new byte[available];
+        in.mark(available);
+        final int read = in.read(bytes, 0, available);
+        in.reset();
+        for (int end = 0; end < read; end++) {
+            if (bytes[end] == '\n') {
+                final OptionalLong known = Membership.parseRequest(
+                        new String(bytes, 0, end, StandardCharsets.UTF_8).trim());
+                if (known.isPresent()) {
+                    in.skipBytes(end + 1);
+                }
+                return known;
+            }
+        }
+        return OptionalLong.empty();
+    }
+    
+    /**
+     * Writes lines to a client, without interleaving with lines other threads write to it. A client
+     * that can no longer be written to leaves, as if it quit.
+     * 
+     * @param socket the socket connected to the client
+     * @param lines the lines to write, without line terminators
+     */
+    private void send(Socket socket, String... lines) {
+        final Client client = clients.get(socket);
+        if (client != null && !client.send(lines)) {
+            leave(socket);
+        }
+    }
+    
+    /**
+     * Relays a teleport to a client, as a frame if it speaks the binary framing and as a line
+     * starting with "success " if not. A client that can no longer be written to leaves, as if it
+     * quit.
+     * 
+     * @param socket the socket connected to the client
+     * @param command the teleport to relay
+     */
+    private void send(Socket socket, ServerCommand command) {
+        final Client client = clients.get(socket);
+        if (client != null && !client.send(command)) {
+            leave(socket);
+        }
+    }
+    
+    /**
+     * Forgets a client whose connection has ended or can no longer be written to, and closes its
+     * socket. If its board is still connected, every other client is told that it left, as if it
+     * quit. Does nothing for a client that has already left.
+     * 
+     * @param socket the socket connected to the client
+     */
+    private void leave(Socket socket) {
+        broadcastLock.lock();
+        try {
+            if (clients.remove(socket) == null) {
+                return;
+            }
+            String boardName = null;
+            synchronized (socketMappings) {
+                for (Map.Entry<String, Socket> board : socketMappings.entrySet()) {
+                    if (board.getValue() == socket) {
+                        boardName = board.getKey();
+                    }
+                }
+            }
+            if (boardName != null) {
+                sendMembership(boardName, Optional.empty(), OptionalLong.empty());
+            }
+        } finally {
+            broadcastLock.unlock();
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // it is forgotten either way
+        }
+    }
+    
+    /**
+     * The writing side of the connection to a client, in the framing the client speaks. Never
+     * throws when the socket cannot be written to, but says so, so that only the client whose
+     * socket failed leaves, and never the client on whose thread the write happened.
+     */
+    private static class Client {
+        
+        private final Socket socket;
+        private final Lock lock = new ReentrantLock();
+        private final WireCodec.Encoder encoder = new WireCodec.Encoder();
+        private DataOutputStream out;
+        private boolean binary = false;
+        private boolean versioned = false;
+        
+        // Abstraction function:
+        //   AF(socket, lock, encoder, out, binary, versioned) = the client at the other end of socket,
+        //                                            written to through out in frames encoded by encoder
+        //                                            if binary and in lines of text if not, and told
+        //                                            about boards joining and leaving one at a time if
+        //                                            versioned
+        // Thread safety argument:
+        //   out, encoder and binary are only used while holding lock
+        //   versioned is only used while holding the server's broadcastLock
+        //   lock is released before a failed write is reported, so the caller may take broadcastLock
+        
+        /* one write to the stream of the socket, in the framing of the client */
+        private interface Write {
+            void to(DataOutputStream stream) throws IOException;
+        }
+        
+        /**
+         * Make the writing side of a connection, which starts out in text
+         * 
+         * @param socket the socket connected to the client
+         */
+        Client(Socket socket) {
+            this.socket = socket;
+        }
+        
+        /**
+         * Writes lines to the client
+         * 
+         * @param lines the lines to write, without line terminators
+         * @return false if there was an error writing to the socket
+         */
+        boolean send(String... lines) {
+            return write(stream -> writeLines(stream, lines));
+        }
+        
+        /**
+         * Writes a teleport to the client
+         * 
+         * @param command the teleport to write
+         * @return false if there was an error writing to the socket
+         */
+        boolean send(ServerCommand command) {
+            return write(stream -> {
+                if (binary) {
+                    encoder.write(stream, command, "success ");
+                } else {
+                    stream.write(("success " + command.toRequest() + System.lineSeparator())
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+            });
+        }
+        
+        /**
+         * Relays a line to the client with "success " in front of it
+         * 
+         * @param line holds the line from index 0, in UTF-8 without its line terminator
+         * @param length the number of bytes of the line
+         * @return false if there was an error writing to the socket
+         */
+        boolean relay(byte[] line, int length) {
+            return write(stream -> {
+                if (binary) {
+                    encoder.writeText(stream, SUCCESS, line, length);
+                } else {
+                    stream.write(SUCCESS);
+                    stream.write(line, 0, length);
+                    stream.write(LINE_SEPARATOR);
+                }
+            });
+        }
+        
+        /**
+         * Accepts the client's offer of the binary framing: writes WireCodec.ACCEPT as the last
+         * line of text, and frames from then on
+         * 
+         * @return false if there was an error writing to the socket
+         */
+        boolean upgrade() {
+            return write(stream -> {
+                if (!binary) {
+                    writeLines(stream, WireCodec.ACCEPT);
+                    binary = true;
+                }
+            });
+        }
+        
+        /**
+         * Writes to the client and flushes what was written, holding lock
+         * 
+         * @param write what to write
+         * @return false if there was an error writing to the socket
+         */
+        private boolean write(Write write) {
+            lock.lock();
+            try {
+                final DataOutputStream stream = stream();
+                write.to(stream);
+                stream.flush();
+                return true;
+            } catch (IOException e) {
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Writes lines in the framing of the client, holding lock
+         * 
+         * @param stream the stream writing to the socket
+         * @param lines the lines to write, without line terminators
+         * @throws IOException if there is an error writing to the socket
+         */
+        private void writeLines(DataOutputStream stream, String... lines) throws IOException {
+            for (String line : lines) {
+                if (binary) {
+                    encoder.writeText(stream, line);
+                } else {
+                    stream.write((line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        
+        /**
+         * @return the stream writing to the socket, opened the first time it is needed
+         */
+        private DataOutputStream stream() throws IOException {
+            if (out == null) {
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            }
+            return out;
+        }
+    }
+    
     /**
      * Run the server, listening for and handling client connections.
      * Never returns normally.
@@ -92,7 +426,7 @@ public class FlingballTextServer {
      * @throws IOException if an error occurs waiting for a connection
      */
     public void serve() throws IOException {
-        new Thread(new Runnable() {
+        threads.newThread(new Runnable() {
             public void run() {
                 while (true) {
                     try {
@@ -120,18 +454,22 @@ public class FlingballTextServer {
         while (true) {
             // block until a client connects
             final Socket socket = serverSocket.accept();
+            clients.put(socket, new Client(socket));
             
             // handle the client
-            new Thread(new Runnable() {
+            threads.newThread(new Runnable() {
                 public void run() {
                     try {
-                        final String boardName = getBoardName(socket);
+                        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                        final String boardName = getBoardName(socket, in);
+                        final OptionalLong known = readMembershipRequest(in);
                         
-                        socketMappings.put(boardName, socket);
-                        sendConnectedBoards();
-                        handleConnection(socket, boardName);
+                        sendMembership(boardName, Optional.of(socket), known);
+                        handleConnection(socket, boardName, in);
                     } catch (IOException e) {
                         e.printStackTrace();
+                    } finally {
+                        leave(socket);
                     }
                 }
             }).start();  
@@ -139,46 +477,136 @@ public class FlingballTextServer {
     }
     
     /**
-     * Sends a message showing all connected boards, separated by new lines, to all currently 
-     * connected clients 
+     * Connects a board or disconnects it, and tells every client: one line about the board to the
+     * clients that asked for versions of the connected boards, and every connected board to the
+     * others
      * 
-     * @throws IOException if there is an error writing to one of the board sockets
+     * @param boardName the name of the board
+     * @param socket the socket of the client running the board if it connects, empty if it quits
+     * @param known the version of the connected boards a client that connects knows, if it asked
+     *              for versions as it connected
      */
-    private synchronized void sendConnectedBoards() throws IOException {
-        final Set<String> connectedBoards = Collections.synchronizedSet(new HashSet<>(socketMappings.keySet()));
-        final StringBuilder response = new StringBuilder();
-        response.append("success ");
-        response.append("allConnectedBoards=");
-        for (String board : connectedBoards) { response.append(" " + board); }
-        
-        for (Socket socket : socketMappings.values()) {
-            final PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-            out.println(response.toString());
-            out.flush();
+    private void sendMembership(String boardName, Optional<Socket> socket, OptionalLong known) {
+        broadcastLock.lock();
+        try {
+            if (socket.isPresent() && !clients.containsKey(socket.get())) {
+                return; // left before its board connected
+            }
+            final Set<String> connectedBoards;
+            final List<Socket> sockets;
+            synchronized (socketMappings) { // clients joining on other threads must not change it mid-copy
+                if (socket.isPresent()) {
+                    socketMappings.put(boardName, socket.get());
+                    routes.bind(boardName, socket.get());
+                } else {
+                    socketMappings.remove(boardName);
+                    routes.unbind(boardName);
+                }
+                peerAddresses.remove(boardName); // a board that connects again tells its port again
+                connectedBoards = new HashSet<>(socketMappings.keySet());
+                sockets = new ArrayList<>(socketMappings.values());
+            }
+            membership.advance();
+            final String delta = socket.isPresent() ? membership.joined(boardName) : membership.left(boardName);
+            String allConnectedBoards = null;
+            /* clients that fail leave once every other client has been told about this change */
+            final List<Socket> gone = new ArrayList<>();
+            for (Socket clientSocket : sockets) {
+                final Client client = clients.get(clientSocket);
+                boolean written = true;
+                if (known.isPresent() && clientSocket == socket.get()) {
+                    client.versioned = true;
+                    if (membership.isStale(known.getAsLong())) {
+                        written = client.send(membership.snapshot(connectedBoards));
+                    }
+                } else if (client.versioned) {
+                    written = client.send(delta);
+                } else {
+                    if (allConnectedBoards == null) {
+                        allConnectedBoards = Membership.allConnectedBoards(connectedBoards);
+                    }
+                    written = client.send(allConnectedBoards);
+                }
+                if (!written) {
+                    gone.add(clientSocket);
+                }
+            }
+            for (Socket clientSocket : gone) {
+                leave(clientSocket);
+            }
+        } finally {
+            broadcastLock.unlock();
         }
         checkRep();
     }
     
+    /**
+     * Answers a client that asks for versions of the connected boards: from now on it is only told
+     * about the boards that join and leave, after a snapshot of every connected board if the
+     * version it knows is not the current one
+     * 
+     * @param socket the socket connected to the client
+     * @param known the version the client knows
+     */
+    private void sendMembershipSnapshot(Socket socket, long known) {
+        broadcastLock.lock();
+        try {
+            final Client client = clients.get(socket);
+            if (client == null) {
+                return;
+            }
+            client.versioned = true;
+            if (membership.isStale(known)) {
+                final Set<String> connectedBoards;
+                synchronized (socketMappings) {
+                    connectedBoards = new HashSet<>(socketMappings.keySet());
+                }
+                send(socket, membership.snapshot(connectedBoards));
+            }
+        } finally {
+            broadcastLock.unlock();
+        }
+    }
+    
     /*
      * Disconnects all clients and closes the server
      */
-    private synchronized void disconnectAll() throws IOException {
-        for (Socket socket : socketMappings.values()) {
-            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-            out.println("success allConnectedBoards=");
-            out.flush();
-            out.println("disconnect");
-            out.flush();
+    private void disconnectAll() {
+        broadcastLock.lock();
+        try {
+            for (Socket socket : sockets()) {
+                send(socket, "success allConnectedBoards=", "disconnect");
+            }
+        } finally {
+            broadcastLock.unlock();
+        }
+    }
+    
+    /**
+     * @return the sockets of the connected clients
+     */
+    private List<Socket> sockets() {
+        synchronized (socketMappings) {
+            return new ArrayList<>(socketMappings.values());
         }
     }
     
     /**
-     * Sends a message to the boards being joined by the message about their joining
+     * @return the names of the connected boards and the sockets of the clients running them
+     */
+    private Map<String, Socket> boards() {
+        synchronized (socketMappings) {
+            return new HashMap<>(socketMappings);
+        }
+    }
+    
+    /**
+     * Sends a message to the boards being joined by the message about their joining, and if both
+     * listen for links, tells the first of them where to link to the second
      * 
      * @param message the joining boards message. Must be of the form "h board1 board2" or "v board1 board2"
-     * @throws IOException if there is an error writing to one of the board sockets
      */
-    private void sendJoinBoards(String message) throws IOException {
+    void sendJoinBoards(String message) {
         final String[] messageSplit =  message.split("[ ]+");
         final StringBuilder response = new StringBuilder();
         response.append("success ");
@@ -188,13 +616,9 @@ public class FlingballTextServer {
             final String rightBoard = messageSplit[2];
             final String disconnectMessageLeft = "success disconnectWall= " + leftBoard + " left"; 
             final String disconnectMessageRight = "success disconnectWall= " + rightBoard + " right"; 
-            for (String boardName : this.socketMappings.keySet()) {
-                if (!boardName.equals(leftBoard) && !boardName.equals(rightBoard)) {
-                    final PrintWriter firstBoardout = new PrintWriter(this.socketMappings.get(boardName).getOutputStream(), true);
-                    firstBoardout.println(disconnectMessageLeft);
-                    firstBoardout.flush();
-                    firstBoardout.println(disconnectMessageRight);
-                    firstBoardout.flush();
+            for (Map.Entry<String, Socket> board : boards().entrySet()) {
+                if (!board.getKey().equals(leftBoard) && !board.getKey().equals(rightBoard)) {
+                    send(board.getValue(), disconnectMessageLeft, disconnectMessageRight);
                 }
             }
       
@@ -204,13 +628,9 @@ public class FlingballTextServer {
             final String bottomBoard = messageSplit[2];
             final String disconnectMessageTop = "success disconnectWall= " + topBoard + " top"; 
             final String disconnectMessageBottom = "success disconnectWall= " + bottomBoard + " bottom"; 
-            for (String boardName : this.socketMappings.keySet()) {
-                if (!boardName.equals(topBoard) && !boardName.equals(bottomBoard)) {
-                    final PrintWriter firstBoardout = new PrintWriter(this.socketMappings.get(boardName).getOutputStream(), true);
-                    firstBoardout.println(disconnectMessageTop.toString());
-                    firstBoardout.flush();
-                    firstBoardout.println(disconnectMessageBottom.toString());
-                    firstBoardout.flush();
+            for (Map.Entry<String, Socket> board : boards().entrySet()) {
+                if (!board.getKey().equals(topBoard) && !board.getKey().equals(bottomBoard)) {
+                    send(board.getValue(), disconnectMessageTop, disconnectMessageBottom);
                 }
             }
         }
@@ -220,50 +640,63 @@ public class FlingballTextServer {
         response.append(" " + secondBoard);
         final Socket firstBoardSocket = socketMappings.get(firstBoard);
         final Socket secondBoardSocket = socketMappings.get(secondBoard);
-        final PrintWriter firstBoardout = new PrintWriter(firstBoardSocket.getOutputStream(), true);
-        firstBoardout.println(response.toString());
-        firstBoardout.flush();
-        final PrintWriter secondBoardout = new PrintWriter(secondBoardSocket.getOutputStream(), true);
-        secondBoardout.println(response.toString());
-        secondBoardout.flush();
+        send(firstBoardSocket, response.toString());
+        send(secondBoardSocket, response.toString());
+        final InetSocketAddress secondBoardAddress = peerAddresses.get(secondBoard);
+        if (peerAddresses.containsKey(firstBoard) && secondBoardAddress != null) {
+            send(firstBoardSocket, PeerLink.peerAt(secondBoard, secondBoardAddress));
+        }
         checkRep();
     }
     
     /**
-     * Handle a single client connection.
+     * Handle a single client connection, in lines of text until the client confirms the binary
+     * framing and in frames after that.
      * Returns when the client disconnects.
      * 
      * @param socket socket connected to client
      * @param boardName the name of the board using this connection
+     * @param in the stream of the socket's input
      * @throws IOException if the connection encounters an error or closes unexpectedly
      */
-    private void handleConnection(Socket socket, String boardName) throws IOException {
-        
-        final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-
+    private void handleConnection(Socket socket, String boardName, DataInputStream in) throws IOException {
         try {
-            for (String input = in.readLine(); input != null; input = in.readLine()) {
-                if (input.isEmpty()) {
-                    continue;
+            boolean binary = false;
+            final WireCodec.LineBuffer line = new WireCodec.LineBuffer();
+            while (line.read(in)) {
+                if (line.matches(OFFER)) {
+                    upgrade(socket);
+                } else if (line.matches(ACCEPT)) {
+                    binary = true;
+                    break;
+                } else if (Membership.isRequest(line.bytes(), line.length())
+                        || PeerLink.isAdvertisement(line.bytes(), line.length()) || !relay(line)) {
+                    handleLine(socket, boardName, line.toString());
                 }
-               
-                final Map<String, Socket> outputToSocketMapping = handleRequest(input, socket);
-                if (outputToSocketMapping.isEmpty()) {
-                   
-                    this.socketMappings.remove(boardName);
-                    sendConnectedBoards();
-                    
+            }
+            if (!binary) {
+                return;
+            }
+            final WireCodec.Decoder decoder = new WireCodec.Decoder();
+            /* the decoder hands out the same String for a name every time, so ids are cached by identity */
+            final Map<String, Integer> ids = new IdentityHashMap<>();
+            for (ServerCommand command = decoder.read(in); command != null; command = decoder.read(in)) {
+                if (command.getKind() == ServerCommand.Kind.TEXT) {
+                    handleLine(socket, boardName, command.toRequest());
                 } else {
-                    assert outputToSocketMapping.size() == 1;
-                    for (String output : outputToSocketMapping.keySet()) {
-                        if (outputToSocketMapping.get(output) == null) {
-                            break;
+                    /* teleports name the board they go to first, as in the text protocol */
+                    final String targetBoardName = command.getNames().get(0);
+                    Integer id = ids.get(targetBoardName);
+                    if (id == null) {
+                        id = routes.find(targetBoardName);
+                        if (id >= 0) {
+                            ids.put(targetBoardName, id);
                         }
-                        out = new PrintWriter(outputToSocketMapping.get(output).getOutputStream(), true);
-                        out.println(output);
                     }
-                    out.flush();
+                    final Socket targetBoardSocket = routes.route(id);
+                    if (targetBoardSocket != null) {
+                        send(targetBoardSocket, command);
+                    }
                 }
             }
         } catch(IOException ex) {
@@ -271,6 +704,90 @@ public class FlingballTextServer {
         } 
     }
     
+    /**
+     * Relays a line naming a board as its second word to that board, with "success " in front of
+     * it, without decoding it
+     * 
+     * @param line the line the client sent
+     * @return false if the line names no board, so it has to be handled as a request instead
+     */
+    private boolean relay(WireCodec.LineBuffer line) {
+        final byte[] bytes = line.bytes();
+        final int length = line.length();
+        /* the second word, as split("[ ]+") would find it */
+        int start = 0;
+        while (start < length && bytes[start] != ' ') {
+            start++;
+        }
+        while (start < length && bytes[start] == ' ') {
+            start++;
+        }
+        int end = start;
+        while (end < length && bytes[end] != ' ') {
+            end++;
+        }
+        if (start == end) {
+            return false;
+        }
+        final Socket targetBoardSocket = routes.route(routes.find(bytes, start, end - start));
+        final Client client = targetBoardSocket == null ? null : clients.get(targetBoardSocket);
+        if (client != null && !client.relay(bytes, length)) {
+            leave(targetBoardSocket);
+        }
+        return true;
+    }
+    
+    /**
+     * Accepts a client's offer of the binary framing. A client that can no longer be written to
+     * leaves, as if it quit.
+     * 
+     * @param socket the socket connected to the client
+     */
+    private void upgrade(Socket socket) {
+        final Client client = clients.get(socket);
+        if (client != null && !client.upgrade()) {
+            leave(socket);
+        }
+    }
+    
+    /**
+     * Handle a single line of the text protocol from a client
+     * 
+     * @param socket socket connected to client
+     * @param boardName the name of the board using this connection
+     * @param input the line the client sent
+     */
+    private void handleLine(Socket socket, String boardName, String input) {
+        if (input.isEmpty()) {
+            return;
+        }
+        final OptionalLong known = Membership.parseRequest(input);
+        if (known.isPresent()) {
+            sendMembershipSnapshot(socket, known.getAsLong());
+            return;
+        }
+        final OptionalInt peerPort = PeerLink.parseAdvertisement(input);
+        if (peerPort.isPresent()) {
+            peerAddresses.put(boardName, new InetSocketAddress(socket.getInetAddress(), peerPort.getAsInt()));
+            return;
+        }
+       
+        final Map<String, Socket> outputToSocketMapping = handleRequest(input, socket);
+        if (outputToSocketMapping.isEmpty()) {
+           
+            sendMembership(boardName, Optional.empty(), OptionalLong.empty());
+            
+        } else {
+            assert outputToSocketMapping.size() == 1;
+            for (String output : outputToSocketMapping.keySet()) {
+                if (outputToSocketMapping.get(output) == null) {
+                    break;
+                }
+                send(outputToSocketMapping.get(output), output);
+            }
+        }
+    }
+    
     /**
      * Handle a single client request and return the server response.
      * 
@@ -283,9 +800,8 @@ public class FlingballTextServer {
      * @param input message from client
      * @param socket the socket making the request
      * @return output message to client
-     * @throws IOException if unable to read or write to socket
      */
-    private Map<String, Socket> handleRequest(String input, Socket socket) throws IOException {
+    private Map<String, Socket> handleRequest(String input, Socket socket) {
         try {
             if (input.equals("quit")) {
                 return Collections.emptyMap();
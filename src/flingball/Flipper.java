@@ -18,7 +18,12 @@ import physics.Vect;
  * greater velocity than it hit with. If the flipper is not moving, it acts as a normal bumper.
  * A flipper is rounded on both ends and flat on its sides.
  * 
- * Immutable, Threadsafe Datatype
+ * A flipper keeps its identity while it flips. Its rotation is a function of the time its
+ * current flip started, read off the clock of the board it is on, so stepping the board moves
+ * the flipper without touching it; the rotation and the line segment and circles at that
+ * rotation are only worked out when a collision or drawing needs them.
+ * 
+ * Mutable, Threadsafe Datatype
  */
 public class Flipper implements Bumper {
 
@@ -26,46 +31,72 @@ public class Flipper implements Bumper {
     private final String name;
     private final Vect location;
     private final Angle orientation;
-    private final Angle rotation;
-    private final boolean isFlipping;
-    
-    private final LineSegment line;
+    private final LineSegment restLine;
     private final Vect pivot;
-    private final List<Circle> circles; // lists contain the elements that make up the flipper
-    private final double angularVelocity;
+    private final Circle sweptBound;
+    
+    private SimulationClock clock = new SimulationClock();
+    private boolean isFlipping;
+    private double startRotation;
+    private double flipStart;
+    private double flipAdvance;
+    private double angularVelocity;
+    
+    private double poseRotation = Double.NaN;
+    private LineSegment line;
+    private final List<Circle> circles = new ArrayList<>(); // lists contain the elements that make up the flipper
+    private long rotatingSolves = 0;
+    private long rotatingSolvesAvoided = 0;
     
     private static final Color COLOR = Color.BLUE;
     private static final double STATIC_COEFF = 0.95;
     private static final double LENGTH = 2;
+    private static final double SLOP = Board.EPSILON_3;
+    private static final double END_ROTATION = Angle.DEG_90.radians();
     
     // Abstraction Function:
-    //  AF(isRightFlipper, name, location, orientation, rotation, isFlipping, line, circles, pivot, 
-    //      angularVelocity, COLOR, LENGTH) = A flipper is identified by name. Physically, a flipper 
-    //                  has color COLOR, a location on a flingball board given by location, an 
-    //                  orientation orientation detailing how much the flipper is rotated about its 
-    //                  pivot, a rotation detailing how far (in terms of an Angle) the flipper is through
-    //                  its rotation. isRightFlipper tells whether or not the flipper is a right flipper 
+    //  AF(isRightFlipper, name, location, orientation, restLine, pivot, sweptBound, clock, isFlipping,
+    //      startRotation, flipStart, flipAdvance, angularVelocity, poseRotation, line, circles,
+    //      rotatingSolves, rotatingSolvesAvoided, COLOR, LENGTH) = A flipper is identified by name. Physically, a flipper has color COLOR,
+    //                  a location on a flingball board given by location, an orientation
+    //                  orientation detailing how much the flipper is rotated about its pivot, and
+    //                  a rotation detailing how far (in radians) the flipper is through its
+    //                  rotation. isRightFlipper tells whether or not the flipper is a right flipper 
     //                  or left flipper which described where it lays in its 2L x 2L square. If right, 
     //                  when vertical lays on the right half of the 2L x 2L square. When left, it lays
     //                  on the left half of the 2L x 2L square. The length of the flipper is given by 
-    //                  LENGTH and is 2L line. circles contains all the pieces that make up the border
-    //                  or outline shape of the flipper. angularVelocity is the speed at which the 
-    //                  flipper flips (and direction denoted by +/-. pivot is the point about which 
-    //                  the flipper rotates. isFlipping identifies whether the flipper is currently
-    //                  moving from one position to another.
+    //                  LENGTH and is 2L line, which lies along restLine at rotation 0. pivot is the
+    //                  point about which the flipper rotates. angularVelocity is the speed at which
+    //                  the flipper flips (and direction denoted by +/-) in its current flip, or in its
+    //                  next flip if it is not flipping.
+    //                  If isFlipping is false the rotation is startRotation. Otherwise the flipper
+    //                  was at startRotation at time flipStart on clock, plus flipAdvance seconds it
+    //                  was pushed through its flip by triggers, and turns at angularVelocity since;
+    //                  once that takes it past 0 or 90 degrees it has stopped at that end and will
+    //                  flip back the other way next.
+    //                  If poseRotation is not NaN, line and circles are the border or outline shape
+    //                  of the flipper at rotation poseRotation.
+    //                  sweptBound is the disc the flipper sweeps about pivot, widened by the radius of
+    //                  a ball. rotatingSolves and rotatingSolvesAvoided count the rotating collision
+    //                  solves of this flipper that were run and the ones that were skipped because
+    //                  the ball could not reach the flipper.
     // Representation Invariant:
-    //  --| no fields can be null
+    //  --| no fields can be null, except line before the shape is first worked out
     //  --| location must be integers, [0, 19]
     //  --| orientation must be either 0, 90, 180, 270 or the radial equivalent
-    //  --| rotation must be in [0,90] degrees
+    //  --| startRotation must be in [0,90] degrees
     //  --| angular velocity must be +1080 degrees or -1080 degrees
-    //  --| circles size must be equal to the number of ends of a line segment (2)
+    //  --| flipAdvance >= 0
+    //  --| rotatingSolves, rotatingSolvesAvoided >= 0
+    //  --| sweptBound is centered on pivot with radius LENGTH + Ball.RADIUS
+    //  --| circles size must be equal to the number of ends of a line segment (2) once line is set
     // Safety From Representation Exposure:
-    //  --| all fields are private and final
-    //  --| class is immutable and the only return types are primitives or immutable objects
+    //  --| all fields are private
+    //  --| the only return types are primitives or immutable objects
     // Thread Safety Argument:
-    //  --| class satisfy the strongest form immutability and does not have any beneficent mutation
-    //  --| all fields are private and final
+    //  --| every method that reads or changes the mutable fields is synchronized, following the
+    //      monitor pattern; the clock is only advanced by the Board the flipper is on, under the
+    //      board's lock, which is also held whenever the board reads the flipper
     
     /**
      * Verifies that the representation invariant is not broken
@@ -74,9 +105,9 @@ public class Flipper implements Bumper {
         assert name != null;
         assert location != null;
         assert orientation != null;
-        assert rotation != null;
-        assert line != null;
+        assert restLine != null;
         assert pivot != null;
+        assert clock != null;
         assert circles != null;
         
         assert (int) 0 <= location.x() && location.x() <= Board.L;
@@ -85,7 +116,10 @@ public class Flipper implements Bumper {
         assert (orientation.compareTo(Angle.ZERO) == 0) || (orientation.compareTo(Angle.DEG_90) == 0)
         || (orientation.compareTo(Angle.DEG_180) == 0) || (orientation.compareTo(Angle.DEG_270) == 0);
         
-        assert Angle.DEG_90.compareTo(rotation) >= 0 && new Angle(0).compareTo(rotation) <= 0;
+        assert 0 <= startRotation && startRotation <= END_ROTATION;
+        assert flipAdvance >= 0;
+        assert sweptBound != null;
+        assert rotatingSolves >= 0 && rotatingSolvesAvoided >= 0;
         
         final double angularVelocityDegrees = 1080;
         final double delta = 0.01; // allow the velocity to be reasonably close but different
@@ -93,7 +127,7 @@ public class Flipper implements Bumper {
         assert Math.abs(angularVelocity - Math.toRadians(angularVelocityDegrees)) <= delta ||
                Math.abs(angularVelocity - Math.toRadians(-angularVelocityDegrees)) <= delta;
         
-        assert circles.size() == 2;
+        assert line == null || circles.size() == 2;
     }
     
     /**
@@ -120,20 +154,11 @@ public class Flipper implements Bumper {
         this.name = name;
         this.location = location;
         this.orientation = orientation;
-        this.rotation = rotation;
+        this.startRotation = Math.max(0, Math.min(END_ROTATION, rotation.radians()));
         this.isFlipping = isFlipping;
         this.angularVelocity = angularVelocity;
         
         final LineSegment ls;
-        circles = new ArrayList<>();
-        
-        final Angle rotateDirection;
-        if (!isRightFlipper) {
-            rotateDirection = new Angle(0).minus(rotation);
-        }
-        else {
-            rotateDirection = rotation;
-        }
         
         if (isRightFlipper) {
             if (orientation.compareTo(new Angle(0)) == 0) { // pivot is NE 
@@ -172,10 +197,8 @@ public class Flipper implements Bumper {
                 ls = new LineSegment(pivot, location);
             }
         }
-
-        this.line = Physics.rotateAround(ls, pivot, rotateDirection);
-        circles.add(new Circle(line.p1(), 0));
-        circles.add(new Circle(line.p2(), 0));
+        this.restLine = ls;
+        this.sweptBound = new Circle(pivot, LENGTH + Ball.RADIUS);
         
         checkRep();
     }
@@ -185,51 +208,124 @@ public class Flipper implements Bumper {
         return location;
     }
     
+    @Override
+    public Vect getSize() {
+        return new Vect(LENGTH, LENGTH);
+    }
+    
     /**
-     * Creates a new Flipper that is in either an ending static state or in a moving state. This is
-     * determined by this Flipper's position and state. For example, if this Flipper is currently
-     * in the middle of a starting and ending state, the Flipper generated will be in a transition
-     * state. 
+     * Moves this Flipper on the clock of a board, keeping its rotation and how far it is
+     * through its flip
      * 
-     * @param time the time-step (in seconds) between this Flipper and the creation of a new Flipper
-     * @return a new Flipper that is either in a finishing state, i.e. done flipping, or in a
-     *         state that is moving
+     * @param boardClock the clock of the board this Flipper is put on
      */
-    public Flipper flip(double time) {
-        Angle newRotation;
-        boolean nowFlipping = true;
-        double newVelocity = angularVelocity;
-        
-        if (!isRightFlipper) {
-            newRotation = rotation.plus(new Angle(time * angularVelocity));
-        }
-        else {
-            newRotation = rotation.minus(new Angle(time * angularVelocity));
-        }
-        if (new Angle(0).compareTo(newRotation) >= 0 || Angle.DEG_90.compareTo(newRotation) <= 0) { // done flipping
-            nowFlipping = false;
-            newVelocity = -angularVelocity;
-            if ((!isRightFlipper && angularVelocity > 0) || (isRightFlipper && angularVelocity < 0)) {
-                newRotation = Angle.DEG_90;
-            }
-            else {
-                newRotation = new Angle(0);
-            }
+    synchronized void setClock(SimulationClock boardClock) {
+        flipStart += boardClock.now() - clock.now();
+        clock = boardClock;
+        checkRep();
+    }
+    
+    /**
+     * Pushes this Flipper through its flip, starting a flip first if it is not flipping. A flip
+     * that would go past its end stops there, and the next flip goes back the other way.
+     * 
+     * @param time the time-step (in seconds) to push the flip through by, beyond the time that
+     *             has passed on the clock
+     */
+    synchronized void flip(double time) {
+        settle();
+        if (!isFlipping) {
+            isFlipping = true;
+            flipStart = clock.now();
+            flipAdvance = 0;
         }
-        
-        return new Flipper(isRightFlipper, name, location, orientation, newRotation, nowFlipping, newVelocity);
+        flipAdvance += time;
+        settle();
+        checkRep();
     }
     
     /**
      * @return whether this Flipper is in a state of transition between its two endpoint states,
      *         i.e. whether this Flipper is flipping
      */
-    public boolean isFlipping() {
+    public synchronized boolean isFlipping() {
+        settle();
         return isFlipping;
     }
     
+    /**
+     * @return the time (in seconds) until this Flipper reaches the end of its current flip and
+     *         stops, or positive infinity if this Flipper is not flipping
+     */
+    public synchronized double getTimeTillFlipEnds() {
+        settle();
+        if (!isFlipping) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double rotationRate = rotationRate();
+        final double endRotation = rotationRate > 0 ? END_ROTATION : 0;
+        return Math.max((endRotation - rotation()) / rotationRate, 0);
+    }
+    
+    /**
+     * @return the rate (in radians per second) at which the rotation of this Flipper grows in
+     *         its current or next flip
+     */
+    private double rotationRate() {
+        return isRightFlipper ? -angularVelocity : angularVelocity;
+    }
+    
+    /**
+     * @return the rotation (in radians) of this Flipper at the current time on its clock,
+     *         requires that settle() was called at this time
+     */
+    private double rotation() {
+        if (!isFlipping) {
+            return startRotation;
+        }
+        return startRotation + rotationRate() * (clock.now() - flipStart + flipAdvance);
+    }
+    
+    /**
+     * Ends the flip of this Flipper if it has reached the end of it by the current time on its
+     * clock, leaving the Flipper at that end and ready to flip back
+     */
+    private void settle() {
+        if (!isFlipping) {
+            return;
+        }
+        final double rotation = rotation();
+        final boolean rising = rotationRate() > 0;
+        if ((rising && rotation >= END_ROTATION) || (!rising && rotation <= 0)) {
+            isFlipping = false;
+            startRotation = rising ? END_ROTATION : 0;
+            flipAdvance = 0;
+            angularVelocity = -angularVelocity;
+        }
+    }
+    
+    /**
+     * Works out the line segment and circles of this Flipper at the current time on its clock,
+     * unless they are already known for its current rotation
+     */
+    private void pose() {
+        settle();
+        final double rotation = rotation();
+        if (rotation == poseRotation) {
+            return;
+        }
+        final Angle rotationAngle = new Angle(rotation);
+        final Angle rotateDirection = isRightFlipper ? rotationAngle : new Angle(0).minus(rotationAngle);
+        line = Physics.rotateAround(restLine, pivot, rotateDirection);
+        circles.clear();
+        circles.add(new Circle(line.p1(), 0));
+        circles.add(new Circle(line.p2(), 0));
+        poseRotation = rotation;
+    }
+    
     @Override
-    public Ball getCollisionRedirection(Ball ball) {
+    public synchronized Ball getCollisionRedirection(Ball ball) {
+        pose();
         for (int i = 0; i < circles.size(); i++) {
             final Vect newVelocity;
             if (isFlipping) {
@@ -274,27 +370,122 @@ public class Flipper implements Bumper {
     
     @Override
     public double getTimeTillCollision(Ball ball, double delta) {
+        return getTimeTillCollision(ball.getLocation().x(), ball.getLocation().y(),
+                ball.getVelocity().x(), ball.getVelocity().y(), delta);
+    }
+    
+    /**
+     * Calculates the time until a ball collides with this Flipper, the same as
+     * getTimeTillCollision(Ball, double) does for a ball at that location and velocity. A Circle
+     * and a Vect are only made for the ball when it is run through a rotating solve.
+     * 
+     * @param ballX the x coordinate of the ball's center
+     * @param ballY the y coordinate of the ball's center
+     * @param velocityX the x component of the ball's velocity
+     * @param velocityY the y component of the ball's velocity
+     * @param delta the "foresight" time
+     * @return the time until the ball collides with this Flipper if it is <= delta, else positive
+     *         infinity
+     */
+    synchronized double getTimeTillCollision(double ballX, double ballY, double velocityX, double velocityY,
+            double delta) {
+        pose();
         double minTimeTillCollision = Double.POSITIVE_INFINITY;
         
         if (isFlipping) {
-            minTimeTillCollision = Math.min(minTimeTillCollision, Physics.timeUntilRotatingWallCollision(line,
-                    pivot, -angularVelocity, ball.getCircle(), ball.getVelocity()));
+            if (mayReach(ballX, ballY, velocityX, velocityY, delta, sweptBound.getCenter(), sweptBound.getRadius())) {
+                rotatingSolves++;
+                minTimeTillCollision = Math.min(minTimeTillCollision, Physics.timeUntilRotatingWallCollision(line,
+                        pivot, -angularVelocity, new Circle(ballX, ballY, Ball.RADIUS), new Vect(velocityX, velocityY)));
+            }
+            else {
+                rotatingSolvesAvoided++;
+            }
         }
         else {
-            minTimeTillCollision = Math.min(minTimeTillCollision, Physics.timeUntilWallCollision(line, ball.getCircle(), ball.getVelocity()));
+            minTimeTillCollision = Math.min(minTimeTillCollision, 
+                    StaticGeometry.timeUntilWall(line, ballX, ballY, velocityX, velocityY));
         }
         for (int i = 0; i < circles.size(); i++) {
+            final Circle circle = circles.get(i);
             if (isFlipping) {
-                minTimeTillCollision = Math.min(minTimeTillCollision,Physics.timeUntilRotatingCircleCollision(circles.get(i),
-                        location, -angularVelocity, ball.getCircle(), ball.getVelocity()));
+                // the ends are rotated about location, as in getCollisionRedirection, so each sweeps
+                // its own disc about location rather than sweptBound
+                final double reach = Math.sqrt(circle.getCenter().distanceSquared(location));
+                if (mayReach(ballX, ballY, velocityX, velocityY, delta, location, reach + Ball.RADIUS)) {
+                    rotatingSolves++;
+                    minTimeTillCollision = Math.min(minTimeTillCollision,Physics.timeUntilRotatingCircleCollision(circle,
+                            location, -angularVelocity, new Circle(ballX, ballY, Ball.RADIUS), new Vect(velocityX, velocityY)));
+                }
+                else {
+                    rotatingSolvesAvoided++;
+                }
             }
             else {
-                minTimeTillCollision = Math.min(minTimeTillCollision,Physics.timeUntilCircleCollision(circles.get(i),
-                        ball.getCircle(), ball.getVelocity()));
+                minTimeTillCollision = Math.min(minTimeTillCollision, StaticGeometry.timeUntilCircle(circle.getCenter().x(),
+                        circle.getCenter().y(), circle.getRadius(), ballX, ballY, velocityX, velocityY));
             }
         }
         return Math.max(minTimeTillCollision,0) <= delta ? minTimeTillCollision : Double.POSITIVE_INFINITY;
     }
+    
+    /**
+     * @return a circle around the pivot of this Flipper that a ball must touch to collide with
+     *         the Flipper, whatever its rotation: the Flipper sweeps a disc of radius LENGTH about
+     *         its pivot, widened by the radius of a ball. While flipping, a ball whose path misses
+     *         it is never run through the rotating wall solver.
+     */
+    public Circle getSweptBound() {
+        return sweptBound;
+    }
+    
+    /**
+     * @return the number of rotating collision solves (Physics.timeUntilRotatingWallCollision and
+     *         timeUntilRotatingCircleCollision) that this Flipper has run to find collision times
+     */
+    public synchronized long getRotatingSolves() {
+        return rotatingSolves;
+    }
+    
+    /**
+     * @return the number of rotating collision solves that this Flipper skipped because the ball
+     *         could not reach it within the "foresight" time
+     */
+    public synchronized long getRotatingSolvesAvoided() {
+        return rotatingSolvesAvoided;
+    }
+    
+    /**
+     * Determines whether a ball, moving along its velocity, can touch anything inside a bound.
+     * This is a conservative test: if it fails, no collision with such a thing can happen within
+     * delta.
+     * 
+     * @param ballX the x coordinate of the ball's center
+     * @param ballY the y coordinate of the ball's center
+     * @param velocityX the x component of the ball's velocity
+     * @param velocityY the y component of the ball's velocity
+     * @param delta the "foresight" time
+     * @param center the center of a disc that holds the region
+     * @param radius the radius of the disc, already widened by the radius of a ball
+     * @return false if the path of the center of the ball over delta stays outside the disc, else true
+     */
+    private static boolean mayReach(double ballX, double ballY, double velocityX, double velocityY, double delta,
+            Vect center, double radius) {
+        final double pathX = velocityX * delta;
+        final double pathY = velocityY * delta;
+        final double toCenterX = center.x() - ballX;
+        final double toCenterY = center.y() - ballY;
+        final double pathSquared = pathX * pathX + pathY * pathY;
+        if (!(pathSquared < Double.POSITIVE_INFINITY)) {
+            return true; // an unbounded path may reach anything
+        }
+        final double along = pathSquared > 0
+                ? Math.max(0, Math.min(1, (toCenterX * pathX + toCenterY * pathY) / pathSquared)) : 0;
+        final double gapX = toCenterX - along * pathX;
+        final double gapY = toCenterY - along * pathY;
+        final double limit = radius + SLOP;
+        return gapX * gapX + gapY * gapY <= limit * limit;
+    }
 
     @Override
     public Color getColor() {
@@ -302,7 +493,18 @@ public class Flipper implements Bumper {
     }
 
     @Override
-    public void draw(Graphics g) {
+    public synchronized void draw(Graphics g) {
+        pose();
+        draw(g, line);
+    }
+    
+    /**
+     * Draws a flipper lying along a line segment
+     * 
+     * @param g Graphics the 2D render on which to draw the flipper
+     * @param line the line segment the flipper lies along, in L
+     */
+    static void draw(Graphics g, LineSegment line) {
         final Graphics2D g2 = (Graphics2D) g;
         g2.setColor(COLOR);
         final Vect p1 = line.p1().times(Board.L);
@@ -310,6 +512,14 @@ public class Flipper implements Bumper {
         final LineSegment lineSegment = new LineSegment(p1, p2);
         g2.draw(lineSegment.toLine2D());
     }
+    
+    /**
+     * @return the line segment the flipper currently lies along
+     */
+    synchronized LineSegment getLine() {
+        pose();
+        return line;
+    }
 
     @Override
     public String getName() {
@@ -317,22 +527,23 @@ public class Flipper implements Bumper {
     }
     
     @Override
-    public String toString() {
+    public synchronized String toString() {
+        settle();
         return "Flipper " + name + " is a " + (isRightFlipper ? "right" : "left") + " flipper, pivot @ " + location +
-                " orientation= " + orientation +  " radians into rotation= " + rotation.radians() + "\n";
+                " orientation= " + orientation +  " radians into rotation= " + rotation() + "\n";
     }
 
+    /*
+     * A flipper is the same flipper all through its flips, so equality and hashing only look at
+     * what identifies it and never change.
+     */
+    
     @Override 
     public int hashCode() {
        final int prime1 = 37;
        final int prime2 = 43;
-       final int prime3 = 47;
-       final int prime4 = 39;
        final int rightFlipperHash = isRightFlipper ? prime1 : prime2;
-       final int flippingHash = isFlipping ? prime3 : prime4;
-       return name.hashCode() + location.hashCode() + rightFlipperHash + flippingHash +
-               orientation.hashCode() + rotation.hashCode() + line.hashCode() + pivot.hashCode() +
-               circles.hashCode() + (int) angularVelocity;
+       return name.hashCode() + location.hashCode() + rightFlipperHash + orientation.hashCode();
     }
     
     @Override 
@@ -342,12 +553,6 @@ public class Flipper implements Bumper {
         return this.name.equals(that.name) && 
                this.location.equals(that.location) &&
                this.isRightFlipper == (that.isRightFlipper) &&
-               this.isFlipping == (that.isFlipping) &&
-               this.orientation.equals(that.orientation) &&
-               this.rotation.equals(that.rotation) &&
-               this.line.equals(that.line) &&
-               this.pivot.equals(that.pivot) &&
-               this.circles.equals(that.circles) &&
-               this.angularVelocity == that.angularVelocity;
+               this.orientation.equals(that.orientation);
     }
 }
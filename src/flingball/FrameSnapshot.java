@@ -0,0 +1,221 @@
+package flingball;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import physics.LineSegment;
+
+/**
+ * Everything about a board that changes from frame to frame and gets drawn: where the balls that
+ * are not inside an absorber are, where the flippers lie, and the names of the boards joined to
+ * each wall. A board publishes a new snapshot after every update, so the Event Dispatch Thread
+ * can paint the latest frame without taking the board's lock.
+ *
+ * Immutable
+ */
+class FrameSnapshot {
+
+    /**
+     * The snapshot of a board that has not been updated yet
+     */
+    static final FrameSnapshot EMPTY = new FrameSnapshot(0, new double[0], new double[0], new LineSegment[0],
+            Collections.emptyMap());
+
+    private static final String FRAME_PREFIX = "frame= ";
+    private static final int CENTERING_OFFSET = 170;
+    private static final int CHAR_OFFSET = 12;
+    private static final int TOP_Y_OFFSET = 13;
+    private static final int BOTTOM_Y_OFFSET = 395;
+    private static final int LEFT_X_OFFSET = 3;
+    private static final int RIGHT_X_OFFSET = 390;
+
+    private final double time;
+    private final double[] ballX;
+    private final double[] ballY;
+    private final LineSegment[] flippers;
+    private final Map<Wall, String> banners;
+
+    // Abstraction Function:
+    //  AF(time, ballX, ballY, flippers, banners) =
+    //          The frame of a board at simulated time time, with a ball drawn centered at
+    //          (ballX[i], ballY[i]) for every i, a flipper drawn along every line segment of
+    //          flippers, and the name banners.get(wall) drawn along every wall in banners
+    // Representation Invariant:
+    //  --| ballX.length == ballY.length
+    //  --| time >= 0
+    // Safety from Representation Exposure:
+    //  --| all fields are private and final, the arrays are never returned, LineSegment is
+    //      immutable and banners is an unmodifiable copy
+    // Thread Safety Argument:
+    //  --| immutable, and the arrays are filled in before the constructor returns, so any thread
+    //      that reads the snapshot through the volatile field it is published in sees them filled
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert ballX.length == ballY.length;
+        assert time >= 0;
+    }
+
+    /**
+     * Make a snapshot of a frame; takes ownership of the arrays
+     *
+     * @param time the simulated time of the frame
+     * @param ballX the x coordinates of the centers of the balls to draw
+     * @param ballY the y coordinates of the centers of the balls to draw, as long as ballX
+     * @param flippers the line segments the flippers lie along
+     * @param banners the name of the board joined to each wall that has one
+     */
+    FrameSnapshot(double time, double[] ballX, double[] ballY, LineSegment[] flippers, Map<Wall, String> banners) {
+        this.time = time;
+        this.ballX = ballX;
+        this.ballY = ballY;
+        this.flippers = flippers;
+        this.banners = banners.isEmpty() ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new EnumMap<>(banners));
+        checkRep();
+    }
+
+    /**
+     * @return the simulated time of the frame
+     */
+    double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the number of balls drawn in the frame
+     */
+    int getBallCount() {
+        return ballX.length;
+    }
+
+    /**
+     * Encodes the frame as one line of text for a viewer: "frame=", the time, the number of balls
+     * followed by the x and y of each, the number of flippers followed by the x and y of both ends
+     * of each, and the number of banners followed by the wall and the name of each, all separated
+     * by single spaces
+     *
+     * @return the frame as a line, without a line terminator
+     */
+    String encode() {
+        final StringBuilder line = new StringBuilder(FRAME_PREFIX).append(time);
+        line.append(' ').append(ballX.length);
+        for (int i = 0; i < ballX.length; i++) {
+            line.append(' ').append(ballX[i]).append(' ').append(ballY[i]);
+        }
+        line.append(' ').append(flippers.length);
+        for (LineSegment flipper : flippers) {
+            line.append(' ').append(flipper.p1().x()).append(' ').append(flipper.p1().y())
+                .append(' ').append(flipper.p2().x()).append(' ').append(flipper.p2().y());
+        }
+        line.append(' ').append(banners.size());
+        for (Map.Entry<Wall, String> banner : banners.entrySet()) {
+            line.append(' ').append(banner.getKey().name().toLowerCase()).append(' ').append(banner.getValue());
+        }
+        return line.toString();
+    }
+
+    /**
+     * Decodes a line made by encode
+     *
+     * @param line a line of text starting with "frame="
+     * @return the frame the line holds
+     * @throws IllegalArgumentException if line is not a frame encoded by encode
+     */
+    static FrameSnapshot decode(String line) throws IllegalArgumentException {
+        if (!line.startsWith(FRAME_PREFIX)) {
+            throw new IllegalArgumentException("Not a frame: " + line);
+        }
+        final String[] words = line.substring(FRAME_PREFIX.length()).split(" ");
+        try {
+            int next = 0;
+            final double time = Double.parseDouble(words[next++]);
+            final int balls = Integer.parseInt(words[next++]);
+            final double[] ballX = new double[balls];
+            final double[] ballY = new double[balls];
+            for (int i = 0; i < balls; i++) {
+                ballX[i] = Double.parseDouble(words[next++]);
+                ballY[i] = Double.parseDouble(words[next++]);
+            }
+            final LineSegment[] flippers = new LineSegment[Integer.parseInt(words[next++])];
+            for (int i = 0; i < flippers.length; i++) {
+                flippers[i] = new LineSegment(Double.parseDouble(words[next++]), Double.parseDouble(words[next++]),
+                        Double.parseDouble(words[next++]), Double.parseDouble(words[next++]));
+            }
+            final int bannerCount = Integer.parseInt(words[next++]);
+            final Map<Wall, String> banners = new EnumMap<>(Wall.class);
+            for (int i = 0; i < bannerCount; i++) {
+                banners.put(Wall.valueOf(words[next++].toUpperCase()), words[next++]);
+            }
+            if (next != words.length || time < 0) {
+                throw new IllegalArgumentException("Not a frame: " + line);
+            }
+            return new FrameSnapshot(time, ballX, ballY, flippers, banners);
+        } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Not a frame: " + line, e);
+        }
+    }
+
+    /**
+     * Draws the balls, the flippers and the join banners of the frame
+     *
+     * @param graphics the graphics to draw on
+     */
+    void draw(Graphics graphics) {
+        drawBalls(graphics);
+        drawFlippers(graphics);
+        drawJoinBanners(graphics);
+    }
+
+    /**
+     * Draws the balls of the frame
+     *
+     * @param graphics the graphics to draw on
+     */
+    void drawBalls(Graphics graphics) {
+        for (int i = 0; i < ballX.length; i++) {
+            Ball.draw(graphics, ballX[i], ballY[i]);
+        }
+    }
+
+    /**
+     * Draws the flippers of the frame
+     *
+     * @param graphics the graphics to draw on
+     */
+    void drawFlippers(Graphics graphics) {
+        for (LineSegment flipper : flippers) {
+            Flipper.draw(graphics, flipper);
+        }
+    }
+
+    /**
+     * Draws the name of the board joined to each wall along that wall
+     *
+     * @param graphics the graphics to draw on
+     */
+    void drawJoinBanners(Graphics graphics) {
+        graphics.setColor(Color.BLACK);
+        for (Map.Entry<Wall, String> banner : banners.entrySet()) {
+            final Wall wall = banner.getKey();
+            int nextCharOffset = 0;
+            for (char c : banner.getValue().toCharArray()) {
+                if (wall == Wall.TOP) {
+                    graphics.drawChars(new char[]{c}, 0, 1, CENTERING_OFFSET + nextCharOffset, TOP_Y_OFFSET);
+                } else if (wall == Wall.BOTTOM) {
+                    graphics.drawChars(new char[]{c}, 0, 1, CENTERING_OFFSET + nextCharOffset, BOTTOM_Y_OFFSET);
+                } else if (wall == Wall.LEFT) {
+                    graphics.drawChars(new char[]{c}, 0, 1, LEFT_X_OFFSET, CENTERING_OFFSET + nextCharOffset);
+                } else if (wall == Wall.RIGHT) {
+                    graphics.drawChars(new char[]{c}, 0, 1, RIGHT_X_OFFSET, CENTERING_OFFSET + nextCharOffset);
+                }
+                nextCharOffset += CHAR_OFFSET;
+            }
+        }
+    }
+}
@@ -18,6 +18,14 @@ public interface Gadget {
      */
     public Vect getLocation();
 
+    /**
+     * Get the size of a Gadget's bounding box.
+     * 
+     * @return the width and height of the axis-aligned box whose top-left corner is
+     *         getLocation() and which contains every point the Gadget can occupy.
+     */
+    public Vect getSize();
+
     /**
      * Gets the color of the Gadget.
      * 
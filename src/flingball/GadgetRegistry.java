@@ -0,0 +1,222 @@
+package flingball;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The gadgets of a board indexed by name, along with the trigger -> action wiring between them
+ * compiled into primitive adjacency arrays. Every gadget is given an id in the order it is
+ * registered, and the absorbers and flippers a trigger fires are kept as arrays of those ids, so
+ * that finding a gadget is one hash lookup and firing a trigger is a loop over ints, neither of
+ * which allocates.
+ *
+ * Gadget names on a board are unique, so a gadget whose name is already taken is not registered.
+ *
+ * Mutable, not threadsafe
+ */
+class GadgetRegistry {
+
+    private static final int[] NO_TARGETS = new int[0];
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> idsByName = new HashMap<>();
+    private Gadget[] gadgets = new Gadget[INITIAL_CAPACITY];
+    private int[][] absorberTargets = new int[INITIAL_CAPACITY][];
+    private int[][] flipperTargets = new int[INITIAL_CAPACITY][];
+    private int count = 0;
+
+    // Abstraction Function:
+    //  AF(idsByName, gadgets, absorberTargets, flipperTargets, count) =
+    //          The gadgets gadgets[0..count-1] of a board, gadget i being named by the key of
+    //          idsByName that maps to i. When gadgets[t] is triggered, the absorbers
+    //          gadgets[absorberTargets[t][k]] and then the flippers gadgets[flipperTargets[t][k]]
+    //          perform their actions, in the order they were wired.
+    // Representation Invariant:
+    //  --| 0 <= count <= gadgets.length == absorberTargets.length == flipperTargets.length
+    //  --| idsByName has exactly count entries, and idsByName.get(gadgets[i].getName()) == i
+    //  --| for i < count, absorberTargets[i] and flipperTargets[i] are non-null, without
+    //      duplicates, and hold ids of absorbers and flippers respectively
+    // Safety from Representation Exposure:
+    //  --| all fields are private, no array is ever returned and the gadgets handed out are
+    //      the board's own gadgets
+    // Thread Safety Argument:
+    //  --| not threadsafe, confined to the Board that owns it and only used under its lock
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert 0 <= count && count <= gadgets.length;
+        assert gadgets.length == absorberTargets.length && gadgets.length == flipperTargets.length;
+        assert idsByName.size() == count;
+        for (int id = 0; id < count; id++) {
+            assert idsByName.get(gadgets[id].getName()) == id;
+            for (int target : absorberTargets[id]) {
+                assert gadgets[target] instanceof Absorber;
+            }
+            for (int target : flipperTargets[id]) {
+                assert gadgets[target] instanceof Flipper;
+            }
+        }
+    }
+
+    /**
+     * Registers a gadget under its name
+     *
+     * @param gadget a gadget that was just added to the board
+     * @return true if gadget was registered, false if a gadget of the same name already was
+     */
+    boolean register(Gadget gadget) {
+        if (idsByName.containsKey(gadget.getName())) {
+            return false;
+        }
+        if (count == gadgets.length) {
+            gadgets = Arrays.copyOf(gadgets, 2 * count);
+            absorberTargets = Arrays.copyOf(absorberTargets, 2 * count);
+            flipperTargets = Arrays.copyOf(flipperTargets, 2 * count);
+        }
+        gadgets[count] = gadget;
+        absorberTargets[count] = NO_TARGETS;
+        flipperTargets[count] = NO_TARGETS;
+        idsByName.put(gadget.getName(), count);
+        count++;
+        checkRep();
+        return true;
+    }
+
+    /**
+     * @param name the name of a gadget
+     * @return the id of the gadget named name, or -1 if no gadget has that name
+     */
+    int idOf(String name) {
+        final Integer id = idsByName.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id the id of a registered gadget
+     * @return the gadget with that id
+     */
+    Gadget gadget(int id) {
+        return gadgets[id];
+    }
+
+    /**
+     * @param name the name of a gadget
+     * @return the gadget named name, or null if there is none
+     */
+    Gadget gadget(String name) {
+        final int id = idOf(name);
+        return id < 0 ? null : gadgets[id];
+    }
+
+    /**
+     * @param name the name of a gadget
+     * @return the absorber named name, or null if no absorber has that name
+     */
+    Absorber absorber(String name) {
+        final Gadget gadget = gadget(name);
+        return gadget instanceof Absorber ? (Absorber) gadget : null;
+    }
+
+    /**
+     * @param name the name of a gadget
+     * @return the flipper named name, or null if no flipper has that name
+     */
+    Flipper flipper(String name) {
+        final Gadget gadget = gadget(name);
+        return gadget instanceof Flipper ? (Flipper) gadget : null;
+    }
+
+    /**
+     * @param name the name of a gadget
+     * @return the portal named name, or null if no portal has that name
+     */
+    Portal portal(String name) {
+        final Gadget gadget = gadget(name);
+        return gadget instanceof Portal ? (Portal) gadget : null;
+    }
+
+    /**
+     * Wires an absorber to fire when a trigger is triggered
+     *
+     * @param trigger the id of the triggering gadget
+     * @param target the id of an absorber
+     * @return true if the pair was wired, false if it already was
+     */
+    boolean addAbsorberTarget(int trigger, int target) {
+        final int[] wired = append(absorberTargets[trigger], target);
+        if (wired == absorberTargets[trigger]) {
+            return false;
+        }
+        absorberTargets[trigger] = wired;
+        checkRep();
+        return true;
+    }
+
+    /**
+     * Wires a flipper to flip when a trigger is triggered
+     *
+     * @param trigger the id of the triggering gadget
+     * @param target the id of a flipper
+     * @return true if the pair was wired, false if it already was
+     */
+    boolean addFlipperTarget(int trigger, int target) {
+        final int[] wired = append(flipperTargets[trigger], target);
+        if (wired == flipperTargets[trigger]) {
+            return false;
+        }
+        flipperTargets[trigger] = wired;
+        checkRep();
+        return true;
+    }
+
+    /**
+     * @param trigger the id of a gadget
+     * @return the number of absorbers that fire when that gadget is triggered
+     */
+    int absorberTargetCount(int trigger) {
+        return absorberTargets[trigger].length;
+    }
+
+    /**
+     * @param trigger the id of a gadget
+     * @param k the index of a target, 0 <= k < absorberTargetCount(trigger)
+     * @return the k-th absorber wired to trigger
+     */
+    Absorber absorberTarget(int trigger, int k) {
+        return (Absorber) gadgets[absorberTargets[trigger][k]];
+    }
+
+    /**
+     * @param trigger the id of a gadget
+     * @return the number of flippers that flip when that gadget is triggered
+     */
+    int flipperTargetCount(int trigger) {
+        return flipperTargets[trigger].length;
+    }
+
+    /**
+     * @param trigger the id of a gadget
+     * @param k the index of a target, 0 <= k < flipperTargetCount(trigger)
+     * @return the k-th flipper wired to trigger
+     */
+    Flipper flipperTarget(int trigger, int k) {
+        return (Flipper) gadgets[flipperTargets[trigger][k]];
+    }
+
+    /**
+     * @return the array of targets with target appended, or targets itself if it already holds target
+     */
+    private static int[] append(int[] targets, int target) {
+        for (int wired : targets) {
+            if (wired == target) {
+                return targets;
+            }
+        }
+        final int[] appended = Arrays.copyOf(targets, targets.length + 1);
+        appended[targets.length] = target;
+        return appended;
+    }
+}
@@ -0,0 +1,449 @@
+package flingball;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A mutable, threadsafe flingball server that runs the boards itself instead of relaying text
+ * between the clients that run them. The boards are loaded from .fb files when the server starts
+ * and are stepped together in fixed steps of 1/physicsRate simulated seconds: every step is split
+ * across a ForkJoinPool, whose workers steal the boards still waiting to be stepped from each other,
+ * so a board with many balls does not hold up the boards queued behind it on the same core.
+ *
+ * Balls go from board to board through walls and portals without a socket. A board hands each
+ * teleport to its own outbox while it is stepped, and once every board finished the step the
+ * outboxes are emptied into the boards the teleports go to, in the order of the boards, so a ball
+ * always arrives at the start of the next step however the boards were spread across the workers.
+ *
+ * Clients only view a board and send the keys pressed on it. The protocol is one line of text per
+ * message; a viewer sends "view NAME" once it connects, then "keydown KEY" and "keyup KEY" as keys
+ * go down and up, KEY being a key name of KeyNames, and "quit" when it leaves. The server answers
+ * "failure" to a board it does not run, and otherwise sends the latest frame of the board as encoded
+ * by FrameSnapshot every FRAME_INTERVAL_MILLISECONDS while it changes.
+ *
+ * Boards are joined from standard input with the same commands as FlingballTextServer.
+ */
+public class HeadlessServer {
+
+    /**
+     * How often a viewer is sent the latest frame of its board
+     */
+    static final int FRAME_INTERVAL_MILLISECONDS = 20;
+
+    private static final double MAX_BACKLOG_SECONDS = 0.25;
+
+    private final ServerSocket serverSocket;
+    private final Map<String, Board> boards;
+    private final Board[] order;
+    private final List<List<ServerCommand>> outboxes = new ArrayList<>();
+    private final ForkJoinPool pool;
+    private final double stepSeconds;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicLong stepNanos = new AtomicLong();
+    private final AtomicLong handedOff = new AtomicLong();
+    private final AtomicLong droppedNanos = new AtomicLong();
+    private volatile boolean running = false;
+    private Thread thread;
+
+    // Abstraction function:
+    //   AF(serverSocket, boards, order, outboxes, pool, stepSeconds, startNanos, steps, stepNanos,
+    //      handedOff, droppedNanos, running, thread): A server that accepts viewers through
+    //          serverSocket and runs the boards of boards by their names, stepping order[i] by
+    //          stepSeconds on the workers of pool each step, on thread while running is true, where
+    //          outboxes.get(i) holds the teleports order[i] sent during the step in progress. Since
+    //          startNanos, steps steps took stepNanos of wall time, handedOff balls went from one
+    //          board to another, and droppedNanos of simulated time were skipped to keep up.
+    // Representation invariant:
+    //   order holds the values of boards in the order they were loaded, each under its name
+    //   outboxes.size() == order.length, and every outbox is empty between steps
+    //   stepSeconds > 0, and every counter >= 0
+    // Safety from rep exposure:
+    //   all fields are private, no board, outbox or socket is returned, and the statistics are
+    //   returned as numbers and an immutable String
+    // Thread safety argument:
+    //   boards and order are never changed after the constructor, and Board is threadsafe
+    //   step is synchronized, so one step runs at a time; within it outboxes.get(i) is only used by
+    //       the worker stepping order[i], and pool.invoke returns only after every worker finished,
+    //       so the thread emptying the outboxes sees everything they added
+    //   balls are handed to a board through Board.receive, which never takes the lock of the board,
+    //       so no worker ever holds the locks of two boards
+    //   the counters are AtomicLongs, running is volatile, and start and stop, which write thread,
+    //       are synchronized
+    //   serverSocket is confined to the thread running serve(), and each viewer to its own threads
+
+    /**
+     * Asserts the rep invariant
+     */
+    private void checkRep() {
+        assert serverSocket != null;
+        assert boards.size() == order.length && outboxes.size() == order.length;
+        for (Board board : order) {
+            assert boards.get(board.getName()) == board;
+        }
+        assert stepSeconds > 0;
+    }
+
+    /**
+     * Creates a new server that runs boards and listens for viewers on port
+     *
+     * @param port the port for the server to listen on, 0 for any free port
+     * @param boards the boards to run, with distinct names; the server takes ownership of them
+     * @param workers the number of threads stepping the boards, must be > 0
+     * @param physicsRate the number of fixed physics steps per simulated second, must be > 0
+     * @throws IOException if there is an error opening the server socket
+     * @throws IllegalArgumentException if two boards have the same name, or workers or physicsRate
+     *         is not positive
+     */
+    public HeadlessServer(int port, List<Board> boards, int workers, int physicsRate)
+            throws IOException, IllegalArgumentException {
+        if (workers <= 0 || physicsRate <= 0) {
+            throw new IllegalArgumentException("The number of workers and the physics rate must be positive");
+        }
+        final Map<String, Board> byName = new LinkedHashMap<>();
+        for (Board board : boards) {
+            if (byName.put(board.getName(), board) != null) {
+                throw new IllegalArgumentException("Two boards are named " + board.getName());
+            }
+        }
+        this.boards = Collections.unmodifiableMap(byName);
+        this.order = boards.toArray(new Board[0]);
+        this.pool = new ForkJoinPool(workers);
+        this.stepSeconds = 1.0 / physicsRate;
+        final String allConnectedBoards = Membership.allConnectedBoards(this.boards.keySet());
+        for (int i = 0; i < order.length; i++) {
+            final List<ServerCommand> outbox = new ArrayList<>();
+            this.outboxes.add(outbox);
+            order[i].routeTeleports(outbox::add);
+            order[i].receiveCommand(allConnectedBoards);
+        }
+        this.serverSocket = new ServerSocket(port);
+        checkRep();
+    }
+
+    /**
+     * @return the port on which this server is listening for viewers
+     */
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Runs the server: steps the boards in real time, reads commands to join boards from standard
+     * input, and listens for and serves viewers. Never returns normally.
+     *
+     * @throws IOException if an error occurs waiting for a viewer
+     */
+    public void serve() throws IOException {
+        start();
+        final Thread console = new Thread(() -> {
+            try {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.equals("disconnect")) {
+                        System.exit(0);
+                    } else if (line.equals("stats")) {
+                        System.out.println(stats());
+                    } else {
+                        try {
+                            joinBoards(line);
+                        } catch (IllegalArgumentException e) {
+                            System.out.println(e.getMessage());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        console.start();
+        while (true) {
+            // block until a viewer connects
+            final Socket socket = serverSocket.accept();
+            startDaemon(() -> serveViewer(socket));
+        }
+    }
+
+    /**
+     * Joins two boards, as FlingballTextServer does for the same command: every other board is told
+     * to leave the walls that are joined, and the two boards are told they are joined
+     *
+     * @param message "h LEFT RIGHT" to join the right wall of LEFT to the left wall of RIGHT, or
+     *                "v TOP BOTTOM" to join the bottom wall of TOP to the top wall of BOTTOM
+     * @throws IllegalArgumentException if message is not one of those, or names a board this
+     *         server does not run
+     */
+    void joinBoards(String message) throws IllegalArgumentException {
+        final String[] words = message.trim().split("[ ]+");
+        if (words.length != 3 || !(words[0].equals("h") || words[0].equals("v"))
+                || !boards.containsKey(words[1]) || !boards.containsKey(words[2])) {
+            throw new IllegalArgumentException("Join boards with 'h LEFT RIGHT' or 'v TOP BOTTOM': " + message);
+        }
+        final boolean horizontal = words[0].equals("h");
+        final String first = words[1];
+        final String second = words[2];
+        for (Board board : order) {
+            if (!board.getName().equals(first) && !board.getName().equals(second)) {
+                board.receiveCommand("success disconnectWall= " + first + (horizontal ? " left" : " top"));
+                board.receiveCommand("success disconnectWall= " + second + (horizontal ? " right" : " bottom"));
+            }
+        }
+        final String join = "success " + (horizontal ? "joinHorizontal= " : "joinVertical= ") + first + " " + second;
+        boards.get(first).receiveCommand(join);
+        boards.get(second).receiveCommand(join);
+    }
+
+    /**
+     * Steps every board once, on the workers of the pool, then hands the balls that left a board
+     * during the step to the boards they go to
+     */
+    synchronized void step() {
+        final long start = System.nanoTime();
+        pool.invoke(new Steps(0, order.length));
+        for (List<ServerCommand> outbox : outboxes) {
+            for (ServerCommand teleport : outbox) {
+                final Board target = boards.get(teleport.getNames().get(0));
+                if (target != null) {
+                    target.receive(teleport);
+                    handedOff.incrementAndGet();
+                }
+            }
+            outbox.clear();
+        }
+        stepNanos.addAndGet(System.nanoTime() - start);
+        steps.incrementAndGet();
+    }
+
+    /**
+     * Steps every board a number of times, as fast as the workers can
+     *
+     * @param count the number of steps
+     */
+    void runSteps(int count) {
+        for (int i = 0; i < count; i++) {
+            step();
+        }
+    }
+
+    /**
+     * Starts stepping the boards in real time on a new daemon thread, unless they already are.
+     * As SimulationLoop does, the simulated time that cannot be caught up on once the boards fall
+     * more than MAX_BACKLOG_SECONDS behind is dropped.
+     */
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(() -> {
+            long previous = System.nanoTime();
+            double accumulator = 0;
+            while (running) {
+                final long now = System.nanoTime();
+                accumulator += (now - previous) * Board.EPSILON_9;
+                previous = now;
+                if (accumulator > MAX_BACKLOG_SECONDS) {
+                    droppedNanos.addAndGet((long) ((accumulator - MAX_BACKLOG_SECONDS) / Board.EPSILON_9));
+                    accumulator = MAX_BACKLOG_SECONDS;
+                }
+                while (accumulator >= stepSeconds && running) {
+                    step();
+                    accumulator -= stepSeconds;
+                }
+                /* sleep until the next step is due */
+                LockSupport.parkNanos((long) ((stepSeconds - accumulator) / Board.EPSILON_9));
+            }
+        }, "flingball-headless");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops stepping the boards in real time and waits for the step in progress to finish
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+    }
+
+    /**
+     * @return the simulated time every board has been stepped by, summed over the boards, per
+     *         second of wall time spent stepping them: how many boards this server could keep
+     *         running in real time
+     */
+    double getThroughput() {
+        final long nanos = stepNanos.get();
+        return nanos == 0 ? 0 : steps.get() * stepSeconds * order.length / (nanos * Board.EPSILON_9);
+    }
+
+    /**
+     * @return the number of balls handed from one board to another so far
+     */
+    long getHandedOff() {
+        return handedOff.get();
+    }
+
+    /**
+     * @return how the boards have been keeping up since the server started, as one line
+     */
+    String stats() {
+        final double boardSeconds = steps.get() * stepSeconds * order.length;
+        final double wallSeconds = (System.nanoTime() - startNanos) * Board.EPSILON_9;
+        return String.format("%d boards on %d workers: %.1f simulated board-seconds in %.1f wall-seconds, "
+                + "%.1f board-seconds per wall-second spent stepping, %d balls handed off, %.3f s dropped",
+                order.length, pool.getParallelism(), boardSeconds, wallSeconds, getThroughput(),
+                handedOff.get(), droppedNanos.get() * Board.EPSILON_9);
+    }
+
+    /**
+     * Stops stepping the boards, stops the workers and stops listening for viewers
+     *
+     * @throws InterruptedException if interrupted while waiting for the step in progress
+     */
+    void close() throws InterruptedException {
+        stop();
+        pool.shutdown();
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Serves one viewer until it quits or its connection breaks: sends it the frames of its board
+     * on a thread of their own, and applies the keys it sends
+     *
+     * @param socket the connection of the viewer
+     */
+    private void serveViewer(Socket socket) {
+        try (Socket viewer = socket) {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(viewer.getInputStream(),
+                    StandardCharsets.UTF_8));
+            final PrintWriter out = new PrintWriter(new OutputStreamWriter(viewer.getOutputStream(),
+                    StandardCharsets.UTF_8));
+            final String view = in.readLine();
+            final Board board = view != null && view.startsWith("view ") ? boards.get(view.substring(5)) : null;
+            if (board == null) {
+                out.println("failure");
+                out.flush();
+                return;
+            }
+            startDaemon(() -> sendFrames(board, out));
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("quit")) {
+                final String[] words = line.split(" ");
+                if (words.length == 2 && (words[0].equals("keydown") || words[0].equals("keyup"))) {
+                    pressKey(board, words[0], words[1]);
+                }
+            }
+        } catch (IOException e) {
+            // the viewer went away, and closing its socket stops the frames sent to it
+        }
+    }
+
+    /**
+     * Sends a viewer the latest frame of its board every FRAME_INTERVAL_MILLISECONDS while it
+     * changes, until the viewer cannot be written to
+     */
+    private static void sendFrames(Board board, PrintWriter out) {
+        FrameSnapshot sent = null;
+        while (!out.checkError()) {
+            final FrameSnapshot frame = board.getFrame();
+            if (frame != sent) {
+                out.println(frame.encode());
+                out.flush();
+                sent = frame;
+            }
+            try {
+                Thread.sleep(FRAME_INTERVAL_MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Triggers the gadgets a key is bound to on a board, as the KeyActions of a client running the
+     * board would
+     *
+     * @param board the board the key was pressed on
+     * @param action "keydown" or "keyup"
+     * @param key the name of the key, as in KeyNames
+     */
+    private static void pressKey(Board board, String action, String key) {
+        for (String listener : board.getProtoListeners()) {
+            final String[] binding = listener.split(" ");
+            if (binding[0].equals(action) && binding[1].equals(key)) {
+                board.triggerGadgetByName(binding[2]);
+            }
+        }
+    }
+
+    /**
+     * Runs a task on a new daemon thread, so that it never keeps the program running
+     */
+    private static void startDaemon(Runnable task) {
+        final Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Steps the boards order[from] to order[to - 1], splitting the range in two until one board is
+     * left, so that idle workers can steal half of what is still queued on a busy one
+     */
+    private class Steps extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        private Steps(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                final Board board = order[from];
+                synchronized (board) {
+                    try {
+                        board.updateBoard(stepSeconds);
+                        board.applyFrictionGravity(stepSeconds);
+                    } catch (RuntimeException e) {
+                        /* one bad step must not stop this board, nor every board waiting on the step */
+                        e.printStackTrace();
+                    }
+                }
+            } else if (to - from > 1) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new Steps(from, middle), new Steps(middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package flingball;
+
+import java.util.Collection;
+import java.util.OptionalLong;
+
+/**
+ * The version of the set of boards connected to a server, and the lines of the wire protocol that
+ * tell clients about it. Every board that connects or quits moves the version on by one. A client
+ * that asks with "membership= VERSION" is sent a snapshot of every connected board if VERSION is
+ * not the current one, and from then on only the boards that join and leave, each with the version
+ * it moves the set to, so a connection costs one line per client instead of a list of every board.
+ * Clients that never ask keep getting the whole list with allConnectedBoards after every change.
+ *
+ * Not threadsafe; each server confines it to the lock it holds while telling clients about boards
+ */
+class Membership {
+
+    /**
+     * The version a client knows before it is told any, which is never current
+     */
+    static final long UNKNOWN_VERSION = -1;
+
+    private static final String REQUEST = "membership= ";
+
+    private long version = 0;
+
+    // Abstraction Function:
+    //  AF(version) = the set of connected boards as it is after version changes
+    // Representation Invariant:
+    //  --| version >= 0
+    // Safety from Representation Exposure:
+    //  --| the only field is private and primitive
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert version >= 0;
+    }
+
+    /**
+     * @return the current version
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Moves the version on, as a board has joined or left
+     * 
+     * @return the new version
+     */
+    long advance() {
+        version++;
+        checkRep();
+        return version;
+    }
+
+    /**
+     * @param known the version a client asked with
+     * @return whether the client has to be sent a snapshot
+     */
+    boolean isStale(long known) {
+        return known != version;
+    }
+
+    /**
+     * @param boards the names of the connected boards
+     * @return the line that tells a client every connected board and the current version
+     */
+    String snapshot(Collection<String> boards) {
+        final StringBuilder line = new StringBuilder("success membership= ").append(version);
+        for (String board : boards) {
+            line.append(' ').append(board);
+        }
+        return line.toString();
+    }
+
+    /**
+     * @param board the name of the board that joined
+     * @return the line that tells a client the board joined, moving it to the current version
+     */
+    String joined(String board) {
+        return "success boardJoined= " + version + " " + board;
+    }
+
+    /**
+     * @param board the name of the board that left
+     * @return the line that tells a client the board left, moving it to the current version
+     */
+    String left(String board) {
+        return "success boardLeft= " + version + " " + board;
+    }
+
+    /**
+     * @param boards the names of the connected boards
+     * @return the line that tells a client that has not asked for versions every connected board
+     */
+    static String allConnectedBoards(Collection<String> boards) {
+        final StringBuilder line = new StringBuilder("success allConnectedBoards=");
+        for (String board : boards) {
+            line.append(' ').append(board);
+        }
+        return line.toString();
+    }
+
+    /**
+     * @param known the version the client knows
+     * @return the line a client asks with
+     */
+    static String request(long known) {
+        return REQUEST + known;
+    }
+
+    /**
+     * Reads the line a client asks with
+     * 
+     * @param line a line sent by a client
+     * @return the version the client knows, or empty if line does not ask
+     */
+    static OptionalLong parseRequest(String line) {
+        if (!line.startsWith(REQUEST)) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(Long.parseLong(line.substring(REQUEST.length()).trim()));
+        } catch (NumberFormatException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    /**
+     * @param line the bytes of a line sent by a client, from index 0
+     * @param length the number of bytes of the line
+     * @return whether the line asks, so that it has to be read as a String
+     */
+    static boolean isRequest(byte[] line, int length) {
+        return WireCodec.startsWith(line, length, REQUEST);
+    }
+}
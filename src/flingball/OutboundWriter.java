@@ -0,0 +1,308 @@
+package flingball;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the messages a board sends to the server on a dedicated thread, so that the board never
+ * waits on the socket while it holds its lock. Messages are put in a fixed size ring buffer and
+ * are only handed to the writer thread when the board ends a frame, so every message sent during
+ * one physics step goes out in a single write and flush. When the buffer is full the overflow
+ * policy decides whether the sender waits or a message is dropped.
+ *
+ * Messages are kept as commands and only turned into bytes by the writer thread, as lines of text
+ * until the writer is upgraded to the binary framing of WireCodec and as frames after that.
+ */
+class OutboundWriter implements Runnable {
+
+    /**
+     * The number of messages a writer buffers unless told otherwise
+     */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final DataOutputStream out;
+    private final WireCodec.Encoder encoder = new WireCodec.Encoder();
+    private final OverflowPolicy policy;
+    private final ServerCommand[] messages;
+    private final long[] sentNanos;
+    private long head = 0;
+    private long published = 0;
+    private long tail = 0;
+    private long binaryFrom = Long.MAX_VALUE;
+    private boolean confirmPending = false;
+    private boolean open = true;
+    private final Thread thread;
+
+    private int maxDepth = 0;
+    private long enqueued = 0;
+    private long written = 0;
+    private long dropped = 0;
+    private long writes = 0;
+    private long latencyNanos = 0;
+    private long maxLatencyNanos = 0;
+
+    // Abstraction Function:
+    //  AF(out, encoder, policy, messages, sentNanos, head, published, tail, binaryFrom, confirmPending,
+    //     open, thread, maxDepth, enqueued, written, dropped, writes, latencyNanos, maxLatencyNanos) =
+    //          A writer of messages to out, run by thread while open, holding the messages
+    //          messages[i % messages.length] sent at System.nanoTime() == sentNanos[i % messages.length]
+    //          for head <= i < tail in the order they were sent. Those before published belong to
+    //          ended frames and are ready to be written; the rest belong to the frame in progress.
+    //          Messages before binaryFrom are written as lines of text and the rest as frames encoded
+    //          by encoder, with the line WireCodec.ACCEPT written between them if confirmPending.
+    //          When full it applies policy. So far enqueued messages were sent and written of them
+    //          were written in writes writes, after waiting latencyNanos in total and at most
+    //          maxLatencyNanos each, dropped were dropped, and at most maxDepth waited at once.
+    // Representation Invariant:
+    //  --| 0 <= head <= published <= tail <= head + messages.length
+    //  --| messages.length == sentNanos.length > 0
+    //  --| every counter >= 0
+    //  --| confirmPending implies head <= binaryFrom <= published
+    // Safety from Representation Exposure:
+    //  --| all fields are private, messages are immutable ServerCommands, and the statistics are handed out
+    //      as an immutable QueueStats
+    // Thread Safety Argument:
+    //  --| every field but out, encoder and thread is guarded by this writer's lock, which senders
+    //      and the writer thread only hold to move messages in and out of the buffer
+    //  --| out and encoder are confined to thread, which writes to it without holding the lock, so a slow
+    //      socket only ever holds up the writer thread
+    //  --| senders waiting for room under BLOCK hold no lock of this writer, so the writer thread can
+    //      always drain; it never takes any other lock, so a sender holding its board's lock while
+    //      waiting cannot deadlock with it
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private synchronized void checkRep() {
+        assert 0 <= head && head <= published && published <= tail && tail <= head + messages.length;
+        assert messages.length == sentNanos.length && messages.length > 0;
+        assert enqueued >= 0 && written >= 0 && dropped >= 0 && writes >= 0;
+        assert !confirmPending || (head <= binaryFrom && binaryFrom <= published);
+    }
+
+    /**
+     * Make a writer and start its thread
+     *
+     * @param stream the stream to write the messages to
+     * @param capacity the number of messages that can wait to be written, must be > 0
+     * @param policy what to do with a message sent while capacity messages are waiting
+     */
+    OutboundWriter(OutputStream stream, int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(stream));
+        this.policy = policy;
+        this.messages = new ServerCommand[capacity];
+        this.sentNanos = new long[capacity];
+        this.thread = new Thread(this, "flingball-outbound");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        checkRep();
+    }
+
+    /**
+     * Adds a message to the frame in progress. If the buffer is full, the frame so far is handed
+     * to the writer thread and the overflow policy is applied.
+     *
+     * @param message the command to send
+     */
+    synchronized void send(ServerCommand message) {
+        while (open && tail - head == messages.length) {
+            published = tail;
+            notifyAll();
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                dropped++;
+                return;
+            } else if (policy == OverflowPolicy.DROP_OLDEST && head < published) {
+                messages[(int) (head % messages.length)] = null;
+                head++;
+                dropped++;
+            } else {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped++;
+                    return;
+                }
+            }
+        }
+        if (!open) {
+            dropped++;
+            return;
+        }
+        final int slot = (int) (tail % messages.length);
+        messages[slot] = message;
+        sentNanos[slot] = System.nanoTime();
+        tail++;
+        enqueued++;
+        maxDepth = Math.max(maxDepth, (int) (tail - head));
+    }
+
+    /**
+     * Ends the frame in progress, handing every message sent during it to the writer thread
+     */
+    synchronized void endFrame() {
+        if (published != tail) {
+            published = tail;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Switches to the binary framing of WireCodec after the server accepted it: the line
+     * WireCodec.ACCEPT is written after every message sent so far to confirm the switch, and every
+     * message sent after it is written as a frame. Does nothing if already upgraded.
+     */
+    synchronized void upgrade() {
+        if (binaryFrom != Long.MAX_VALUE) {
+            return;
+        }
+        binaryFrom = tail;
+        confirmPending = true;
+        published = tail;
+        notifyAll();
+    }
+
+    /**
+     * Stops the writer thread once the messages of ended frames are written; messages sent after
+     * this are dropped
+     */
+    synchronized void close() {
+        open = false;
+        notifyAll();
+    }
+
+    /**
+     * @return whether messages sent now will be written, i.e. the writer was not closed and
+     *         writing has not failed
+     */
+    synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Waits for the writer thread to stop after close, so that the messages of ended frames have
+     * been written
+     *
+     * @param millis the longest to wait, in milliseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void awaitClosed(long millis) throws InterruptedException {
+        thread.join(millis);
+    }
+
+    @Override
+    public void run() {
+        final List<ServerCommand> batch = new ArrayList<>();
+        while (true) {
+            long batchSentNanos = 0;
+            long oldestSentNanos = 0;
+            final int batchSize;
+            final int textCount;
+            final boolean confirm;
+            synchronized (this) {
+                while (head == published && !confirmPending && open) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (head == published && !confirmPending) {
+                    closeQuietly();
+                    return;
+                }
+                batch.clear();
+                oldestSentNanos = sentNanos[(int) (head % messages.length)];
+                batchSize = (int) (published - head);
+                textCount = (int) Math.max(0, Math.min(published, binaryFrom) - head);
+                confirm = confirmPending;
+                confirmPending = false;
+                for (; head < published; head++) {
+                    final int slot = (int) (head % messages.length);
+                    batch.add(messages[slot]);
+                    batchSentNanos += sentNanos[slot];
+                    messages[slot] = null;
+                }
+                notifyAll();
+            }
+            try {
+                /* encoding happens here, off the lock, so senders never wait for it */
+                for (int i = 0; i < batch.size(); i++) {
+                    if (i == textCount && confirm) {
+                        writeLine(WireCodec.ACCEPT);
+                    }
+                    if (i < textCount) {
+                        writeLine(batch.get(i).toRequest());
+                    } else {
+                        encoder.write(out, batch.get(i), "");
+                    }
+                }
+                if (confirm && textCount == batch.size()) {
+                    writeLine(WireCodec.ACCEPT);
+                }
+                out.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+                synchronized (this) {
+                    open = false;
+                    dropped += batchSize + (tail - head);
+                    head = published = tail;
+                    notifyAll();
+                }
+                return;
+            }
+            if (batchSize == 0) {
+                continue;
+            }
+            synchronized (this) {
+                final long now = System.nanoTime();
+                written += batchSize;
+                writes++;
+                latencyNanos += now * batchSize - batchSentNanos;
+                /* the oldest message of the batch waited longest */
+                maxLatencyNanos = Math.max(maxLatencyNanos, now - oldestSentNanos);
+            }
+        }
+    }
+
+    /**
+     * Writes a line of text to out
+     */
+    private void writeLine(String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Flushes and stops using the stream, which is owned by the socket it came from
+     */
+    private void closeQuietly() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the number of writes and flushes the writer thread has made
+     */
+    synchronized long getWrites() {
+        return writes;
+    }
+
+    /**
+     * @return the statistics of the messages sent through this writer
+     */
+    synchronized QueueStats stats() {
+        return new QueueStats(enqueued, written, dropped, (int) (tail - head), maxDepth, latencyNanos,
+                maxLatencyNanos);
+    }
+}
@@ -0,0 +1,15 @@
+package flingball;
+
+/**
+ * An immutable, threadsafe datatype that is the enumeration of what a board does with a message
+ * for the server when the messages already waiting to be written to the socket fill its buffer.
+ *  BLOCK       - the thread sending the message waits until the writer makes room, so the board
+ *                slows down to the pace of the server and no message is lost.
+ *  DROP_NEWEST - the message is discarded and the thread sending it carries on.
+ *  DROP_OLDEST - the message that has waited longest is discarded to make room for the new one.
+ */
+public enum OverflowPolicy {
+        BLOCK,
+        DROP_NEWEST,
+        DROP_OLDEST
+}
@@ -0,0 +1,283 @@
+package flingball;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.function.Consumer;
+
+/**
+ * A direct connection between two boards joined by a server, which carries the balls teleported
+ * from one to the other in one hop instead of two. The server stays the authority on which boards
+ * are joined: a board that listens for links tells the server its port with "peerPort= PORT", and
+ * when the server joins two boards that both listen, it tells the first of them where the second
+ * listens with "peerAt= BOARD HOST PORT". The first board dials the second and says its name with
+ * "peer= NAME", and from then on both ends write the binary framing of WireCodec, confirmed by
+ * WireCodec.ACCEPT as it is to a server.
+ *
+ * Only teleports are sent over a link. A board sends them through the server whenever it has no
+ * open link to the board they go to, so a link that cannot be made or that breaks only costs the
+ * extra hop; the teleports being written when a link breaks are lost, as they are when the
+ * connection to the server breaks.
+ *
+ * A board that has a DatagramTransport says the port of its socket and the id of the session it
+ * opened for the link with "datagram= PORT SESSION" before switching to the binary framing. Once
+ * both ends have said it, teleports go over the session rather than the socket, which then only
+ * tells each end whether the other is still there.
+ */
+class PeerLink {
+
+    private static final String ADVERTISEMENT = "peerPort= ";
+    private static final String HELLO = "peer= ";
+    private static final String DATAGRAM = "datagram= ";
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final long CLOSE_MILLIS = 1000;
+
+    private final String board;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutboundWriter writer;
+    private final Optional<DatagramTransport.Session> session;
+
+    // Abstraction Function:
+    //  AF(board, socket, in, writer, session) = A link to the board named board over socket, which
+    //          reads what that board sends from in and sends it teleports through session once it is
+    //          connected to the session of that board, and through writer until then or if empty
+    // Representation Invariant:
+    //  --| board, socket, in, writer and session are not null
+    //  --| in reads from socket and writer writes to it
+    // Safety from Representation Exposure:
+    //  --| all fields are private and final, and only board, an immutable String, is handed out
+    // Thread Safety Argument:
+    //  --| board and socket are never reassigned, and writer and session are threadsafe
+    //  --| in is confined to the thread that calls read
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert board != null && socket != null && in != null && writer != null && session != null;
+    }
+
+    /**
+     * Makes a link over a connected socket, writing in the binary framing of WireCodec after
+     * whatever is sent before it, and says the session of datagrams if there is one
+     */
+    private PeerLink(String board, Socket socket, DataInputStream in, int capacity, OverflowPolicy policy,
+            Optional<DatagramTransport> datagrams) throws IOException {
+        this.board = board;
+        this.socket = socket;
+        this.in = in;
+        this.writer = new OutboundWriter(socket.getOutputStream(), capacity, policy);
+        this.session = datagrams.map(DatagramTransport::open);
+        checkRep();
+    }
+
+    /**
+     * Says the session of datagrams of this link, if there is one, and switches to the binary framing
+     */
+    private void upgrade() {
+        if (session.isPresent()) {
+            writer.send(ServerCommand.text(DATAGRAM + session.get().port() + " " + session.get().id()));
+        }
+        writer.upgrade();
+    }
+
+    /**
+     * Dials the board a server said to link to
+     *
+     * @param board the name of the board to link to
+     * @param address where board listens for links
+     * @param name the name of the board dialing
+     * @param capacity the number of teleports that can wait to be written to board, must be > 0
+     * @param policy what to do with a teleport sent while capacity teleports are waiting
+     * @param datagrams the transport to send teleports through if board has one too, or empty to
+     *        send them over the socket
+     * @return a link to board; teleports it sends arrive once read is called
+     * @throws IOException if board cannot be reached
+     */
+    static PeerLink dial(String board, InetSocketAddress address, String name, int capacity, OverflowPolicy policy,
+            Optional<DatagramTransport> datagrams) throws IOException {
+        final Socket socket = new Socket();
+        try {
+            socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+            final PeerLink link = new PeerLink(board, socket,
+                    new DataInputStream(new BufferedInputStream(socket.getInputStream())), capacity, policy,
+                    datagrams);
+            link.writer.send(ServerCommand.text(HELLO + name));
+            link.upgrade();
+            return link;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Answers a board that dialed this one
+     *
+     * @param socket a socket accepted from the port this board listens for links on
+     * @param capacity the number of teleports that can wait to be written to the other board, must be > 0
+     * @param policy what to do with a teleport sent while capacity teleports are waiting
+     * @param datagrams the transport to send teleports through if the other board has one too, or
+     *        empty to send them over the socket
+     * @return a link to the board that dialed; teleports it sends arrive once read is called
+     * @throws IOException if the socket fails, or what dialed did not say the name of its board
+     */
+    static PeerLink accept(Socket socket, int capacity, OverflowPolicy policy, Optional<DatagramTransport> datagrams)
+            throws IOException {
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final String hello = WireCodec.readLine(in);
+            if (hello == null || !hello.startsWith(HELLO) || hello.substring(HELLO.length()).trim().isEmpty()) {
+                throw new IOException("Expected the name of a board, got " + hello);
+            }
+            final PeerLink link = new PeerLink(hello.substring(HELLO.length()).trim(), socket, in, capacity, policy,
+                    datagrams);
+            link.upgrade();
+            return link;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the name of the board at the other end of this link
+     */
+    String board() {
+        return board;
+    }
+
+    /**
+     * Adds a teleport to the frame in progress
+     *
+     * @param teleport a TELEPORT_PORTAL or TELEPORT_WALL command to the board at the other end
+     */
+    void send(ServerCommand teleport) {
+        if (session.isPresent() && session.get().isConnected()) {
+            session.get().send(teleport);
+        } else {
+            writer.send(teleport);
+        }
+    }
+
+    /**
+     * Ends the frame in progress, so that the teleports sent during it are written in one go
+     */
+    void endFrame() {
+        writer.endFrame();
+        session.ifPresent(DatagramTransport.Session::flush);
+    }
+
+    /**
+     * @return whether teleports sent now will be written, i.e. the link was not closed and has
+     *         not broken
+     */
+    boolean isOpen() {
+        return writer.isOpen();
+    }
+
+    /**
+     * Stops sending over this link once the teleports of ended frames are written, or acked if
+     * they went as datagrams, and stops read, which then closes the socket
+     */
+    void close() {
+        session.ifPresent(DatagramTransport.Session::close);
+        writer.close();
+        try {
+            socket.shutdownInput();
+        } catch (IOException e) {
+            // already closed by the other board, so read is stopping anyway
+        }
+    }
+
+    /**
+     * Reads what the other board sends until the link closes or breaks, then closes the socket
+     *
+     * @param received told every command the other board sends, on the calling thread
+     */
+    void read(Consumer<ServerCommand> received) {
+        try {
+            for (String line = WireCodec.readLine(in); !WireCodec.ACCEPT.equals(line); line = WireCodec.readLine(in)) {
+                if (line == null) {
+                    return;
+                } else if (line.startsWith(DATAGRAM) && session.isPresent()) {
+                    final String[] words = line.substring(DATAGRAM.length()).trim().split(" +");
+                    try {
+                        session.get().connect(new InetSocketAddress(socket.getInetAddress(),
+                                Integer.parseInt(words[0])), Integer.parseInt(words[1]));
+                    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                        // not a session this board can send to, so teleports stay on the socket
+                    }
+                }
+            }
+            final WireCodec.Decoder decoder = new WireCodec.Decoder();
+            for (ServerCommand command = decoder.read(in); command != null; command = decoder.read(in)) {
+                received.accept(command);
+            }
+        } catch (IOException e) {
+            // the link broke; teleports go through the server from now on
+        } finally {
+            session.ifPresent(DatagramTransport.Session::close);
+            writer.close();
+            try {
+                writer.awaitClosed(CLOSE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @param port the port a board listens for links on
+     * @return the line a board tells the server the port with
+     */
+    static String advertise(int port) {
+        return ADVERTISEMENT + port;
+    }
+
+    /**
+     * Reads the line a board tells the server its port with
+     *
+     * @param line a line sent by a client
+     * @return the port the board listens for links on, or empty if line does not tell it
+     */
+    static OptionalInt parseAdvertisement(String line) {
+        if (!line.startsWith(ADVERTISEMENT)) {
+            return OptionalInt.empty();
+        }
+        try {
+            final int port = Integer.parseInt(line.substring(ADVERTISEMENT.length()).trim());
+            return port > 0 && port <= 0xFFFF ? OptionalInt.of(port) : OptionalInt.empty();
+        } catch (NumberFormatException e) {
+            return OptionalInt.empty();
+        }
+    }
+
+    /**
+     * @param line the bytes of a line sent by a client, from index 0
+     * @param length the number of bytes of the line
+     * @return whether the line tells the server a port, so that it has to be read as a String
+     */
+    static boolean isAdvertisement(byte[] line, int length) {
+        return WireCodec.startsWith(line, length, ADVERTISEMENT);
+    }
+
+    /**
+     * @param board the name of the board to link to
+     * @param address where board listens for links
+     * @return the line that tells a client to link to board
+     */
+    static String peerAt(String board, InetSocketAddress address) {
+        return "success peerAt= " + board + " " + address.getAddress().getHostAddress() + " " + address.getPort();
+    }
+}
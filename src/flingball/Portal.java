@@ -2,9 +2,13 @@ package flingball;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import physics.Circle;
+import physics.LineSegment;
 import physics.Physics;
 import physics.Vect;
 
@@ -14,7 +18,7 @@ import physics.Vect;
  * 
  * Immutable, Threadsafe Datatype
  */
-public class Portal implements Gadget {
+public class Portal implements StaticGadget {
     
     private final String name;
     private final Vect location;
@@ -84,6 +88,11 @@ public class Portal implements Gadget {
     public Vect getLocation() {
         return location;
     }
+
+    @Override
+    public Vect getSize() {
+        return new Vect(DIAMETER, DIAMETER);
+    }
     
     /**
      * @return the String that is the name of the portal that this portal is connected to
@@ -117,9 +126,31 @@ public class Portal implements Gadget {
      * @return true if the ball is contained inside the boundaries of this portal, else false
      */
     public boolean isContained(Ball ball) {
-        return (Math.pow(Physics.distanceSquared(ball.getCircle().getCenter(), this.circle.getCenter()), RADIUS) < RADIUS);
+        return isContained(ball.getCircle().getCenter().x(), ball.getCircle().getCenter().y());
     }
     
+    /**
+     * Determines whether a ball centered at a location is contained inside this portal.
+     * 
+     * @param ballX the x coordinate of the ball's center
+     * @param ballY the y coordinate of the ball's center
+     * @return true if the ball is contained inside the boundaries of this portal, else false
+     */
+    boolean isContained(double ballX, double ballY) {
+        return (Math.pow(Physics.distanceSquared(ballX, ballY, this.circle.getCenter().x(), this.circle.getCenter().y()),
+                RADIUS) < RADIUS);
+    }
+    
+    @Override
+    public List<LineSegment> getLineSegments() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public List<Circle> getCircles() {
+        return new ArrayList<>(Arrays.asList(circle));
+    }
+
     @Override
     public double getTimeTillCollision(Ball ball, double delta) {
         if (this.isContained(ball)) {
@@ -0,0 +1,118 @@
+package flingball;
+
+/**
+ * Immutable snapshot of the traffic through a queue of messages between a board and the server:
+ * how many messages went in and came out, how deep the queue is and has been, how long messages
+ * waited in it, and how many were dropped because it was full.
+ */
+public class QueueStats {
+
+    private final long enqueued;
+    private final long dequeued;
+    private final long dropped;
+    private final int depth;
+    private final int maxDepth;
+    private final long latencyNanos;
+    private final long maxLatencyNanos;
+
+    // Abstraction Function:
+    //  AF(enqueued, dequeued, dropped, depth, maxDepth, latencyNanos, maxLatencyNanos) =
+    //          A queue that enqueued messages were put into and dequeued were taken out of, that
+    //          dropped messages were turned away from, holding depth messages and at most maxDepth
+    //          at once, whose dequeued messages waited latencyNanos in total and at most
+    //          maxLatencyNanos each
+    // Representation Invariant:
+    //  --| every field >= 0
+    //  --| depth <= maxDepth and maxLatencyNanos <= latencyNanos
+    // Safety from Representation Exposure:
+    //  --| all fields are private, final and primitive
+    // Thread Safety Argument:
+    //  --| immutable
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert enqueued >= 0 && dequeued >= 0 && dropped >= 0;
+        assert 0 <= depth && depth <= maxDepth;
+        assert 0 <= maxLatencyNanos && maxLatencyNanos <= latencyNanos;
+    }
+
+    /**
+     * Make a snapshot of the traffic through a queue
+     *
+     * @param enqueued the number of messages put into the queue
+     * @param dequeued the number of messages taken out of the queue
+     * @param dropped the number of messages turned away because the queue was full
+     * @param depth the number of messages in the queue
+     * @param maxDepth the most messages the queue has held at once
+     * @param latencyNanos the total wall time the dequeued messages waited in the queue
+     * @param maxLatencyNanos the longest a dequeued message waited in the queue
+     */
+    QueueStats(long enqueued, long dequeued, long dropped, int depth, int maxDepth, long latencyNanos,
+            long maxLatencyNanos) {
+        this.enqueued = enqueued;
+        this.dequeued = dequeued;
+        this.dropped = dropped;
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.latencyNanos = latencyNanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+        checkRep();
+    }
+
+    /**
+     * @return the number of messages put into the queue
+     */
+    public long getEnqueued() {
+        return enqueued;
+    }
+
+    /**
+     * @return the number of messages taken out of the queue
+     */
+    public long getDequeued() {
+        return dequeued;
+    }
+
+    /**
+     * @return the number of messages turned away because the queue was full
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return the number of messages in the queue
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the most messages the queue has held at once
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the mean wall time in milliseconds a message waited in the queue
+     */
+    public double getMeanLatencyMillis() {
+        return dequeued == 0 ? 0 : latencyNanos * Board.EPSILON_6 / dequeued;
+    }
+
+    /**
+     * @return the longest wall time in milliseconds a message waited in the queue
+     */
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos * Board.EPSILON_6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d in, %d out, %d dropped, depth %d (max %d), latency %.3f ms mean %.3f ms max",
+                enqueued, dequeued, dropped, depth, maxDepth, getMeanLatencyMillis(), getMaxLatencyMillis());
+    }
+}
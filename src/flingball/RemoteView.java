@@ -0,0 +1,134 @@
+package flingball;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A board that a HeadlessServer runs, as its viewer sees it: the latest frame the server sent, and
+ * a key listener that sends the keys pressed to the server instead of triggering gadgets here.
+ * The protocol is described in HeadlessServer.
+ */
+class RemoteView implements KeyListener {
+
+    private final Socket socket;
+    private final PrintWriter out;
+    private final Set<Integer> pressed = new HashSet<>();
+    private volatile FrameSnapshot frame = FrameSnapshot.EMPTY;
+
+    // Abstraction Function:
+    //  AF(socket, out, pressed, frame) = The view of a board run by the server at the other end of
+    //          socket, which keys are sent to through out, where frame is the latest frame of the
+    //          board the server sent and pressed holds the codes of the keys that are down
+    // Representation Invariant:
+    //  --| socket, out and frame are not null
+    // Safety from Representation Exposure:
+    //  --| all fields are private, and frame is immutable
+    // Thread Safety Argument:
+    //  --| frame is volatile and only replaced by the thread reading socket
+    //  --| out and pressed are guarded by the lock of this view
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert socket != null && out != null && frame != null;
+    }
+
+    /**
+     * Asks a server to view a board, and starts reading the frames it sends on a new daemon thread
+     *
+     * @param socket a connection to a HeadlessServer; the view takes ownership of it
+     * @param board the name of the board to view
+     * @throws IOException if the request cannot be sent
+     */
+    RemoteView(Socket socket, String board) throws IOException {
+        this.socket = socket;
+        this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        send("view " + board);
+        final Thread reader = new Thread(this::readFrames, "flingball-view");
+        reader.setDaemon(true);
+        reader.start();
+        checkRep();
+    }
+
+    /**
+     * Reads the frames the server sends until the connection closes
+     */
+    private void readFrames() {
+        try {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.equals("failure")) {
+                    System.out.println("The server does not run this board.");
+                    return;
+                }
+                try {
+                    frame = FrameSnapshot.decode(line);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("There was a problem communicating with the server.");
+                }
+            }
+        } catch (IOException e) {
+            // closed
+        }
+    }
+
+    /**
+     * @return the latest frame of the board the server sent
+     */
+    FrameSnapshot getFrame() {
+        return frame;
+    }
+
+    @Override
+    public synchronized void keyPressed(KeyEvent e) {
+        final String key = KeyNames.keyName.get(e.getKeyCode());
+        /* a key held down repeats keyPressed, but the server is only told it went down once */
+        if (key != null && pressed.add(e.getKeyCode())) {
+            send("keydown " + key);
+        }
+    }
+
+    @Override
+    public synchronized void keyReleased(KeyEvent e) {
+        final String key = KeyNames.keyName.get(e.getKeyCode());
+        pressed.remove(e.getKeyCode());
+        if (key != null) {
+            send("keyup " + key);
+        }
+    }
+
+    @Override
+    public void keyTyped(KeyEvent e) {} // interface method not needed
+
+    /**
+     * Tells the server this viewer is leaving and closes the connection
+     */
+    synchronized void close() {
+        send("quit");
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sends one line to the server
+     */
+    private synchronized void send(String line) {
+        out.println(line);
+        out.flush();
+    }
+}
@@ -0,0 +1,219 @@
+package flingball;
+
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The routes of a FlingballTextServer from the names of boards to the sockets of the clients
+ * running them. Every name a client connects with is interned once as a small id that it keeps
+ * for as long as the server runs, and the socket a board is reached through is kept by id. A
+ * relayed line is routed by looking up the bytes of its target board name straight from the
+ * buffer it was read into, so no String is made for it.
+ *
+ * Threadsafe: lookups take no lock, and names are only interned and routes only changed when
+ * boards connect or quit.
+ */
+class RouteTable {
+
+    private static final int INITIAL_SLOTS = 64;
+    private static final int FNV_OFFSET = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private volatile Table table = new Table(INITIAL_SLOTS);
+
+    // Abstraction Function:
+    //  AF(table) = the boards whose names table.keys holds, the board with the name table.keys[slot]
+    //              having the id table.ids[slot] and being reached through table.routes[id], or not
+    //              at all if that is null
+    // Representation Invariant:
+    //  --| table.keys.length is a power of two, at least twice table.count
+    //  --| the ids in table.ids of the slots that hold a name are 0 .. table.count - 1
+    //  --| no name is in table.keys twice
+    // Safety from Representation Exposure:
+    //  --| table is private, and names are copied into it
+    // Thread Safety Argument:
+    //  --| table is volatile, and a new Table is only published once it is filled in
+    //  --| every change is made holding this table's lock; keys and ids are never written once a
+    //      Table is published, and routes is an AtomicReferenceArray, so lookups need no lock
+
+    /**
+     * Open addressed slots of interned names, and the routes by id
+     */
+    private static class Table {
+        private final byte[][] keys;
+        private final int[] ids;
+        private final AtomicReferenceArray<Socket> routes;
+        private final int count;
+
+        Table(int slots) {
+            this(new byte[slots][], new int[slots], new AtomicReferenceArray<>(slots / 2), 0);
+        }
+
+        Table(byte[][] keys, int[] ids, AtomicReferenceArray<Socket> routes, int count) {
+            this.keys = keys;
+            this.ids = ids;
+            this.routes = routes;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Finds the id of a board name
+     * 
+     * @param bytes holds the name, in UTF-8
+     * @param offset where the name starts in bytes
+     * @param length the number of bytes of the name
+     * @return the id the name was interned as, or -1 if it never was
+     */
+    int find(byte[] bytes, int offset, int length) {
+        return find(table, bytes, offset, length);
+    }
+
+    /**
+     * Finds the id of a board name
+     * 
+     * @param name the name
+     * @return the id the name was interned as, or -1 if it never was
+     */
+    int find(String name) {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return find(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param id the id of a board name
+     * @return the socket the board is reached through, or null if it is not connected
+     */
+    Socket route(int id) {
+        final Table current = table;
+        return 0 <= id && id < current.count ? current.routes.get(id) : null;
+    }
+
+    /**
+     * Routes a board name to a socket, interning the name if it is new
+     * 
+     * @param name the name of the board
+     * @param socket the socket the board is reached through from now on
+     * @return the id of the name
+     */
+    synchronized int bind(String name, Socket socket) {
+        final int id = intern(name);
+        table.routes.set(id, socket);
+        checkRep();
+        return id;
+    }
+
+    /**
+     * Stops routing a board name anywhere; the name keeps its id
+     * 
+     * @param name the name of the board
+     */
+    synchronized void unbind(String name) {
+        final int id = find(name);
+        if (id >= 0) {
+            table.routes.set(id, null);
+        }
+    }
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private synchronized void checkRep() {
+        final Table current = table;
+        assert Integer.bitCount(current.keys.length) == 1 && current.keys.length >= 2 * current.count;
+        assert current.routes.length() >= current.count;
+    }
+
+    /**
+     * @return the id of name, interning it first if it is new
+     */
+    private synchronized int intern(String name) {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        final int existing = find(bytes, 0, bytes.length);
+        if (existing >= 0) {
+            return existing;
+        }
+        Table current = table;
+        if (2 * (current.count + 1) > current.keys.length) {
+            current = grow(current);
+        }
+        final byte[][] keys = current.keys.clone();
+        final int[] ids = current.ids.clone();
+        insert(keys, ids, bytes, current.count);
+        table = new Table(keys, ids, current.routes, current.count + 1);
+        return current.count;
+    }
+
+    /**
+     * @return a table with twice the slots holding the same names and routes
+     */
+    private static Table grow(Table current) {
+        final int slots = 2 * current.keys.length;
+        final byte[][] keys = new byte[slots][];
+        final int[] ids = new int[slots];
+        for (int slot = 0; slot < current.keys.length; slot++) {
+            if (current.keys[slot] != null) {
+                insert(keys, ids, current.keys[slot], current.ids[slot]);
+            }
+        }
+        final AtomicReferenceArray<Socket> routes = new AtomicReferenceArray<>(slots / 2);
+        for (int id = 0; id < current.count; id++) {
+            routes.set(id, current.routes.get(id));
+        }
+        return new Table(keys, ids, routes, current.count);
+    }
+
+    /**
+     * Puts a name in the first free slot from its hash on
+     */
+    private static void insert(byte[][] keys, int[] ids, byte[] name, int id) {
+        final int mask = keys.length - 1;
+        int slot = hash(name, 0, name.length) & mask;
+        while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = name;
+        ids[slot] = id;
+    }
+
+    /**
+     * @return the id of the name in table, or -1 if it is not there
+     */
+    private static int find(Table table, byte[] bytes, int offset, int length) {
+        final byte[][] keys = table.keys;
+        final int mask = keys.length - 1;
+        for (int slot = hash(bytes, offset, length) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (equal(keys[slot], bytes, offset, length)) {
+                return table.ids[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the FNV-1a hash of the bytes
+     */
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * FNV_PRIME;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return whether key holds exactly the bytes
+     */
+    private static boolean equal(byte[] key, byte[] bytes, int offset, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,393 @@
+package flingball;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import physics.Vect;
+
+/**
+ * An immutable, threadsafe command of the wire protocol in WireProtocol.g. A board receives
+ * commands from a FlingballTextServer, decoded on the thread that reads the socket and applied at
+ * the start of its next update, and sends teleports to the server as commands too, which are only
+ * turned into a line of text or a binary frame by the thread that writes the socket.
+ */
+class ServerCommand {
+
+    /**
+     * The kinds of command the server and a board send each other. FAILURE covers every reply the
+     * board cannot act on, which it reports as a problem communicating with the server. TEXT is
+     * any other line of the protocol, which is only sent as it is.
+     */
+    enum Kind {
+        JOIN_HORIZONTAL,
+        JOIN_VERTICAL,
+        DISCONNECT_WALL,
+        TELEPORT_PORTAL,
+        TELEPORT_WALL,
+        CONNECT_PORTAL,
+        DISCONNECT_PORTAL,
+        ALL_CONNECTED_BOARDS,
+        MEMBERSHIP,
+        BOARD_JOINED,
+        BOARD_LEFT,
+        PEER_AT,
+        DISCONNECT,
+        FAILURE,
+        TEXT
+    }
+
+    private final Kind kind;
+    private final List<String> names;
+    private final Vect velocity;
+    private final Vect location;
+    private final Optional<Wall> wall;
+    private final long version;
+    private final Optional<TeleportStamp> stamp;
+    private final long receivedNanos;
+
+    // Abstraction Function:
+    //  AF(kind, names, velocity, location, wall, version, stamp, receivedNanos) = A command of kind kind,
+    //          received at System.nanoTime() == receivedNanos, about:
+    //          - JOIN_HORIZONTAL : the boards names[0] (left) and names[1] (right) being joined
+    //          - JOIN_VERTICAL : the boards names[0] (top) and names[1] (bottom) being joined
+    //          - DISCONNECT_WALL : the board names[0] leaving the join along its wall wall
+    //          - TELEPORT_PORTAL : the ball names[1] arriving on the board names[0] with velocity velocity
+    //                              to leave the portal connected to its portal names[2]
+    //          - TELEPORT_WALL : the ball names[1] arriving on the board names[0] with velocity velocity
+    //                            through its wall wall, having left the other board at location
+    //          - CONNECT_PORTAL, DISCONNECT_PORTAL : the portal names[0] being connected or disconnected
+    //          - ALL_CONNECTED_BOARDS : the boards names being every board connected to the server
+    //          - MEMBERSHIP : the boards names being every board connected to the server at version version
+    //          - BOARD_JOINED, BOARD_LEFT : the board names[0] connecting to or leaving the server,
+    //                                       which moves it to version version
+    //          - PEER_AT : the board names[0] listening for a PeerLink at host names[1] and port names[2]
+    //          - DISCONNECT, FAILURE : nothing further
+    //          - TEXT : the line names[0]
+    //          A TELEPORT_PORTAL or TELEPORT_WALL ball left its board as stamp tells, if present.
+    // Representation Invariant:
+    //  --| kind, names, velocity, location, wall and stamp are not null
+    //  --| stamp is only present for TELEPORT_PORTAL and TELEPORT_WALL
+    //  --| names has 3 names for TELEPORT_PORTAL and PEER_AT, 2 for JOIN_HORIZONTAL, JOIN_VERTICAL and
+    //      TELEPORT_WALL, 1 for DISCONNECT_WALL, CONNECT_PORTAL, DISCONNECT_PORTAL, BOARD_JOINED,
+    //      BOARD_LEFT and TEXT
+    //  --| version >= 0 for MEMBERSHIP, BOARD_JOINED and BOARD_LEFT
+    //  --| wall is present for DISCONNECT_WALL and TELEPORT_WALL
+    // Safety from Representation Exposure:
+    //  --| all fields are private and final, names is unmodifiable, and Vect, Wall and Optional
+    //      are immutable
+    // Thread Safety Argument:
+    //  --| this class satisfies the strongest definition of immutability
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert kind != null && names != null && velocity != null && location != null && wall != null && stamp != null;
+        assert !stamp.isPresent() || kind == Kind.TELEPORT_PORTAL || kind == Kind.TELEPORT_WALL;
+        switch (kind) {
+        case TELEPORT_PORTAL:
+        case PEER_AT:
+            assert names.size() == 3;
+            break;
+        case JOIN_HORIZONTAL:
+        case JOIN_VERTICAL:
+            assert names.size() == 2;
+            break;
+        case TELEPORT_WALL:
+            assert names.size() == 2 && wall.isPresent();
+            break;
+        case DISCONNECT_WALL:
+            assert names.size() == 1 && wall.isPresent();
+            break;
+        case CONNECT_PORTAL:
+        case DISCONNECT_PORTAL:
+        case TEXT:
+            assert names.size() == 1;
+            break;
+        case BOARD_JOINED:
+        case BOARD_LEFT:
+            assert names.size() == 1 && version >= 0;
+            break;
+        case MEMBERSHIP:
+            assert version >= 0;
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Creates a command
+     */
+    private ServerCommand(Kind kind, List<String> names, Vect velocity, Vect location, Optional<Wall> wall,
+            long version, Optional<TeleportStamp> stamp, long receivedNanos) {
+        this.kind = kind;
+        this.names = Collections.unmodifiableList(names);
+        this.velocity = velocity;
+        this.location = location;
+        this.wall = wall;
+        this.version = version;
+        this.stamp = stamp;
+        this.receivedNanos = receivedNanos;
+        checkRep();
+    }
+
+    /**
+     * Decodes a line sent by the server. getClientBoardName is not decoded, since the board
+     * answers it as soon as it is read.
+     *
+     * @param line a line of the wire protocol, other than getClientBoardName
+     * @param receivedNanos the value of System.nanoTime() when line was read
+     * @return the command line holds, or empty if it holds no command a board acts on
+     * @throws IllegalArgumentException if a number or wall in line is malformed
+     */
+    static Optional<ServerCommand> parse(String line, long receivedNanos) throws IllegalArgumentException {
+        if (line.equals("disconnect")) {
+            return Optional.of(names(Kind.DISCONNECT, receivedNanos));
+        }
+        final String[] commandSplit = line.split("[ ]+");
+        if (commandSplit.length == 1 || commandSplit[0].equals("failure")) {
+            return Optional.of(names(Kind.FAILURE, receivedNanos));
+        }
+        final ServerCommand command;
+        switch (commandSplit[1]) {
+        case "joinHorizontal=":
+            command = names(Kind.JOIN_HORIZONTAL, receivedNanos, commandSplit[2], commandSplit[3]);
+            break;
+        case "joinVertical=":
+            command = names(Kind.JOIN_VERTICAL, receivedNanos, commandSplit[2], commandSplit[3]);
+            break;
+        case "disconnectWall=":
+            command = new ServerCommand(Kind.DISCONNECT_WALL, Arrays.asList(commandSplit[2]), Vect.ZERO, Vect.ZERO,
+                    Optional.of(Wall.valueOf(commandSplit[3].toUpperCase())), 0, Optional.empty(), receivedNanos);
+            break;
+        case "teleportPortal=":
+            command = teleportPortal(commandSplit[2], commandSplit[3], vect(commandSplit[4], commandSplit[5]),
+                    commandSplit[6], stamp(commandSplit, 7), receivedNanos);
+            break;
+        case "teleportWall=":
+            command = teleportWall(commandSplit[2], commandSplit[3], vect(commandSplit[4], commandSplit[5]),
+                    vect(commandSplit[6], commandSplit[7]), Wall.valueOf(commandSplit[8].toUpperCase()),
+                    stamp(commandSplit, 9), receivedNanos);
+            break;
+        case "connectPortal=":
+            command = names(Kind.CONNECT_PORTAL, receivedNanos, commandSplit[2]);
+            break;
+        case "disconnectPortal=":
+            command = names(Kind.DISCONNECT_PORTAL, receivedNanos, commandSplit[2]);
+            break;
+        case "allConnectedBoards=":
+            command = names(Kind.ALL_CONNECTED_BOARDS, receivedNanos,
+                    Arrays.copyOfRange(commandSplit, 2, commandSplit.length));
+            break;
+        case "membership=":
+            command = new ServerCommand(Kind.MEMBERSHIP,
+                    Arrays.asList(Arrays.copyOfRange(commandSplit, 3, commandSplit.length)), Vect.ZERO, Vect.ZERO,
+                    Optional.empty(), Long.parseLong(commandSplit[2]), Optional.empty(), receivedNanos);
+            break;
+        case "boardJoined=":
+            command = new ServerCommand(Kind.BOARD_JOINED, Arrays.asList(commandSplit[3]), Vect.ZERO, Vect.ZERO,
+                    Optional.empty(), Long.parseLong(commandSplit[2]), Optional.empty(), receivedNanos);
+            break;
+        case "boardLeft=":
+            command = new ServerCommand(Kind.BOARD_LEFT, Arrays.asList(commandSplit[3]), Vect.ZERO, Vect.ZERO,
+                    Optional.empty(), Long.parseLong(commandSplit[2]), Optional.empty(), receivedNanos);
+            break;
+        case "peerAt=":
+            command = names(Kind.PEER_AT, receivedNanos, commandSplit[2], commandSplit[3],
+                    String.valueOf(Integer.parseInt(commandSplit[4])));
+            break;
+        default:
+            return Optional.empty();
+        }
+        return Optional.of(command);
+    }
+
+    /**
+     * Makes the command to teleport a ball to a portal on another board
+     * 
+     * @param board the name of the board the ball goes to
+     * @param ball the name of the ball
+     * @param velocity the velocity of the ball
+     * @param portal the name of the portal on board that is connected to the portal the ball leaves from
+     * @param receivedNanos the value of System.nanoTime() when the command was made or read
+     * @return the command
+     */
+    static ServerCommand teleportPortal(String board, String ball, Vect velocity, String portal, long receivedNanos) {
+        return teleportPortal(board, ball, velocity, portal, Optional.empty(), receivedNanos);
+    }
+    
+    /**
+     * Makes the command to teleport a ball to a portal on another board
+     * 
+     * @param board the name of the board the ball goes to
+     * @param ball the name of the ball
+     * @param velocity the velocity of the ball
+     * @param portal the name of the portal on board that is connected to the portal the ball leaves from
+     * @param stamp when and from where the ball left, if known
+     * @param receivedNanos the value of System.nanoTime() when the command was made or read
+     * @return the command
+     */
+    static ServerCommand teleportPortal(String board, String ball, Vect velocity, String portal,
+            Optional<TeleportStamp> stamp, long receivedNanos) {
+        return new ServerCommand(Kind.TELEPORT_PORTAL, Arrays.asList(board, ball, portal), velocity, Vect.ZERO,
+                Optional.empty(), 0, stamp, receivedNanos);
+    }
+    
+    /**
+     * Makes the command to teleport a ball through a wall to another board
+     * 
+     * @param board the name of the board the ball goes to
+     * @param ball the name of the ball
+     * @param velocity the velocity of the ball
+     * @param location where the ball left its board
+     * @param wall the wall of board the ball arrives through
+     * @param receivedNanos the value of System.nanoTime() when the command was made or read
+     * @return the command
+     */
+    static ServerCommand teleportWall(String board, String ball, Vect velocity, Vect location, Wall wall,
+            long receivedNanos) {
+        return teleportWall(board, ball, velocity, location, wall, Optional.empty(), receivedNanos);
+    }
+    
+    /**
+     * Makes the command to teleport a ball through a wall to another board
+     * 
+     * @param board the name of the board the ball goes to
+     * @param ball the name of the ball
+     * @param velocity the velocity of the ball
+     * @param location where the ball left its board
+     * @param wall the wall of board the ball arrives through
+     * @param stamp when and from where the ball left, if known
+     * @param receivedNanos the value of System.nanoTime() when the command was made or read
+     * @return the command
+     */
+    static ServerCommand teleportWall(String board, String ball, Vect velocity, Vect location, Wall wall,
+            Optional<TeleportStamp> stamp, long receivedNanos) {
+        return new ServerCommand(Kind.TELEPORT_WALL, Arrays.asList(board, ball), velocity, location,
+                Optional.of(wall), 0, stamp, receivedNanos);
+    }
+    
+    /**
+     * Makes a command that is only sent as it is
+     * 
+     * @param line a line of the wire protocol
+     * @return the command
+     */
+    static ServerCommand text(String line) {
+        return names(Kind.TEXT, 0, line);
+    }
+    
+    /**
+     * @return the line of the wire protocol that requests this command, without the "success "
+     *         the server puts in front of it when it passes it on
+     * @throws IllegalStateException unless this is a TELEPORT_PORTAL, TELEPORT_WALL or TEXT command
+     */
+    String toRequest() throws IllegalStateException {
+        switch (kind) {
+        case TELEPORT_PORTAL:
+            return "teleportPortal= " + names.get(0) + " " + names.get(1) + " "
+                    + velocity.x() + " " + velocity.y() + " " + names.get(2)
+                    + (stamp.isPresent() ? " " + stamp.get() : "");
+        case TELEPORT_WALL:
+            return "teleportWall= " + names.get(0) + " " + names.get(1) + " "
+                    + velocity.x() + " " + velocity.y() + " " + location.x() + " " + location.y() + " " + wall.get()
+                    + (stamp.isPresent() ? " " + stamp.get() : "");
+        case TEXT:
+            return names.get(0);
+        default:
+            throw new IllegalStateException("Only teleports and text are sent as requests");
+        }
+    }
+
+    /**
+     * @return a command that only carries names
+     */
+    private static ServerCommand names(Kind kind, long receivedNanos, String... names) {
+        return new ServerCommand(kind, Arrays.asList(names), Vect.ZERO, Vect.ZERO, Optional.empty(), 0,
+                Optional.empty(), receivedNanos);
+    }
+    
+    /**
+     * @return the stamp written as the three words from index on, or empty if the line ends before them
+     */
+    private static Optional<TeleportStamp> stamp(String[] words, int index) {
+        if (words.length < index + 3) {
+            return Optional.empty();
+        }
+        return Optional.of(new TeleportStamp(words[index], Double.parseDouble(words[index + 1]),
+                Double.parseDouble(words[index + 2])));
+    }
+
+    /**
+     * @return the vector with the coordinates written as x and y
+     */
+    private static Vect vect(String x, String y) {
+        return new Vect(Double.parseDouble(x), Double.parseDouble(y));
+    }
+
+    /**
+     * @return the kind of command this is
+     */
+    Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the names the command is about, in the order the protocol sends them
+     */
+    List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * @return the velocity of the ball a TELEPORT_PORTAL or TELEPORT_WALL command carries
+     */
+    Vect getVelocity() {
+        return velocity;
+    }
+
+    /**
+     * @return the location a TELEPORT_WALL ball left its board at
+     */
+    Vect getLocation() {
+        return location;
+    }
+
+    /**
+     * @return the wall of a DISCONNECT_WALL or TELEPORT_WALL command
+     */
+    Wall getWall() {
+        return wall.get();
+    }
+
+    /**
+     * @return the version of the connected boards a MEMBERSHIP, BOARD_JOINED or BOARD_LEFT command
+     *         brings the board to
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return when and from where the ball of a TELEPORT_PORTAL or TELEPORT_WALL command left, if
+     *         the board it left said so
+     */
+    Optional<TeleportStamp> getStamp() {
+        return stamp;
+    }
+
+    /**
+     * @return the value of System.nanoTime() when the command was read
+     */
+    long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + names + (wall.isPresent() ? " " + wall.get() : "") + "\n";
+    }
+}
@@ -0,0 +1,46 @@
+package flingball;
+
+/**
+ * The simulated time of a flingball board, i.e. the total time in seconds the board has been
+ * stepped forward by. Flippers read it to work out how far through a flip they are, so that
+ * stepping the board moves every flipper without touching any of them.
+ *
+ * Mutable, not threadsafe
+ */
+class SimulationClock {
+
+    private double now = 0;
+
+    // Abstraction Function:
+    //  AF(now) = a clock that reads now seconds of simulated time
+    // Representation Invariant:
+    //  --| now >= 0 and finite
+    // Safety from Representation Exposure:
+    //  --| the only field is a private primitive
+    // Thread Safety Argument:
+    //  --| not threadsafe, confined to the Board that owns it and only used under its lock
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert now >= 0 && now < Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return the simulated time in seconds
+     */
+    double now() {
+        return now;
+    }
+
+    /**
+     * Moves the clock forward
+     *
+     * @param time the time in seconds to move forward by, must be >= 0
+     */
+    void advance(double time) {
+        now += time;
+        checkRep();
+    }
+}
@@ -0,0 +1,173 @@
+package flingball;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the physics of a board on a dedicated thread, in fixed steps of 1/physicsRate simulated
+ * seconds. The wall time that passes between iterations is added to an accumulator and as many
+ * whole steps as fit in it are run, so the board is always updated by the same amount of time
+ * however the thread gets scheduled. If the simulation falls more than MAX_BACKLOG_SECONDS
+ * behind, the time it cannot catch up on is dropped rather than run in an ever growing burst.
+ *
+ * The Event Dispatch Thread never runs physics; it only reports the frames it paints through
+ * recordFrame so that both sides show up in the statistics.
+ */
+class SimulationLoop implements Runnable {
+
+    private static final double MAX_BACKLOG_SECONDS = 0.25;
+
+    private final Board board;
+    private final int physicsRate;
+    private final double stepSeconds;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = false;
+    private Thread thread;
+
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicLong stepNanos = new AtomicLong();
+    private final AtomicLong maxStepNanos = new AtomicLong();
+    private final AtomicLong droppedNanos = new AtomicLong();
+    private final AtomicLong lockWaitNanos = new AtomicLong();
+    private final AtomicLong maxLockWaitNanos = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong paintNanos = new AtomicLong();
+    private final AtomicLong maxPaintNanos = new AtomicLong();
+
+    // Abstraction Function:
+    //  AF(board, physicsRate, stepSeconds, startNanos, running, thread, steps, stepNanos, maxStepNanos,
+    //     droppedNanos, lockWaitNanos, maxLockWaitNanos, frames, paintNanos, maxPaintNanos) =
+    //          The physics of board, advanced physicsRate times per simulated second by stepSeconds
+    //          on thread while running is true. Since startNanos, steps steps held the lock of board
+    //          for stepNanos in total and at most maxStepNanos each, after waiting lockWaitNanos in
+    //          total and at most maxLockWaitNanos each to take it, droppedNanos of simulated time
+    //          were skipped, and frames
+    //          frames of board were painted taking paintNanos in total and at most maxPaintNanos each.
+    // Representation Invariant:
+    //  --| physicsRate > 0 and stepSeconds == 1.0 / physicsRate
+    //  --| every counter >= 0
+    // Safety from Representation Exposure:
+    //  --| all fields are private, and the statistics are handed out as an immutable SimulationStats
+    // Thread Safety Argument:
+    //  --| board is threadsafe, and is only stepped by thread
+    //  --| running is volatile, and start and stop, which write thread, are synchronized
+    //  --| the counters are AtomicLongs; the step counters are only written by thread and the frame
+    //      counters only by the Event Dispatch Thread
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert board != null;
+        assert physicsRate > 0 && stepSeconds == 1.0 / physicsRate;
+    }
+
+    /**
+     * Make a loop that will run the physics of a board
+     *
+     * @param board the board to simulate
+     * @param physicsRate the number of physics steps per simulated second, must be > 0
+     */
+    SimulationLoop(Board board, int physicsRate) {
+        if (physicsRate <= 0) {
+            throw new IllegalArgumentException("The physics rate must be positive");
+        }
+        this.board = board;
+        this.physicsRate = physicsRate;
+        this.stepSeconds = 1.0 / physicsRate;
+        checkRep();
+    }
+
+    /**
+     * Starts running the physics on a new daemon thread, unless it is already running
+     */
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "flingball-simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops running the physics and waits for the step in progress to finish
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        double accumulator = 0;
+        while (running) {
+            final long now = System.nanoTime();
+            accumulator += (now - previous) * Board.EPSILON_9;
+            previous = now;
+            if (accumulator > MAX_BACKLOG_SECONDS) {
+                droppedNanos.addAndGet((long) ((accumulator - MAX_BACKLOG_SECONDS) / Board.EPSILON_9));
+                accumulator = MAX_BACKLOG_SECONDS;
+            }
+            while (accumulator >= stepSeconds && running) {
+                final long lockRequested = System.nanoTime();
+                synchronized (board) {
+                    /* holding the lock across both calls times how long the step keeps others out */
+                    final long lockTaken = System.nanoTime();
+                    try {
+                        board.updateBoard(stepSeconds);
+                        board.applyFrictionGravity(stepSeconds);
+                    } catch (RuntimeException e) {
+                        /* one bad step must not stop the board for good */
+                        e.printStackTrace();
+                    }
+                    lockWaitNanos.addAndGet(lockTaken - lockRequested);
+                    maxLockWaitNanos.accumulateAndGet(lockTaken - lockRequested, Math::max);
+                    record(System.nanoTime() - lockTaken, steps, stepNanos, maxStepNanos);
+                }
+                accumulator -= stepSeconds;
+            }
+            /* sleep until the next step is due */
+            LockSupport.parkNanos((long) ((stepSeconds - accumulator) / Board.EPSILON_9));
+        }
+    }
+
+    /**
+     * Records that the Event Dispatch Thread painted a frame
+     *
+     * @param nanos the wall time painting the frame took
+     */
+    void recordFrame(long nanos) {
+        record(nanos, frames, paintNanos, maxPaintNanos);
+    }
+
+    /**
+     * @return the statistics of the simulation since this loop was made
+     */
+    SimulationStats stats() {
+        /* each maximum is read before its total, which record adds to first, so it never exceeds it */
+        final long maxStep = maxStepNanos.get();
+        final long maxLockWait = maxLockWaitNanos.get();
+        final long maxPaint = maxPaintNanos.get();
+        return new SimulationStats(physicsRate, (System.nanoTime() - startNanos) * Board.EPSILON_9,
+                steps.get(), stepNanos.get(), maxStep, lockWaitNanos.get(), maxLockWait,
+                droppedNanos.get() * Board.EPSILON_9, frames.get(), paintNanos.get(), maxPaint);
+    }
+
+    /**
+     * Adds one timed event to a set of counters
+     */
+    private static void record(long nanos, AtomicLong count, AtomicLong total, AtomicLong max) {
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+        count.incrementAndGet();
+    }
+}
@@ -0,0 +1,192 @@
+package flingball;
+
+/**
+ * Immutable snapshot of how a Simulator has been keeping up: how many fixed physics steps the
+ * simulation thread has run and how long they took, and how many frames the Event Dispatch
+ * Thread has painted and how long painting took. Comparing the simulated time against the wall
+ * time shows whether the physics keeps up with its rate, and the step, lock wait and paint times
+ * show whether either thread is holding the other up.
+ */
+public class SimulationStats {
+
+    private final int physicsRate;
+    private final double elapsedSeconds;
+    private final long steps;
+    private final long stepNanos;
+    private final long maxStepNanos;
+    private final long lockWaitNanos;
+    private final long maxLockWaitNanos;
+    private final double droppedSeconds;
+    private final long frames;
+    private final long paintNanos;
+    private final long maxPaintNanos;
+
+    // Abstraction Function:
+    //  AF(physicsRate, elapsedSeconds, steps, stepNanos, maxStepNanos, lockWaitNanos, maxLockWaitNanos,
+    //     droppedSeconds, frames, paintNanos, maxPaintNanos) =
+    //          Over elapsedSeconds of wall time, a simulation that steps physicsRate times per
+    //          simulated second ran steps steps holding the board's lock for stepNanos in total and
+    //          at most maxStepNanos each, waited lockWaitNanos in total and at most maxLockWaitNanos
+    //          for each step to take the lock, and skipped droppedSeconds of simulated time it could
+    //          not catch up on, while frames frames were painted taking paintNanos in total and at
+    //          most maxPaintNanos each
+    // Representation Invariant:
+    //  --| physicsRate > 0, every other field >= 0
+    //  --| maxStepNanos <= stepNanos, maxLockWaitNanos <= lockWaitNanos and maxPaintNanos <= paintNanos
+    // Safety from Representation Exposure:
+    //  --| all fields are private, final and primitive
+    // Thread Safety Argument:
+    //  --| immutable
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert physicsRate > 0;
+        assert elapsedSeconds >= 0 && droppedSeconds >= 0;
+        assert 0 <= maxStepNanos && maxStepNanos <= stepNanos && steps >= 0;
+        assert 0 <= maxLockWaitNanos && maxLockWaitNanos <= lockWaitNanos;
+        assert 0 <= maxPaintNanos && maxPaintNanos <= paintNanos && frames >= 0;
+    }
+
+    /**
+     * Make a snapshot of the statistics of a simulation
+     *
+     * @param physicsRate the number of physics steps per simulated second, must be > 0
+     * @param elapsedSeconds the wall time the simulation has been running for
+     * @param steps the number of physics steps run
+     * @param stepNanos the total wall time physics steps held the board's lock
+     * @param maxStepNanos the longest a physics step held the board's lock
+     * @param lockWaitNanos the total wall time physics steps waited to take the board's lock
+     * @param maxLockWaitNanos the longest a physics step waited to take the board's lock
+     * @param droppedSeconds the simulated time skipped because the simulation fell too far behind
+     * @param frames the number of frames painted
+     * @param paintNanos the total wall time spent painting frames
+     * @param maxPaintNanos the longest painting a frame took
+     */
+    SimulationStats(int physicsRate, double elapsedSeconds, long steps, long stepNanos, long maxStepNanos,
+            long lockWaitNanos, long maxLockWaitNanos, double droppedSeconds, long frames, long paintNanos,
+            long maxPaintNanos) {
+        this.physicsRate = physicsRate;
+        this.elapsedSeconds = elapsedSeconds;
+        this.steps = steps;
+        this.stepNanos = stepNanos;
+        this.maxStepNanos = maxStepNanos;
+        this.lockWaitNanos = lockWaitNanos;
+        this.maxLockWaitNanos = maxLockWaitNanos;
+        this.droppedSeconds = droppedSeconds;
+        this.frames = frames;
+        this.paintNanos = paintNanos;
+        this.maxPaintNanos = maxPaintNanos;
+        checkRep();
+    }
+
+    /**
+     * @return the number of physics steps per simulated second the simulation runs at
+     */
+    public int getPhysicsRate() {
+        return physicsRate;
+    }
+
+    /**
+     * @return the wall time in seconds the simulation has been running for
+     */
+    public double getElapsedSeconds() {
+        return elapsedSeconds;
+    }
+
+    /**
+     * @return the number of physics steps run
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return the simulated time in seconds the physics steps covered
+     */
+    public double getSimulatedSeconds() {
+        return (double) steps / physicsRate;
+    }
+
+    /**
+     * @return the simulated seconds per wall second, which is 1 when the simulation keeps up
+     */
+    public double getSimulationRate() {
+        return elapsedSeconds == 0 ? 0 : getSimulatedSeconds() / elapsedSeconds;
+    }
+
+    /**
+     * @return the mean wall time in milliseconds a physics step took
+     */
+    public double getMeanStepMillis() {
+        return steps == 0 ? 0 : stepNanos * Board.EPSILON_6 / steps;
+    }
+
+    /**
+     * @return the longest wall time in milliseconds a physics step took
+     */
+    public double getMaxStepMillis() {
+        return maxStepNanos * Board.EPSILON_6;
+    }
+
+    /**
+     * @return the mean wall time in milliseconds a physics step waited to take the board's lock,
+     *         i.e. how long something else such as painting or a server command held it
+     */
+    public double getMeanLockWaitMillis() {
+        return steps == 0 ? 0 : lockWaitNanos * Board.EPSILON_6 / steps;
+    }
+
+    /**
+     * @return the longest wall time in milliseconds a physics step waited to take the board's lock
+     */
+    public double getMaxLockWaitMillis() {
+        return maxLockWaitNanos * Board.EPSILON_6;
+    }
+
+    /**
+     * @return the simulated time in seconds skipped because the simulation fell too far behind
+     */
+    public double getDroppedSeconds() {
+        return droppedSeconds;
+    }
+
+    /**
+     * @return the number of frames painted
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the number of frames painted per wall second
+     */
+    public double getFramesPerSecond() {
+        return elapsedSeconds == 0 ? 0 : frames / elapsedSeconds;
+    }
+
+    /**
+     * @return the mean wall time in milliseconds painting a frame took
+     */
+    public double getMeanPaintMillis() {
+        return frames == 0 ? 0 : paintNanos * Board.EPSILON_6 / frames;
+    }
+
+    /**
+     * @return the longest wall time in milliseconds painting a frame took
+     */
+    public double getMaxPaintMillis() {
+        return maxPaintNanos * Board.EPSILON_6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("physics: %d Hz, %d steps, %.3f simulated s per s, step %.3f ms mean %.3f ms max, "
+                + "lock wait %.3f ms mean %.3f ms max, %.3f s dropped%n"
+                + "frames: %d, %.1f fps, paint %.3f ms mean %.3f ms max",
+                physicsRate, steps, getSimulationRate(), getMeanStepMillis(), getMaxStepMillis(),
+                getMeanLockWaitMillis(), getMaxLockWaitMillis(), droppedSeconds,
+                frames, getFramesPerSecond(), getMeanPaintMillis(), getMaxPaintMillis());
+    }
+}
@@ -7,6 +7,7 @@ import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import javax.swing.JFrame;
@@ -16,14 +17,18 @@ import javax.swing.Timer;
 
 /**
  * Simulator is a GUI interface on which to play a specific game of Flingball,
- * specified by board. It runs the simulation at a minimum of 10-20 frames per
- * second (FPS).
+ * specified by board. The physics runs on its own thread at a fixed rate, and the
+ * Event Dispatch Thread only repaints the board, at a minimum of 10-20 frames per
+ * second (FPS), and handles key presses.
  */
 public class Simulator {
 
     private final BufferedImage boardImage;
     private final Board board;
     private final List<KeyAction> listeners = new LinkedList<>();
+    private final SimulationLoop loop;
+    private final Optional<RemoteView> remote;
+    public static final int DEFAULT_PHYSICS_RATE = (int) Math.round(1 / Board.TIME);
     private static final int GAMEBOARD_SIZE = 20;
     private static final int PIXELS_PER_L = 20;
     private static final int DRAWING_AREA_SIZE_IN_PIXELS = GAMEBOARD_SIZE * PIXELS_PER_L;
@@ -31,7 +36,7 @@ public class Simulator {
     private static final ImageObserver NO_OBSERVER_NEEDED = null;
 
     // Abstraction Function
-    //  AF(board, boardImage, listeners, GAMEBOARD_SIZE, PIXELS_PER_L, DRAWING_AREA_SIZE_IN_PIXELS,
+    //  AF(board, boardImage, listeners, loop, remote, GAMEBOARD_SIZE, PIXELS_PER_L, DRAWING_AREA_SIZE_IN_PIXELS,
     //          TIMER_INTERVAL_MILLISECONDS) = The simulator of a flingball game with board board with
     //                        boardImage which contains the background color and all static gadgets in
     //                        this board as an image. listeners specify the key action listeners that
@@ -40,23 +45,61 @@ public class Simulator {
     //                        of the game board getting simulated where each unit of width x height
     //                        are PIXELS_PER_L x PIXELS_PER_L pixels. DRAWING_AREA_SIZE_IN_PIXELS
     //                        further specifies this more exactly and TIMER_INTERVAL_MILLISECONDS
-    //                        sets the frame-rate of the simulation. 
+    //                        sets the frame-rate of the simulation. loop runs the physics of board
+    //                        on its own thread. If remote is present, the board is run by a
+    //                        HeadlessServer instead: board is only drawn as the background, the
+    //                        frames come from remote, and the keys go to it.
     // Representation Invariant
-    //  --| boardImage and board are not null
+    //  --| boardImage, board, loop and remote are not null
     // Safety from Rep Exposure
     //  --| boardImage, board are private, final and is never returned
     // Thread Safety Argument
     //  --| all fields are private and final
+    //  --| board is threadsafe, and is stepped only by the thread of loop and painted only by the
+    //      Event Dispatch Thread
+    //  --| loop and remote are threadsafe
     //  --| addToListeners, while it adds to a list in the rep, is only added to upon initialization
     //      of a board
 
     /**
-     * Construct a Simulator with given board
+     * Construct a Simulator with given board that runs its physics at DEFAULT_PHYSICS_RATE
      * 
      * @param board the flingball board to construct a simulation with
      */
     public Simulator(Board board) {
+        this(board, DEFAULT_PHYSICS_RATE);
+    }
+    
+    /**
+     * Construct a Simulator with given board
+     * 
+     * @param board the flingball board to construct a simulation with
+     * @param physicsRate the number of fixed physics steps per simulated second, must be > 0
+     * @throws IllegalArgumentException if physicsRate is not positive
+     */
+    public Simulator(Board board, int physicsRate) throws IllegalArgumentException {
+        this(board, physicsRate, Optional.empty());
+    }
+    
+    /**
+     * Construct a Simulator that views a board run by a HeadlessServer, sending it the keys pressed
+     * instead of running the physics here
+     * 
+     * @param board the flingball board the server runs, as parsed from the same file, to draw the
+     *              background of
+     * @param remote the view of the board on the server
+     */
+    Simulator(Board board, RemoteView remote) {
+        this(board, DEFAULT_PHYSICS_RATE, Optional.of(remote));
+    }
+    
+    /**
+     * Construct a Simulator that runs board itself, or views it if remote is present
+     */
+    private Simulator(Board board, int physicsRate, Optional<RemoteView> remote) throws IllegalArgumentException {
         this.board = board;
+        this.loop = new SimulationLoop(board, physicsRate);
+        this.remote = remote;
         boardImage = board.drawBackground();
         checkRep();
     }
@@ -67,6 +110,8 @@ public class Simulator {
     private void checkRep() {
         assert board != null;
         assert boardImage != null;
+        assert loop != null;
+        assert remote != null;
     }
 
     /**
@@ -92,7 +137,15 @@ public class Simulator {
     }
 
     /**
-     * Makes and displays the window in which to run the Flingball game.
+     * @return how the simulation has been keeping up since this simulator was made
+     */
+    public SimulationStats getSimulationStats() {
+        return loop.stats();
+    }
+
+    /**
+     * Makes and displays the window in which to run the Flingball game, and starts running
+     * its physics.
      */
     public void makeAndShowGUI() {
         final JFrame window = new JFrame("Flingball");
@@ -101,13 +154,14 @@ public class Simulator {
         final JPanel drawingArea = new JPanel() {
 
             @Override protected void paintComponent(Graphics graphics) {
+                final long paintStart = System.nanoTime();
                 super.paintComponent(graphics);
                 graphics.drawImage(boardImage, 0, 0, DRAWING_AREA_SIZE_IN_PIXELS, DRAWING_AREA_SIZE_IN_PIXELS,
                         NO_OBSERVER_NEEDED);
               
-                board.drawBalls(graphics); 
-                board.drawFlippers(graphics);
-                board.drawJoinBanner(graphics);
+                /* one snapshot, read without the board's lock, so the balls and flippers agree */
+                (remote.isPresent() ? remote.get().getFrame() : board.getFrame()).draw(graphics);
+                loop.recordFrame(System.nanoTime() - paintStart);
             }
         };
         
@@ -118,29 +172,16 @@ public class Simulator {
          // listen for keyboard events
         drawingArea.setFocusable(true);
         drawingArea.requestFocusInWindow();
-        addToListeners();
-        for (KeyAction listener : listeners) {
-            drawingArea.addKeyListener(listener);   
-        }
-
-        new Timer(TIMER_INTERVAL_MILLISECONDS, (ActionEvent e) -> {
-  
-            final double startTime = System.nanoTime()*Board.EPSILON_9;
-            double time1 = System.nanoTime();
-            double delta = -1;
-            while ((System.nanoTime()*Board.EPSILON_9-startTime-Board.EPSILON_7)< TIMER_INTERVAL_MILLISECONDS*Board.EPSILON_3) {
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
-                }
-                delta = (System.nanoTime()-time1)*Board.EPSILON_9;  
-                time1 = System.nanoTime();
-                board.updateBoard(delta);
-                board.applyFrictionGravity(delta);
+        if (remote.isPresent()) {
+            drawingArea.addKeyListener(remote.get());
+        } else {
+            addToListeners();
+            for (KeyAction listener : listeners) {
+                drawingArea.addKeyListener(listener);   
             }
-            drawingArea.repaint();
-        }).start(); 
+            loop.start();
+        }
+        new Timer(TIMER_INTERVAL_MILLISECONDS, (ActionEvent e) -> drawingArea.repaint()).start(); 
     }
 
 }
@@ -11,7 +11,7 @@ import physics.*;
  * An immutable square bumper in the flingball game, an implementation of Gadget
  * and Bumper
  */
-public class SquareBumper implements Bumper {
+public class SquareBumper implements Bumper, StaticGadget {
 
     private final String name;
     private final Vect location;
@@ -94,6 +94,11 @@ public class SquareBumper implements Bumper {
         return location;
     }
 
+    @Override
+    public Vect getSize() {
+        return new Vect(EDGE_LENGTH, EDGE_LENGTH);
+    }
+
     @Override 
     public String getName() {
         return name;
@@ -120,6 +125,16 @@ public class SquareBumper implements Bumper {
         g.fillArc(xCoord + Board.L, yCoord + Board.L, 0, 0, startAngleDegrees, arcAngleDegrees);
     }
 
+    @Override
+    public List<LineSegment> getLineSegments() {
+        return new ArrayList<>(lineSegments);
+    }
+
+    @Override
+    public List<Circle> getCircles() {
+        return new ArrayList<>(circles);
+    }
+
     @Override 
     public Ball getCollisionRedirection(Ball ball) {
         for (int i = 0; i < lineSegments.size(); i++) {
@@ -0,0 +1,27 @@
+package flingball;
+
+import java.util.List;
+
+import physics.Circle;
+import physics.LineSegment;
+
+/**
+ * An immutable, threadsafe gadget in the flingball game whose collision geometry never moves
+ */
+public interface StaticGadget extends Gadget {
+
+    /**
+     * Gets the line segments that make up the borders of the Gadget.
+     * 
+     * @return the line segments a ball can bounce off, in the order the Gadget checks them
+     */
+    public List<LineSegment> getLineSegments();
+
+    /**
+     * Gets the circles that make up the round parts and corners of the Gadget.
+     * 
+     * @return the circles a ball can bounce off, in the order the Gadget checks them
+     */
+    public List<Circle> getCircles();
+
+}
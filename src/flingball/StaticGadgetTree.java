@@ -0,0 +1,476 @@
+package flingball;
+
+import java.util.Arrays;
+
+import physics.Vect;
+
+/**
+ * A mutable bounding-volume hierarchy broadphase over the static gadgets of a flingball board.
+ * Each kind of static gadget (bumpers, absorbers, portals) gets a binary tree of axis-aligned
+ * boxes whose leaves are the bounding boxes of the gadgets, and balls are queried by the box
+ * they sweep over a foresight window, so that only the gadgets whose boxes that swept box
+ * overlaps need to go through the exact time-of-collision calculations.
+ *
+ * The first gadgets of a board are built into a balanced tree top-down. Gadgets added after
+ * that are inserted one at a time next to the subtree that grows the least, so adding a gadget
+ * costs a walk down and up the tree instead of a rebuild.
+ *
+ * The tree is a conservative filter: any gadget that a ball can collide with during the
+ * foresight window is always returned as a candidate, so scanning the candidates in order
+ * gives the same result as scanning every gadget on the board. Ball-ball pairs are found by
+ * SweepAndPrune.
+ */
+class StaticGadgetTree {
+
+    private static final double SLOP = Board.EPSILON_3;
+
+    private final Tree bumperTree = new Tree();
+    private final Tree absorberTree = new Tree();
+    private final Tree portalTree = new Tree();
+
+    private double[] ballMinX = new double[0];
+    private double[] ballMinY = new double[0];
+    private double[] ballMaxX = new double[0];
+    private double[] ballMaxY = new double[0];
+    private double sweepMinX;
+    private double sweepMinY;
+    private double sweepMaxX;
+    private double sweepMaxY;
+
+    // Abstraction Function:
+    //  AF(bumperTree, absorberTree, portalTree, ballMinX, ballMinY, ballMaxX, ballMaxY,
+    //     sweepMinX, sweepMinY, sweepMaxX, sweepMaxY) =
+    //                 The static gadgets of a board, organized as one bounding-volume hierarchy per
+    //                 kind of gadget. The leaves of each Tree are the indices (into the board's
+    //                 bumper, absorber or portal list) of the gadgets inserted so far, boxed by
+    //                 their bounding boxes. ballMinX..ballMaxY are the swept boxes of the balls
+    //                 from the last call to sweepBalls. sweepMinX..sweepMaxY is the swept box of
+    //                 the ball most recently queried or swept.
+    // Representation Invariant:
+    //  --| the four ball box arrays have the same length, which is the number of swept balls
+    //  --| ballMinX[i] <= ballMaxX[i] and ballMinY[i] <= ballMaxY[i]
+    // Safety from Representation Exposure:
+    //  --| all fields are private and no array is ever returned; queries copy into caller arrays
+    // Thread Safety Argument:
+    //  --| not threadsafe, confined to the Board that owns it and only used under its lock
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert ballMinX.length == ballMinY.length;
+        assert ballMinX.length == ballMaxX.length;
+        assert ballMinX.length == ballMaxY.length;
+    }
+
+    /**
+     * Adds the static gadgets of a board that are not in the trees yet. Gadgets are only ever
+     * appended to a board, so the gadgets at indices below the size of a tree are already in it
+     * and only the rest are inserted.
+     *
+     * @param bumpers the bumpers of the board, in board order
+     * @param absorbers the absorbers of the board, in board order
+     * @param portals the portals of the board, in board order
+     */
+    void insertStaticGadgets(Gadget[] bumpers, Gadget[] absorbers, Gadget[] portals) {
+        insertGadgets(bumperTree, bumpers);
+        insertGadgets(absorberTree, absorbers);
+        insertGadgets(portalTree, portals);
+        checkRep();
+    }
+
+    /**
+     * Records the box each ball of a board sweeps during the foresight window, for the queries
+     * that take the index of a ball.
+     *
+     * @param balls the balls of the board, in board order
+     * @param window the foresight time over which to sweep each ball, must be >= 0
+     */
+    void sweepBalls(BallStore balls, double window) {
+        final int count = balls.size();
+        if (ballMinX.length != count) {
+            ballMinX = new double[count];
+            ballMinY = new double[count];
+            ballMaxX = new double[count];
+            ballMaxY = new double[count];
+        }
+        for (int i = 0; i < count; i++) {
+            sweep(balls, i, window);
+            ballMinX[i] = sweepMinX;
+            ballMinY[i] = sweepMinY;
+            ballMaxX[i] = sweepMaxX;
+            ballMaxY[i] = sweepMaxY;
+        }
+        checkRep();
+    }
+
+    /**
+     * Finds the bumpers that the ball at index ball may collide with
+     *
+     * @param ball the index of a swept ball
+     * @param candidates an array of length at least the number of bumpers, which gets filled
+     *                   with the candidate bumper indices in increasing order
+     * @return the number of candidates written into candidates
+     */
+    int bumperCandidates(int ball, int[] candidates) {
+        return bumperTree.query(ballMinX[ball], ballMinY[ball], ballMaxX[ball], ballMaxY[ball], candidates);
+    }
+
+    /**
+     * Finds the absorbers that the ball at index ball may collide with
+     *
+     * @param ball the index of a swept ball
+     * @param candidates an array of length at least the number of absorbers, which gets filled
+     *                   with the candidate absorber indices in increasing order
+     * @return the number of candidates written into candidates
+     */
+    int absorberCandidates(int ball, int[] candidates) {
+        return absorberTree.query(ballMinX[ball], ballMinY[ball], ballMaxX[ball], ballMaxY[ball], candidates);
+    }
+
+    /**
+     * Finds the portals that the ball at index ball may collide with
+     *
+     * @param ball the index of a swept ball
+     * @param candidates an array of length at least the number of portals, which gets filled
+     *                   with the candidate portal indices in increasing order
+     * @return the number of candidates written into candidates
+     */
+    int portalCandidates(int ball, int[] candidates) {
+        return portalTree.query(ballMinX[ball], ballMinY[ball], ballMaxX[ball], ballMaxY[ball], candidates);
+    }
+
+    /**
+     * Finds the bumpers that a ball, which need not be swept, may collide with during a window
+     *
+     * @param balls the balls of the board
+     * @param ball the position of the ball in balls
+     * @param window the foresight time over which to sweep the ball, must be >= 0
+     * @param candidates an array of length at least the number of bumpers, which gets filled
+     *                   with the candidate bumper indices in increasing order
+     * @return the number of candidates written into candidates
+     */
+    int bumperCandidates(BallStore balls, int ball, double window, int[] candidates) {
+        sweep(balls, ball, window);
+        return bumperTree.query(sweepMinX, sweepMinY, sweepMaxX, sweepMaxY, candidates);
+    }
+
+    /**
+     * Finds the absorbers that a ball, which need not be swept, may collide with during a window
+     *
+     * @param balls the balls of the board
+     * @param ball the position of the ball in balls
+     * @param window the foresight time over which to sweep the ball, must be >= 0
+     * @param candidates an array of length at least the number of absorbers, which gets filled
+     *                   with the candidate absorber indices in increasing order
+     * @return the number of candidates written into candidates
+     */
+    int absorberCandidates(BallStore balls, int ball, double window, int[] candidates) {
+        sweep(balls, ball, window);
+        return absorberTree.query(sweepMinX, sweepMinY, sweepMaxX, sweepMaxY, candidates);
+    }
+
+    /**
+     * Finds the portals that a ball, which need not be swept, may collide with during a window
+     *
+     * @param balls the balls of the board
+     * @param ball the position of the ball in balls
+     * @param window the foresight time over which to sweep the ball, must be >= 0
+     * @param candidates an array of length at least the number of portals, which gets filled
+     *                   with the candidate portal indices in increasing order
+     * @return the number of candidates written into candidates
+     */
+    int portalCandidates(BallStore balls, int ball, double window, int[] candidates) {
+        sweep(balls, ball, window);
+        return portalTree.query(sweepMinX, sweepMinY, sweepMaxX, sweepMaxY, candidates);
+    }
+
+    /**
+     * @return the number of nodes visited by the queries since the trees were made, for
+     *         benchmarks
+     */
+    long visitedNodes() {
+        return bumperTree.visited + absorberTree.visited + portalTree.visited;
+    }
+
+    /**
+     * Sets the sweep box to the box a ball covers during a window
+     *
+     * @param balls the balls of the board
+     * @param ball the position of the ball in balls
+     * @param window the foresight time over which to sweep the ball, must be >= 0
+     */
+    private void sweep(BallStore balls, int ball, double window) {
+        final double x = balls.x(ball);
+        final double y = balls.y(ball);
+        final double endX = x + balls.vx(ball) * window;
+        final double endY = y + balls.vy(ball) * window;
+        sweepMinX = Math.min(x, endX) - Ball.RADIUS - SLOP;
+        sweepMinY = Math.min(y, endY) - Ball.RADIUS - SLOP;
+        sweepMaxX = Math.max(x, endX) + Ball.RADIUS + SLOP;
+        sweepMaxY = Math.max(y, endY) + Ball.RADIUS + SLOP;
+    }
+
+    /**
+     * Inserts the gadgets of a list that are not in a tree yet. An empty tree is built top-down
+     * from all of them at once; otherwise they are inserted one at a time.
+     *
+     * @param tree the tree holding the first gadgets of the list
+     * @param gadgets the gadgets of one kind, in board order
+     */
+    private static void insertGadgets(Tree tree, Gadget[] gadgets) {
+        final int first = tree.size();
+        final int count = gadgets.length - first;
+        if (count <= 0) {
+            return;
+        }
+        final double[] minX = new double[count];
+        final double[] minY = new double[count];
+        final double[] maxX = new double[count];
+        final double[] maxY = new double[count];
+        for (int i = 0; i < count; i++) {
+            final Vect location = gadgets[first + i].getLocation();
+            final Vect size = gadgets[first + i].getSize();
+            minX[i] = location.x() - SLOP;
+            minY[i] = location.y() - SLOP;
+            maxX[i] = location.x() + size.x() + SLOP;
+            maxY[i] = location.y() + size.y() + SLOP;
+        }
+        if (first == 0) {
+            tree.build(count, minX, minY, maxX, maxY);
+        } else {
+            for (int i = 0; i < count; i++) {
+                tree.insert(minX[i], minY[i], maxX[i], maxY[i]);
+            }
+        }
+    }
+
+    /**
+     * A binary tree of axis-aligned boxes over items 0..size()-1, stored as parallel arrays of
+     * nodes. A leaf boxes one item, and an inner node boxes the union of its two children.
+     */
+    private static final class Tree {
+        private static final int NONE = -1;
+
+        private double[] minX = new double[0];
+        private double[] minY = new double[0];
+        private double[] maxX = new double[0];
+        private double[] maxY = new double[0];
+        private int[] left = new int[0];
+        private int[] right = new int[0];
+        private int[] parent = new int[0];
+        private int[] item = new int[0];
+        private int nodeCount = 0;
+        private int itemCount = 0;
+        private int root = NONE;
+        private int[] stack = new int[0];
+        private long visited = 0;
+
+        /**
+         * @return the number of items in the tree
+         */
+        int size() {
+            return itemCount;
+        }
+
+        /**
+         * Replaces the tree with a balanced tree over the boxes of count items
+         */
+        void build(int count, double[] boxMinX, double[] boxMinY, double[] boxMaxX, double[] boxMaxY) {
+            nodeCount = 0;
+            itemCount = 0;
+            ensureCapacity(2 * count - 1);
+            final int[] leaves = new int[count];
+            for (int i = 0; i < count; i++) {
+                leaves[i] = newLeaf(boxMinX[i], boxMinY[i], boxMaxX[i], boxMaxY[i]);
+            }
+            root = buildRange(leaves, 0, count);
+            parent[root] = NONE;
+        }
+
+        /**
+         * Adds one item with the next index to the tree, as the sibling of the node whose box
+         * grows the least by taking it in
+         */
+        void insert(double boxMinX, double boxMinY, double boxMaxX, double boxMaxY) {
+            ensureCapacity(nodeCount + 2);
+            final int leaf = newLeaf(boxMinX, boxMinY, boxMaxX, boxMaxY);
+            if (root == NONE) {
+                root = leaf;
+                parent[leaf] = NONE;
+                return;
+            }
+
+            int sibling = root;
+            while (item[sibling] == NONE) {
+                final double growLeft = unionArea(left[sibling], leaf) - area(left[sibling]);
+                final double growRight = unionArea(right[sibling], leaf) - area(right[sibling]);
+                sibling = growLeft <= growRight ? left[sibling] : right[sibling];
+            }
+
+            final int oldParent = parent[sibling];
+            final int node = newInner(sibling, leaf);
+            parent[node] = oldParent;
+            if (oldParent == NONE) {
+                root = node;
+            } else {
+                if (left[oldParent] == sibling) {
+                    left[oldParent] = node;
+                } else {
+                    right[oldParent] = node;
+                }
+                for (int ancestor = oldParent; ancestor != NONE; ancestor = parent[ancestor]) {
+                    fit(ancestor);
+                }
+            }
+        }
+
+        /**
+         * Collects, in increasing order, the items whose boxes overlap a box
+         */
+        int query(double queryMinX, double queryMinY, double queryMaxX, double queryMaxY, int[] out) {
+            if (root == NONE) {
+                return 0;
+            }
+            int found = 0;
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                final int node = stack[--top];
+                visited++;
+                if (minX[node] > queryMaxX || queryMinX > maxX[node]
+                        || minY[node] > queryMaxY || queryMinY > maxY[node]) {
+                    continue;
+                }
+                if (item[node] != NONE) {
+                    out[found++] = item[node];
+                } else {
+                    stack[top++] = left[node];
+                    stack[top++] = right[node];
+                }
+            }
+            Arrays.sort(out, 0, found);
+            return found;
+        }
+
+        /**
+         * Builds a subtree over leaves[from..to) by splitting them in half along the axis on
+         * which their centers are spread the most
+         *
+         * @return the root of the subtree
+         */
+        private int buildRange(int[] leaves, int from, int to) {
+            if (to - from == 1) {
+                return leaves[from];
+            }
+            double lowX = Double.POSITIVE_INFINITY;
+            double highX = Double.NEGATIVE_INFINITY;
+            double lowY = Double.POSITIVE_INFINITY;
+            double highY = Double.NEGATIVE_INFINITY;
+            for (int k = from; k < to; k++) {
+                lowX = Math.min(lowX, centerX(leaves[k]));
+                highX = Math.max(highX, centerX(leaves[k]));
+                lowY = Math.min(lowY, centerY(leaves[k]));
+                highY = Math.max(highY, centerY(leaves[k]));
+            }
+            final boolean alongX = highX - lowX >= highY - lowY;
+
+            /* insertion sort by center; the ranges are small and built once */
+            for (int k = from + 1; k < to; k++) {
+                final int leaf = leaves[k];
+                final double key = alongX ? centerX(leaf) : centerY(leaf);
+                int slot = k - 1;
+                while (slot >= from && (alongX ? centerX(leaves[slot]) : centerY(leaves[slot])) > key) {
+                    leaves[slot + 1] = leaves[slot];
+                    slot--;
+                }
+                leaves[slot + 1] = leaf;
+            }
+
+            final int middle = (from + to) >>> 1;
+            return newInner(buildRange(leaves, from, middle), buildRange(leaves, middle, to));
+        }
+
+        /**
+         * @return a new leaf for the next item
+         */
+        private int newLeaf(double boxMinX, double boxMinY, double boxMaxX, double boxMaxY) {
+            final int node = nodeCount++;
+            minX[node] = boxMinX;
+            minY[node] = boxMinY;
+            maxX[node] = boxMaxX;
+            maxY[node] = boxMaxY;
+            left[node] = NONE;
+            right[node] = NONE;
+            item[node] = itemCount++;
+            return node;
+        }
+
+        /**
+         * @return a new inner node over two subtrees, made its parent
+         */
+        private int newInner(int first, int second) {
+            final int node = nodeCount++;
+            left[node] = first;
+            right[node] = second;
+            item[node] = NONE;
+            parent[first] = node;
+            parent[second] = node;
+            fit(node);
+            return node;
+        }
+
+        /**
+         * Sets the box of an inner node to the union of the boxes of its children
+         */
+        private void fit(int node) {
+            minX[node] = Math.min(minX[left[node]], minX[right[node]]);
+            minY[node] = Math.min(minY[left[node]], minY[right[node]]);
+            maxX[node] = Math.max(maxX[left[node]], maxX[right[node]]);
+            maxY[node] = Math.max(maxY[left[node]], maxY[right[node]]);
+        }
+
+        private double area(int node) {
+            return (maxX[node] - minX[node]) * (maxY[node] - minY[node]);
+        }
+
+        private double unionArea(int a, int b) {
+            return (Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]))
+                    * (Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]));
+        }
+
+        /**
+         * @return twice the x coordinate of the center of the box of node, which orders boxes
+         *         by center just as well
+         */
+        private double centerX(int node) {
+            return minX[node] + maxX[node];
+        }
+
+        /**
+         * @return twice the y coordinate of the center of the box of node
+         */
+        private double centerY(int node) {
+            return minY[node] + maxY[node];
+        }
+
+        /**
+         * Grows the node arrays to hold at least nodes nodes, and the query stack with them
+         */
+        private void ensureCapacity(int nodes) {
+            if (minX.length >= nodes) {
+                return;
+            }
+            final int capacity = Math.max(nodes, 2 * minX.length);
+            minX = Arrays.copyOf(minX, capacity);
+            minY = Arrays.copyOf(minY, capacity);
+            maxX = Arrays.copyOf(maxX, capacity);
+            maxY = Arrays.copyOf(maxY, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            item = Arrays.copyOf(item, capacity);
+            stack = new int[capacity];
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package flingball;
+
+import java.util.List;
+
+import physics.Circle;
+import physics.LineSegment;
+import physics.Vect;
+
+/**
+ * The collision geometry of the static gadgets of a board, compiled into flat primitive arrays.
+ * Every line segment and circle of every bumper, absorber and portal is packed into parallel
+ * arrays, grouped by the gadget that owns it, so that the time until a ball hits a gadget is
+ * found by one loop over primitives instead of a call through the Gadget interface.
+ *
+ * Owners are numbered bumpers first, then absorbers, then portals, each in board order. The
+ * times are computed with the same arithmetic as physics.Physics and follow the same rules as
+ * each gadget's getTimeTillCollision, so they are identical to what the gadgets return.
+ * Gadgets that do not implement StaticGadget are kept as opaque owners and asked directly.
+ *
+ * Immutable once compiled; a new StaticGeometry is compiled whenever a gadget is added.
+ */
+class StaticGeometry {
+
+    /**
+     * The collision rules an owner follows
+     */
+    private enum Kind { BUMPER, ABSORBER, PORTAL, OPAQUE }
+
+    private final Gadget[] owners;
+    private final Kind[] kinds;
+    private final int bumperCount;
+    private final int absorberCount;
+    private final int[] segmentStart;
+    private final double[] segmentX1;
+    private final double[] segmentY1;
+    private final double[] segmentX2;
+    private final double[] segmentY2;
+    private final int[] circleStart;
+    private final double[] circleX;
+    private final double[] circleY;
+    private final double[] circleRadius;
+
+    // Abstraction Function:
+    //  AF(owners, kinds, bumperCount, absorberCount, segmentStart, segmentX1, segmentY1, segmentX2,
+    //     segmentY2, circleStart, circleX, circleY, circleRadius) =
+    //          The static geometry of a board whose gadgets are owners, the first bumperCount being
+    //          bumpers and the next absorberCount absorbers, the rest portals. Owner o is made of the
+    //          segments from (segmentX1[s], segmentY1[s]) to (segmentX2[s], segmentY2[s]) for
+    //          segmentStart[o] <= s < segmentStart[o + 1], and of the circles centered at
+    //          (circleX[c], circleY[c]) with radius circleRadius[c] for circleStart[o] <= c <
+    //          circleStart[o + 1]. kinds[o] says which collision rules owner o follows.
+    // Representation Invariant:
+    //  --| owners, kinds have the same length n; segmentStart and circleStart have length n + 1,
+    //      start at 0, are non-decreasing and end at the number of segments and circles
+    //  --| opaque owners own no primitives
+    // Safety from Representation Exposure:
+    //  --| all fields are private and final, and no array is ever returned
+    // Thread Safety Argument:
+    //  --| never mutated after construction and the gadgets it holds are immutable
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert owners.length == kinds.length;
+        assert segmentStart.length == owners.length + 1 && circleStart.length == owners.length + 1;
+        assert segmentStart[owners.length] == segmentX1.length;
+        assert circleStart[owners.length] == circleX.length;
+        for (int owner = 0; owner < owners.length; owner++) {
+            assert segmentStart[owner] <= segmentStart[owner + 1];
+            assert circleStart[owner] <= circleStart[owner + 1];
+        }
+    }
+
+    /**
+     * Compiles the geometry of the static gadgets of a board
+     *
+     * @param bumpers the bumpers of the board, in board order
+     * @param absorbers the absorbers of the board, in board order
+     * @param portals the portals of the board, in board order
+     */
+    StaticGeometry(Bumper[] bumpers, Absorber[] absorbers, Portal[] portals) {
+        this.bumperCount = bumpers.length;
+        this.absorberCount = absorbers.length;
+        final int count = bumpers.length + absorbers.length + portals.length;
+        this.owners = new Gadget[count];
+        this.kinds = new Kind[count];
+        System.arraycopy(bumpers, 0, owners, 0, bumpers.length);
+        System.arraycopy(absorbers, 0, owners, bumperCount, absorbers.length);
+        System.arraycopy(portals, 0, owners, bumperCount + absorberCount, portals.length);
+
+        this.segmentStart = new int[count + 1];
+        this.circleStart = new int[count + 1];
+        for (int owner = 0; owner < count; owner++) {
+            int segments = 0;
+            int circles = 0;
+            if (owners[owner] instanceof StaticGadget) {
+                final StaticGadget gadget = (StaticGadget) owners[owner];
+                segments = gadget.getLineSegments().size();
+                circles = gadget.getCircles().size();
+                kinds[owner] = owner < bumperCount ? Kind.BUMPER
+                        : owner < bumperCount + absorberCount ? Kind.ABSORBER : Kind.PORTAL;
+            } else {
+                kinds[owner] = Kind.OPAQUE;
+            }
+            segmentStart[owner + 1] = segmentStart[owner] + segments;
+            circleStart[owner + 1] = circleStart[owner] + circles;
+        }
+
+        this.segmentX1 = new double[segmentStart[count]];
+        this.segmentY1 = new double[segmentStart[count]];
+        this.segmentX2 = new double[segmentStart[count]];
+        this.segmentY2 = new double[segmentStart[count]];
+        this.circleX = new double[circleStart[count]];
+        this.circleY = new double[circleStart[count]];
+        this.circleRadius = new double[circleStart[count]];
+        for (int owner = 0; owner < count; owner++) {
+            if (kinds[owner] == Kind.OPAQUE) {
+                continue;
+            }
+            final StaticGadget gadget = (StaticGadget) owners[owner];
+            final List<LineSegment> lineSegments = gadget.getLineSegments();
+            for (int i = 0; i < lineSegments.size(); i++) {
+                final int segment = segmentStart[owner] + i;
+                segmentX1[segment] = lineSegments.get(i).p1().x();
+                segmentY1[segment] = lineSegments.get(i).p1().y();
+                segmentX2[segment] = lineSegments.get(i).p2().x();
+                segmentY2[segment] = lineSegments.get(i).p2().y();
+            }
+            final List<Circle> circles = gadget.getCircles();
+            for (int i = 0; i < circles.size(); i++) {
+                final int circle = circleStart[owner] + i;
+                circleX[circle] = circles.get(i).getCenter().x();
+                circleY[circle] = circles.get(i).getCenter().y();
+                circleRadius[circle] = circles.get(i).getRadius();
+            }
+        }
+        checkRep();
+    }
+
+    /**
+     * @param bumper the index of a bumper in board order
+     * @return the owner index of that bumper
+     */
+    int bumperOwner(int bumper) {
+        return bumper;
+    }
+
+    /**
+     * @param absorber the index of an absorber in board order
+     * @return the owner index of that absorber
+     */
+    int absorberOwner(int absorber) {
+        return bumperCount + absorber;
+    }
+
+    /**
+     * @param portal the index of a portal in board order
+     * @return the owner index of that portal
+     */
+    int portalOwner(int portal) {
+        return bumperCount + absorberCount + portal;
+    }
+
+    /**
+     * Finds which of a set of owners a ball hits first
+     *
+     * @param balls the balls on the board
+     * @param ball the position of a ball in balls
+     * @param delta the "foresight" time
+     * @param candidates owner indices to test
+     * @param count the number of owner indices in candidates
+     * @return the least time until the ball collides with one of the owners, as
+     *         getTimeTillCollision of that owner would return it, or positive infinity if none is hit
+     */
+    double nearestHit(BallStore balls, int ball, double delta, int[] candidates, int count) {
+        double minTimeTillCollision = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < count; k++) {
+            minTimeTillCollision = Math.min(minTimeTillCollision, timeTillCollision(candidates[k], balls, ball, delta));
+        }
+        return minTimeTillCollision;
+    }
+
+    /**
+     * Calculates the time until a ball collides with an owner
+     *
+     * @param owner an owner index
+     * @param ball a ball on the board
+     * @param delta the "foresight" time
+     * @return the same time getTimeTillCollision(ball, delta) of the owner returns
+     */
+    double timeTillCollision(int owner, Ball ball, double delta) {
+        if (kinds[owner] == Kind.OPAQUE) {
+            return owners[owner].getTimeTillCollision(ball, delta);
+        }
+        return timeTillCollision(owner, ball.getLocation().x(), ball.getLocation().y(),
+                ball.getVelocity().x(), ball.getVelocity().y(), delta);
+    }
+
+    /**
+     * Calculates the time until a ball collides with an owner, reading the ball from the store
+     * without making a view of it unless the owner is opaque
+     *
+     * @param owner an owner index
+     * @param balls the balls on the board
+     * @param ball the position of a ball in balls
+     * @param delta the "foresight" time
+     * @return the same time getTimeTillCollision(balls.get(ball), delta) of the owner returns
+     */
+    double timeTillCollision(int owner, BallStore balls, int ball, double delta) {
+        if (kinds[owner] == Kind.OPAQUE) {
+            return owners[owner].getTimeTillCollision(balls.get(ball), delta);
+        }
+        return timeTillCollision(owner, balls.x(ball), balls.y(ball), balls.vx(ball), balls.vy(ball), delta);
+    }
+
+    /**
+     * Calculates the time until a ball centered at (a, b) moving at (va, vb) collides with an
+     * owner that is not opaque
+     */
+    private double timeTillCollision(int owner, double a, double b, double va, double vb, double delta) {
+        switch (kinds[owner]) {
+        case ABSORBER:
+            if (((Absorber) owners[owner]).isContained(a, b)) {
+                return Double.POSITIVE_INFINITY;
+            }
+            break;
+        case PORTAL:
+            if (((Portal) owners[owner]).isContained(a, b)) {
+                return Double.POSITIVE_INFINITY;
+            }
+            break;
+        default:
+            break;
+        }
+
+        double minTimeTillCollision = Double.POSITIVE_INFINITY;
+        for (int segment = segmentStart[owner]; segment < segmentStart[owner + 1]; segment++) {
+            minTimeTillCollision = Math.min(minTimeTillCollision, timeUntilSegment(segmentX1[segment],
+                    segmentY1[segment], segmentX2[segment], segmentY2[segment], a, b, va, vb));
+        }
+        for (int circle = circleStart[owner]; circle < circleStart[owner + 1]; circle++) {
+            minTimeTillCollision = Math.min(minTimeTillCollision, timeUntilCircle(circleX[circle],
+                    circleY[circle], circleRadius[circle], a, b, va, vb));
+        }
+        if (kinds[owner] == Kind.ABSORBER) {
+            return minTimeTillCollision < delta ? minTimeTillCollision : Double.POSITIVE_INFINITY;
+        }
+        return minTimeTillCollision <= delta ? minTimeTillCollision : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Physics.timeUntilWallCollision for a ball centered at (a, b) moving at (va, vb)
+     */
+    static double timeUntilWall(LineSegment line, double a, double b, double va, double vb) {
+        return timeUntilSegment(line.p1().x(), line.p1().y(), line.p2().x(), line.p2().y(), a, b, va, vb);
+    }
+
+    /**
+     * Physics.timeUntilWallCollision on the segment from (x1, y1) to (x2, y2), for a ball
+     * centered at (a, b) moving at (va, vb)
+     */
+    static double timeUntilSegment(double x1, double y1, double x2, double y2,
+            double a, double b, double va, double vb) {
+        final double width = x2 - x1;
+        final double height = y2 - y1;
+        final double f = (va * height) - (vb * width);
+        final double g = (a * height) - (b * width) + ((x2 * y1) - (x1 * y2));
+        final double h = (width * width) + (height * height);
+        final double collisionTime = minQuadraticSolution(f * f, 2.0 * f * g, g * g - (Ball.RADIUS * Ball.RADIUS * h));
+        if (Double.isNaN(collisionTime)) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        /* the point of contact must lie within the segment */
+        final double contactX = a + (collisionTime * va);
+        final double contactY = b + (collisionTime * vb);
+        final double fraction = ((width * (contactX - x1)) + (height * (contactY - y1))) / h;
+        if (!(0.0 <= fraction && fraction < 1.0)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (collisionTime > 0) {
+            return collisionTime;
+        }
+        /* the ball overlaps the segment, which only counts if it is moving towards it */
+        final double impactX = x1 + fraction * width;
+        final double impactY = y1 + fraction * height;
+        return va * (a - impactX) + vb * (b - impactY) >= 0 ? Double.POSITIVE_INFINITY : 0;
+    }
+
+    /**
+     * Physics.timeUntilCircleCollision on the circle centered at (x, y) with a radius, for a ball
+     * centered at (a, b) moving at (va, vb)
+     */
+    static double timeUntilCircle(double x, double y, double radius, double a, double b, double va, double vb) {
+        final double distance = radius + Ball.RADIUS;
+        final double width = a - x;
+        final double height = b - y;
+        final double quadratic = (va * va) + (vb * vb);
+        final double linear = 2.0 * ((va * width) + (vb * height));
+        final double constant = (width * width) + (height * height) - (distance * distance);
+        final double collisionTime = minQuadraticSolution(quadratic, linear, constant);
+        if (Double.isNaN(collisionTime)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (collisionTime > 0) {
+            return collisionTime;
+        }
+        /* the ball overlaps the circle, which only counts if it is moving towards it */
+        return width * va + height * vb >= 0 ? Double.POSITIVE_INFINITY : 0;
+    }
+
+    /**
+     * Physics.minQuadraticSolution: the lesser root of a*x^2 + b*x + c, or NaN if there is none
+     */
+    static double minQuadraticSolution(double a, double b, double c) {
+        if (a == 0.0) {
+            return b == 0.0 ? Double.NaN : -c / b;
+        }
+        final double discriminant = (b * b) - (4.0 * a * c);
+        if (discriminant < 0.0) {
+            return Double.NaN;
+        }
+        final double sqrt = Math.sqrt(discriminant);
+        return a > 0 ? (-b - sqrt) / (2.0 * a) : (-b + sqrt) / (2.0 * a);
+    }
+}
@@ -0,0 +1,241 @@
+package flingball;
+
+import java.util.Arrays;
+
+/**
+ * A mutable sweep-and-prune broadphase for ball-ball collisions. The balls are kept sorted by
+ * the left edge of the box each sweeps over a foresight window, and sweeping along that order
+ * yields only the pairs whose boxes overlap. The order is kept between scans by the serial
+ * numbers of the balls, so it survives balls being removed and added again around it, and is
+ * repaired with insertion sort, which is close to linear when the balls have only moved a little.
+ *
+ * Like StaticGadgetTree it is a conservative filter: any pair of balls that can collide during
+ * the window is always a candidate pair. Each pair is reported once, under its lower index,
+ * and a ball is never paired with itself.
+ */
+class SweepAndPrune {
+
+    private static final double SLOP = Board.EPSILON_3;
+
+    private double[] minX = new double[0];
+    private double[] minY = new double[0];
+    private double[] maxX = new double[0];
+    private double[] maxY = new double[0];
+    private int[] order = new int[0];
+    private long[] serials = new long[0];
+    private int[] moved = new int[0];
+    private int[] partnerStart = new int[1];
+    private int[] partners = new int[0];
+    private int[] pairLow = new int[0];
+    private int[] pairHigh = new int[0];
+    private long sorts = 0;
+    private long shifts = 0;
+
+    // Abstraction Function:
+    //  AF(minX, minY, maxX, maxY, order, serials, moved, partnerStart, partners, pairLow, pairHigh,
+    //     sorts, shifts) = The candidate
+    //          pairs of the balls from the last call to update. Ball i swept the box from
+    //          (minX[i], minY[i]) to (maxX[i], maxY[i]), has serial number serials[i] and order
+    //          lists the balls by minX. The
+    //          balls paired with ball i that have a higher index are, in increasing order,
+    //          partners[partnerStart[i]] up to partners[partnerStart[i + 1] - 1]. pairLow,
+    //          pairHigh and moved are scratch space for the sweep and for carrying order over to
+    //          the next update. update has re-sorted the balls sorts times, shifting a ball one
+    //          place shifts times in all.
+    // Representation Invariant:
+    //  --| the four box arrays, order and serials have the same length n, the number of balls
+    //  --| serials is strictly increasing
+    //  --| order is a permutation of 0..n-1 with minX non-decreasing along it
+    //  --| partnerStart has length n + 1 and is non-decreasing from 0
+    //  --| sorts, shifts >= 0
+    // Safety from Representation Exposure:
+    //  --| all fields are private and no array is ever returned; queries copy into caller arrays
+    // Thread Safety Argument:
+    //  --| not threadsafe, confined to the Board that owns it and only used under its lock
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert minX.length == order.length && minY.length == order.length;
+        assert maxX.length == order.length && maxY.length == order.length;
+        assert serials.length == order.length;
+        assert partnerStart.length == order.length + 1;
+        for (int rank = 1; rank < order.length; rank++) {
+            assert minX[order[rank - 1]] <= minX[order[rank]];
+        }
+        for (int ball = 1; ball < serials.length; ball++) {
+            assert serials[ball - 1] < serials[ball];
+        }
+        assert sorts >= 0 && shifts >= 0;
+    }
+
+    /**
+     * Re-sorts the balls by their swept boxes over the foresight window and finds the candidate
+     * pairs. The balls still in balls since the last call keep the order they had then, and the
+     * balls added since go after them, so only the balls that were added again need to move far.
+     *
+     * @param balls the balls of the board, in board order
+     * @param window the foresight time over which to sweep each ball, must be >= 0
+     */
+    void update(BallStore balls, double window) {
+        final int count = balls.size();
+        carryOrder(balls);
+        if (minX.length != count) {
+            minX = new double[count];
+            minY = new double[count];
+            maxX = new double[count];
+            maxY = new double[count];
+            serials = new long[count];
+            partnerStart = new int[count + 1];
+        }
+        for (int i = 0; i < count; i++) {
+            serials[i] = balls.serial(i);
+        }
+        for (int i = 0; i < count; i++) {
+            final double x = balls.x(i);
+            final double y = balls.y(i);
+            final double endX = x + balls.vx(i) * window;
+            final double endY = y + balls.vy(i) * window;
+            minX[i] = Math.min(x, endX) - Ball.RADIUS - SLOP;
+            minY[i] = Math.min(y, endY) - Ball.RADIUS - SLOP;
+            maxX[i] = Math.max(x, endX) + Ball.RADIUS + SLOP;
+            maxY[i] = Math.max(y, endY) + Ball.RADIUS + SLOP;
+        }
+        insertionSort();
+        sweep();
+        checkRep();
+    }
+
+    /**
+     * Finds the balls with a higher index than ball that ball may collide with during the window
+     * given to the last call of update
+     *
+     * @param ball the index of a ball
+     * @param candidates an array of length at least the number of balls, which gets filled with
+     *                   the candidate indices in increasing order
+     * @return the number of candidates written into candidates
+     */
+    int candidates(int ball, int[] candidates) {
+        final int found = partnerStart[ball + 1] - partnerStart[ball];
+        System.arraycopy(partners, partnerStart[ball], candidates, 0, found);
+        return found;
+    }
+
+    /**
+     * @return the number of times update has re-sorted the balls
+     */
+    long getSorts() {
+        return sorts;
+    }
+
+    /**
+     * @return the number of times update has shifted a ball one place while re-sorting the balls
+     */
+    long getShifts() {
+        return shifts;
+    }
+
+    /**
+     * Carries the order from the last call to update over to the indices the balls have now, by
+     * their serial numbers. Removing a ball shifts the indices of the balls after it, so the old
+     * order read as indices would list the balls in an unrelated order. The balls that are still
+     * there keep their ranks relative to each other, and the balls added since go last, in the
+     * order they were added.
+     *
+     * @param balls the balls of the board, in board order
+     */
+    private void carryOrder(BallStore balls) {
+        final int count = balls.size();
+        final int previous = order.length;
+        if (count == previous && (count == 0 || balls.serial(count - 1) == serials[count - 1])) {
+            return; // no ball was added since, and so none was removed either
+        }
+        if (moved.length < previous) {
+            moved = new int[previous];
+        }
+        /* serials increase along both, and only a ball added since has a serial beyond the old ones */
+        int index = 0;
+        for (int old = 0; old < previous; old++) {
+            while (index < count && balls.serial(index) < serials[old]) {
+                index++;
+            }
+            moved[old] = index < count && balls.serial(index) == serials[old] ? index : -1;
+        }
+        final int[] carried = new int[count];
+        int rank = 0;
+        for (int old = 0; old < previous; old++) {
+            final int ball = moved[order[old]];
+            if (ball >= 0) {
+                carried[rank++] = ball;
+            }
+        }
+        /* the balls still there are the first rank balls, since balls are only ever added last */
+        for (int ball = rank; ball < count; ball++) {
+            carried[ball] = ball;
+        }
+        order = carried;
+    }
+
+    /**
+     * Restores the order of the balls by minX. Balls that moved little since the last scan are
+     * already close to their place, so few of them are shifted.
+     */
+    private void insertionSort() {
+        for (int rank = 1; rank < order.length; rank++) {
+            final int ball = order[rank];
+            final double key = minX[ball];
+            int slot = rank - 1;
+            while (slot >= 0 && minX[order[slot]] > key) {
+                order[slot + 1] = order[slot];
+                slot--;
+            }
+            shifts += rank - 1 - slot;
+            order[slot + 1] = ball;
+        }
+        sorts++;
+    }
+
+    /**
+     * Sweeps along the order to collect every pair of balls whose boxes overlap, then groups the
+     * pairs by their lower index
+     */
+    private void sweep() {
+        final int count = order.length;
+        int pairCount = 0;
+        for (int rank = 0; rank < count; rank++) {
+            final int ball = order[rank];
+            for (int next = rank + 1; next < count && minX[order[next]] <= maxX[ball]; next++) {
+                final int other = order[next];
+                if (minY[other] <= maxY[ball] && minY[ball] <= maxY[other]) {
+                    if (pairCount == pairLow.length) {
+                        final int capacity = Math.max(2 * pairCount, count);
+                        pairLow = Arrays.copyOf(pairLow, capacity);
+                        pairHigh = Arrays.copyOf(pairHigh, capacity);
+                    }
+                    pairLow[pairCount] = Math.min(ball, other);
+                    pairHigh[pairCount] = Math.max(ball, other);
+                    pairCount++;
+                }
+            }
+        }
+
+        Arrays.fill(partnerStart, 0);
+        for (int pair = 0; pair < pairCount; pair++) {
+            partnerStart[pairLow[pair] + 1]++;
+        }
+        for (int ball = 0; ball < count; ball++) {
+            partnerStart[ball + 1] += partnerStart[ball];
+        }
+        if (partners.length < pairCount) {
+            partners = new int[pairLow.length];
+        }
+        final int[] fill = Arrays.copyOf(partnerStart, count);
+        for (int pair = 0; pair < pairCount; pair++) {
+            partners[fill[pairLow[pair]]++] = pairHigh[pair];
+        }
+        for (int ball = 0; ball < count; ball++) {
+            Arrays.sort(partners, partnerStart[ball], partnerStart[ball + 1]);
+        }
+    }
+}
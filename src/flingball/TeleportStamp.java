@@ -0,0 +1,95 @@
+package flingball;
+
+/**
+ * When and from where a ball was teleported, as the board it left tells the board it goes to:
+ * the name of the board it left, the simulated time of that board when it left, and that board's
+ * own estimate of how far behind the clock of the receiving board it receives teleports from it,
+ * which lets the receiving board work out how far apart their clocks are; see ClockOffsets.
+ *
+ * Immutable, threadsafe
+ */
+class TeleportStamp {
+
+    private final String from;
+    private final double sentTime;
+    private final double echoedDelta;
+
+    // Abstraction Function:
+    //  AF(from, sentTime, echoedDelta) = A ball that left the board named from when its clock read
+    //          sentTime, which receives teleports from the board the ball goes to at least
+    //          echoedDelta seconds of its own clock after that board sends them, or does not know
+    //          how long if echoedDelta is NaN
+    // Representation Invariant:
+    //  --| from is not null, sentTime is finite and echoedDelta is finite or NaN
+    // Safety from Representation Exposure:
+    //  --| all fields are private and final, and String is immutable
+    // Thread Safety Argument:
+    //  --| this class satisfies the strongest definition of immutability
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private void checkRep() {
+        assert from != null;
+        assert !Double.isNaN(sentTime) && !Double.isInfinite(sentTime);
+        assert !Double.isInfinite(echoedDelta);
+    }
+
+    /**
+     * Make a stamp
+     *
+     * @param from the name of the board the ball left
+     * @param sentTime the simulated time of that board when the ball left, in seconds
+     * @param echoedDelta the least that board measured between the clock of the board the ball goes
+     *        to sending a teleport and its own receiving it, in seconds, or NaN if it never received one
+     * @throws IllegalArgumentException if sentTime is not finite or echoedDelta is infinite
+     */
+    TeleportStamp(String from, double sentTime, double echoedDelta) throws IllegalArgumentException {
+        if (Double.isNaN(sentTime) || Double.isInfinite(sentTime) || Double.isInfinite(echoedDelta)) {
+            throw new IllegalArgumentException("A stamp needs a finite time");
+        }
+        this.from = from;
+        this.sentTime = sentTime;
+        this.echoedDelta = echoedDelta;
+        checkRep();
+    }
+
+    /**
+     * @return the name of the board the ball left
+     */
+    String getFrom() {
+        return from;
+    }
+
+    /**
+     * @return the simulated time of the board the ball left when it left, in seconds
+     */
+    double getSentTime() {
+        return sentTime;
+    }
+
+    /**
+     * @return the least delay the board the ball left measured receiving teleports from the board
+     *         the ball goes to, in seconds of the clock of the board the ball left, or NaN if unknown
+     */
+    double getEchoedDelta() {
+        return echoedDelta;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        return that instanceof TeleportStamp && ((TeleportStamp) that).from.equals(from)
+                && Double.compare(((TeleportStamp) that).sentTime, sentTime) == 0
+                && Double.compare(((TeleportStamp) that).echoedDelta, echoedDelta) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return from.hashCode() + 31 * Double.hashCode(sentTime) + 961 * Double.hashCode(echoedDelta);
+    }
+
+    @Override
+    public String toString() {
+        return from + " " + sentTime + " " + echoedDelta;
+    }
+}
@@ -11,7 +11,7 @@ import physics.*;
  * An immutable triangle bumper in the flingball game, an implementation of
  * Gadget and Bumper
  */
-public class TriangleBumper implements Bumper {
+public class TriangleBumper implements Bumper, StaticGadget {
 
     private final String name;
     private final Vect location;
@@ -120,11 +120,26 @@ public class TriangleBumper implements Bumper {
         return location;
     }
 
+    @Override
+    public Vect getSize() {
+        return new Vect(EDGE_LENGTH, EDGE_LENGTH);
+    }
+
     @Override 
     public Color getColor() {
         return COLOR;
     }
 
+    @Override
+    public List<LineSegment> getLineSegments() {
+        return new ArrayList<>(lineSegments);
+    }
+
+    @Override
+    public List<Circle> getCircles() {
+        return new ArrayList<>(circles);
+    }
+
     @Override 
     public Ball getCollisionRedirection(Ball ball) {
         for (int i = 0; i < lineSegments.size(); i++) {
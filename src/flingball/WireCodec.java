@@ -0,0 +1,501 @@
+package flingball;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import physics.Vect;
+
+/**
+ * The binary framing of the wire protocol, which a board and a FlingballTextServer switch to when
+ * both of them can. After answering getClientBoardName a board offers it with the line OFFER. A
+ * server that accepts replies with the line ACCEPT and writes binary frames from then on; the
+ * board echoes ACCEPT and writes binary frames from then on too. A server that does not know the
+ * offer relays it to a board named "binary1" that does not exist, so both carry on in text.
+ *
+ * Every frame is a big-endian unsigned 16 bit length, followed by that many bytes: a type byte
+ * and its payload.
+ *  TEXT            - a line of the text protocol, in UTF-8, without its line terminator
+ *  DEFINE          - a 16 bit id and the UTF-8 name it stands for in the frames that follow
+ *  TELEPORT_WALL   - the ids of the board and the ball, the velocity and location as four IEEE
+ *                    doubles, and the ordinal of the wall
+ *  TELEPORT_PORTAL - the ids of the board and the ball, the velocity as two IEEE doubles, and the
+ *                    id of the portal
+ *  TELEPORT_WALL_STAMPED, TELEPORT_PORTAL_STAMPED - a teleport as above, followed by its
+ *                    TeleportStamp: the id of the board the ball left, and the time it left and
+ *                    the echoed delta as two IEEE doubles
+ * Ids are given out by the writing side the first time it sends a name, so the names of boards,
+ * balls and portals cross the connection once and every teleport after that has a fixed size.
+ * Frames from the server to a board are always replies of success, which text puts in front.
+ */
+class WireCodec {
+
+    /**
+     * The name of the binary framing, as it is offered and accepted
+     */
+    static final String CAPABILITY = "binary1";
+    
+    /**
+     * The line a board sends to offer the binary framing
+     */
+    static final String OFFER = "capabilities= " + CAPABILITY;
+    
+    /**
+     * The line a server sends to accept the offer, and the board sends back to confirm it
+     */
+    static final String ACCEPT = "success " + OFFER;
+
+    private static final int TEXT = 0;
+    private static final int DEFINE = 1;
+    private static final int TELEPORT_WALL = 2;
+    private static final int TELEPORT_PORTAL = 3;
+    private static final int TELEPORT_WALL_STAMPED = 4;
+    private static final int TELEPORT_PORTAL_STAMPED = 5;
+    private static final int MAX_IDS = 0xFFFF;
+    private static final int MAX_FRAME = 0xFFFF;
+    private static final int TELEPORT_WALL_LENGTH = 1 + 2 + 2 + 4 * Double.BYTES + 1;
+    private static final int TELEPORT_PORTAL_LENGTH = 1 + 2 + 2 + 2 * Double.BYTES + 2;
+    private static final int STAMP_LENGTH = 2 + 2 * Double.BYTES;
+    private static final Wall[] WALLS = Wall.values();
+
+    /**
+     * Reads a line of text a byte at a time, so that nothing after it is consumed
+     * 
+     * @param in the stream to read from
+     * @return the line without its line terminator, or null if the stream ended before it
+     * @throws IOException if the stream cannot be read
+     */
+    static String readLine(InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toString("UTF-8");
+            }
+            line.write(b);
+        }
+        final byte[] bytes = line.toByteArray();
+        final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param line the bytes of a line, from index 0
+     * @param length the number of bytes of the line
+     * @param prefix a line of the protocol that is followed by arguments, such as "membership= "
+     * @return whether the line starts with prefix, so that it has to be read as a String
+     */
+    static boolean startsWith(byte[] line, int length, String prefix) {
+        if (length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a teleport with its names spelled out rather than given ids, for transports such as
+     * DatagramTransport where each one travels on its own and may be lost or arrive out of order
+     * 
+     * @param out the stream to write to
+     * @param teleport a TELEPORT_WALL or TELEPORT_PORTAL command
+     * @throws IOException if the stream cannot be written
+     */
+    static void writeTeleport(DataOutputStream out, ServerCommand teleport) throws IOException {
+        final List<String> names = teleport.getNames();
+        final boolean wall = teleport.getKind() == ServerCommand.Kind.TELEPORT_WALL;
+        final Optional<TeleportStamp> stamp = teleport.getStamp();
+        if (stamp.isPresent()) {
+            out.writeByte(wall ? TELEPORT_WALL_STAMPED : TELEPORT_PORTAL_STAMPED);
+        } else {
+            out.writeByte(wall ? TELEPORT_WALL : TELEPORT_PORTAL);
+        }
+        out.writeUTF(names.get(0));
+        out.writeUTF(names.get(1));
+        out.writeDouble(teleport.getVelocity().x());
+        out.writeDouble(teleport.getVelocity().y());
+        if (wall) {
+            out.writeDouble(teleport.getLocation().x());
+            out.writeDouble(teleport.getLocation().y());
+            out.writeByte(teleport.getWall().ordinal());
+        } else {
+            out.writeUTF(names.get(2));
+        }
+        if (stamp.isPresent()) {
+            out.writeUTF(stamp.get().getFrom());
+            out.writeDouble(stamp.get().getSentTime());
+            out.writeDouble(stamp.get().getEchoedDelta());
+        }
+    }
+
+    /**
+     * Reads a teleport written by writeTeleport
+     * 
+     * @param in the stream to read from
+     * @param receivedNanos the value of System.nanoTime() when the teleport was received
+     * @return the teleport
+     * @throws IOException if the stream ends early or does not hold a teleport
+     */
+    static ServerCommand readTeleport(DataInputStream in, long receivedNanos) throws IOException {
+        final int type = in.readUnsignedByte();
+        if (type < TELEPORT_WALL || type > TELEPORT_PORTAL_STAMPED) {
+            throw new IOException("Not a teleport: " + type);
+        }
+        final boolean stamped = type == TELEPORT_WALL_STAMPED || type == TELEPORT_PORTAL_STAMPED;
+        final String board = in.readUTF();
+        final String ball = in.readUTF();
+        final Vect velocity = new Vect(in.readDouble(), in.readDouble());
+        if (type == TELEPORT_PORTAL || type == TELEPORT_PORTAL_STAMPED) {
+            final String portal = in.readUTF();
+            final Optional<TeleportStamp> stamp = stamped ? Optional.of(readStamp(in, in.readUTF())) : Optional.empty();
+            return ServerCommand.teleportPortal(board, ball, velocity, portal, stamp, receivedNanos);
+        }
+        final Vect location = new Vect(in.readDouble(), in.readDouble());
+        final Wall wall = readWall(in);
+        final Optional<TeleportStamp> stamp = stamped ? Optional.of(readStamp(in, in.readUTF())) : Optional.empty();
+        return ServerCommand.teleportWall(board, ball, velocity, location, wall, stamp, receivedNanos);
+    }
+
+    /**
+     * Reads the ordinal of a wall
+     */
+    private static Wall readWall(DataInputStream in) throws IOException {
+        final int wall = in.readUnsignedByte();
+        if (wall >= WALLS.length) {
+            throw new IOException("No wall " + wall);
+        }
+        return WALLS[wall];
+    }
+
+    /**
+     * Reads the two times of a stamp from the board named from
+     */
+    private static TeleportStamp readStamp(DataInputStream in, String from) throws IOException {
+        try {
+            return new TeleportStamp(from, in.readDouble(), in.readDouble());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad stamp", e);
+        }
+    }
+
+    /**
+     * A line of text read as bytes, reused from line to line so that relaying a line makes no
+     * String of it.
+     * 
+     * Not threadsafe, each one is confined to the reader of a single connection.
+     */
+    static class LineBuffer {
+
+        private byte[] bytes = new byte[128];
+        private int length = 0;
+
+        // Abstraction Function:
+        //  AF(bytes, length) = the line bytes[0 .. length - 1], in UTF-8 without its line terminator
+
+        /**
+         * Reads the next line a byte at a time, so that nothing after it is consumed
+         * 
+         * @param in the stream to read from
+         * @return false if the stream ended before the line started
+         * @throws IOException if the stream cannot be read
+         */
+        boolean read(InputStream in) throws IOException {
+            length = 0;
+            int b = in.read();
+            if (b < 0) {
+                return false;
+            }
+            for (; b != '\n' && b >= 0; b = in.read()) {
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, 2 * length);
+                }
+                bytes[length++] = (byte) b;
+            }
+            if (length > 0 && bytes[length - 1] == '\r') {
+                length--;
+            }
+            return true;
+        }
+
+        /**
+         * @return the array holding the line from index 0; it changes with the next read
+         */
+        byte[] bytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the number of bytes of the line
+         */
+        int length() {
+            return length;
+        }
+
+        /**
+         * @param line the bytes of a line
+         * @return whether this is that line
+         */
+        boolean matches(byte[] line) {
+            if (length != line.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != line[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Writes commands as frames, giving out ids for the names in them.
+     * 
+     * Not threadsafe, each one is confined to the writer of a single connection.
+     */
+    static class Encoder {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        // Abstraction Function:
+        //  AF(ids) = the ids the reading side of the connection knows, ids.get(name) for each name
+        // Representation Invariant:
+        //  --| the ids are 0 .. ids.size() - 1, and ids.size() <= MAX_IDS
+
+        /**
+         * Writes a line of text as a frame
+         * 
+         * @param out the stream to write to
+         * @param line a line of the text protocol, without its line terminator
+         * @throws IOException if the stream cannot be written
+         */
+        void writeText(DataOutputStream out, String line) throws IOException {
+            final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length + 1 > MAX_FRAME) {
+                throw new IOException("A line of " + bytes.length + " bytes does not fit in a frame");
+            }
+            out.writeShort(bytes.length + 1);
+            out.writeByte(TEXT);
+            out.write(bytes);
+        }
+
+        /**
+         * Writes a line of text that is already encoded as a frame, with a prefix in front of it
+         * 
+         * @param out the stream to write to
+         * @param prefix the bytes to put in front of the line
+         * @param line holds the line from index 0, without its line terminator
+         * @param length the number of bytes of the line
+         * @throws IOException if the stream cannot be written
+         */
+        void writeText(DataOutputStream out, byte[] prefix, byte[] line, int length) throws IOException {
+            if (prefix.length + length + 1 > MAX_FRAME) {
+                throw new IOException("A line of " + length + " bytes does not fit in a frame");
+            }
+            out.writeShort(prefix.length + length + 1);
+            out.writeByte(TEXT);
+            out.write(prefix);
+            out.write(line, 0, length);
+        }
+
+        /**
+         * Writes a command as a frame: teleports as binary frames, anything else, or a teleport
+         * whose names can no longer be given ids, as the text of its request
+         * 
+         * @param out the stream to write to
+         * @param command the command to write
+         * @param textPrefix what to put in front of the request if it is written as text
+         * @throws IOException if the stream cannot be written
+         */
+        void write(DataOutputStream out, ServerCommand command, String textPrefix) throws IOException {
+            final ServerCommand.Kind kind = command.getKind();
+            final Optional<TeleportStamp> stamp = command.getStamp();
+            final List<String> names = new ArrayList<>(command.getNames());
+            stamp.ifPresent(teleported -> names.add(teleported.getFrom()));
+            if ((kind == ServerCommand.Kind.TELEPORT_WALL || kind == ServerCommand.Kind.TELEPORT_PORTAL)
+                    && define(out, names)) {
+                final Vect velocity = command.getVelocity();
+                final int stampLength = stamp.isPresent() ? STAMP_LENGTH : 0;
+                if (kind == ServerCommand.Kind.TELEPORT_WALL) {
+                    out.writeShort(TELEPORT_WALL_LENGTH + stampLength);
+                    out.writeByte(stamp.isPresent() ? TELEPORT_WALL_STAMPED : TELEPORT_WALL);
+                    out.writeShort(ids.get(names.get(0)));
+                    out.writeShort(ids.get(names.get(1)));
+                    out.writeDouble(velocity.x());
+                    out.writeDouble(velocity.y());
+                    out.writeDouble(command.getLocation().x());
+                    out.writeDouble(command.getLocation().y());
+                    out.writeByte(command.getWall().ordinal());
+                } else {
+                    out.writeShort(TELEPORT_PORTAL_LENGTH + stampLength);
+                    out.writeByte(stamp.isPresent() ? TELEPORT_PORTAL_STAMPED : TELEPORT_PORTAL);
+                    out.writeShort(ids.get(names.get(0)));
+                    out.writeShort(ids.get(names.get(1)));
+                    out.writeDouble(velocity.x());
+                    out.writeDouble(velocity.y());
+                    out.writeShort(ids.get(names.get(2)));
+                }
+                if (stamp.isPresent()) {
+                    out.writeShort(ids.get(stamp.get().getFrom()));
+                    out.writeDouble(stamp.get().getSentTime());
+                    out.writeDouble(stamp.get().getEchoedDelta());
+                }
+            } else if (kind == ServerCommand.Kind.TEXT) {
+                writeText(out, command.toRequest());
+            } else {
+                writeText(out, textPrefix + command.toRequest());
+            }
+        }
+
+        /**
+         * Makes sure every name has an id, writing a DEFINE frame for each new one
+         * 
+         * @return false if there is no id left for a new name
+         */
+        private boolean define(DataOutputStream out, List<String> names) throws IOException {
+            int missing = 0;
+            for (String name : names) {
+                if (!ids.containsKey(name)) {
+                    missing++;
+                }
+            }
+            if (ids.size() + missing > MAX_IDS) {
+                return false;
+            }
+            for (String name : names) {
+                if (!ids.containsKey(name)) {
+                    final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                    final int id = ids.size();
+                    ids.put(name, id);
+                    out.writeShort(1 + 2 + bytes.length);
+                    out.writeByte(DEFINE);
+                    out.writeShort(id);
+                    out.write(bytes);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads frames back into commands, keeping track of the ids the writing side gave out.
+     * 
+     * Not threadsafe, each one is confined to the reader of a single connection.
+     */
+    static class Decoder {
+
+        private final List<String> names = new ArrayList<>();
+
+        // Abstraction Function:
+        //  AF(names) = the ids the writing side of the connection gave out, names.get(id) for each id
+
+        /**
+         * Reads the next command, skipping over the DEFINE frames before it
+         * 
+         * @param in the stream to read from
+         * @return the command, stamped with the value of System.nanoTime() once it was read, a TEXT
+         *         command for a text frame, or null if the stream ended
+         *         between frames
+         * @throws IOException if the stream cannot be read or does not hold valid frames
+         */
+        ServerCommand read(DataInputStream in) throws IOException {
+            while (true) {
+                final int length;
+                try {
+                    length = in.readUnsignedShort();
+                } catch (EOFException e) {
+                    return null;
+                }
+                if (length == 0) {
+                    throw new IOException("Empty frame");
+                }
+                final int type = in.readUnsignedByte();
+                switch (type) {
+                case TEXT:
+                {
+                    final byte[] bytes = new byte[length - 1];
+                    in.readFully(bytes);
+                    return ServerCommand.text(new String(bytes, StandardCharsets.UTF_8));
+                }
+                case DEFINE:
+                {
+                    final int id = in.readUnsignedShort();
+                    final byte[] bytes = new byte[length - 3];
+                    in.readFully(bytes);
+                    if (id != names.size()) {
+                        throw new IOException("Id " + id + " defined out of order");
+                    }
+                    names.add(new String(bytes, StandardCharsets.UTF_8));
+                    break;
+                }
+                case TELEPORT_WALL:
+                case TELEPORT_WALL_STAMPED:
+                {
+                    final boolean stamped = type == TELEPORT_WALL_STAMPED;
+                    expectLength(length, TELEPORT_WALL_LENGTH + (stamped ? STAMP_LENGTH : 0));
+                    final String board = name(in.readUnsignedShort());
+                    final String ball = name(in.readUnsignedShort());
+                    final Vect velocity = new Vect(in.readDouble(), in.readDouble());
+                    final Vect location = new Vect(in.readDouble(), in.readDouble());
+                    final Wall wall = readWall(in);
+                    final Optional<TeleportStamp> stamp = stamped
+                            ? Optional.of(readStamp(in, name(in.readUnsignedShort()))) : Optional.empty();
+                    return ServerCommand.teleportWall(board, ball, velocity, location, wall, stamp, System.nanoTime());
+                }
+                case TELEPORT_PORTAL:
+                case TELEPORT_PORTAL_STAMPED:
+                {
+                    final boolean stamped = type == TELEPORT_PORTAL_STAMPED;
+                    expectLength(length, TELEPORT_PORTAL_LENGTH + (stamped ? STAMP_LENGTH : 0));
+                    final String board = name(in.readUnsignedShort());
+                    final String ball = name(in.readUnsignedShort());
+                    final Vect velocity = new Vect(in.readDouble(), in.readDouble());
+                    final String portal = name(in.readUnsignedShort());
+                    final Optional<TeleportStamp> stamp = stamped
+                            ? Optional.of(readStamp(in, name(in.readUnsignedShort()))) : Optional.empty();
+                    return ServerCommand.teleportPortal(board, ball, velocity, portal, stamp, System.nanoTime());
+                }
+                default:
+                    throw new IOException("Unknown frame type " + type);
+                }
+            }
+        }
+
+        /**
+         * @return the name id stands for
+         */
+        private String name(int id) throws IOException {
+            if (id >= names.size()) {
+                throw new IOException("Id " + id + " was never defined");
+            }
+            return names.get(id);
+        }
+
+        /**
+         * Checks the length of a fixed size frame
+         */
+        private static void expectLength(int length, int expected) throws IOException {
+            if (length != expected) {
+                throw new IOException("Frame of " + length + " bytes, expected " + expected);
+            }
+        }
+    }
+}
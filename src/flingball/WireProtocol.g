@@ -1,24 +1,38 @@
 @skipwhitespace { // Client to Server communication has no 'success'/'failure' precedant
     request ::= (('success' [ ]+)? ('joinHorizontal=' [ ]+ BOARDNAME [ ]+ BOARDNAME) | 
                                     ('joinVertical=' [ ]+ BOARDNAME [ ]+ BOARDNAME) |
-                                    ('teleportPortal=' [ ]+ ball [ ]+ PORTALNAME) | 
-                                     ('teleportWall=' [ ]+ ball [ ]+ vect [ ]+ WALLNAME) | 
+                                    ('teleportPortal=' [ ]+ ball [ ]+ PORTALNAME ([ ]+ stamp)?) | 
+                                     ('teleportWall=' [ ]+ ball [ ]+ vect [ ]+ WALLNAME ([ ]+ stamp)?) | 
                                      ('connectPortal=' [ ]+ PORTALNAME) | 
                                      ('disconnectPortal=' [ ]+ PORTALNAME) |
                                      ('disconnectWall=' [ ]+ BOARDNAME [ ]+ WALLNAME) | 
                                      ('disconnect') |
+                                     ('capabilities=' [ ]+ CAPABILITY) | // offered by the client after its board name, echoed back to accept it; binary framing follows, see WireCodec
                                      ('getClientBoardName') | // used by server to ask the client to send their board name
                                      (BOARDNAME) | // used to tell the server what board is connected to what socket
-                                     ('allConnectedBoards=' ([ ]+ BOARDNAME)+)) |
+                                     ('allConnectedBoards=' ([ ]+ BOARDNAME)+) |
+                                     ('membership=' [ ]+ VERSION ([ ]+ BOARDNAME)*) | // asked by the client with the version it knows, answered with every board if stale
+                                     ('boardJoined=' [ ]+ VERSION [ ]+ BOARDNAME) | // sent instead of allConnectedBoards to clients that asked for versions
+                                     ('boardLeft=' [ ]+ VERSION [ ]+ BOARDNAME) |
+                                     ('peerPort=' [ ]+ PORT) | // sent by a client that listens for direct links, see PeerLink
+                                     ('peerAt=' [ ]+ BOARDNAME [ ]+ HOST [ ]+ PORT) | // tells the first of two joined boards where to link to the second
+                                     ('peer=' [ ]+ BOARDNAME) | // the first line on a direct link, naming the board that dialed
+                                     ('datagram=' [ ]+ PORT [ ]+ SESSION)) | // on a direct link, where to send teleports as datagrams, see DatagramTransport
                   'failure';
 }
 ball ::= BOARDNAME [ ]+ BALLNAME [ ]+ vect; /* NOTE: Portals cannot be named left, right, top, or bottom */
+stamp ::= BOARDNAME [ ]+ FLOAT [ ]+ (FLOAT | 'NaN'); // the board the ball left, its clock then, and what it echoes back, see TeleportStamp
 NAME ::= [A-Za-z_][A-Za-z_0-9]*;
 
 BOARDNAME ::= NAME;
 BALLNAME ::= NAME;
 WALLNAME ::= 'left' | 'right' | 'top' | 'bottom'
 PORTALNAME ::= NAME;
+CAPABILITY ::= 'binary1';
+VERSION ::= '-'?[0-9]+;
+PORT ::= [0-9]+;
+HOST ::= [0-9A-Fa-f.:]+; // an IPv4 or IPv6 address
+SESSION ::= '-'?[0-9]+;
 
 vect ::= FLOAT [ ]+ FLOAT;
 FLOAT ::= '-'?([0-9]+'.'[0-9]*|'.'?[0-9]+);
\ No newline at end of file
@@ -0,0 +1,119 @@
+package flingball;
+
+import java.io.File;
+import java.util.List;
+
+import physics.Vect;
+
+/**
+ * Compares the per-ball cost of the Cartesian integration and friction kernels in BallStore
+ * against the polar formulation they replaced, on the balls of a board file.
+ *
+ * Run from the project root with the test classes on the classpath:
+ *     java -cp bin:lib/parserlib.jar:lib/physics.jar flingball.BallKernelBenchmark
+ *          [board file, default boards/flippers_many_balls.fb] [sub-steps per round, default 20000]
+ *
+ * Each kernel runs a number of warm-up rounds before the measured rounds, and the mean cost of
+ * one sub-step (move plus friction and gravity) per ball is printed for both, along with the
+ * largest difference in position between them after one round.
+ */
+public class BallKernelBenchmark {
+
+    private static final String DEFAULT_BOARD = "boards/flippers_many_balls.fb";
+    private static final int DEFAULT_STEPS = 20000;
+    private static final int WARM_UP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 20;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Runs the comparison
+     *
+     * @param args optionally the board file and the number of sub-steps per round
+     * @throws Exception if the board file cannot be read or parsed
+     */
+    public static void main(String[] args) throws Exception {
+        final String boardFile = args.length > 0 ? args[0] : DEFAULT_BOARD;
+        final int steps = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STEPS;
+        final Board board = BoardParser.parse(new File(boardFile));
+        final List<Ball> balls = board.getBalls();
+        final double gravity = board.getGravity();
+        final double mu1 = board.getFriction1();
+        final double mu2 = board.getFriction2();
+
+        double sink = 0;
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            sink += polarRound(balls, steps, gravity, mu1, mu2)[0].x();
+            sink += cartesianRound(balls, steps, gravity, mu1, mu2).get(0).getLocation().x();
+        }
+
+        long polarNanos = 0;
+        long cartesianNanos = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            final long polarStart = System.nanoTime();
+            sink += polarRound(balls, steps, gravity, mu1, mu2)[0].x();
+            polarNanos += System.nanoTime() - polarStart;
+
+            final long cartesianStart = System.nanoTime();
+            sink += cartesianRound(balls, steps, gravity, mu1, mu2).get(0).getLocation().x();
+            cartesianNanos += System.nanoTime() - cartesianStart;
+        }
+
+        final Vect[] polarLocations = polarRound(balls, steps, gravity, mu1, mu2);
+        final BallStore cartesian = cartesianRound(balls, steps, gravity, mu1, mu2);
+        double maxDifference = 0;
+        for (int i = 0; i < polarLocations.length; i++) {
+            maxDifference = Math.max(maxDifference,
+                    Math.sqrt(polarLocations[i].distanceSquared(cartesian.get(i).getLocation())));
+        }
+
+        final double ballSteps = (double) MEASURED_ROUNDS * steps * balls.size();
+        System.out.println(boardFile + ": " + balls.size() + " balls, " + steps + " sub-steps of "
+                + Board.TIME + "s per round");
+        System.out.printf("polar:     %.2f ns per ball per sub-step%n", polarNanos / ballSteps);
+        System.out.printf("cartesian: %.2f ns per ball per sub-step%n", cartesianNanos / ballSteps);
+        System.out.printf("largest position difference after %.0fs: %.3e L%n", steps * Board.TIME, maxDifference);
+        System.out.println("(checksum " + (sink / NANOS_PER_SECOND) + ")");
+    }
+
+    /**
+     * Moves the balls for a number of sub-steps the way Board did before the Cartesian kernels,
+     * through the angle and length of each velocity
+     *
+     * @return the locations of the balls afterwards
+     */
+    private static Vect[] polarRound(List<Ball> balls, int steps, double gravity, double mu1, double mu2) {
+        final Vect[] locations = new Vect[balls.size()];
+        final Vect[] velocities = new Vect[balls.size()];
+        for (int i = 0; i < balls.size(); i++) {
+            locations[i] = balls.get(i).getLocation();
+            velocities[i] = balls.get(i).getVelocity();
+        }
+        final double time = Board.TIME;
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < locations.length; i++) {
+                final Vect velocity = velocities[i];
+                locations[i] = locations[i].plus(new Vect(velocity.angle(), velocity.length() * time));
+                final Vect velocityFriction = new Vect(velocity.angle(),
+                        Math.max(velocity.length() * (1 - mu1 * time - mu2 * velocity.length() * time), 0));
+                velocities[i] = velocityFriction.plus(new Vect(0, gravity * time));
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Moves the balls for a number of sub-steps with the Cartesian kernels of BallStore
+     *
+     * @return the store holding the balls afterwards
+     */
+    private static BallStore cartesianRound(List<Ball> balls, int steps, double gravity, double mu1, double mu2) {
+        final BallStore store = new BallStore();
+        store.addAll(balls);
+        final double time = Board.TIME;
+        for (int step = 0; step < steps; step++) {
+            store.step(time);
+            store.applyFrictionGravity(time, gravity, mu1, mu2);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,98 @@
+package flingball;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures how parsing and stepping many boards in one JVM scales with the number of threads,
+ * from 1 to 64 doubling each time. For each count the same board file, saved under as many names
+ * as there are boards, is parsed on that many threads at once, and the boards are then stepped by
+ * a HeadlessServer with that many workers. Nothing is shared between boards or between parses,
+ * so both should scale with the cores until there are more threads than cores.
+ *
+ * Run from the project root with the test classes on the classpath:
+ *     java -cp bin:lib/parserlib.jar:lib/physics.jar flingball.BoardScalingBenchmark
+ *          [boards, default 256] [steps, default 1000] [board file, default boards/flippers_many_balls.fb]
+ *
+ * For each thread count this prints the boards parsed per second and the simulated board-seconds
+ * stepped per wall-second, each with its speedup over one thread. A first run on one thread is
+ * thrown away to warm up the JIT.
+ */
+public class BoardScalingBenchmark {
+
+    private static final int DEFAULT_BOARDS = 256;
+    private static final int DEFAULT_STEPS = 1000;
+    private static final int MAX_THREADS = 64;
+
+    /**
+     * Runs the measurement
+     *
+     * @param args optionally the number of boards, of steps and the board file
+     * @throws Exception if the board file cannot be read or parsed
+     */
+    public static void main(String[] args) throws Exception {
+        final int boards = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BOARDS;
+        final int steps = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STEPS;
+        final String text = new String(Files.readAllBytes(new File(args.length > 2 ? args[2]
+                : "boards/flippers_many_balls.fb").toPath()), StandardCharsets.UTF_8);
+
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < boards; i++) {
+            final Path copy = Files.createTempFile("scaling", ".fb");
+            copy.toFile().deleteOnExit();
+            Files.write(copy, text.replaceFirst("name\\s*=\\s*\\S+", "name=Board" + i).getBytes(StandardCharsets.UTF_8));
+            files.add(copy.toFile());
+        }
+
+        System.out.println(boards + " boards, " + steps + " steps, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+        run(files, steps, 1);
+        double parseBase = 0;
+        double stepBase = 0;
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            final double[] rates = run(files, steps, threads);
+            if (threads == 1) {
+                parseBase = rates[0];
+                stepBase = rates[1];
+            }
+            System.out.println(String.format("  %2d threads: %8.1f boards parsed per second (x%.2f), "
+                    + "%8.1f board-seconds per wall-second (x%.2f)",
+                    threads, rates[0], rates[0] / parseBase, rates[1], rates[1] / stepBase));
+        }
+    }
+
+    /**
+     * Parses every file on a number of threads, then steps the boards with as many workers
+     *
+     * @return the boards parsed per second and the board-seconds stepped per wall-second
+     */
+    private static double[] run(List<File> files, int steps, int threads) throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final List<Board> boards = new ArrayList<>();
+        final long start = System.nanoTime();
+        try {
+            final List<Future<Board>> parsed = new ArrayList<>();
+            for (File file : files) {
+                parsed.add(pool.submit(() -> BoardParser.parse(file)));
+            }
+            for (Future<Board> board : parsed) {
+                boards.add(board.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        final double parseRate = files.size() / ((System.nanoTime() - start) * Board.EPSILON_9);
+
+        final HeadlessServer server = new HeadlessServer(0, boards, threads, Simulator.DEFAULT_PHYSICS_RATE);
+        server.runSteps(steps);
+        server.close();
+        return new double[] { parseRate, server.getThroughput() };
+    }
+}
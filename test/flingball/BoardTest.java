@@ -1,18 +1,32 @@
 package flingball;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Test;
 
+import edu.mit.eecs.parserlib.UnableToParseException;
 import physics.*;
 
 public class BoardTest {
@@ -65,6 +79,14 @@ public class BoardTest {
      * getStaticGadgets
      * list size = 0, 1, > 1
      * 
+     * getGadgetByName, getAbsorberByName, getFlipperByName, getPortalByName
+     * gadget added singly, in a list, through the constructor
+     * name belongs to a gadget of another kind, name belongs to no gadget
+     * 
+     * setTarget, getAbsorberTarget, getFlipperTarget
+     * targets wired to a trigger = 0, 1, >1
+     * same trigger-target pair wired twice
+     * 
      * getGravity
      * gravity = default (25), > default, 0 < gravity < default
      * 
@@ -81,6 +103,36 @@ public class BoardTest {
      * check output of ball: velocity, position
      * ball doesn't collide
      * ball does collide 
+     * ball collides with a gadget far from where it starts
+     * ball collides with a bumper added after the board has been updated
+     * flipper triggered: part way through its flip, at the end of its flip, flipping back
+     * portal made local after the board has been updated
+     * collision engine = RESCAN, EVENT_QUEUE; flippers triggered by collisions, not triggered
+     * colliding balls are added to the board in the opposite order to their x positions
+     * balls removed and added again by many collisions, re-sorted by the broadphase after each
+     * 
+     * getFrame
+     * before the first update, after an update; ball inside an absorber, outside; flippers = 0, 1
+     * 
+     * receiveCommand, getInboundStats
+     * commands received = 0, 1, > MAX_COMMANDS_PER_UPDATE; applied before the next update, not before
+     * command is teleportWall, unknown, teleportPortal to a portal the board does not have
+     * command is membership, boardJoined, boardLeft; version follows on, skips a version
+     * teleport is not stamped, stamped with delay = 0, 0 < delay < MAX_DELAY, delay > MAX_DELAY;
+     * echo unknown, known; ball collides while catching up, does not
+     * 
+     * listenForPeers, getLinkedBoards
+     * command over a link is a teleport to this board, to another board, not a teleport
+     * 
+     * DatagramTransport
+     * packets lost = none, some of the teleports and acks; teleports sent = 1, >1
+     * 
+     * OutboundWriter (socketOutput)
+     * messages sent in a frame = 0, >1; frame ended, not ended
+     * buffer full with policy = DROP_NEWEST, DROP_OLDEST
+     * 
+     * applyFrictionGravity
+     * ball is moving, ball is still
      
      * toString
      * # of gadgets = 0, 1, >1
@@ -465,6 +517,588 @@ public class BoardTest {
         assertEquals("expect ball to have moved one time step", expectedPositionball1, board.getBalls().get(1).getLocation());
     }
     
+    /*
+     * covers: updateBoard
+     * does collide, with a bumper far from where the ball starts
+     */
+    @Test public void testUpdateBoardCollisionWithDistantBumper() {
+        Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+        board.addBumper(new SquareBumper("square", new Vect(15, 10)));
+        board.addBall(new Ball("ball", new Vect(2, 10.5), new Vect(100, 0)));
+        board.updateBoard(0.2); // without the bumper the ball would travel 20L
+        
+        final Ball ball = board.getBalls().get(0);
+        assertTrue("expect ball to have bounced off the bumper", ball.getVelocity().x() < 0);
+        assertTrue("expect ball to be left of the bumper", ball.getLocation().x() < 15);
+    }
+    
+    /*
+     * covers: updateBoard, addLocalPortal, addPortal
+     * portal made local after the board has been updated
+     */
+    @Test public void testUpdateBoardPortalMadeLocalLater() {
+        Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+        Portal portalA = new Portal("portalA", new Vect(10, 10), Optional.empty(), "portalB");
+        Portal portalB = new Portal("portalB", new Vect(2, 2), Optional.empty(), "portalA");
+        board.addPortal(Arrays.asList(portalA, portalB));
+        board.addBall(new Ball("ball", new Vect(5, 10.5), new Vect(10, 0)));
+        board.updateBoard(0.05); // portals that are not local yet are passed over
+        
+        board.addLocalPortal(portalA);
+        board.addLocalPortal(portalB);
+        board.updateBoard(0.5);
+        
+        final Ball ball = board.getBalls().get(0);
+        assertTrue("expect the ball to have come out of portalB", ball.getLocation().y() < 5);
+    }
+    
+    /*
+     * covers: getFrame, updateBoard
+     * before the first update, after an update, ball inside an absorber and outside, flippers = 1
+     */
+    @Test public void testGetFrameAfterUpdate() {
+        Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+        board.addAbsorber(new Absorber("abs", new Vect(0, 18), new Vect(20, 2)));
+        board.addFlipper(new Flipper(false, "flipper", new Vect(5, 5), Angle.ZERO, new Angle(0), false, ANGULAR_VELOCITY_FLIPPER));
+        board.addBall(new Ball("free", new Vect(10, 10), new Vect(1, 0)));
+        board.addBall(new Ball("absorbed", new Vect(10, 19), new Vect(0, 0)));
+        assertEquals("expect nothing to be drawn before the first update", 0, board.getFrame().getBallCount());
+        
+        board.updateBoard(0.5);
+        FrameSnapshot frame = board.getFrame();
+        assertEquals("expect only the ball outside the absorber", 1, frame.getBallCount());
+        assertEquals("expect the frame to be at the time of the update", 0.5, frame.getTime(), 1e-9);
+        
+        board.addBall(new Ball("late", new Vect(5, 10), new Vect(1, 0)));
+        assertTrue("expect the frame to change only when the board updates", board.getFrame() == frame);
+    }
+    
+    /*
+     * covers: receiveCommand, getInboundStats, updateBoard
+     * commands received = 0, 1; applied before the next update, not before; command is teleportWall, unknown
+     */
+    @Test public void testReceiveCommandAppliedAtUpdate() {
+        Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+        assertEquals("expect no commands before any are received", 0, board.getInboundStats().getDepth());
+        board.receiveCommand("success teleportWall= other ball 1 0 0 5 left");
+        board.receiveCommand("success notACommand= other");
+        
+        assertEquals("expect the unknown command to be ignored", 1, board.getInboundStats().getEnqueued());
+        assertEquals("expect the teleport to wait for the next update", 1, board.getInboundStats().getDepth());
+        assertEquals("expect no ball before the update", 0, board.getBalls().size());
+        
+        board.updateBoard(0.01);
+        assertEquals("expect the teleport to have been applied", 0, board.getInboundStats().getDepth());
+        assertEquals("expect the teleport to have been applied", 1, board.getInboundStats().getDequeued());
+        assertEquals("expect the ball to have arrived", 1, board.getBalls().size());
+        final Ball ball = board.getBalls().get(0);
+        assertEquals("expect the ball to arrive at the left wall", Ball.RADIUS / 2 + 0.01, ball.getLocation().x(), 1e-9);
+        assertEquals("expect the ball to keep its height", 5, ball.getLocation().y(), 1e-9);
+    }
+    
+    /*
+     * covers: receiveCommand, updateBoard
+     * command is teleportPortal to a portal the board does not have
+     */
+    @Test public void testReceiveCommandUnknownPortalDropped() {
+        Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+        board.addBall(new Ball("ball", new Vect(5, 5), new Vect(1, 0)));
+        board.receiveCommand("success teleportPortal= board ballX 1.0 0.0 nope");
+        
+        board.updateBoard(0.01);
+        assertEquals("expect the teleport to have been dropped", 1, board.getInboundStats().getDequeued());
+        assertEquals("expect only the ball already on the board", 1, board.getBalls().size());
+        board.updateBoard(0.01);
+        assertEquals("expect the board to keep stepping", 5.02, board.getBalls().get(0).getLocation().x(), 1e-9);
+    }
+    
+    /*
+     * covers: receiveCommand, getInboundStats, updateBoard
+     * commands received > MAX_COMMANDS_PER_UPDATE
+     */
+    @Test public void testReceiveCommandBurstSpreadOverUpdates() {
+        Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+        final int commands = 100;
+        for (int i = 0; i < commands; i++) {
+            board.receiveCommand("success connectPortal= portal" + i);
+        }
+        assertEquals("expect every command to be waiting", commands, board.getInboundStats().getMaxDepth());
+        
+        board.updateBoard(0.01);
+        final int left = board.getInboundStats().getDepth();
+        assertTrue("expect some commands to be left for later updates", 0 < left && left < commands);
+        board.updateBoard(0.01);
+        assertEquals("expect every command to have been applied", 0, board.getInboundStats().getDepth());
+        assertEquals("expect every command to have been applied", commands, board.getInboundStats().getDequeued());
+    }
+    
+    /*
+     * covers: receiveCommand, updateBoard
+     * command is membership, boardJoined, boardLeft; version follows on, skips a version
+     */
+    @Test public void testReceiveCommandMembershipDeltas() {
+        final String[] lefts = { "success boardLeft= 3 other", "success boardLeft= 5 other" };
+        final int[] ballsLeft = { 1, 0 };
+        for (int i = 0; i < lefts.length; i++) {
+            Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+            board.receiveCommand("success membership= 1 board");
+            board.receiveCommand("success boardJoined= 2 other");
+            board.receiveCommand("success joinHorizontal= other board"); // joins the right wall
+            board.receiveCommand(lefts[i]);
+            board.updateBoard(0.01);
+            
+            board.addBall(new Ball("ball", new Vect(19, 5), new Vect(10, 0)));
+            for (int step = 0; step < 20; step++) {
+                board.updateBoard(0.01);
+            }
+            assertEquals(lefts[i].contains("3") ? "expect the ball to bounce off the wall of a board that left"
+                    : "expect a change that skips a version to be ignored, so the ball leaves through the wall",
+                    ballsLeft[i], board.getBalls().size());
+        }
+    }
+    
+    /*
+     * covers: receiveCommand, updateBoard
+     * teleport is stamped with delay = 0, 0 < delay < MAX_DELAY, delay > MAX_DELAY;
+     * echo unknown, known; ball collides while catching up, does not
+     */
+    @Test public void testReceiveCommandStampedTeleportCatchesUp() {
+        Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+        /* the first teleport from other sets the offset between the clocks at 100 - 0 */
+        board.receiveCommand("success teleportWall= board ball0 1 0 0 5 left other 100.0 NaN");
+        for (int step = 0; step < 10; step++) {
+            board.updateBoard(0.01);
+        }
+        /* sent at 0.05 on the clock of board, applied at 0.1 */
+        board.receiveCommand("success teleportWall= board ball1 1 0 0 10 left other 100.05 NaN");
+        board.updateBoard(0.01);
+        /* other sees teleports from board 100.02 late, so the clocks are 100.01 apart and 0.01 is the
+         * shortest delay both ways; sent at 0.08 on the clock of board, applied at 0.11 */
+        board.receiveCommand("success teleportWall= board ball2 1 0 0 15 left other 100.09 100.02");
+        board.updateBoard(0.01);
+        /* sent 10 late, so only caught up by MAX_DELAY, bouncing off the right wall on the way */
+        board.receiveCommand("success teleportWall= board ball3 100 0 0 17 left other 90.13 100.02");
+        board.updateBoard(0.01);
+        
+        final double start = Ball.RADIUS / 2;
+        final double[] expected = { start + 0.13, start + 0.05 + 0.03, start + 0.03 + 0.02,
+                (Board.L - Ball.RADIUS) - (100 * ClockOffsets.MAX_DELAY - (Board.L - Ball.RADIUS - start)) - 1 };
+        final String[] messages = { "expect the first ball not to be moved", "expect the delay to be caught up",
+                "expect the shortest delay to be caught up too", "expect the ball to bounce while catching up" };
+        for (Ball ball : board.getBalls()) {
+            final int i = ball.getName().charAt(4) - '0';
+            assertEquals(messages[i], expected[i], ball.getLocation().x(), 1e-9);
+        }
+        assertEquals("expect every ball to arrive", 4, board.getBalls().size());
+    }
+    
+    /*
+     * covers: listenForPeers, getLinkedBoards
+     * command over a link is a teleport to this board, to another board, not a teleport
+     */
+    @Test public void testPeerLinkOnlyTakesTeleports() throws Exception {
+        Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+        final int port = board.listenForPeers(0);
+        try (Socket peer = new Socket("127.0.0.1", port)) {
+            final DataOutputStream out = new DataOutputStream(peer.getOutputStream());
+            out.write(("peer= other\n" + WireCodec.ACCEPT + "\n").getBytes(StandardCharsets.UTF_8));
+            final WireCodec.Encoder encoder = new WireCodec.Encoder();
+            encoder.write(out, ServerCommand.teleportWall("board", "ball1", new Vect(-1, 0), new Vect(19.9, 5),
+                    Wall.RIGHT, 0), "");
+            encoder.write(out, ServerCommand.teleportWall("nobody", "ball2", new Vect(-1, 0), new Vect(19.9, 10),
+                    Wall.RIGHT, 0), "");
+            encoder.write(out, ServerCommand.text("success joinHorizontal= board other"), "");
+            out.flush();
+            assertEquals("expect the board to confirm the binary framing", WireCodec.ACCEPT,
+                    WireCodec.readLine(peer.getInputStream()));
+            
+            for (int i = 0; i < 100 && board.getInboundStats().getEnqueued() < 1; i++) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+            board.updateBoard(0.01);
+            assertEquals("expect a link to the board that dialed", Collections.singleton("other"), board.getLinkedBoards());
+            assertEquals("expect only the teleport to this board to be taken", 1, board.getInboundStats().getEnqueued());
+            assertEquals("expect the ball to arrive", 1, board.getBalls().size());
+            assertEquals("expect the wall not to be joined by another board", Optional.empty(),
+                    board.getJoinBoards().get(Wall.LEFT));
+        }
+    }
+    
+    /*
+     * covers: DatagramTransport
+     * packets lost = none, some of the teleports and acks; teleports sent = 1, >1
+     */
+    @Test public void testDatagramTransportDeliversExactlyOnce() throws Exception {
+        final double[] lossRates = { 0, 0.2 };
+        final int[] counts = { 1, 500 };
+        for (int i = 0; i < lossRates.length; i++) {
+            final ConcurrentLinkedQueue<ServerCommand> received = new ConcurrentLinkedQueue<>();
+            final LossyDatagramSocket senderSocket = new LossyDatagramSocket(lossRates[i], 0, i);
+            final LossyDatagramSocket receiverSocket = new LossyDatagramSocket(lossRates[i], 0, i + 100);
+            final DatagramTransport sender = new DatagramTransport(senderSocket, command -> { });
+            final DatagramTransport receiver = new DatagramTransport(receiverSocket, received::add);
+            final DatagramTransport.Session from = sender.open();
+            final DatagramTransport.Session to = receiver.open();
+            from.connect(new InetSocketAddress("127.0.0.1", receiver.port()), to.id());
+            to.connect(new InetSocketAddress("127.0.0.1", sender.port()), from.id());
+            
+            for (int ball = 0; ball < counts[i]; ball++) {
+                from.send(ServerCommand.teleportWall("board", "ball" + ball, new Vect(-1, 0), new Vect(19.9, 5),
+                        Wall.RIGHT, 0));
+                if (ball % 50 == 49) {
+                    from.flush();
+                }
+            }
+            from.flush();
+            for (int wait = 0; wait < 500 && received.size() < counts[i]; wait++) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100); // for any duplicate still on its way
+            
+            final Set<String> balls = new HashSet<>();
+            for (ServerCommand command : received) {
+                assertTrue("expect every ball to arrive once", balls.add(command.getNames().get(1)));
+            }
+            assertEquals("expect every ball to arrive", counts[i], balls.size());
+            assertEquals("expect the walls to survive the trip", Wall.RIGHT, received.peek().getWall());
+            if (lossRates[i] > 0) {
+                assertTrue("expect lost teleports to be sent again", sender.getRetransmits() > 0);
+                assertTrue("expect packets to be lost", senderSocket.getLost() + receiverSocket.getLost() > 0);
+            }
+            sender.close();
+            receiver.close();
+        }
+    }
+    
+    /*
+     * covers: OutboundWriter
+     * messages sent in a frame = 0, >1; frame ended, not ended
+     */
+    @Test public void testOutboundWriterOneWritePerFrame() throws Exception {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final OutboundWriter writer = new OutboundWriter(stream, 8, OverflowPolicy.BLOCK);
+        writer.endFrame();
+        writer.send(ServerCommand.text("teleportPortal= a ball 1.0 0.0 p"));
+        writer.send(ServerCommand.text("teleportPortal= b ball1 0.0 1.0 q"));
+        Thread.sleep(50);
+        assertEquals("expect nothing written before the frame ends", 0, writer.stats().getDequeued());
+        
+        writer.endFrame();
+        awaitWritten(writer, 2);
+        assertEquals("expect the frame to be written in one go", 1, writer.getWrites());
+        assertEquals("expect both messages in order", "teleportPortal= a ball 1.0 0.0 p\nteleportPortal= b ball1 0.0 1.0 q\n",
+                new String(stream.toByteArray(), StandardCharsets.UTF_8));
+        writer.close();
+    }
+    
+    /*
+     * covers: OutboundWriter
+     * buffer full with policy = DROP_NEWEST, DROP_OLDEST
+     */
+    @Test public void testOutboundWriterOverflow() throws Exception {
+        final String[] expected = { "first\nsecond\nthird\n", "first\nthird\nfourth\n" };
+        final OverflowPolicy[] policies = { OverflowPolicy.DROP_NEWEST, OverflowPolicy.DROP_OLDEST };
+        for (int i = 0; i < policies.length; i++) {
+            final CountDownLatch release = new CountDownLatch(1);
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            final OutputStream slowStream = new OutputStream() {
+                @Override public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+                @Override public void write(byte[] b, int off, int len) throws IOException {
+                    try {
+                        release.await(); // the server is not reading yet
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    stream.write(b, off, len);
+                }
+            };
+            final OutboundWriter writer = new OutboundWriter(slowStream, 2, policies[i]);
+            writer.send(ServerCommand.text("first"));
+            writer.endFrame();
+            awaitDepth(writer, 0); // the writer thread holds first and waits on the stream
+            writer.send(ServerCommand.text("second"));
+            writer.send(ServerCommand.text("third"));
+            writer.send(ServerCommand.text("fourth")); // the buffer is full
+            assertEquals("expect one message dropped with " + policies[i], 1, writer.stats().getDropped());
+            
+            release.countDown();
+            writer.endFrame();
+            awaitWritten(writer, 3);
+            assertEquals("expect the messages kept with " + policies[i], expected[i],
+                    new String(stream.toByteArray(), StandardCharsets.UTF_8));
+            writer.close();
+        }
+    }
+    
+    /**
+     * Waits up to a second for a writer to have written some number of messages
+     */
+    private static void awaitWritten(OutboundWriter writer, long messages) throws InterruptedException {
+        for (int i = 0; i < 100 && writer.stats().getDequeued() < messages; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("expect the messages to have been written", messages, writer.stats().getDequeued());
+    }
+    
+    /**
+     * Waits up to a second for the writer thread to have taken every message out of the buffer
+     */
+    private static void awaitDepth(OutboundWriter writer, int depth) throws InterruptedException {
+        for (int i = 0; i < 100 && writer.stats().getDepth() > depth; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("expect the writer thread to have taken the messages", depth, writer.stats().getDepth());
+    }
+    
+    /*
+     * covers: getGadgetByName, getAbsorberByName, getFlipperByName, getPortalByName
+     * gadgets added singly, in a list, through the constructor
+     */
+    @Test public void testGetGadgetByNameEveryKind() {
+        Bumper bumper = new CircleBumper("circle", new Vect(3, 15));
+        Absorber absorber = new Absorber("abs", new Vect(0, 18), new Vect(20, 1));
+        Board board = new Board("board", Collections.emptyList(), Arrays.asList(bumper), Arrays.asList(absorber));
+        Flipper flipper = new Flipper(false, "flipper", new Vect(5, 5), Angle.ZERO, new Angle(0), false, ANGULAR_VELOCITY_FLIPPER);
+        Portal portal = new Portal("portal", new Vect(1, 1), Optional.empty(), "other");
+        board.addFlipper(flipper);
+        board.addPortal(Arrays.asList(portal));
+        
+        assertTrue("expect the bumper", board.getGadgetByName("circle") == bumper);
+        assertTrue("expect the absorber", board.getAbsorberByName("abs") == absorber);
+        assertTrue("expect the flipper", board.getFlipperByName("flipper") == flipper);
+        assertTrue("expect the portal", board.getPortalByName("portal") == portal);
+        assertTrue("expect the flipper as a gadget", board.getGadgetByName("flipper") == flipper);
+    }
+    
+    /*
+     * covers: getFlipperByName
+     * name belongs to a gadget of another kind
+     */
+    @Test(expected = IllegalArgumentException.class) public void testGetFlipperByNameOfAbsorber() {
+        Board board = new Board("board");
+        board.addAbsorber(new Absorber("abs", new Vect(0, 18), new Vect(20, 1)));
+        board.getFlipperByName("abs");
+    }
+    
+    /*
+     * covers: getGadgetByName
+     * name belongs to no gadget
+     */
+    @Test(expected = IllegalArgumentException.class) public void testGetGadgetByNameMissing() {
+        Board board = new Board("board");
+        board.addBumper(new CircleBumper("circle", new Vect(3, 15)));
+        board.getGadgetByName("square");
+    }
+    
+    /*
+     * covers: setTarget, getAbsorberTarget, getFlipperTarget
+     * targets wired to a trigger = 0, 1, >1, same trigger-target pair wired twice
+     */
+    @Test public void testSetTargetWiring() {
+        Board board = new Board("board");
+        Bumper bumper = new CircleBumper("circle", new Vect(3, 15));
+        Absorber abs1 = new Absorber("abs1", new Vect(0, 18), new Vect(10, 1));
+        Absorber abs2 = new Absorber("abs2", new Vect(10, 18), new Vect(10, 1));
+        Flipper flipper = new Flipper(false, "flipper", new Vect(5, 5), Angle.ZERO, new Angle(0), false, ANGULAR_VELOCITY_FLIPPER);
+        board.addBumper(bumper);
+        board.addAbsorber(Arrays.asList(abs1, abs2));
+        board.addFlipper(flipper);
+        
+        assertTrue("expect the pair to be wired", board.setTarget(abs2, bumper));
+        assertTrue("expect the pair to be wired", board.setTarget(abs1, bumper));
+        assertTrue("expect the pair not to be wired twice", !board.setTarget(abs2, bumper));
+        assertTrue("expect the pair to be wired", board.setTarget(flipper, bumper));
+        
+        assertEquals("expect the absorbers in the order they were wired", Arrays.asList(abs2, abs1), board.getAbsorberTarget(bumper));
+        assertEquals("expect the flipper", Arrays.asList(flipper), board.getFlipperTarget(bumper));
+        assertTrue("expect no absorbers triggered by the flipper", board.getAbsorberTarget(flipper).isEmpty());
+        assertTrue("expect no flippers triggered by an absorber", board.getFlipperTarget(abs1).isEmpty());
+    }
+    
+    /*
+     * covers: updateBoard, triggerGadgetByName, setTarget
+     * flipper triggered, part way through its flip, at the end of its flip, flipping back
+     */
+    @Test public void testUpdateBoardFlipperFlipsInPlace() {
+        Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+        Flipper flipper = new Flipper(false, "flipper", new Vect(5, 5), Angle.ZERO, new Angle(0), false, ANGULAR_VELOCITY_FLIPPER);
+        board.addFlipper(flipper);
+        board.setTarget(flipper, flipper);
+        final double flipTime = Math.PI / 2 / ANGULAR_VELOCITY_FLIPPER; // a quarter turn at 1080 degrees/sec
+        
+        board.triggerGadgetByName("flipper");
+        board.updateBoard(flipTime / 2);
+        assertTrue("expect the flipper to be flipping", flipper.isFlipping());
+        assertEquals("expect the flip to end in the rest of the quarter turn", flipTime / 2, flipper.getTimeTillFlipEnds(), 1e-9);
+        assertTrue("expect the board to hold the same flipper", board.getFlippers().get(0) == flipper);
+        assertTrue("expect the flipper to still trigger itself", board.getFlipperTarget(flipper).get(0) == flipper);
+        
+        board.updateBoard(flipTime);
+        assertTrue("expect the flipper to have stopped", !flipper.isFlipping());
+        assertEquals("expect a stopped flipper not to be due to stop", Double.POSITIVE_INFINITY, flipper.getTimeTillFlipEnds(), 0);
+        
+        board.triggerGadgetByName("flipper");
+        board.updateBoard(flipTime / 4);
+        assertTrue("expect the flipper to be flipping back", flipper.isFlipping());
+        assertEquals("expect the flipper to be a quarter of the way back", flipTime * 3 / 4, flipper.getTimeTillFlipEnds(), 1e-9);
+    }
+    
+    /*
+     * covers: updateBoard, addBumper
+     * does collide, with bumpers added after the board has been updated
+     */
+    @Test public void testUpdateBoardCollisionBumperAddedLater() {
+        Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+        board.addBumper(new CircleBumper("circle", new Vect(2, 2)));
+        board.addBall(new Ball("ball", new Vect(2, 10.5), new Vect(10, 0)));
+        board.updateBoard(0.05);
+        board.addBumper(new SquareBumper("square", new Vect(8, 10)));
+        board.addBumper(new TriangleBumper("triangle", new Vect(17, 17), Angle.ZERO));
+        board.updateBoard(1); // without the square the ball would reach x = 12.5
+        
+        final Ball ball = board.getBalls().get(0);
+        assertTrue("expect ball to have bounced off the square", ball.getVelocity().x() < 0);
+        assertTrue("expect ball to be left of the square", ball.getLocation().x() < 8);
+    }
+    
+    /*
+     * covers: updateBoard
+     * does collide, balls added in the opposite order to their x positions
+     */
+    @Test public void testUpdateBoardCollisionBallsOutOfOrder() {
+        Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+        board.addBall(new Ball("right", new Vect(12, 10), new Vect(-10, 0)));
+        board.addBall(new Ball("left", new Vect(10, 10), new Vect(10, 0)));
+        board.updateBoard(0.05); // the balls touch after 0.075 seconds
+        board.updateBoard(0.05);
+        
+        for (Ball ball : board.getBalls()) {
+            final double expectedVelocity = ball.getName().equals("right") ? 10 : -10;
+            assertEquals("expect the balls to have swapped velocities", expectedVelocity, ball.getVelocity().x(), 1e-9);
+        }
+    }
+    
+    /*
+     * covers: updateBoard
+     * balls removed and added again by many collisions, re-sorted by the broadphase after each
+     */
+    @Test public void testUpdateBoardBroadphaseOrderSurvivesCollisions() throws UnableToParseException {
+        final Board board = BoardParser.parse(new File("boards/flippers_many_balls.fb"));
+        board.setCollisionEngine(CollisionEngine.RESCAN);
+        final int frames = 2000;
+        for (int frame = 0; frame < frames; frame++) {
+            board.updateBoard(0.01);
+        }
+        
+        /* every scan but the first of a frame follows a collision */
+        final long collisions = board.getBallPairSorts() - frames;
+        final int ballCount = board.getBalls().size();
+        assertTrue("expect balls to have collided", collisions > frames);
+        assertTrue("expect a collision to move the balls it resolved into place, not to re-sort all of them",
+                board.getBallPairShifts() < collisions * ballCount / 2);
+    }
+    
+    /*
+     * covers: updateBoard, setCollisionEngine
+     * collision engine = EVENT_QUEUE, ball collides with a ball and then a bumper
+     */
+    @Test public void testUpdateBoardEventQueueMatchesRescan() {
+        final CollisionEngine[] engines = { CollisionEngine.RESCAN, CollisionEngine.EVENT_QUEUE };
+        final List<List<Ball>> results = new ArrayList<>();
+        for (CollisionEngine engine : engines) {
+            Board board = new Board("board", 0, 0, 0); // no consideration of gravity, no friction
+            board.setCollisionEngine(engine);
+            board.addBumper(new SquareBumper("square", new Vect(2, 10)));
+            board.addBall(new Ball("ball", new Vect(10, 10.5), new Vect(-20, 0)));
+            board.addBall(new Ball("ball1", new Vect(5, 10.5), new Vect(0, 0)));
+            board.updateBoard(0.5);
+            assertEquals("expect the engine to be set", engine, board.getCollisionEngine());
+            final List<Ball> balls = new ArrayList<>(board.getBalls());
+            Collections.sort(balls, (ball, ball1) -> ball.getName().compareTo(ball1.getName()));
+            results.add(balls);
+        }
+        
+        for (int i = 0; i < results.get(0).size(); i++) {
+            final Ball rescanned = results.get(0).get(i);
+            final Ball scheduled = results.get(1).get(i);
+            assertEquals("expect the same ball", rescanned.getName(), scheduled.getName());
+            assertEquals("expect the same x position", rescanned.getLocation().x(), scheduled.getLocation().x(), 1e-9);
+            assertEquals("expect the same y position", rescanned.getLocation().y(), scheduled.getLocation().y(), 1e-9);
+            assertEquals("expect the same x velocity", rescanned.getVelocity().x(), scheduled.getVelocity().x(), 1e-9);
+            assertEquals("expect the same y velocity", rescanned.getVelocity().y(), scheduled.getVelocity().y(), 1e-9);
+        }
+        assertTrue("expect the balls to have collided", results.get(1).get(0).getVelocity().x() != -20);
+    }
+    
+    /*
+     * covers: updateBoard, setCollisionEngine
+     * collision engine = RESCAN, EVENT_QUEUE; flippers triggered by collisions
+     */
+    @Test public void testUpdateBoardEventQueueFlipsLikeRescan() throws UnableToParseException {
+        /* flips triggered by collisions first pushed the flippers apart after 354 and 523 frames */
+        final String[] files = { "boards/flippers.fb", "boards/flippers_many_balls.fb" };
+        for (String file : files) {
+            final Board rescanned = BoardParser.parse(new File(file));
+            final Board scheduled = BoardParser.parse(new File(file));
+            rescanned.setCollisionEngine(CollisionEngine.RESCAN);
+            scheduled.setCollisionEngine(CollisionEngine.EVENT_QUEUE);
+            for (int frame = 0; frame < 1000; frame++) {
+                for (Board board : Arrays.asList(rescanned, scheduled)) {
+                    board.updateBoard(0.001);
+                    board.applyFrictionGravity(0.001);
+                }
+                
+                final List<Ball> rescannedBalls = new ArrayList<>(rescanned.getBalls());
+                final List<Ball> scheduledBalls = new ArrayList<>(scheduled.getBalls());
+                Collections.sort(rescannedBalls, (ball, ball1) -> ball.getName().compareTo(ball1.getName()));
+                Collections.sort(scheduledBalls, (ball, ball1) -> ball.getName().compareTo(ball1.getName()));
+                assertEquals("expect the same balls", rescannedBalls.size(), scheduledBalls.size());
+                for (int i = 0; i < rescannedBalls.size(); i++) {
+                    final Ball ball = rescannedBalls.get(i);
+                    final Ball ball1 = scheduledBalls.get(i);
+                    assertEquals("expect the same ball", ball.getName(), ball1.getName());
+                    assertEquals("expect the same x position", ball.getLocation().x(), ball1.getLocation().x(), 1e-6);
+                    assertEquals("expect the same y position", ball.getLocation().y(), ball1.getLocation().y(), 1e-6);
+                    assertEquals("expect the same x velocity", ball.getVelocity().x(), ball1.getVelocity().x(), 1e-6);
+                    assertEquals("expect the same y velocity", ball.getVelocity().y(), ball1.getVelocity().y(), 1e-6);
+                }
+                for (int i = 0; i < rescanned.getFlippers().size(); i++) {
+                    final Vect end = rescanned.getFlippers().get(i).getLine().p2();
+                    final Vect end1 = scheduled.getFlippers().get(i).getLine().p2();
+                    assertEquals("expect the flipper to have flipped as far", end.x(), end1.x(), 1e-6);
+                    assertEquals("expect the flipper to have flipped as far", end.y(), end1.y(), 1e-6);
+                }
+            }
+        }
+    }
+    
+    /*
+     * covers: applyFrictionGravity
+     * ball is moving, ball is still
+     */
+    @Test public void testApplyFrictionGravityMatchesBallUpdateVelocity() {
+        final double delta = 0.01;
+        Board board = new Board("board", GRAVITY_DEFAULT, FRICTION_DEFAULT, FRICTION_DEFAULT);
+        Ball moving = new Ball("moving", new Vect(5, 5), new Vect(3, -4));
+        Ball still = new Ball("still", new Vect(10, 10), new Vect(0, 0));
+        board.addBall(moving);
+        board.addBall(still);
+        board.applyFrictionGravity(delta);
+        
+        final List<Ball> expected = Arrays.asList(
+                moving.updateVelocity(delta, GRAVITY_DEFAULT, FRICTION_DEFAULT, FRICTION_DEFAULT),
+                still.updateVelocity(delta, GRAVITY_DEFAULT, FRICTION_DEFAULT, FRICTION_DEFAULT));
+        for (int i = 0; i < expected.size(); i++) {
+            final Ball actual = board.getBalls().get(i);
+            assertEquals("expect the same location", expected.get(i).getLocation(), actual.getLocation());
+            assertEquals("expect the same x velocity", expected.get(i).getVelocity().x(), actual.getVelocity().x(), 1e-12);
+            assertEquals("expect the same y velocity", expected.get(i).getVelocity().y(), actual.getVelocity().y(), 1e-12);
+        }
+    }
+    
     /* covers: toString
      * # of gadgets = 0
      */
@@ -0,0 +1,147 @@
+package flingball;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Optional;
+
+import physics.Vect;
+
+/**
+ * Measures how long a ball takes to go through the wall of one board to the board joined to it
+ * when the direct link between them sends teleports as datagrams, over a loopback that loses a
+ * share of the packets and delays the rest, and checks that every ball still arrives exactly once.
+ * The direct link over TCP is measured first for comparison, without loss, since the loss of a
+ * TCP segment cannot be injected on loopback from inside the JVM.
+ *
+ * Run from the project root with the test classes on the classpath:
+ *     java -cp bin:lib/parserlib.jar:lib/physics.jar flingball.DatagramLossBenchmark
+ *          [teleports, default 5000] [one way delay in microseconds, default 0]
+ *
+ * Each teleport is timed from the update that sends the ball until the receiving board has decoded
+ * it, one at a time so that queueing does not count. The latency printed is the median, the 99th
+ * and the 99.9th percentile, followed by how many packets were lost and how many teleports were
+ * sent again or received twice.
+ */
+public class DatagramLossBenchmark {
+
+    private static final int DEFAULT_TELEPORTS = 5000;
+    private static final int WARMUP_TELEPORTS = 1000;
+    private static final double[] LOSS_RATES = { 0, 0.01, 0.05, 0.1 };
+    private static final long TIMEOUT_NANOS = 5_000_000_000L;
+
+    /**
+     * Runs the comparison
+     *
+     * @param args optionally the number of teleports and the delay
+     * @throws Exception if the server cannot be started or the boards cannot connect
+     */
+    public static void main(String[] args) throws Exception {
+        final int teleports = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TELEPORTS;
+        final long delayNanos = args.length > 1 ? Long.parseLong(args[1]) * 1000 : 0;
+
+        final FlingballTextServer server = new FlingballTextServer(0);
+        final Thread serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        System.out.println(teleports + " teleports, " + delayNanos / 1000 + " us one way delay on datagrams");
+        System.out.println("direct link over TCP, no loss:");
+        run(server, "tcp", Optional.empty(), Optional.empty(), teleports);
+        for (int i = 0; i < LOSS_RATES.length; i++) {
+            System.out.println(String.format("direct link over datagrams, %.0f%% loss:", LOSS_RATES[i] * 100));
+            run(server, "udp" + i, Optional.of(new LossyDatagramSocket(LOSS_RATES[i], delayNanos, 2 * i)),
+                    Optional.of(new LossyDatagramSocket(LOSS_RATES[i], delayNanos, 2 * i + 1)), teleports);
+        }
+        System.exit(0); // the server's threads never stop
+    }
+
+    /**
+     * Joins two boards and teleports balls from one to the other, printing the latency, the
+     * packets lost and the teleports sent again and received twice
+     */
+    private static void run(FlingballTextServer server, String prefix, Optional<DatagramSocket> leftSocket,
+            Optional<DatagramSocket> rightSocket, int teleports) throws Exception {
+        final Board left = new Board(prefix + "Left", 0, 0, 0);
+        final Board right = new Board(prefix + "Right", 0, 0, 0);
+        left.listenForPeers(0, leftSocket);
+        right.listenForPeers(0, rightSocket);
+        left.acceptSocket(new Socket("127.0.0.1", server.port()), OutboundWriter.DEFAULT_CAPACITY,
+                OverflowPolicy.BLOCK, true);
+        right.acceptSocket(new Socket("127.0.0.1", server.port()), OutboundWriter.DEFAULT_CAPACITY,
+                OverflowPolicy.BLOCK, true);
+        Thread.sleep(300); // for both to connect and tell the server their ports
+        server.sendJoinBoards("h " + left.getName() + " " + right.getName()); // joins the left wall of left
+        final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (left.getJoinBoards().get(Wall.LEFT).equals(Optional.empty()) || left.getLinkedBoards().isEmpty()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("The boards were not linked");
+            }
+            Thread.sleep(10);
+            left.updateBoard(0.001);
+            right.updateBoard(0.001);
+        }
+        Thread.sleep(100); // for both ends to say their sessions
+        right.updateBoard(0.001); // drains whatever the join sent
+
+        final long before = right.getInboundStats().getEnqueued();
+        for (int i = 0; i < WARMUP_TELEPORTS; i++) {
+            teleport(left, right, i);
+        }
+        final long[] latencies = new long[teleports];
+        for (int i = 0; i < teleports; i++) {
+            latencies[i] = teleport(left, right, WARMUP_TELEPORTS + i);
+        }
+        Thread.sleep(500); // for any duplicate still on its way
+        final long received = right.getInboundStats().getEnqueued() - before;
+        if (received != WARMUP_TELEPORTS + teleports) {
+            throw new IllegalStateException("Sent " + (WARMUP_TELEPORTS + teleports) + " balls but " + received
+                    + " arrived");
+        }
+        Arrays.sort(latencies);
+        System.out.println(String.format("  latency %.1f us median %.1f us p99 %.1f us p99.9, every ball arrived once",
+                latencies[teleports / 2] * 1e-3, latencies[(int) (teleports * 0.99)] * 1e-3,
+                latencies[(int) (teleports * 0.999)] * 1e-3));
+        final Optional<DatagramTransport> sender = left.getDatagramTransport();
+        final Optional<DatagramTransport> receiver = right.getDatagramTransport();
+        if (sender.isPresent() && receiver.isPresent()) {
+            System.out.println(String.format("  %d packets lost, %d teleports sent again, %d received twice",
+                    ((LossyDatagramSocket) leftSocket.get()).getLost() + ((LossyDatagramSocket) rightSocket.get()).getLost(),
+                    sender.get().getRetransmits(), receiver.get().getDuplicates()));
+        }
+        left.quitServer();
+        right.quitServer();
+        sender.ifPresent(DatagramTransport::close);
+        receiver.ifPresent(DatagramTransport::close);
+    }
+
+    /**
+     * Sends a ball through the left wall of left and waits for right to decode it
+     *
+     * @return the nanoseconds from the update that sent the ball to right having it
+     */
+    private static long teleport(Board left, Board right, int i) {
+        final long received = right.getInboundStats().getEnqueued();
+        left.addBall(new Ball("ball" + i, new Vect(0.5, 10), new Vect(-50, 0)));
+        final long sent = System.nanoTime();
+        left.updateBoard(0.02);
+        while (right.getInboundStats().getEnqueued() == received) {
+            if (System.nanoTime() - sent > TIMEOUT_NANOS) {
+                throw new IllegalStateException("A teleport was lost");
+            }
+            Thread.yield();
+        }
+        final long latency = System.nanoTime() - sent;
+        if (i % 100 == 99) {
+            right.updateBoard(0.001); // lets right apply what it received, so its queue stays short
+        }
+        return latency;
+    }
+}
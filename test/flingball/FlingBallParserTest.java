@@ -4,7 +4,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -44,6 +48,8 @@ public class FlingBallParserTest {
      * file contains, does not contain event trigger-action
      * trigger-action is, is not self trigger
      * 
+     * boards parsed and stepped one after another, on many threads at once
+     * 
      */
     
     private static boolean checkContainGadget(List<Gadget> allGadgets, String name) {
@@ -326,4 +332,57 @@ public class FlingBallParserTest {
         assertEquals("Should have no gadgets", expectedNumberGadgets, allGadgets.size());
         assertEquals("Should have no ball", expectedNumberBalls, allBalls.size());
     }
-}
\ No newline at end of file
+    
+    /*
+     * covers:
+     *  - boards parsed and stepped one after another, on many threads at once
+     */
+    @Test
+    public void testParseAndStepConcurrently() throws Exception {
+        final File[] files = { new File("boards/default.fb"), new File("boards/absorber.fb"),
+            new File("boards/flippers.fb"), new File("boards/flippers_many_balls.fb"), new File("boards/portal.fb"),
+            new File("boards/multi_key.fb"), new File("boards/triggers.fb"), new File("boards/simple_keys.fb") };
+        final List<String> expected = new ArrayList<>();
+        for (File file : files) {
+            expected.add(parseAndStep(file));
+        }
+        final int threads = 8;
+        final int rounds = 4;
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            for (int round = 0; round < rounds; round++) {
+                for (File file : files) {
+                    results.add(pool.submit(() -> parseAndStep(file)));
+                }
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("expected the same board however many are parsed and stepped at once",
+                        expected.get(i % files.length), results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    /* Parses a board, steps it for half a second, and describes it. */
+    private static String parseAndStep(File file) throws UnableToParseException {
+        final Board board = BoardParser.parse(file);
+        final StringBuilder description = new StringBuilder(board.getName());
+        for (Gadget gadget : board.getStaticGadgets()) {
+            description.append(' ').append(gadget.getName());
+        }
+        for (Flipper flipper : board.getFlippers()) {
+            description.append(' ').append(flipper.getName());
+        }
+        description.append(' ').append(board.getProtoListeners());
+        for (int step = 0; step < 500; step++) {
+            board.updateBoard(Board.TIME);
+            board.applyFrictionGravity(Board.TIME);
+        }
+        for (Ball ball : board.getBalls()) {
+            description.append(' ').append(ball.getName()).append(ball.getLocation());
+        }
+        return description.toString();
+    }
+}
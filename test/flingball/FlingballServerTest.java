@@ -2,15 +2,24 @@ package flingball;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
 import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Vect;
 
 /**
  * A class to test the functionality and correctness of FlingballServer, as well as
@@ -60,14 +69,53 @@ public class FlingballServerTest {
     //  - Disconnect portals after a client disconnects from the server 
     //     (balls should just pass over disconnected portals)
     //  - Quit the server gracefully
+    //  - A client's connection is reset without quitting, while another teleports to its board
+    //
+    // ~~~ FlingballNioServer Partition ~~~
+    //  - the same conversation as with FlingballTextServer gives the same replies
+    //  - request without a target board, request for a board that is not connected
+    //  - a board quits, a board's connection closes without quitting
+    //  - a client keeps reading, stops reading until more than the bytes that can wait pile up
+    //
+    // ~~~ Thread Factory Partition ~~~
+    //  - FlingballTextServer serves standard input and every client on threads from its factory
+    //
+    // ~~~ Relay Fast Path Partition ~~~
+    //  - words separated by one space, by several spaces
+    //  - target board connected, never connected, quit
+    //  - request without a target board
+    //
+    // ~~~ Membership Partition ~~~
+    //  - FlingballTextServer, FlingballNioServer
+    //  - client asks for versions as it joins, after it joined, not at all
+    //  - version the client knows is unknown, current, stale
+    //  - board joins, board quits
+    //
+    // ~~~ Direct Links Partition ~~~
+    //  - FlingballTextServer, FlingballNioServer
+    //  - boards joined both listen for links, one does not, one listened before it quit and
+    //    connected again
+    //  - teleport between boards with a link, without one
+    //
+    // ~~~ Binary Framing Partition ~~~
+    //  - client offers the binary framing, client does not
+    //  - teleport from a binary client to a text client, to a binary client, to its own board
+    //  - names sent for the first time, names sent before
+    //  - teleport stamped with when it left, not stamped
+    //
+    // ~~~ Headless Server Partition ~~~
+    //  - ball handed off through a joined wall, ball on a board joined to nothing
+    //  - viewer of a board the server runs, of a board it does not run
+    //  - frame with balls and banners, frame without
     
     private static final String LOCALHOST = "127.0.0.1";
     
-    /* Start server on its own thread. */
-    private static Thread startServer() {
+    /* Start server on its own thread, once it is listening. */
+    private static Thread startServer() throws IOException {
+        final FlingballTextServer textServer = new FlingballTextServer(10987);
         Thread thread = new Thread(() ->  {
             try {
-                new FlingballTextServer(10987).serve();
+                textServer.serve();
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -141,6 +189,615 @@ public class FlingballServerTest {
         server.join(1);
     }
     
+    // A client that never reads is disconnected once more lines pile up for it than the server
+    // lets wait, instead of the server queueing them for as long as it runs.
+    @Test
+    public void testNioServerDisconnectsStalledClient() throws IOException, InterruptedException {
+        final FlingballNioServer nioServer = new FlingballNioServer(0, 1, 1 << 16);
+        Thread server = new Thread(() ->  {
+            try {
+                nioServer.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        final Socket stalled = new Socket(LOCALHOST, nioServer.port());
+        BufferedReader stalledIn = new BufferedReader(new InputStreamReader(stalled.getInputStream()));
+        new PrintWriter(stalled.getOutputStream(), true).println("Stalled");
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", stalledIn.readLine());
+        
+        final Socket sender = new Socket(LOCALHOST, nioServer.port());
+        BufferedReader senderIn = new BufferedReader(new InputStreamReader(sender.getInputStream()));
+        PrintWriter senderOut = new PrintWriter(sender.getOutputStream(), false);
+        senderOut.println("Sender");
+        senderOut.flush();
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", senderIn.readLine());
+        assertEquals("expected server to response with connected clients", true,
+                senderIn.readLine().startsWith("success allConnectedBoards= "));
+        
+        sender.setSoTimeout(10_000);
+        /* far more than the socket buffers and the 64 KB that can wait hold */
+        for (int i = 0; i < 400_000; i++) {
+            senderOut.println("teleportWall= Stalled ball" + i + " 10.0 10.0 10.0 10.0 left");
+        }
+        senderOut.flush();
+        assertEquals("expected the stalled board to be disconnected",
+                "success allConnectedBoards= Sender", senderIn.readLine());
+        
+        stalled.setSoTimeout(10_000);
+        while (stalledIn.readLine() != null) {
+            // what was written before the server gave up, then the end of the stream
+        }
+        stalled.close();
+        sender.close();
+    }
+    
+    // Runs a conversation of two clients with a FlingballNioServer and checks that it answers
+    // exactly as FlingballTextServer does, including failures, quitting and closed connections.
+    @Test
+    public void testNioServerSameProtocol() throws IOException, InterruptedException {
+        final FlingballNioServer nioServer = new FlingballNioServer(0, 2);
+        Thread server = new Thread(() ->  {
+            try {
+                nioServer.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        final Socket clientSocket1 = new Socket(LOCALHOST, nioServer.port());
+        BufferedReader in1 = new BufferedReader(new InputStreamReader(clientSocket1.getInputStream()));
+        PrintWriter out1 = new PrintWriter(clientSocket1.getOutputStream(), true);
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", in1.readLine());
+        out1.println("Client1");
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1", in1.readLine());
+        
+        final Socket clientSocket2 = new Socket(LOCALHOST, nioServer.port());
+        BufferedReader in2 = new BufferedReader(new InputStreamReader(clientSocket2.getInputStream()));
+        PrintWriter out2 = new PrintWriter(clientSocket2.getOutputStream(), true);
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", in2.readLine());
+        out2.println("Client2");
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1 Client2", in2.readLine());
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1 Client2", in1.readLine());
+        
+        out2.println("teleportWall= Client1 ball1 10.0 10.0 10.0 10.0 left");
+        assertEquals("expected teleported ball", 
+                "success teleportWall= Client1 ball1 10.0 10.0 10.0 10.0 left", in1.readLine());
+        out1.println("teleportPortal= Nobody ball1 7.51 9.6 Portal1"); // dropped
+        out1.println("teleportPortal= Client2 ball2 7.51 9.6 Portal1");
+        assertEquals("expected teleported ball", 
+                "success teleportPortal= Client2 ball2 7.51 9.6 Portal1", in2.readLine());
+        out1.println("garbage");
+        assertEquals("expected a request without a target to fail", "failure", in1.readLine());
+        
+        out2.println("quit");
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1", in1.readLine());
+        
+        final Socket clientSocket3 = new Socket(LOCALHOST, nioServer.port());
+        BufferedReader in3 = new BufferedReader(new InputStreamReader(clientSocket3.getInputStream()));
+        PrintWriter out3 = new PrintWriter(clientSocket3.getOutputStream(), true);
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", in3.readLine());
+        out3.println("Client3");
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1 Client3", in1.readLine());
+        clientSocket3.close();
+        assertEquals("expected a closed connection to disconnect its board", 
+                "success allConnectedBoards= Client1", in1.readLine());
+
+        clientSocket1.close();
+        clientSocket2.close();
+    }
+    
+    // Checks that a FlingballTextServer given a thread factory, as it is for virtual threads,
+    // serves standard input and its clients on threads made by that factory.
+    @Test
+    public void testTextServerThreadFactory() throws IOException, InterruptedException {
+        final AtomicInteger made = new AtomicInteger();
+        final FlingballTextServer textServer = new FlingballTextServer(0, runnable -> {
+            made.incrementAndGet();
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread server = new Thread(() ->  {
+            try {
+                textServer.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        
+        final Socket clientSocket = new Socket(LOCALHOST, textServer.port());
+        BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+        PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", in.readLine());
+        out.println("Client1");
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1", in.readLine());
+        assertEquals("expected a thread for standard input and one for the client", 2, made.get());
+        clientSocket.close();
+    }
+    
+    // Tells clients that ask for versions of the connected boards only about the boards that join
+    // and leave, with a snapshot when the version they know is stale, and every other client the
+    // whole list as before, on both servers.
+    @Test
+    public void testMembershipDeltas() throws IOException, InterruptedException {
+        final FlingballTextServer textServer = new FlingballTextServer(0, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        final FlingballNioServer nioServer = new FlingballNioServer(0, 2);
+        Thread server = new Thread(() ->  {
+            try {
+                textServer.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        Thread otherServer = new Thread(() ->  {
+            try {
+                nioServer.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        otherServer.setDaemon(true);
+        otherServer.start();
+        
+        for (int port : new int[] { textServer.port(), nioServer.port() }) {
+            final Socket clientSocket1 = new Socket(LOCALHOST, port);
+            BufferedReader in1 = new BufferedReader(new InputStreamReader(clientSocket1.getInputStream()));
+            PrintWriter out1 = new PrintWriter(clientSocket1.getOutputStream(), true);
+            assertEquals("expected server to try to obtain a board name", "getClientBoardName", in1.readLine());
+            out1.print("Client1\nmembership= -1\n"); // asks as it joins
+            out1.flush();
+            assertEquals("expected a snapshot for an unknown version", "success membership= 1 Client1", in1.readLine());
+            
+            final Socket clientSocket2 = new Socket(LOCALHOST, port);
+            BufferedReader in2 = new BufferedReader(new InputStreamReader(clientSocket2.getInputStream()));
+            PrintWriter out2 = new PrintWriter(clientSocket2.getOutputStream(), true);
+            assertEquals("expected server to try to obtain a board name", "getClientBoardName", in2.readLine());
+            out2.println("Client2");
+            assertEquals("expected the whole list for a client that does not ask", 
+                    "success allConnectedBoards= Client1 Client2", in2.readLine());
+            assertEquals("expected one line about the board that joined", "success boardJoined= 2 Client2", in1.readLine());
+            
+            final Socket clientSocket3 = new Socket(LOCALHOST, port);
+            BufferedReader in3 = new BufferedReader(new InputStreamReader(clientSocket3.getInputStream()));
+            PrintWriter out3 = new PrintWriter(clientSocket3.getOutputStream(), true);
+            assertEquals("expected server to try to obtain a board name", "getClientBoardName", in3.readLine());
+            out3.println("Client3");
+            assertEquals("expected the whole list before the client asked", 
+                    "success allConnectedBoards= Client1 Client2 Client3", in3.readLine());
+            out3.println("membership= 0"); // asks after it joined
+            assertEquals("expected a snapshot for a stale version", 
+                    "success membership= 3 Client1 Client2 Client3", in3.readLine());
+            assertEquals("expected one line about the board that joined", "success boardJoined= 3 Client3", in1.readLine());
+            assertEquals("expected the whole list for a client that does not ask", 
+                    "success allConnectedBoards= Client1 Client2 Client3", in2.readLine());
+            
+            out2.println("quit");
+            assertEquals("expected one line about the board that left", "success boardLeft= 4 Client2", in1.readLine());
+            assertEquals("expected one line about the board that left", "success boardLeft= 4 Client2", in3.readLine());
+            
+            out1.println("membership= 4"); // current, so no snapshot
+            out1.println("membership= 2");
+            assertEquals("expected a snapshot only for the stale version", 
+                    "success membership= 4 Client1 Client3", in1.readLine());
+            
+            out1.println("quit");
+            out3.println("quit");
+            clientSocket1.close();
+            clientSocket2.close();
+            clientSocket3.close();
+        }
+    }
+    
+    /* Types a line into the console of a server, as its operator would to join boards */
+    private interface Console {
+        void type(String line) throws IOException;
+    }
+    
+    // Tells the first of two joined boards where the second listens for links, only when both
+    // listen, and forgets where a board listened once it quits, on both servers.
+    @Test
+    public void testPeerAddresses() throws IOException, InterruptedException {
+        final FlingballTextServer textServer = new FlingballTextServer(0, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        final FlingballNioServer nioServer = new FlingballNioServer(0, 2);
+        Thread server = new Thread(() ->  {
+            try {
+                textServer.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        Thread otherServer = new Thread(() ->  {
+            try {
+                nioServer.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        otherServer.setDaemon(true);
+        otherServer.start();
+        
+        final int[] ports = { textServer.port(), nioServer.port() };
+        final Console[] consoles = { textServer::sendJoinBoards, nioServer::sendJoinBoards };
+        for (int i = 0; i < ports.length; i++) {
+            final Socket clientSocket1 = new Socket(LOCALHOST, ports[i]);
+            BufferedReader in1 = new BufferedReader(new InputStreamReader(clientSocket1.getInputStream()));
+            PrintWriter out1 = new PrintWriter(clientSocket1.getOutputStream(), true);
+            assertEquals("expected server to try to obtain a board name", "getClientBoardName", in1.readLine());
+            out1.print("Client1\nmembership= -1\npeerPort= 5001\n");
+            out1.flush();
+            assertEquals("expected a snapshot for an unknown version", "success membership= 1 Client1", in1.readLine());
+            
+            final Socket clientSocket2 = new Socket(LOCALHOST, ports[i]);
+            BufferedReader in2 = new BufferedReader(new InputStreamReader(clientSocket2.getInputStream()));
+            PrintWriter out2 = new PrintWriter(clientSocket2.getOutputStream(), true);
+            assertEquals("expected server to try to obtain a board name", "getClientBoardName", in2.readLine());
+            out2.print("Client2\nmembership= -1\npeerPort= 5002\nmembership= 0\n");
+            out2.flush();
+            assertEquals("expected a snapshot for an unknown version", "success membership= 2 Client1 Client2", in2.readLine());
+            assertEquals("expected a snapshot for a stale version, once the port was read",
+                    "success membership= 2 Client1 Client2", in2.readLine());
+            assertEquals("expected one line about the board that joined", "success boardJoined= 2 Client2", in1.readLine());
+            
+            consoles[i].type("h Client1 Client2");
+            assertEquals("expected the join", "success joinHorizontal= Client1 Client2", in1.readLine());
+            assertEquals("expected the first board told where the second listens",
+                    "success peerAt= Client2 127.0.0.1 5002", in1.readLine());
+            assertEquals("expected the join", "success joinHorizontal= Client1 Client2", in2.readLine());
+            out2.println("membership= 0");
+            assertEquals("expected the second board not to be told where the first listens",
+                    "success membership= 2 Client1 Client2", in2.readLine());
+            
+            out2.println("quit");
+            assertEquals("expected one line about the board that left", "success boardLeft= 3 Client2", in1.readLine());
+            final Socket clientSocket3 = new Socket(LOCALHOST, ports[i]);
+            BufferedReader in3 = new BufferedReader(new InputStreamReader(clientSocket3.getInputStream()));
+            PrintWriter out3 = new PrintWriter(clientSocket3.getOutputStream(), true);
+            assertEquals("expected server to try to obtain a board name", "getClientBoardName", in3.readLine());
+            out3.print("Client2\nmembership= -1\n"); // the same board, no longer listening
+            out3.flush();
+            assertEquals("expected a snapshot for an unknown version", "success membership= 4 Client1 Client2", in3.readLine());
+            assertEquals("expected one line about the board that joined", "success boardJoined= 4 Client2", in1.readLine());
+            
+            consoles[i].type("v Client1 Client2");
+            assertEquals("expected the join", "success joinVertical= Client1 Client2", in1.readLine());
+            out1.println("membership= 0");
+            assertEquals("expected no link to a board that does not listen",
+                    "success membership= 4 Client1 Client2", in1.readLine());
+            
+            out1.println("quit");
+            out3.println("quit");
+            clientSocket1.close();
+            clientSocket2.close();
+            clientSocket3.close();
+        }
+    }
+    
+    // Teleports balls between two boards over the direct link FlingballTextServer arranged when it
+    // joined them, so the server never sees them, and through the server when one board does not
+    // listen for links.
+    @Test
+    public void testDirectPeerLink() throws IOException, InterruptedException {
+        final FlingballTextServer textServer = new FlingballTextServer(0, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread server = new Thread(() ->  {
+            try {
+                textServer.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        
+        final boolean[] bothListen = { true, false };
+        for (int i = 0; i < bothListen.length; i++) {
+            final Board left = new Board("Left" + i, 0, 0, 0);
+            final Board right = new Board("Right" + i, 0, 0, 0);
+            left.listenForPeers(0);
+            if (bothListen[i]) {
+                right.listenForPeers(0);
+            }
+            left.acceptSocket(new Socket(LOCALHOST, textServer.port()));
+            right.acceptSocket(new Socket(LOCALHOST, textServer.port()));
+            for (int step = 0; step < 200 && left.getInboundStats().getEnqueued() < 2; step++) {
+                Thread.sleep(10); // for the snapshot and the line about Right joining
+            }
+            Thread.sleep(50); // for the ports to be read
+            
+            textServer.sendJoinBoards("h " + left.getName() + " " + right.getName()); // joins the left wall of Left
+            for (int step = 0; step < 200 && (left.getJoinBoards().get(Wall.LEFT).equals(Optional.empty())
+                    || left.getLinkedBoards().isEmpty() != !bothListen[i]); step++) {
+                Thread.sleep(10);
+                left.updateBoard(0.001);
+                right.updateBoard(0.001);
+            }
+            assertEquals("expected a link only when both boards listen",
+                    bothListen[i] ? Collections.singleton(right.getName()) : Collections.emptySet(), left.getLinkedBoards());
+            
+            final long sentToServer = left.getOutboundStats().get().getEnqueued();
+            left.addBall(new Ball("ball", new Vect(0.5, 10), new Vect(-10, 0)));
+            left.updateBoard(0.1);
+            for (int step = 0; step < 200 && right.getBalls().isEmpty(); step++) {
+                Thread.sleep(10);
+                right.updateBoard(0.001);
+            }
+            assertEquals("expected the ball to arrive", 1, right.getBalls().size());
+            assertEquals("expected the server to see the teleport only without a link",
+                    sentToServer + (bothListen[i] ? 0 : 1), left.getOutboundStats().get().getEnqueued());
+            
+            left.quitServer();
+            right.quitServer();
+        }
+    }
+    
+    @Test
+    public void testHeadlessServer() throws IOException, InterruptedException {
+        final Board left = new Board("Left", 0, 0, 0);
+        final Board right = new Board("Right", 0, 0, 0);
+        final Board alone = new Board("Alone", 0, 0, 0);
+        final HeadlessServer headless = new HeadlessServer(0, Arrays.asList(left, right, alone), 2,
+                Simulator.DEFAULT_PHYSICS_RATE);
+        assertEquals("expected an empty frame before the first step", "frame= 0.0 0 0 0",
+                left.getFrame().encode());
+        
+        headless.joinBoards("h Left Right"); // joins the left wall of Left
+        left.addBall(new Ball("ball", new Vect(0.5, 10), new Vect(-10, 0)));
+        alone.addBall(new Ball("still", new Vect(5, 5), new Vect(0, 0)));
+        headless.runSteps(200);
+        assertEquals("expected the ball to leave Left", 0, left.getBalls().size());
+        assertEquals("expected the ball to arrive on Right", 1, right.getBalls().size());
+        assertEquals("expected one ball handed off", 1, headless.getHandedOff());
+        assertEquals("expected the ball on Alone to stay", 1, alone.getBalls().size());
+        assertEquals("expected every board stepped together", 0.2, right.getFrame().getTime(), 1e-9);
+        assertEquals("expected throughput to be measured", true, headless.getThroughput() > 0);
+        
+        final FrameSnapshot frame = right.getFrame();
+        assertEquals("expected a frame to decode to itself", frame.encode(), FrameSnapshot.decode(frame.encode()).encode());
+        assertEquals("expected the banner of the joined wall", true, frame.encode().endsWith(" 1 right Left"));
+        
+        final Thread server = new Thread(() -> {
+            try {
+                headless.serve();
+            } catch (IOException e) {
+                // closed
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        try (Socket viewer = new Socket(LOCALHOST, headless.port())) {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(viewer.getInputStream(), StandardCharsets.UTF_8));
+            final PrintWriter out = new PrintWriter(viewer.getOutputStream(), true);
+            out.println("view Right");
+            assertEquals("expected the frames of Right", 1, FrameSnapshot.decode(in.readLine()).getBallCount());
+        }
+        try (Socket viewer = new Socket(LOCALHOST, headless.port())) {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(viewer.getInputStream(), StandardCharsets.UTF_8));
+            final PrintWriter out = new PrintWriter(viewer.getOutputStream(), true);
+            out.println("view Nowhere");
+            assertEquals("expected a board the server does not run to fail", "failure", in.readLine());
+        }
+        headless.close();
+    }
+    
+    // Relays lines to the board they name without decoding them, byte for byte, and still answers
+    // requests that name no board as FlingballTextServer always has.
+    @Test
+    public void testTextServerRelayFastPath() throws IOException, InterruptedException {
+        final FlingballTextServer textServer = new FlingballTextServer(0, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread server = new Thread(() ->  {
+            try {
+                textServer.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        
+        final Socket clientSocket1 = new Socket(LOCALHOST, textServer.port());
+        BufferedReader in1 = new BufferedReader(new InputStreamReader(clientSocket1.getInputStream()));
+        PrintWriter out1 = new PrintWriter(clientSocket1.getOutputStream(), true);
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", in1.readLine());
+        out1.println("Client1");
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1", in1.readLine());
+        
+        final Socket clientSocket2 = new Socket(LOCALHOST, textServer.port());
+        BufferedReader in2 = new BufferedReader(new InputStreamReader(clientSocket2.getInputStream()));
+        PrintWriter out2 = new PrintWriter(clientSocket2.getOutputStream(), true);
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", in2.readLine());
+        out2.println("Client2");
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1 Client2", in2.readLine());
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1 Client2", in1.readLine());
+        
+        out2.println("teleportPortal=   Client1  ball1 -7.51 9.6E-4 Portal1");
+        assertEquals("expected the line relayed as it was sent", 
+                "success teleportPortal=   Client1  ball1 -7.51 9.6E-4 Portal1", in1.readLine());
+        out1.println("teleportPortal= Nobody ball1 7.51 9.6 Portal1"); // dropped
+        out1.println("garbage");
+        assertEquals("expected a request without a target to fail", "failure", in1.readLine());
+        
+        out1.println("quit");
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client2", in2.readLine());
+        out2.println("teleportWall= Client1 ball1 1.0 1.0 1.0 1.0 left"); // dropped, Client1 quit
+        out2.println("teleportWall= Client2 ball2 1.0 1.0 1.0 1.0 right");
+        assertEquals("expected only the teleport to a connected board", 
+                "success teleportWall= Client2 ball2 1.0 1.0 1.0 1.0 right", in2.readLine());
+
+        clientSocket1.close();
+        clientSocket2.close();
+    }
+    
+    // A board whose connection is reset without quitting leaves as if it quit, and a client that
+    // teleports to it after the reset is still served rather than losing its own connection.
+    @Test
+    public void testTextServerResetClient() throws IOException, InterruptedException {
+        final FlingballTextServer textServer = new FlingballTextServer(0, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread server = new Thread(() ->  {
+            try {
+                textServer.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        
+        final Socket resetSocket = new Socket(LOCALHOST, textServer.port());
+        BufferedReader in1 = new BufferedReader(new InputStreamReader(resetSocket.getInputStream()));
+        PrintWriter out1 = new PrintWriter(resetSocket.getOutputStream(), true);
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", in1.readLine());
+        out1.println("Client1");
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1", in1.readLine());
+        
+        final Socket clientSocket2 = new Socket(LOCALHOST, textServer.port());
+        clientSocket2.setSoTimeout(10_000);
+        BufferedReader in2 = new BufferedReader(new InputStreamReader(clientSocket2.getInputStream()));
+        PrintWriter out2 = new PrintWriter(clientSocket2.getOutputStream(), false);
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", in2.readLine());
+        out2.println("Client2");
+        out2.flush();
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1 Client2", in2.readLine());
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1 Client2", in1.readLine());
+        
+        resetSocket.setSoLinger(true, 0); // closing sends a reset rather than quitting
+        resetSocket.close();
+        /* enough that some are written after the reset arrives, whenever the server notices it */
+        for (int i = 0; i < 1000; i++) {
+            out2.println("teleportWall= Client1 ball" + i + " 1.0 1.0 1.0 1.0 left");
+            out2.flush();
+        }
+        out2.println("teleportWall= Client2 ball2 1.0 1.0 1.0 1.0 right");
+        out2.flush();
+        assertEquals("expected the reset board to leave", 
+                "success allConnectedBoards= Client2", in2.readLine());
+        assertEquals("expected the client teleporting to the reset board still to be served", 
+                "success teleportWall= Client2 ball2 1.0 1.0 1.0 1.0 right", in2.readLine());
+        
+        out2.println("quit");
+        out2.flush();
+        clientSocket2.close();
+    }
+    
+    // Negotiates the binary framing between FlingballTextServer and a client that offers it, next
+    // to a client that only speaks text, and relays teleports between them.
+    @Test
+    public void testTextServerBinaryFraming() throws IOException, InterruptedException {
+        final FlingballTextServer textServer = new FlingballTextServer(0, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread server = new Thread(() ->  {
+            try {
+                textServer.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        
+        final Socket binarySocket = new Socket(LOCALHOST, textServer.port());
+        final DataInputStream in1 = new DataInputStream(new BufferedInputStream(binarySocket.getInputStream()));
+        final DataOutputStream out1 = new DataOutputStream(binarySocket.getOutputStream());
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", WireCodec.readLine(in1));
+        out1.write(("Client1\n" + WireCodec.OFFER + "\n").getBytes(StandardCharsets.UTF_8));
+        assertEquals("expected server to response with connected clients in text", 
+                "success allConnectedBoards= Client1", WireCodec.readLine(in1));
+        assertEquals("expected server to accept the offer", WireCodec.ACCEPT, WireCodec.readLine(in1));
+        out1.write((WireCodec.ACCEPT + "\n").getBytes(StandardCharsets.UTF_8));
+        final WireCodec.Encoder encoder = new WireCodec.Encoder();
+        final WireCodec.Decoder decoder = new WireCodec.Decoder();
+        
+        final Socket textSocket = new Socket(LOCALHOST, textServer.port());
+        BufferedReader in2 = new BufferedReader(new InputStreamReader(textSocket.getInputStream()));
+        PrintWriter out2 = new PrintWriter(textSocket.getOutputStream(), true);
+        assertEquals("expected server to try to obtain a board name", "getClientBoardName", in2.readLine());
+        out2.println("Client2");
+        assertEquals("expected server to response with connected clients", 
+                "success allConnectedBoards= Client1 Client2", in2.readLine());
+        assertEquals("expected server to response with connected clients in a frame", 
+                "success allConnectedBoards= Client1 Client2", decoder.read(in1).toRequest());
+        
+        // binary to text
+        encoder.write(out1, ServerCommand.teleportWall("Client2", "ball1", new Vect(10, 10), new Vect(10, 10),
+                Wall.LEFT, 0), "");
+        out1.flush();
+        assertEquals("expected teleported ball in text", 
+                "success teleportWall= Client2 ball1 10.0 10.0 10.0 10.0 LEFT", in2.readLine());
+        
+        // text to binary
+        out2.println("teleportPortal= Client1 ball2 7.51 9.6 Portal1");
+        assertEquals("expected teleported ball in a frame", 
+                "success teleportPortal= Client1 ball2 7.51 9.6 Portal1", decoder.read(in1).toRequest());
+        
+        // binary to its own board, with names sent before and for the first time
+        encoder.write(out1, ServerCommand.teleportPortal("Client1", "ball1", new Vect(7.51, 9.6), "Portal1", 0), "");
+        out1.flush();
+        final ServerCommand teleport = decoder.read(in1);
+        assertEquals("expected teleported ball as a binary frame", ServerCommand.Kind.TELEPORT_PORTAL, teleport.getKind());
+        assertEquals("expected teleported ball", "teleportPortal= Client1 ball1 7.51 9.6 Portal1", teleport.toRequest());
+        
+        // stamped, both ways
+        encoder.write(out1, ServerCommand.teleportWall("Client2", "ball3", new Vect(10, 10), new Vect(10, 10),
+                Wall.LEFT, Optional.of(new TeleportStamp("Client1", 1.5, Double.NaN)), 0), "");
+        out1.flush();
+        assertEquals("expected the stamp in text", 
+                "success teleportWall= Client2 ball3 10.0 10.0 10.0 10.0 LEFT Client1 1.5 NaN", in2.readLine());
+        out2.println("teleportPortal= Client1 ball4 7.51 9.6 Portal1 Client2 2.25 -0.5");
+        final ServerCommand stamped = ServerCommand.parse(decoder.read(in1).toRequest(), 0).get();
+        assertEquals("expected the stamp in a frame", ServerCommand.Kind.TELEPORT_PORTAL, stamped.getKind());
+        assertEquals("expected the stamp in a frame", Optional.of(new TeleportStamp("Client2", 2.25, -0.5)),
+                stamped.getStamp());
+
+        binarySocket.close();
+        textSocket.close();
+    }
+    
     
     /* SYSTEM TESTS RAN */
     
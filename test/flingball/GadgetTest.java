@@ -8,10 +8,14 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.util.Optional;
 
 import org.junit.Test;
 
 import physics.Angle;
+import physics.Circle;
+import physics.LineSegment;
+import physics.Physics;
 import physics.Vect;
 
 public class GadgetTest {
@@ -68,6 +72,19 @@ public class GadgetTest {
      * getNumberOfBalls
      * # of balls holding: 0, 1, >1
      * 
+     * getTimeTillCollision, compiled into StaticGeometry
+     * gadget = square, triangle, circle, absorber, portal
+     * ball hits the gadget, ball misses the gadget
+     * 
+     * Flipper specific:
+     * getTimeTillCollision, getSweptBound
+     * flipper flipping, not flipping
+     * ball inside the swept bound, ball reaching the bound within delta, ball never reaching it
+     * 
+     * getTimeTillCollision, read from a BallStore without making Balls
+     * target = another ball, a flipper at rest
+     * ball hits, ball misses, balls overlapping and approaching, overlapping and separating
+     * 
      * draw (drawSquare, drawCircle, drawTriangle, drawAbsorber)
      *  These gadgets will be drawn on a Graphics object that is the result of calling 
      *  .getGraphics() on a BufferedImage. This BufferedImage can then be tested for
@@ -295,4 +312,120 @@ public class GadgetTest {
         assertEquals("Sub image should be transparent", Transparency.TRANSLUCENT, subImage.getTransparency());
     }
 
+
+    /* covers: getTimeTillCollision, compiled into StaticGeometry
+     * gadget = square, triangle, circle, absorber, portal
+     * ball hits the gadget, ball misses the gadget
+     */
+    @Test
+    public void testStaticGeometryMatchesGadgets() {
+        final Bumper[] bumpers = { new SquareBumper("square", new Vect(3, 3)),
+                new TriangleBumper("triangle", new Vect(8, 3), Angle.DEG_90),
+                new CircleBumper("circle", new Vect(13, 3)) };
+        final Absorber[] absorbers = { new Absorber("absorber", new Vect(0, 18), new Vect(20, 1)) };
+        final Portal[] portals = { new Portal("portal", new Vect(3, 10), Optional.empty(), "other") };
+        final StaticGeometry geometry = new StaticGeometry(bumpers, absorbers, portals);
+        final Ball[] balls = { new Ball("down", new Vect(3.5, 1), new Vect(0, 10)),
+                new Ball("diagonal", new Vect(6, 0.5), new Vect(6.5, 7)),
+                new Ball("right", new Vect(1, 3.5), new Vect(20, 0.1)),
+                new Ball("falling", new Vect(10, 15), new Vect(-1, 20)),
+                new Ball("portal", new Vect(3.5, 8), new Vect(0.2, 5)),
+                new Ball("away", new Vect(17, 10), new Vect(5, -5)) };
+        final double delta = 1;
+        
+        for (Ball ball : balls) {
+            for (int i = 0; i < bumpers.length; i++) {
+                assertEquals("expect the same time for " + ball.getName() + " and " + bumpers[i].getName(),
+                        bumpers[i].getTimeTillCollision(ball, delta),
+                        geometry.timeTillCollision(geometry.bumperOwner(i), ball, delta), 0);
+            }
+            assertEquals("expect the same time for " + ball.getName() + " and the absorber",
+                    absorbers[0].getTimeTillCollision(ball, delta),
+                    geometry.timeTillCollision(geometry.absorberOwner(0), ball, delta), 0);
+            assertEquals("expect the same time for " + ball.getName() + " and the portal",
+                    portals[0].getTimeTillCollision(ball, delta),
+                    geometry.timeTillCollision(geometry.portalOwner(0), ball, delta), 0);
+        }
+        assertTrue("expect a ball to hit the square", geometry.timeTillCollision(geometry.bumperOwner(0), balls[0], delta) < delta);
+    }
+
+    /*
+     * covers: getTimeTillCollision, getSweptBound
+     * flipper flipping, ball never reaching the swept bound, ball reaching it within delta,
+     * ball inside it
+     */
+    @Test
+    public void testFlipperSweptBoundCulling() {
+        final double angularVelocity = Math.toRadians(1080);
+        final Flipper flipper = new Flipper(false, "flipper", new Vect(5, 5), Angle.ZERO, Angle.ZERO, true, angularVelocity);
+        final Circle bound = flipper.getSweptBound();
+        assertEquals("expect the bound to be centered on the pivot", new Vect(5, 5), bound.getCenter());
+        assertEquals("expect the bound to cover the flipper and a ball", 2 + Ball.RADIUS, bound.getRadius(), 0);
+        final double delta = 0.05;
+        
+        final Ball far = new Ball("far", new Vect(15, 15), new Vect(10, 0));
+        assertEquals("expect no collision with a far ball", Double.POSITIVE_INFINITY, flipper.getTimeTillCollision(far, delta), 0);
+        assertEquals("expect all three solves to be skipped", 3, flipper.getRotatingSolvesAvoided());
+        assertEquals("expect no solve to be run", 0, flipper.getRotatingSolves());
+        
+        final Ball[] near = { new Ball("approaching", new Vect(9, 6), new Vect(-50, 0)),
+                new Ball("inside", new Vect(6, 6), new Vect(-5, 0)) };
+        for (Ball ball : near) {
+            double expected = Physics.timeUntilRotatingWallCollision(new LineSegment(5, 5, 5, 7), new Vect(5, 5),
+                    -angularVelocity, ball.getCircle(), ball.getVelocity());
+            expected = Math.min(expected, Physics.timeUntilRotatingCircleCollision(new Circle(5, 5, 0), new Vect(5, 5),
+                    -angularVelocity, ball.getCircle(), ball.getVelocity()));
+            expected = Math.min(expected, Physics.timeUntilRotatingCircleCollision(new Circle(5, 7, 0), new Vect(5, 5),
+                    -angularVelocity, ball.getCircle(), ball.getVelocity()));
+            expected = expected <= delta ? expected : Double.POSITIVE_INFINITY;
+            assertEquals("expect the solvers' time for " + ball.getName(), expected, flipper.getTimeTillCollision(ball, delta), 0);
+        }
+        assertTrue("expect the approaching ball to hit the flipper", flipper.getTimeTillCollision(near[0], delta) < delta);
+        assertTrue("expect the wall solve to be run for the balls near the bound", flipper.getRotatingSolves() >= near.length);
+    }
+    
+    /*
+     * covers: getTimeTillCollision, read from a BallStore without making Balls
+     * target = another ball, a flipper at rest
+     * ball hits, ball misses, balls overlapping and approaching, overlapping and separating
+     */
+    @Test
+    public void testStoredBallsMatchBalls() {
+        final BallStore store = new BallStore();
+        store.add(new Ball("left", new Vect(2, 6), new Vect(10, 0)));
+        store.add(new Ball("right", new Vect(8, 6), new Vect(-10, 0.5)));
+        store.add(new Ball("passing", new Vect(2, 15), new Vect(0, -3)));
+        store.add(new Ball("touching", new Vect(8.3, 6.2), new Vect(-20, 0)));
+        store.add(new Ball("leaving", new Vect(8.6, 6), new Vect(20, 0)));
+        final double delta = 1;
+        
+        for (int i = 0; i < store.size(); i++) {
+            for (int j = 0; j < store.size(); j++) {
+                if (i != j) {
+                    assertEquals("expect the same time for " + store.get(i).getName() + " and " + store.get(j).getName(),
+                            store.get(i).getTimeTillCollision(store.get(j), delta), store.timeTillCollision(i, j, delta), 0);
+                }
+            }
+        }
+        assertTrue("expect left and right to collide", store.timeTillCollision(0, 1, delta) < delta);
+        assertEquals("expect overlapping balls moving together to collide now", 0, store.timeTillCollision(1, 3, delta), 0);
+        assertEquals("expect overlapping balls moving apart not to collide", Double.POSITIVE_INFINITY, 
+                store.timeTillCollision(1, 4, delta), 0);
+        
+        final Flipper flipper = new Flipper(false, "flipper", new Vect(5, 5), Angle.ZERO, Angle.ZERO, false, 
+                Math.toRadians(1080));
+        for (int i = 0; i < store.size(); i++) {
+            final Ball ball = store.get(i);
+            assertEquals("expect the same flipper time for " + ball.getName(), flipper.getTimeTillCollision(ball, delta),
+                    flipper.getTimeTillCollision(store.x(i), store.y(i), store.vx(i), store.vy(i), delta), 0);
+            double expected = Physics.timeUntilWallCollision(new LineSegment(5, 5, 5, 7), ball.getCircle(), ball.getVelocity());
+            expected = Math.min(expected, Physics.timeUntilCircleCollision(new Circle(5, 5, 0), ball.getCircle(), ball.getVelocity()));
+            expected = Math.min(expected, Physics.timeUntilCircleCollision(new Circle(5, 7, 0), ball.getCircle(), ball.getVelocity()));
+            expected = Math.max(expected, 0) <= delta ? expected : Double.POSITIVE_INFINITY;
+            assertEquals("expect the solvers' time for " + ball.getName(), expected, flipper.getTimeTillCollision(ball, delta), 0);
+        }
+        assertTrue("expect left to hit the flipper", flipper.getTimeTillCollision(store.x(0), store.y(0), 
+                store.vx(0), store.vy(0), delta) < delta);
+    }
+
 }
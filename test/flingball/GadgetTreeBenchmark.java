@@ -0,0 +1,205 @@
+package flingball;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import physics.Angle;
+import physics.Vect;
+
+/**
+ * Compares finding the bumper a ball hits first through StaticGadgetTree against testing the
+ * ball against every bumper on the board, on procedurally generated boards packed with bumpers.
+ *
+ * Run from the project root with the test classes on the classpath:
+ *     java -cp bin:lib/parserlib.jar:lib/physics.jar flingball.GadgetTreeBenchmark
+ *          [fraction of the 400 cells holding a bumper, default 0.8] [balls, default 200]
+ *          [seed, default 1] [foresight window in seconds, default 0.05]
+ *
+ * The default window of 50ms is much longer than the sub-steps Simulator updates the board by,
+ * so that balls actually reach bumpers within it. The mean cost of one query per
+ * ball is printed for both, along with the cost of building the tree top-down and of inserting
+ * the same bumpers one at a time, and the number of balls for which the two disagreed (which
+ * should always be 0).
+ */
+public class GadgetTreeBenchmark {
+
+    private static final double DEFAULT_FILL = 0.8;
+    private static final int DEFAULT_BALLS = 200;
+    private static final long DEFAULT_SEED = 1;
+    private static final double DEFAULT_WINDOW = 0.05;
+    private static final int WARM_UP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 1000;
+    private static final double MAX_SPEED = 50;
+    private static final Angle[] ORIENTATIONS = { Angle.ZERO, Angle.DEG_90, Angle.DEG_180, Angle.DEG_270 };
+
+    /**
+     * Runs the comparison
+     *
+     * @param args optionally the fill fraction, the number of balls, the random seed and the window
+     */
+    public static void main(String[] args) {
+        final double fill = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_FILL;
+        final int ballCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BALLS;
+        final long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        final Random random = new Random(seed);
+
+        final boolean[] occupied = new boolean[Board.L * Board.L];
+        final Bumper[] bumpers = generateBumpers(random, fill, occupied);
+        if (bumpers.length == occupied.length) {
+            throw new IllegalArgumentException("no empty cell is left for the balls");
+        }
+        final Ball[] balls = generateBalls(random, ballCount, occupied);
+        final BallStore store = new BallStore();
+        store.addAll(Arrays.asList(balls));
+        final double window = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_WINDOW;
+
+        final long buildStart = System.nanoTime();
+        final StaticGadgetTree tree = new StaticGadgetTree();
+        tree.insertStaticGadgets(bumpers, new Absorber[0], new Portal[0]);
+        final long buildNanos = System.nanoTime() - buildStart;
+
+        final long insertStart = System.nanoTime();
+        final StaticGadgetTree incremental = new StaticGadgetTree();
+        for (int count = 1; count <= bumpers.length; count++) {
+            incremental.insertStaticGadgets(Arrays.copyOf(bumpers, count), new Absorber[0], new Portal[0]);
+        }
+        final long insertNanos = System.nanoTime() - insertStart;
+
+        final int[] candidates = new int[bumpers.length];
+        double sink = 0;
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            sink += exhaustiveRound(bumpers, balls, window);
+            sink += treeRound(tree, bumpers, balls, store, window, candidates);
+        }
+
+        long exhaustiveNanos = 0;
+        long treeNanos = 0;
+        long incrementalNanos = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            final long exhaustiveStart = System.nanoTime();
+            sink += exhaustiveRound(bumpers, balls, window);
+            exhaustiveNanos += System.nanoTime() - exhaustiveStart;
+
+            final long treeStart = System.nanoTime();
+            sink += treeRound(tree, bumpers, balls, store, window, candidates);
+            treeNanos += System.nanoTime() - treeStart;
+
+            final long incrementalStart = System.nanoTime();
+            sink += treeRound(incremental, bumpers, balls, store, window, candidates);
+            incrementalNanos += System.nanoTime() - incrementalStart;
+        }
+
+        int mismatches = 0;
+        long candidateTotal = 0;
+        for (int i = 0; i < balls.length; i++) {
+            final Ball ball = balls[i];
+            double expected = Double.POSITIVE_INFINITY;
+            for (Bumper bumper : bumpers) {
+                expected = Math.min(expected, bumper.getTimeTillCollision(ball, window));
+            }
+            final int found = tree.bumperCandidates(store, i, window, candidates);
+            candidateTotal += found;
+            double actual = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < found; k++) {
+                actual = Math.min(actual, bumpers[candidates[k]].getTimeTillCollision(ball, window));
+            }
+            if (Double.compare(expected, actual) != 0) {
+                mismatches++;
+            }
+        }
+
+        final double queries = (double) MEASURED_ROUNDS * balls.length;
+        System.out.println(bumpers.length + " bumpers, " + balls.length + " balls, window " + window + "s, seed " + seed);
+        System.out.printf("exhaustive:        %.1f ns per ball%n", exhaustiveNanos / queries);
+        System.out.printf("tree (top-down):   %.1f ns per ball, %.2f candidates per ball%n",
+                treeNanos / queries, (double) candidateTotal / balls.length);
+        System.out.printf("tree (insertions): %.1f ns per ball%n", incrementalNanos / queries);
+        System.out.printf("build: %.1f us top-down, %.1f us by %d insertions%n",
+                buildNanos / 1e3, insertNanos / 1e3, bumpers.length);
+        System.out.println("mismatches: " + mismatches);
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * Places a random bumper in a fraction of the cells of a board
+     *
+     * @param occupied gets marked with the cells that hold a bumper
+     * @return the bumpers, in row-major order of their cells
+     */
+    private static Bumper[] generateBumpers(Random random, double fill, boolean[] occupied) {
+        int count = 0;
+        final Bumper[] bumpers = new Bumper[occupied.length];
+        for (int cell = 0; cell < occupied.length; cell++) {
+            if (random.nextDouble() >= fill) {
+                continue;
+            }
+            occupied[cell] = true;
+            final String name = "bumper" + cell;
+            final Vect location = new Vect(cell % Board.L, cell / Board.L);
+            switch (random.nextInt(3)) {
+            case 0:
+                bumpers[count++] = new SquareBumper(name, location);
+                break;
+            case 1:
+                bumpers[count++] = new CircleBumper(name, location);
+                break;
+            default:
+                bumpers[count++] = new TriangleBumper(name, location, ORIENTATIONS[random.nextInt(ORIENTATIONS.length)]);
+                break;
+            }
+        }
+        return Arrays.copyOf(bumpers, count);
+    }
+
+    /**
+     * Places balls with random velocities at the centers of random cells left empty
+     *
+     * @return the balls
+     */
+    private static Ball[] generateBalls(Random random, int count, boolean[] occupied) {
+        final Ball[] balls = new Ball[count];
+        for (int i = 0; i < count; i++) {
+            int cell = random.nextInt(occupied.length);
+            while (occupied[cell]) {
+                cell = random.nextInt(occupied.length);
+            }
+            final Vect location = new Vect(cell % Board.L + 0.5, cell / Board.L + 0.5);
+            final Vect velocity = new Vect((2 * random.nextDouble() - 1) * MAX_SPEED, (2 * random.nextDouble() - 1) * MAX_SPEED);
+            balls[i] = new Ball("ball" + i, location, velocity);
+        }
+        return balls;
+    }
+
+    /**
+     * @return the sum over the balls of the least time until each hits a bumper, testing every bumper
+     */
+    private static double exhaustiveRound(Bumper[] bumpers, Ball[] balls, double window) {
+        double sum = 0;
+        for (Ball ball : balls) {
+            double minTime = Double.POSITIVE_INFINITY;
+            for (Bumper bumper : bumpers) {
+                minTime = Math.min(minTime, bumper.getTimeTillCollision(ball, window));
+            }
+            sum += minTime < window ? minTime : 0;
+        }
+        return sum;
+    }
+
+    /**
+     * @return the sum over the balls of the least time until each hits a bumper, testing only the
+     *         candidates tree returns
+     */
+    private static double treeRound(StaticGadgetTree tree, Bumper[] bumpers, Ball[] balls, BallStore store,
+            double window, int[] candidates) {
+        double sum = 0;
+        for (int i = 0; i < balls.length; i++) {
+            final int found = tree.bumperCandidates(store, i, window, candidates);
+            double minTime = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < found; k++) {
+                minTime = Math.min(minTime, bumpers[candidates[k]].getTimeTillCollision(balls[i], window));
+            }
+            sum += minTime < window ? minTime : 0;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,73 @@
+package flingball;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how many boards a HeadlessServer can step in real time: the same board file is loaded
+ * under as many names as there are boards, the boards are joined in pairs so that balls are handed
+ * off between them, and every board is stepped as fast as the workers can for a number of steps.
+ * This is repeated with 1, 2, 4 and so on workers up to one per core, on new boards each time.
+ *
+ * Run from the project root with the test classes on the classpath:
+ *     java -cp bin:lib/parserlib.jar:lib/physics.jar flingball.HeadlessThroughputBenchmark
+ *          [boards, default 64] [steps, default 2000] [board file, default boards/flippers_many_balls.fb]
+ *
+ * The throughput printed is the simulated board-seconds stepped per wall-second, which is how many
+ * boards the server could keep running in real time, followed by the balls handed off between
+ * boards. The first run of each is thrown away to warm up the JIT.
+ */
+public class HeadlessThroughputBenchmark {
+
+    private static final int DEFAULT_BOARDS = 64;
+    private static final int DEFAULT_STEPS = 2000;
+    private static final int WARMUP_STEPS = 500;
+
+    /**
+     * Runs the measurement
+     *
+     * @param args optionally the number of boards, of steps and the board file
+     * @throws Exception if the board file cannot be read or parsed
+     */
+    public static void main(String[] args) throws Exception {
+        final int boards = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BOARDS;
+        final int steps = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STEPS;
+        final String file = new String(Files.readAllBytes(new File(args.length > 2 ? args[2]
+                : "boards/flippers_many_balls.fb").toPath()), StandardCharsets.UTF_8);
+        final int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.println(boards + " boards, " + steps + " steps, " + cores + " cores");
+        run(file, boards, WARMUP_STEPS, 1);
+        for (int workers = 1; workers <= cores; workers *= 2) {
+            final HeadlessServer server = run(file, boards, steps, workers);
+            System.out.println(String.format("  %d workers: %.1f board-seconds per wall-second, %d balls handed off",
+                    workers, server.getThroughput(), server.getHandedOff()));
+        }
+    }
+
+    /**
+     * Makes boards from a board file, joins them in pairs and steps them
+     *
+     * @return the server that stepped them, closed
+     */
+    private static HeadlessServer run(String file, int boards, int steps, int workers) throws Exception {
+        final List<Board> loaded = new ArrayList<>();
+        for (int i = 0; i < boards; i++) {
+            final Path copy = Files.createTempFile("headless", ".fb");
+            Files.write(copy, file.replaceFirst("name\\s*=\\s*\\S+", "name=Board" + i).getBytes(StandardCharsets.UTF_8));
+            loaded.add(BoardParser.parse(copy.toFile()));
+            Files.delete(copy);
+        }
+        final HeadlessServer server = new HeadlessServer(0, loaded, workers, Simulator.DEFAULT_PHYSICS_RATE);
+        for (int i = 0; i + 1 < boards; i += 2) {
+            server.joinBoards("v Board" + i + " Board" + (i + 1));
+        }
+        server.runSteps(steps);
+        server.close();
+        return server;
+    }
+}
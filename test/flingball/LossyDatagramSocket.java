@@ -0,0 +1,102 @@
+package flingball;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A datagram socket on loopback that loses some of the packets sent through it and delays the
+ * rest, to see how DatagramTransport copes with a bad network without one. Which packets are lost
+ * is drawn from a seeded Random, so a run can be repeated.
+ */
+class LossyDatagramSocket extends DatagramSocket {
+
+    private final double lossRate;
+    private final long delayNanos;
+    private final Random random;
+    private final ScheduledExecutorService delayer;
+    private long lost = 0;
+
+    // Abstraction Function:
+    //  AF(lossRate, delayNanos, random, delayer, lost) = A socket bound to any free port that drops
+    //          each packet sent through it with probability lossRate as drawn from random, and has
+    //          delayer send the others delayNanos later. lost packets were dropped so far.
+    // Representation Invariant:
+    //  --| 0 <= lossRate <= 1, delayNanos >= 0, lost >= 0
+    // Safety from Representation Exposure:
+    //  --| all fields are private, and lost is handed out as a long
+    // Thread Safety Argument:
+    //  --| random and lost are guarded by this socket's lock, and delayer is threadsafe
+
+    /**
+     * Makes a socket bound to any free port
+     *
+     * @param lossRate the probability that a packet sent is lost, from 0 to 1
+     * @param delayNanos how long every packet that is not lost takes to be sent, in nanoseconds
+     * @param seed the seed of the Random that decides which packets are lost
+     * @throws SocketException if no port can be bound
+     */
+    LossyDatagramSocket(double lossRate, long delayNanos, long seed) throws SocketException {
+        super();
+        this.lossRate = lossRate;
+        this.delayNanos = delayNanos;
+        this.random = new Random(seed);
+        this.delayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "lossy-datagram-delayer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkRep();
+    }
+
+    /**
+     * Checks the Representation Invariant to ensure that no representation exposure occurs
+     */
+    private synchronized void checkRep() {
+        assert 0 <= lossRate && lossRate <= 1 && delayNanos >= 0 && lost >= 0;
+    }
+
+    @Override
+    public void send(DatagramPacket packet) throws IOException {
+        synchronized (this) {
+            if (random.nextDouble() < lossRate) {
+                lost++;
+                return;
+            }
+        }
+        if (delayNanos == 0) {
+            super.send(packet);
+            return;
+        }
+        /* the caller may reuse the packet, so what is sent later is a copy */
+        final DatagramPacket copy = new DatagramPacket(
+                Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength()),
+                packet.getLength(), packet.getSocketAddress());
+        delayer.schedule(() -> {
+            try {
+                super.send(copy);
+            } catch (IOException e) {
+                // closed in the meantime, so the packet is lost
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        delayer.shutdownNow();
+        super.close();
+    }
+
+    /**
+     * @return the number of packets dropped so far
+     */
+    synchronized long getLost() {
+        return lost;
+    }
+}
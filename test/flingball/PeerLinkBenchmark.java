@@ -0,0 +1,152 @@
+package flingball;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import physics.Vect;
+
+/**
+ * Measures how long a ball takes to go through the wall of one board to the board joined to it,
+ * on loopback, when it is teleported through a FlingballTextServer and when it is teleported over
+ * the direct PeerLink the server arranged, and how much CPU the server spends on each teleport.
+ *
+ * Run from the project root with the test classes on the classpath:
+ *     java -cp bin:lib/parserlib.jar:lib/physics.jar flingball.PeerLinkBenchmark
+ *          [teleports, default 5000] [protocol, text or binary, default binary]
+ *
+ * Each teleport is timed from the update that sends the ball until the receiving board has decoded
+ * it, one at a time so that queueing does not count. The latency printed is the median and the
+ * 99th percentile; the server CPU is the CPU time of every thread of the server over all the
+ * teleports, divided by their number.
+ */
+public class PeerLinkBenchmark {
+
+    private static final int DEFAULT_TELEPORTS = 5000;
+    private static final int WARMUP_TELEPORTS = 1000;
+    private static final long TIMEOUT_NANOS = 1_000_000_000L;
+
+    /**
+     * Runs the comparison
+     *
+     * @param args optionally the number of teleports and the protocol
+     * @throws Exception if the server cannot be started or the boards cannot connect
+     */
+    public static void main(String[] args) throws Exception {
+        final int teleports = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TELEPORTS;
+        final boolean binary = args.length <= 1 || args[1].equals("binary");
+
+        final List<Thread> serverThreads = new CopyOnWriteArrayList<>();
+        final FlingballTextServer server = new FlingballTextServer(0, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            serverThreads.add(thread);
+            return thread;
+        });
+        final Thread serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThreads.add(serverThread);
+        serverThread.start();
+
+        System.out.println(teleports + " teleports, " + (binary ? "binary" : "text") + " framing");
+        System.out.println("through the server:");
+        run(server, serverThreads, "relayed", false, binary, teleports);
+        System.out.println("over a direct link:");
+        run(server, serverThreads, "linked", true, binary, teleports);
+        System.exit(0); // the server's threads never stop
+    }
+
+    /**
+     * Joins two boards and teleports balls from one to the other, printing the latency and the
+     * server CPU per teleport
+     */
+    private static void run(FlingballTextServer server, List<Thread> serverThreads, String prefix, boolean direct,
+            boolean binary, int teleports) throws Exception {
+        final Board left = new Board(prefix + "Left", 0, 0, 0);
+        final Board right = new Board(prefix + "Right", 0, 0, 0);
+        if (direct) {
+            left.listenForPeers(0);
+            right.listenForPeers(0);
+        }
+        left.acceptSocket(new Socket("127.0.0.1", server.port()), OutboundWriter.DEFAULT_CAPACITY,
+                OverflowPolicy.BLOCK, binary);
+        right.acceptSocket(new Socket("127.0.0.1", server.port()), OutboundWriter.DEFAULT_CAPACITY,
+                OverflowPolicy.BLOCK, binary);
+        Thread.sleep(300); // for both to connect and tell the server their ports
+        server.sendJoinBoards("h " + left.getName() + " " + right.getName()); // joins the left wall of left
+        final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (left.getJoinBoards().get(Wall.LEFT).equals(Optional.empty())
+                || (direct && left.getLinkedBoards().isEmpty())) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("The boards were not joined");
+            }
+            Thread.sleep(10);
+            left.updateBoard(0.001);
+            right.updateBoard(0.001);
+        }
+        Thread.sleep(100);
+        right.updateBoard(0.001); // drains whatever the join sent
+
+        for (int i = 0; i < WARMUP_TELEPORTS; i++) {
+            teleport(left, right, i);
+        }
+        final long cpuBefore = cpuNanos(serverThreads);
+        final long[] latencies = new long[teleports];
+        for (int i = 0; i < teleports; i++) {
+            latencies[i] = teleport(left, right, WARMUP_TELEPORTS + i);
+        }
+        final long cpu = cpuNanos(serverThreads) - cpuBefore;
+        Arrays.sort(latencies);
+        System.out.println(String.format("  latency %.1f us median %.1f us p99, server CPU %.2f us per teleport",
+                latencies[teleports / 2] * 1e-3, latencies[(int) (teleports * 0.99)] * 1e-3,
+                cpu * 1e-3 / teleports));
+        left.quitServer();
+        right.quitServer();
+    }
+
+    /**
+     * Sends a ball through the left wall of left and waits for right to decode it
+     *
+     * @return the nanoseconds from the update that sent the ball to right having it
+     */
+    private static long teleport(Board left, Board right, int i) {
+        final long received = right.getInboundStats().getEnqueued();
+        left.addBall(new Ball("ball" + i, new Vect(0.5, 10), new Vect(-50, 0)));
+        final long sent = System.nanoTime();
+        left.updateBoard(0.02);
+        while (right.getInboundStats().getEnqueued() == received) {
+            if (System.nanoTime() - sent > TIMEOUT_NANOS) {
+                throw new IllegalStateException("A teleport was lost");
+            }
+            Thread.yield();
+        }
+        final long latency = System.nanoTime() - sent;
+        if (i % 100 == 99) {
+            right.updateBoard(0.001); // lets right apply what it received, so its queue stays short
+        }
+        return latency;
+    }
+
+    /**
+     * @return the CPU time the threads have used so far
+     */
+    private static long cpuNanos(List<Thread> threads) {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (Thread thread : threads) {
+            total += Math.max(0, bean.getThreadCpuTime(thread.getId()));
+        }
+        return total;
+    }
+}
@@ -0,0 +1,107 @@
+package flingball;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Random;
+
+import physics.Vect;
+
+/**
+ * Measures how long the physics steps of a board wait for the board's lock while frames are
+ * painted, when painting takes the lock as the board's drawing methods used to and when it
+ * paints from the latest FrameSnapshot without it.
+ *
+ * Run from the project root with the test classes on the classpath:
+ *     java -Djava.awt.headless=true -cp bin:lib/parserlib.jar:lib/physics.jar flingball.RenderLockBenchmark
+ *          [board file, default boards/default.fb] [extra balls, default 200]
+ *          [seconds per mode, default 3] [physics rate, default Simulator.DEFAULT_PHYSICS_RATE]
+ *
+ * Frames are painted into an off-screen image at about 60 per second on a separate thread,
+ * standing in for the Event Dispatch Thread. The statistics of the simulation are printed for
+ * each mode; the lock wait of the steps is the time painting kept the physics out.
+ */
+public class RenderLockBenchmark {
+
+    private static final String DEFAULT_BOARD = "boards/default.fb";
+    private static final int DEFAULT_BALLS = 200;
+    private static final int DEFAULT_SECONDS = 3;
+    private static final long FRAME_MILLIS = 16;
+    private static final double MAX_SPEED = 20;
+
+    /**
+     * Runs the comparison
+     *
+     * @param args optionally the board file, the number of extra balls, the seconds per mode and the rate
+     * @throws Exception if the board cannot be parsed or the benchmark is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        final File file = new File(args.length > 0 ? args[0] : DEFAULT_BOARD);
+        final int ballCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BALLS;
+        final int seconds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SECONDS;
+        final int rate = args.length > 3 ? Integer.parseInt(args[3]) : Simulator.DEFAULT_PHYSICS_RATE;
+
+        System.out.println(file + ", " + ballCount + " extra balls, " + seconds + "s per mode, " + rate + " Hz");
+        System.out.println("painting under the board's lock:");
+        System.out.println(run(file, ballCount, seconds, rate, true));
+        System.out.println("painting from the published snapshot:");
+        System.out.println(run(file, ballCount, seconds, rate, false));
+    }
+
+    /**
+     * Simulates a freshly parsed board while a second thread paints it
+     *
+     * @param locked whether painting holds the board's lock
+     * @return the statistics of the simulation
+     */
+    private static SimulationStats run(File file, int ballCount, int seconds, int rate, boolean locked)
+            throws Exception {
+        final Board board = BoardParser.parse(file);
+        final Random random = new Random(1);
+        for (int i = 0; i < ballCount; i++) {
+            board.addBall(new Ball("extra" + i, new Vect(1 + 18 * random.nextDouble(), 1 + 10 * random.nextDouble()),
+                    new Vect((2 * random.nextDouble() - 1) * MAX_SPEED, (2 * random.nextDouble() - 1) * MAX_SPEED)));
+        }
+        final BufferedImage background = board.drawBackground();
+        final BufferedImage image = new BufferedImage(background.getWidth(), background.getHeight(),
+                BufferedImage.TYPE_4BYTE_ABGR);
+        final SimulationLoop loop = new SimulationLoop(board, rate);
+
+        final Thread painter = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                final long paintStart = System.nanoTime();
+                final Graphics graphics = image.getGraphics();
+                if (locked) {
+                    synchronized (board) {
+                        paint(graphics, background, board);
+                    }
+                } else {
+                    paint(graphics, background, board);
+                }
+                graphics.dispose();
+                loop.recordFrame(System.nanoTime() - paintStart);
+                try {
+                    Thread.sleep(FRAME_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        loop.start();
+        painter.start();
+        Thread.sleep(seconds * 1000L);
+        painter.interrupt();
+        painter.join();
+        loop.stop();
+        return loop.stats();
+    }
+
+    /**
+     * Paints one frame the way Simulator does
+     */
+    private static void paint(Graphics graphics, BufferedImage background, Board board) {
+        graphics.drawImage(background, 0, 0, background.getWidth(), background.getHeight(), null);
+        board.getFrame().draw(graphics);
+    }
+}
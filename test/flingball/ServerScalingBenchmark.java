@@ -0,0 +1,278 @@
+package flingball;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connects many boards to a FlingballTextServer on platform threads, one on virtual threads and a
+ * FlingballNioServer, and compares how many threads and how much heap each server takes to hold
+ * them, how many bytes they send the boards while they connect, and how long it takes each to
+ * relay a teleport from one board to another while all of them are connected. Virtual threads are skipped on Java runtimes that do not have them.
+ *
+ * Run from the project root with the test classes on the classpath:
+ *     java -cp bin:lib/parserlib.jar:lib/physics.jar flingball.ServerScalingBenchmark
+ *          [boards, default 2000] [teleports, default 2000] [event loops, default FlingballNioServer.DEFAULT_EVENT_LOOPS]
+ *          [servers, any of platform,virtual,nio, default all three] [membership, versioned or legacy, default versioned]
+ *
+ * Both servers run in this JVM. The boards are non-blocking channels read by a single thread, so
+ * the threads they add are not counted against either server. Boards ask for versions of the
+ * connected boards, so each one that joins costs one line per connected board and the traffic
+ * while connecting grows with the square of the number of boards. With legacy membership every
+ * board is told the names of all connected boards each time one joins instead, so it grows with
+ * the cube, which keeps that mode to a few hundred boards. Both ends of every connection are in
+ * this JVM, so 10000 boards need a limit of more than 20000 open files (ulimit -n). The heap does not include the direct buffers of FlingballNioServer,
+ * two of 4 KB per connection.
+ */
+public class ServerScalingBenchmark {
+
+    private static final int DEFAULT_BOARDS = 2000;
+    private static final int DEFAULT_TELEPORTS = 2000;
+    private static final long QUIET_MILLIS = 300;
+    private static final byte[] TELEPORT = "teleportPortal=".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Runs the comparison
+     *
+     * @param args optionally the number of boards, of teleports and of event loops, the servers and the membership
+     * @throws Exception if a server cannot be started or a connection fails
+     */
+    public static void main(String[] args) throws Exception {
+        final int boards = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BOARDS;
+        final int teleports = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TELEPORTS;
+        final int eventLoops = args.length > 2 ? Integer.parseInt(args[2]) : FlingballNioServer.DEFAULT_EVENT_LOOPS;
+        final List<String> servers = Arrays.asList((args.length > 3 ? args[3] : "platform,virtual,nio").split(","));
+        final boolean versioned = args.length <= 4 || args[4].equals("versioned");
+
+        System.out.println(boards + " boards, " + teleports + " teleports, "
+                + (versioned ? "versioned" : "legacy") + " membership");
+        if (servers.contains("platform")) {
+            System.out.println("FlingballTextServer, a platform thread per client:");
+            final FlingballTextServer textServer = new FlingballTextServer(0);
+            run(textServer.port(), () -> textServer.serve(), boards, teleports, versioned);
+        }
+        if (servers.contains("virtual")) {
+            final Optional<ThreadFactory> virtualThreads = FlingballTextServer.virtualThreads();
+            if (virtualThreads.isPresent()) {
+                System.out.println("FlingballTextServer, a virtual thread per client:");
+                final FlingballTextServer textServer = new FlingballTextServer(0, virtualThreads.get());
+                run(textServer.port(), () -> textServer.serve(), boards, teleports, versioned);
+            } else {
+                System.out.println("FlingballTextServer, a virtual thread per client: skipped, this Java runtime "
+                        + System.getProperty("java.version") + " has no virtual threads");
+            }
+        }
+        if (servers.contains("nio")) {
+            System.out.println("FlingballNioServer, " + eventLoops + " event loops:");
+            final FlingballNioServer nioServer = new FlingballNioServer(0, eventLoops);
+            run(nioServer.port(), () -> nioServer.serve(), boards, teleports, versioned);
+        }
+        System.exit(0); // the text server's threads never stop
+    }
+
+    /**
+     * A server's serve method
+     */
+    private interface Server {
+        void serve() throws IOException;
+    }
+
+    /**
+     * Starts a server, connects the boards to it and relays the teleports through it, printing
+     * what it cost
+     */
+    private static void run(int port, Server server, int boards, int teleports, boolean versioned) throws Exception {
+        final Drain drain = new Drain();
+        final Thread drainThread = new Thread(drain, "benchmark-drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+        final int threadsBefore = Thread.activeCount();
+        final long heapBefore = usedHeap();
+
+        final Thread serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        final long connectStart = System.nanoTime();
+        final SocketChannel[] channels = new SocketChannel[boards];
+        for (int i = 0; i < boards; i++) {
+            channels[i] = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+            readLine(channels[i]); // getClientBoardName
+            final String handshake = "b" + i + "\n" + (versioned ? Membership.request(Membership.UNKNOWN_VERSION) + "\n" : "");
+            channels[i].write(ByteBuffer.wrap(handshake.getBytes(StandardCharsets.US_ASCII)));
+            drain.add(channels[i]);
+        }
+        final double connectMillis = (System.nanoTime() - connectStart) * Board.EPSILON_6;
+        drain.awaitQuiet(); // let the lists of connected boards go out
+        final long connectBytes = drain.bytes.get();
+        final int serverThreads = Thread.activeCount() - threadsBefore;
+        final long serverHeap = usedHeap() - heapBefore;
+
+        final long[] latencies = new long[teleports];
+        for (int i = 0; i < teleports; i++) {
+            final int from = i % boards;
+            final int to = (i * 7 + 1) % boards;
+            final byte[] request = ("teleportPortal= b" + to + " ball" + i + " 1.0 0.0 portal\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            final long sent = System.nanoTime();
+            synchronized (channels[from]) {
+                final ByteBuffer buffer = ByteBuffer.wrap(request);
+                while (buffer.hasRemaining()) {
+                    channels[from].write(buffer);
+                }
+            }
+            if (!drain.arrived.tryAcquire(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("teleport " + i + " never arrived");
+            }
+            latencies[i] = System.nanoTime() - sent;
+        }
+        Arrays.sort(latencies);
+
+        System.out.println(String.format("  connect %.1f ms, %.1f MB sent to the boards, %d server threads, %.1f MB heap",
+                connectMillis, connectBytes / 1e6, serverThreads, serverHeap / 1e6));
+        System.out.println(String.format("  teleport relay %.3f ms median, %.3f ms p99, %.3f ms max",
+                latencies[teleports / 2] * Board.EPSILON_6, latencies[teleports * 99 / 100] * Board.EPSILON_6,
+                latencies[teleports - 1] * Board.EPSILON_6));
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        Thread.sleep(500);
+    }
+
+    /**
+     * Reads one line from a blocking channel, a byte at a time so nothing after it is consumed
+     */
+    private static String readLine(SocketChannel channel) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        final ByteBuffer one = ByteBuffer.allocate(1);
+        while (true) {
+            one.clear();
+            if (channel.read(one) < 0) {
+                throw new IOException("closed");
+            }
+            final char c = (char) one.get(0);
+            if (c == '\n') {
+                return line.toString();
+            }
+            line.append(c);
+        }
+    }
+
+    /**
+     * @return the heap in use after a garbage collection
+     */
+    private static long usedHeap() throws InterruptedException {
+        System.gc();
+        Thread.sleep(100);
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Reads and discards everything the boards are sent, releasing a permit for every teleport
+     */
+    private static class Drain implements Runnable {
+
+        private final Selector selector;
+        private final Queue<SocketChannel> added = new ConcurrentLinkedQueue<>();
+        private final Semaphore arrived = new Semaphore(0);
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        private final AtomicLong bytes = new AtomicLong();
+
+        Drain() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Waits until nothing has arrived for QUIET_MILLIS
+         */
+        void awaitQuiet() throws InterruptedException {
+            long last = -1;
+            while (bytes.get() != last) {
+                last = bytes.get();
+                Thread.sleep(QUIET_MILLIS);
+            }
+        }
+        
+        /**
+         * Starts reading a channel whose handshake is done
+         */
+        void add(SocketChannel channel) {
+            added.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    selector.select();
+                    for (SocketChannel channel = added.poll(); channel != null; channel = added.poll()) {
+                        channel.configureBlocking(false);
+                        channel.register(selector, SelectionKey.OP_READ, new int[1]);
+                    }
+                    final Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        final SelectionKey key = selected.next();
+                        selected.remove();
+                        read(key);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Reads what arrived on a channel, matching TELEPORT across reads
+         */
+        private void read(SelectionKey key) throws IOException {
+            final int[] matched = (int[]) key.attachment();
+            buffer.clear();
+            final int read;
+            try {
+                read = ((SocketChannel) key.channel()).read(buffer);
+            } catch (IOException e) {
+                key.cancel();
+                return;
+            }
+            if (read < 0) {
+                key.cancel();
+                return;
+            }
+            bytes.addAndGet(read);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                final byte b = buffer.get();
+                if (b == TELEPORT[matched[0]]) {
+                    if (++matched[0] == TELEPORT.length) {
+                        matched[0] = 0;
+                        arrived.release();
+                    }
+                } else {
+                    matched[0] = b == TELEPORT[0] ? 1 : 0;
+                }
+            }
+        }
+    }
+}
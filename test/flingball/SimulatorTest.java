@@ -1,5 +1,8 @@
 package flingball;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import java.util.Optional;
 
 import org.junit.Test;
@@ -28,6 +31,10 @@ import physics.Vect;
  *
  *Ball speed: 0, 1, >1, >max speed(200)
  *
+ *Automatically checked tests
+ *
+ *SimulationLoop: steps at its fixed rate off the Event Dispatch Thread, physics rate <= 0
+ *
  * @category no_didit
  *
  */
@@ -39,6 +46,31 @@ public class SimulatorTest {
     }
     
     
+    @Test
+    // tests the physics is stepped on its own thread in whole steps of its fixed rate
+    public void testSimulationLoopStepsAtFixedRate() throws InterruptedException {
+        Board board = new Board("default", 0, 0, 0); // no consideration of gravity, no friction
+        board.addBall(new Ball("ball", new Vect(5, 5), new Vect(1, 0)));
+        
+        SimulationLoop loop = new SimulationLoop(board, 200);
+        loop.start();
+        Thread.sleep(500);
+        loop.stop();
+        
+        SimulationStats stats = loop.stats();
+        assertTrue("expect the physics to have been stepped", stats.getSteps() > 0);
+        assertTrue("expect no more steps than the wall time allows", 
+                stats.getSimulatedSeconds() <= stats.getElapsedSeconds() + stats.getDroppedSeconds());
+        assertEquals("expect the ball to have moved by exactly the simulated time", 
+                5 + stats.getSimulatedSeconds(), board.getBalls().get(0).getLocation().x(), 1e-9);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    // tests a physics rate of 0
+    public void testSimulationLoopZeroRate() {
+        new SimulationLoop(new Board("default"), 0);
+    }
+    
     @Test
     // tests single ball, only 4 walls, velocity =1
     public void testSimulatorBallInBox() {
@@ -0,0 +1,169 @@
+package flingball;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import physics.Vect;
+
+/**
+ * Measures the bytes on the wire and the CPU time per teleport of the text protocol and of the
+ * binary framing of WireCodec, along the whole way a teleport takes: the sending board turns it
+ * into bytes, the server reads it, works out the board it goes to and writes it again, and the
+ * receiving board reads it back into a command.
+ *
+ * Run from the project root with the test classes on the classpath:
+ *     java -cp bin:lib/parserlib.jar:lib/physics.jar flingball.WireProtocolBenchmark
+ *          [teleports, default 1000000] [boards, default 16] [balls, default 64]
+ *
+ * The teleports go between boards and balls picked at random from a fixed set, as they do in a
+ * game where the same balls keep crossing, so the binary framing sends each name once. Each
+ * protocol runs the same teleports twice and only the second run is reported, so both are
+ * measured after the JIT has compiled them.
+ */
+public class WireProtocolBenchmark {
+
+    private static final int DEFAULT_TELEPORTS = 1000000;
+    private static final int DEFAULT_BOARDS = 16;
+    private static final int DEFAULT_BALLS = 64;
+    private static final double MAX_SPEED = 200;
+
+    /**
+     * Runs the comparison
+     *
+     * @param args optionally the number of teleports, boards and balls
+     * @throws Exception if a stream fails
+     */
+    public static void main(String[] args) throws Exception {
+        final int teleports = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TELEPORTS;
+        final int boards = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BOARDS;
+        final int balls = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BALLS;
+        final ServerCommand[] commands = commands(teleports, boards, balls);
+
+        System.out.println(teleports + " teleports between " + boards + " boards of " + balls + " balls");
+        text(commands);
+        report("text", commands.length, text(commands));
+        binary(commands);
+        report("binary", commands.length, binary(commands));
+    }
+
+    /**
+     * @return teleports through walls and portals, half of each, with random names and numbers
+     */
+    private static ServerCommand[] commands(int teleports, int boards, int balls) {
+        final Random random = new Random(1);
+        final ServerCommand[] commands = new ServerCommand[teleports];
+        for (int i = 0; i < teleports; i++) {
+            final String board = "Board" + random.nextInt(boards);
+            final String ball = "Ball" + random.nextInt(balls);
+            final Vect velocity = new Vect((2 * random.nextDouble() - 1) * MAX_SPEED,
+                    (2 * random.nextDouble() - 1) * MAX_SPEED);
+            if (i % 2 == 0) {
+                commands[i] = ServerCommand.teleportWall(board, ball, velocity,
+                        new Vect(20 * random.nextDouble(), 20 * random.nextDouble()),
+                        Wall.values()[random.nextInt(Wall.values().length)], 0);
+            } else {
+                commands[i] = ServerCommand.teleportPortal(board, ball, velocity, "Portal" + random.nextInt(4), 0);
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * Sends the teleports through the text protocol
+     *
+     * @return the bytes sent by the board and by the server, and the CPU time taken, in nanoseconds
+     */
+    private static long[] text(ServerCommand[] commands) throws Exception {
+        final long start = cpuNanos();
+        final ByteArrayOutputStream toServer = new ByteArrayOutputStream();
+        for (ServerCommand command : commands) {
+            toServer.write((command.toRequest() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        final DataInputStream serverIn = new DataInputStream(new BufferedInputStream(
+                new ByteArrayInputStream(toServer.toByteArray())));
+        final ByteArrayOutputStream toBoard = new ByteArrayOutputStream();
+        int routed = 0;
+        for (String line = WireCodec.readLine(serverIn); line != null; line = WireCodec.readLine(serverIn)) {
+            routed += line.split("[ ]+")[1].length();
+            toBoard.write(("success " + line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        final DataInputStream boardIn = new DataInputStream(new BufferedInputStream(
+                new ByteArrayInputStream(toBoard.toByteArray())));
+        int received = 0;
+        for (String line = WireCodec.readLine(boardIn); line != null; line = WireCodec.readLine(boardIn)) {
+            received += ServerCommand.parse(line, 0).get().getNames().size();
+        }
+        final long nanos = cpuNanos() - start;
+        check(routed > 0 && received > 0);
+        return new long[] { toServer.size(), toBoard.size(), nanos };
+    }
+
+    /**
+     * Sends the teleports through the binary framing
+     *
+     * @return the bytes sent by the board and by the server, and the CPU time taken, in nanoseconds
+     */
+    private static long[] binary(ServerCommand[] commands) throws Exception {
+        final long start = cpuNanos();
+        final ByteArrayOutputStream toServer = new ByteArrayOutputStream();
+        final DataOutputStream boardOut = new DataOutputStream(toServer);
+        final WireCodec.Encoder boardEncoder = new WireCodec.Encoder();
+        for (ServerCommand command : commands) {
+            boardEncoder.write(boardOut, command, "");
+        }
+        final DataInputStream serverIn = new DataInputStream(new BufferedInputStream(
+                new ByteArrayInputStream(toServer.toByteArray())));
+        final WireCodec.Decoder serverDecoder = new WireCodec.Decoder();
+        final ByteArrayOutputStream toBoard = new ByteArrayOutputStream();
+        final DataOutputStream serverOut = new DataOutputStream(toBoard);
+        final WireCodec.Encoder serverEncoder = new WireCodec.Encoder();
+        int routed = 0;
+        for (ServerCommand command = serverDecoder.read(serverIn); command != null; command = serverDecoder.read(serverIn)) {
+            routed += command.getNames().get(0).length();
+            serverEncoder.write(serverOut, command, "success ");
+        }
+        final DataInputStream boardIn = new DataInputStream(new BufferedInputStream(
+                new ByteArrayInputStream(toBoard.toByteArray())));
+        final WireCodec.Decoder boardDecoder = new WireCodec.Decoder();
+        int received = 0;
+        for (ServerCommand command = boardDecoder.read(boardIn); command != null; command = boardDecoder.read(boardIn)) {
+            received += command.getNames().size();
+        }
+        final long nanos = cpuNanos() - start;
+        check(routed > 0 && received > 0);
+        return new long[] { toServer.size(), toBoard.size(), nanos };
+    }
+
+    /**
+     * Prints the bytes and CPU time per teleport
+     */
+    private static void report(String protocol, int teleports, long[] result) {
+        System.out.println(String.format("%-6s: %.1f bytes to the server, %.1f bytes to the board, %.3f us of CPU per teleport",
+                protocol, (double) result[0] / teleports, (double) result[1] / teleports,
+                result[2] * 1e-3 / teleports));
+    }
+
+    /**
+     * @return the CPU time the current thread has used, in nanoseconds
+     */
+    private static long cpuNanos() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Keeps the work from being optimised away
+     */
+    private static void check(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("Nothing was sent");
+        }
+    }
+}